@@ -33,9 +33,7 @@ object MockServer {
                 USER_ACCOUNT_PASSWORD.toByteArray()
         )
 
-        val bSalt = salt.map { String.format("%02x", it) }
-                .reduce { acc, s -> "$acc$s" }
-                .toBigInteger(16)
+        val bSalt = BigInteger(1, salt)
 
         val bValue = serverSession.step1(login, bSalt, verifier)
 
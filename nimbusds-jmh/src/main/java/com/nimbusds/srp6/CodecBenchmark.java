@@ -0,0 +1,118 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Compares the {@link BigIntegerUtils} wire codecs for padded SRP values of
+ * the byte length of 'N', i.e. 'A', 'B' and 'v', against the radix
+ * conversions of {@link BigIntegerUtils#toHex} and
+ * {@link BigIntegerUtils#fromHex}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+
+	@Param({"1024", "2048", "4096"})
+	public int bitsize;
+
+
+	private BigInteger value;
+
+	private byte[] bytes;
+
+	private String hex;
+
+	private String base64url;
+
+	private char[] hexChars;
+
+	private char[] chars;
+
+	private byte[] decoded;
+
+
+	@Setup
+	public void setUp() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(bitsize, "SHA-256");
+
+		value = config.N.subtract(BigInteger.TEN);
+		bytes = BigIntegerUtils.bigIntegerToBytes(value, config.getPadLength());
+
+		hexChars = new char[bytes.length * 2];
+		BigIntegerUtils.encodeHex(bytes, 0, bytes.length, hexChars, 0);
+		hex = new String(hexChars);
+
+		chars = new char[BigIntegerUtils.getBase64Length(bytes.length, false)];
+		BigIntegerUtils.encodeBase64(bytes, 0, bytes.length, chars, 0, true);
+		base64url = new String(chars, 0, BigIntegerUtils.getBase64Length(bytes.length, true));
+
+		decoded = new byte[bytes.length];
+	}
+
+
+	@Benchmark
+	public String radixToHex() {
+
+		return BigIntegerUtils.toHex(value);
+	}
+
+
+	@Benchmark
+	public BigInteger radixFromHex() {
+
+		return BigIntegerUtils.fromHex(hex);
+	}
+
+
+	@Benchmark
+	public char[] encodeHex() {
+
+		BigIntegerUtils.encodeHex(bytes, 0, bytes.length, hexChars, 0);
+		return hexChars;
+	}
+
+
+	@Benchmark
+	public byte[] decodeHex() {
+
+		BigIntegerUtils.decodeHex(hex, 0, hex.length(), decoded, 0);
+		return decoded;
+	}
+
+
+	@Benchmark
+	public char[] encodeBase64url() {
+
+		BigIntegerUtils.encodeBase64(bytes, 0, bytes.length, chars, 0, true);
+		return chars;
+	}
+
+
+	@Benchmark
+	public byte[] decodeBase64url() {
+
+		BigIntegerUtils.decodeBase64(base64url, 0, base64url.length(), decoded, 0, true);
+		return decoded;
+	}
+}
@@ -0,0 +1,209 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the individual {@link SRP6Routines} methods over every
+ * precomputed group and common hash algorithm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SRP6RoutinesBenchmark {
+
+
+	@Param({"256", "512", "768", "1024", "1536", "2048", "3072", "4096", "6144", "8192"})
+	public int bitsize;
+
+
+	@Param({"SHA-1", "SHA-256", "SHA-512"})
+	public String hash;
+
+
+	private SRP6CryptoParams config;
+
+	private SRP6Routines srp6Routines;
+
+	private SecureRandom random;
+
+	private byte[] salt;
+
+	private byte[] password;
+
+	private BigInteger x;
+
+	private BigInteger v;
+
+	private BigInteger k;
+
+	private BigInteger a;
+
+	private BigInteger A;
+
+	private BigInteger b;
+
+	private BigInteger B;
+
+	private BigInteger u;
+
+	private BigInteger S;
+
+	private BigInteger M1;
+
+
+	@Setup
+	public void setUp() {
+
+		config = SRP6CryptoParams.getInstance(bitsize, hash);
+		srp6Routines = new SRP6Routines();
+		random = new SecureRandom();
+
+		salt = srp6Routines.generateRandomSalt(16);
+		password = "secret".getBytes(Charset.forName("UTF-8"));
+
+		x = srp6Routines.computeX(config.getMessageDigestInstance(), salt, password);
+		v = srp6Routines.computeVerifier(config.N, config.g, x);
+		k = srp6Routines.computeK(config);
+
+		a = srp6Routines.generatePrivateValue(config.N, random);
+		A = srp6Routines.computePublicClientValue(config, a);
+		b = srp6Routines.generatePrivateValue(config.N, random);
+		B = srp6Routines.computePublicServerValue(config, k, v, b);
+
+		u = srp6Routines.computeU(config.getMessageDigestInstance(), config.N, A, B);
+		S = srp6Routines.computeSessionKey(config, v, u, A, b);
+		M1 = srp6Routines.computeClientEvidence(config.getMessageDigestInstance(), A, B, S);
+	}
+
+
+	@Benchmark
+	public BigInteger computeK() {
+
+		return srp6Routines.computeK(config.getMessageDigestInstance(), config.N, config.g);
+	}
+
+
+	@Benchmark
+	public BigInteger computeKCached() {
+
+		return srp6Routines.computeK(config);
+	}
+
+
+	@Benchmark
+	public byte[] generateRandomSalt() {
+
+		return srp6Routines.generateRandomSalt(16, random);
+	}
+
+
+	@Benchmark
+	public BigInteger computeX() {
+
+		return srp6Routines.computeX(config.getMessageDigestInstance(), salt, password);
+	}
+
+
+	@Benchmark
+	public BigInteger computeVerifier() {
+
+		return srp6Routines.computeVerifier(config.N, config.g, x);
+	}
+
+
+	@Benchmark
+	public BigInteger generatePrivateValue() {
+
+		return srp6Routines.generatePrivateValue(config.N, random);
+	}
+
+
+	@Benchmark
+	public BigInteger computePublicClientValue() {
+
+		return srp6Routines.computePublicClientValue(config.N, config.g, a);
+	}
+
+
+	@Benchmark
+	public BigInteger computePublicClientValueFixedBase() {
+
+		return srp6Routines.computePublicClientValue(config, a);
+	}
+
+
+	@Benchmark
+	public BigInteger computePublicServerValue() {
+
+		return srp6Routines.computePublicServerValue(config.N, config.g, k, v, b);
+	}
+
+
+	@Benchmark
+	public BigInteger computePublicServerValueFixedBase() {
+
+		return srp6Routines.computePublicServerValue(config, k, v, b);
+	}
+
+
+	@Benchmark
+	public boolean isValidPublicValue() {
+
+		return srp6Routines.isValidPublicValue(config.N, A);
+	}
+
+
+	@Benchmark
+	public BigInteger computeU() {
+
+		return srp6Routines.computeU(config.getMessageDigestInstance(), config.N, A, B);
+	}
+
+
+	@Benchmark
+	public BigInteger computeClientSessionKey() {
+
+		return srp6Routines.computeSessionKey(config, k, x, null, u, a, B);
+	}
+
+
+	@Benchmark
+	public BigInteger computeServerSessionKey() {
+
+		return srp6Routines.computeSessionKey(config, v, u, A, b);
+	}
+
+
+	@Benchmark
+	public BigInteger computeClientEvidence() {
+
+		return srp6Routines.computeClientEvidence(config.getMessageDigestInstance(), A, B, S);
+	}
+
+
+	@Benchmark
+	public BigInteger computeServerEvidence() {
+
+		return srp6Routines.computeServerEvidence(config.getMessageDigestInstance(), A, M1, S);
+	}
+}
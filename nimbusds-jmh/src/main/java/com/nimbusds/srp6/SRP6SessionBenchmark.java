@@ -0,0 +1,185 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks verifier generation, the individual client and server session
+ * steps and a complete SRP-6a handshake over every precomputed group and
+ * common hash algorithm.
+ *
+ * <p>Each benchmark has its own state, so that only the client step two and
+ * server step two benchmarks pay for per-invocation preparation: a fresh
+ * client session in step one, respectively a fresh server session in step
+ * one with matching client credentials. That preparation is not measured.
+ * The server step one benchmark includes the session construction, which
+ * is part of every real step one.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SRP6SessionBenchmark {
+
+
+	private static final String USER_ID = "alice";
+
+
+	private static final String PASSWORD = "secret";
+
+
+	/**
+	 * The crypto parameters and the user's salt and verifier.
+	 */
+	@State(Scope.Benchmark)
+	public static class Parameters {
+
+
+		@Param({"256", "512", "768", "1024", "1536", "2048", "3072", "4096", "6144", "8192"})
+		public int bitsize;
+
+
+		@Param({"SHA-1", "SHA-256", "SHA-512"})
+		public String hash;
+
+
+		SRP6CryptoParams config;
+
+		SRP6VerifierGenerator verifierGenerator;
+
+		BigInteger s;
+
+		BigInteger v;
+
+
+		@Setup(Level.Trial)
+		public void setUp() {
+
+			config = SRP6CryptoParams.getInstance(bitsize, hash);
+			verifierGenerator = new SRP6VerifierGenerator(config);
+			s = new BigInteger(1, verifierGenerator.generateRandomSalt());
+			v = verifierGenerator.generateVerifier(s, USER_ID, PASSWORD);
+
+			// Build the lazily computed tables outside the measurement
+			config.getFixedBaseExponentiator();
+		}
+	}
+
+
+	/**
+	 * A client session in step one and a server public value 'B'.
+	 */
+	@State(Scope.Thread)
+	public static class ClientStep2State {
+
+
+		BigInteger B;
+
+		SRP6ClientSession client;
+
+
+		@Setup(Level.Trial)
+		public void setUpTrial(final Parameters params) {
+
+			B = new SRP6ServerSession(params.config).step1(USER_ID, params.s, params.v);
+		}
+
+
+		@Setup(Level.Invocation)
+		public void setUpInvocation() {
+
+			// Step one only records the credentials
+			client = new SRP6ClientSession();
+			client.step1(USER_ID, PASSWORD);
+		}
+	}
+
+
+	/**
+	 * A server session in step one and the matching client credentials.
+	 */
+	@State(Scope.Thread)
+	public static class ServerStep2State {
+
+
+		SRP6ServerSession server;
+
+		SRP6ClientCredentials credentials;
+
+
+		@Setup(Level.Invocation)
+		public void setUpInvocation(final Parameters params)
+			throws SRP6Exception {
+
+			SRP6ClientSession client = new SRP6ClientSession();
+			client.step1(USER_ID, PASSWORD);
+
+			server = new SRP6ServerSession(params.config);
+			credentials = client.step2(params.config, params.s, server.step1(USER_ID, params.s, params.v));
+		}
+	}
+
+
+	@Benchmark
+	public BigInteger generateVerifier(final Parameters params) {
+
+		return params.verifierGenerator.generateVerifier(params.s, USER_ID, PASSWORD);
+	}
+
+
+	@Benchmark
+	public SRP6ClientCredentials clientStep2(final Parameters params, final ClientStep2State state)
+		throws SRP6Exception {
+
+		return state.client.step2(params.config, params.s, state.B);
+	}
+
+
+	@Benchmark
+	public BigInteger serverStep1(final Parameters params) {
+
+		return new SRP6ServerSession(params.config).step1(USER_ID, params.s, params.v);
+	}
+
+
+	@Benchmark
+	public BigInteger serverStep2(final ServerStep2State state)
+		throws SRP6Exception {
+
+		return state.server.step2(state.credentials.A, state.credentials.M1);
+	}
+
+
+	@Benchmark
+	public byte[] roundTrip(final Parameters params)
+		throws SRP6Exception {
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		SRP6ServerSession server = new SRP6ServerSession(params.config);
+
+		client.step1(USER_ID, PASSWORD);
+		BigInteger B = server.step1(USER_ID, params.s, params.v);
+
+		SRP6ClientCredentials cred = client.step2(params.config, params.s, B);
+		BigInteger M2 = server.step2(cred.A, cred.M1);
+		client.step3(M2);
+
+		return client.getSessionKeyHash();
+	}
+}
@@ -0,0 +1,97 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures the latency of the key derivation 'x' routines, for sizing their
+ * cost parameters to a target login time. Override the parameters on the
+ * command line, e.g. {@code -p kdf=argon2id -p cost=65536 -p lanes=4}.
+ *
+ * <p>The cost is the iteration count for PBKDF2, 'N' for scrypt and the
+ * memory size in KiB for Argon2id. Argon2id runs with its memory matrix on
+ * the heap, or off-heap in a reused {@link Argon2MemoryArena}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XRoutineBenchmark {
+
+
+	@Param({"pbkdf2", "scrypt", "argon2id"})
+	public String kdf;
+
+
+	@Param({"16384", "65536"})
+	public int cost;
+
+
+	@Param({"1", "4"})
+	public int lanes;
+
+
+	@Param({"false", "true"})
+	public boolean arena;
+
+
+	private XRoutine xRoutine;
+
+	private MessageDigest digest;
+
+	private byte[] salt;
+
+	private byte[] password;
+
+
+	@Setup
+	public void setUp() {
+
+		KeyDerivationXRoutine routine;
+
+		switch (kdf) {
+			case "pbkdf2":
+				routine = new PBKDF2XRoutine(PBKDF2XRoutine.PRF.HMAC_SHA256, cost);
+				break;
+			case "scrypt":
+				routine = new ScryptXRoutine(31 - Integer.numberOfLeadingZeros(cost), 8, lanes);
+				break;
+			case "argon2id":
+				routine = new Argon2idXRoutine(cost, 3, lanes, new ThreadLocalRandomSource(), null,
+				                               arena ? new Argon2MemoryArena(1) : null);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown KDF: " + kdf);
+		}
+
+		xRoutine = routine;
+		digest = SRP6CryptoParams.getInstance(2048, "SHA-256").getMessageDigestInstance();
+		salt = routine.generateSalt(16);
+		password = "secret".getBytes(Charset.forName("UTF-8"));
+	}
+
+
+	@Benchmark
+	public BigInteger computeX() {
+
+		return xRoutine.computeX(digest, salt, null, password);
+	}
+}
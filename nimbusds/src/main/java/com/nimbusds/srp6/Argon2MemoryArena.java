@@ -0,0 +1,163 @@
+package com.nimbusds.srp6;
+
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Bounded pool of reusable off-heap memory buffers for the
+ * {@link Argon2idXRoutine} memory matrix.
+ *
+ * <p>Without an arena each Argon2id computation allocates its memory matrix
+ * on the Java heap, which at realistic sizes (64 MiB and more) puts pressure
+ * on the garbage collector when many verifiers are generated or many clients
+ * log in concurrently. With an arena the matrix lives in a direct buffer
+ * outside the heap and is handed back for the next computation, so that the
+ * heap and the GC pauses stay flat.
+ *
+ * <p>Up to the maximum number of buffers are retained while idle. A
+ * computation that finds no idle buffer of sufficient size allocates a new
+ * one, and a released buffer is dropped if the arena is full. Set the
+ * maximum to the expected number of concurrent computations. Buffers are
+ * wiped by the routine before release.
+ *
+ * <p>This class is thread-safe.
+ */
+public class Argon2MemoryArena {
+
+
+	/**
+	 * The idle buffers.
+	 */
+	private final BlockingQueue<ByteBuffer> idle;
+
+
+	/**
+	 * The maximum number of idle buffers.
+	 */
+	private final int maxBuffers;
+
+
+	/**
+	 * The number of buffers taken from the arena.
+	 */
+	private final AtomicLong hitCount = new AtomicLong();
+
+
+	/**
+	 * The number of buffers allocated for lack of an idle one.
+	 */
+	private final AtomicLong missCount = new AtomicLong();
+
+
+	/**
+	 * Creates a new memory arena.
+	 *
+	 * @param maxBuffers The maximum number of idle buffers to retain, one
+	 *                   or more.
+	 */
+	public Argon2MemoryArena(final int maxBuffers) {
+
+		if (maxBuffers < 1)
+			throw new IllegalArgumentException("The maximum number of buffers must be one or more");
+
+		this.maxBuffers = maxBuffers;
+
+		idle = new ArrayBlockingQueue<>(maxBuffers);
+	}
+
+
+	/**
+	 * Acquires a buffer, allocating one if no idle buffer is large
+	 * enough.
+	 *
+	 * @param size The minimum buffer size in bytes.
+	 *
+	 * @return The buffer, in native byte order. Its content is undefined.
+	 */
+	ByteBuffer acquire(final int size) {
+
+		ByteBuffer buffer = idle.poll();
+
+		if (buffer != null && buffer.capacity() >= size) {
+			hitCount.incrementAndGet();
+			buffer.clear();
+			return buffer;
+		}
+
+		// Drop a buffer that is too small, it is freed with its last
+		// reference
+		missCount.incrementAndGet();
+		return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+	}
+
+
+	/**
+	 * Releases a buffer back to the arena. The buffer is dropped if the
+	 * arena is full.
+	 *
+	 * @param buffer The buffer, wiped.
+	 */
+	void release(final ByteBuffer buffer) {
+
+		idle.offer(buffer);
+	}
+
+
+	/**
+	 * Drops all idle buffers.
+	 */
+	public void clear() {
+
+		idle.clear();
+	}
+
+
+	/**
+	 * Gets the maximum number of idle buffers.
+	 *
+	 * @return The maximum number of idle buffers.
+	 */
+	public int getMaxBuffers() {
+
+		return maxBuffers;
+	}
+
+
+	/**
+	 * Gets the current number of idle buffers.
+	 *
+	 * @return The number of idle buffers.
+	 */
+	public int getIdleCount() {
+
+		return idle.size();
+	}
+
+
+	/**
+	 * Gets the number of buffers reused from the arena.
+	 *
+	 * @return The number of hits.
+	 */
+	public long getHitCount() {
+
+		return hitCount.get();
+	}
+
+
+	/**
+	 * Gets the number of buffers allocated because no idle buffer was
+	 * large enough.
+	 *
+	 * @return The number of misses.
+	 */
+	public long getMissCount() {
+
+		return missCount.get();
+	}
+}
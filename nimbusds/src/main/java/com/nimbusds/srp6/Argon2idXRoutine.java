@@ -0,0 +1,722 @@
+package com.nimbusds.srp6;
+
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Password key 'x' routine using the memory-hard Argon2id function
+ * (RFC 9106), version 0x13. The lanes are filled in parallel.
+ *
+ * <p>The salt 's' carries the algorithm byte 'A', the version byte, the
+ * 4-byte memory size in KiB, the number of passes and the number of lanes,
+ * followed by the random salt bytes, of which there must be at least 8.
+ *
+ * <p>The memory matrix is allocated on the Java heap for each computation,
+ * or taken from an {@link Argon2MemoryArena} of reusable off-heap buffers if
+ * one is set, which is recommended for servers.
+ *
+ * <p>Instances are immutable and thread-safe.
+ */
+public class Argon2idXRoutine extends KeyDerivationXRoutine {
+
+
+	/**
+	 * The algorithm identifier byte in the salt.
+	 */
+	public static final byte ALGORITHM = 'A';
+
+
+	/**
+	 * The Argon2 version.
+	 */
+	public static final int VERSION = 0x13;
+
+
+	/**
+	 * The maximum memory size, in KiB, accepted from a salt, 1 GiB.
+	 */
+	public static final int MAX_MEMORY_KIB = 1 << 20;
+
+
+	/**
+	 * The Argon2id type identifier.
+	 */
+	private static final int TYPE_ID = 2;
+
+
+	/**
+	 * The number of 64-bit words in a block.
+	 */
+	private static final int BLOCK_WORDS = 128;
+
+
+	/**
+	 * The number of slices per pass.
+	 */
+	private static final int SYNC_POINTS = 4;
+
+
+	/**
+	 * The memory size, in KiB.
+	 */
+	private final int memoryKiB;
+
+
+	/**
+	 * The number of passes 't'.
+	 */
+	private final int iterations;
+
+
+	/**
+	 * The number of lanes 'p'.
+	 */
+	private final int lanes;
+
+
+	/**
+	 * The arena for the memory matrix, {@code null} if allocated on the
+	 * heap.
+	 */
+	private final Argon2MemoryArena arena;
+
+
+	/**
+	 * Creates a new Argon2id 'x' routine on the default fork-join pool.
+	 *
+	 * @param memoryKiB  The memory size in KiB, from 8 times the number of
+	 *                   lanes to {@link #MAX_MEMORY_KIB}.
+	 * @param iterations The number of passes 't', from 1 to 255.
+	 * @param lanes      The number of lanes 'p', from 1 to 255.
+	 */
+	public Argon2idXRoutine(final int memoryKiB, final int iterations, final int lanes) {
+
+		this(memoryKiB, iterations, lanes, new ThreadLocalRandomSource(), null);
+	}
+
+
+	/**
+	 * Creates a new Argon2id 'x' routine.
+	 *
+	 * @param memoryKiB    The memory size in KiB, from 8 times the number
+	 *                     of lanes to {@link #MAX_MEMORY_KIB}.
+	 * @param iterations   The number of passes 't', from 1 to 255.
+	 * @param lanes        The number of lanes 'p', from 1 to 255.
+	 * @param randomSource The source of randomness for salts. Must not be
+	 *                     {@code null}.
+	 * @param pool         The fork-join pool for the parallel lanes,
+	 *                     {@code null} for the default pool.
+	 */
+	public Argon2idXRoutine(final int memoryKiB,
+	                        final int iterations,
+	                        final int lanes,
+	                        final RandomSource randomSource,
+	                        final ForkJoinPool pool) {
+
+		this(memoryKiB, iterations, lanes, randomSource, pool, null);
+	}
+
+
+	/**
+	 * Creates a new Argon2id 'x' routine.
+	 *
+	 * @param memoryKiB    The memory size in KiB, from 8 times the number
+	 *                     of lanes to {@link #MAX_MEMORY_KIB}.
+	 * @param iterations   The number of passes 't', from 1 to 255.
+	 * @param lanes        The number of lanes 'p', from 1 to 255.
+	 * @param randomSource The source of randomness for salts. Must not be
+	 *                     {@code null}.
+	 * @param pool         The fork-join pool for the parallel lanes,
+	 *                     {@code null} for the default pool.
+	 * @param arena        The arena of off-heap buffers for the memory
+	 *                     matrix, {@code null} to allocate it on the heap.
+	 */
+	public Argon2idXRoutine(final int memoryKiB,
+	                        final int iterations,
+	                        final int lanes,
+	                        final RandomSource randomSource,
+	                        final ForkJoinPool pool,
+	                        final Argon2MemoryArena arena) {
+
+		super(ALGORITHM, randomSource, pool);
+
+		checkParameters(memoryKiB, iterations, lanes);
+
+		this.memoryKiB = memoryKiB;
+		this.iterations = iterations;
+		this.lanes = lanes;
+		this.arena = arena;
+	}
+
+
+	/**
+	 * Checks the Argon2id parameters against the limits.
+	 *
+	 * @param memoryKiB  The memory size in KiB.
+	 * @param iterations The number of passes.
+	 * @param lanes      The number of lanes.
+	 */
+	private static void checkParameters(final int memoryKiB, final int iterations, final int lanes) {
+
+		if (lanes < 1 || lanes > 255)
+			throw new IllegalArgumentException("The Argon2 lanes must be between 1 and 255");
+
+		if (iterations < 1 || iterations > 255)
+			throw new IllegalArgumentException("The Argon2 passes must be between 1 and 255");
+
+		if (memoryKiB < 8 * lanes || memoryKiB > MAX_MEMORY_KIB)
+			throw new IllegalArgumentException("The Argon2 memory must be between 8 KiB per lane and " + MAX_MEMORY_KIB + " KiB");
+	}
+
+
+	/**
+	 * Gets the memory size.
+	 *
+	 * @return The memory size in KiB.
+	 */
+	public int getMemoryKiB() {
+
+		return memoryKiB;
+	}
+
+
+	/**
+	 * Gets the number of passes 't'.
+	 *
+	 * @return The number of passes.
+	 */
+	public int getIterations() {
+
+		return iterations;
+	}
+
+
+	/**
+	 * Gets the number of lanes 'p'.
+	 *
+	 * @return The number of lanes.
+	 */
+	public int getLanes() {
+
+		return lanes;
+	}
+
+
+	/**
+	 * Gets the arena for the memory matrix.
+	 *
+	 * @return The arena, {@code null} if allocated on the heap.
+	 */
+	public Argon2MemoryArena getArena() {
+
+		return arena;
+	}
+
+
+	@Override
+	protected int getParametersLength() {
+
+		return 1 + 4 + 1 + 1;
+	}
+
+
+	@Override
+	protected void writeParameters(final ByteBuffer out) {
+
+		out.put((byte) VERSION);
+		out.putInt(memoryKiB);
+		out.put((byte) iterations);
+		out.put((byte) lanes);
+	}
+
+
+	@Override
+	protected byte[] deriveKey(final ByteBuffer salt, final byte[] password, final int keyLength) {
+
+		if ((salt.get() & 0xff) != VERSION)
+			throw new IllegalArgumentException("Unsupported Argon2 version");
+
+		final int saltMemoryKiB = salt.getInt();
+		final int saltIterations = salt.get() & 0xff;
+		final int saltLanes = salt.get() & 0xff;
+
+		checkParameters(saltMemoryKiB, saltIterations, saltLanes);
+
+		if (salt.remaining() < 8)
+			throw new IllegalArgumentException("The Argon2 salt must have at least 8 random bytes");
+
+		return argon2id(password, randomSalt(salt), new byte[0], new byte[0],
+		                saltMemoryKiB, saltIterations, saltLanes, keyLength);
+	}
+
+
+	/**
+	 * Computes Argon2id.
+	 *
+	 * @param password   The password 'P'.
+	 * @param salt       The salt 'S'.
+	 * @param secret     The secret 'K', empty if not used.
+	 * @param ad         The associated data 'X', empty if not used.
+	 * @param memoryKiB  The memory size 'm' in KiB.
+	 * @param iterations The number of passes 't'.
+	 * @param lanes      The number of lanes 'p'.
+	 * @param tagLength  The tag length 'T' in bytes, 4 or more.
+	 *
+	 * @return The tag.
+	 */
+	byte[] argon2id(final byte[] password,
+	                final byte[] salt,
+	                final byte[] secret,
+	                final byte[] ad,
+	                final int memoryKiB,
+	                final int iterations,
+	                final int lanes,
+	                final int tagLength) {
+
+		final Blake2b blake2b = new Blake2b(Blake2b.MAX_DIGEST_LENGTH);
+		blake2b.updateInt(lanes);
+		blake2b.updateInt(tagLength);
+		blake2b.updateInt(memoryKiB);
+		blake2b.updateInt(iterations);
+		blake2b.updateInt(VERSION);
+		blake2b.updateInt(TYPE_ID);
+		blake2b.updateInt(password.length);
+		blake2b.update(password);
+		blake2b.updateInt(salt.length);
+		blake2b.update(salt);
+		blake2b.updateInt(secret.length);
+		blake2b.update(secret);
+		blake2b.updateInt(ad.length);
+		blake2b.update(ad);
+
+		// H0 followed by the two little-endian block and lane indices
+		final byte[] h0 = new byte[Blake2b.MAX_DIGEST_LENGTH + 8];
+		blake2b.digest(h0, 0);
+
+		final int segmentLength = memoryKiB / (SYNC_POINTS * lanes);
+		final int laneLength = segmentLength * SYNC_POINTS;
+		final int blocks = lanes * laneLength;
+
+		final ByteBuffer buffer = arena != null ? arena.acquire(blocks * BLOCK_WORDS * 8) : null;
+		final LongBuffer memory = buffer != null ? buffer.asLongBuffer() : LongBuffer.allocate(blocks * BLOCK_WORDS);
+		final Instance instance = new Instance(memory, lanes, laneLength, segmentLength, iterations);
+
+		final byte[] blockBytes = new byte[BLOCK_WORDS * 8];
+		final long[] block = new long[BLOCK_WORDS];
+		final long[] c = new long[BLOCK_WORDS];
+
+		try {
+			for (int lane = 0; lane < lanes; lane++) {
+
+				for (int i = 0; i < 2; i++) {
+
+					putIntLE(h0, Blake2b.MAX_DIGEST_LENGTH, i);
+					putIntLE(h0, Blake2b.MAX_DIGEST_LENGTH + 4, lane);
+					hashLong(blake2b, h0, blockBytes);
+
+					for (int w = 0; w < BLOCK_WORDS; w++)
+						block[w] = Blake2b.getLongLE(blockBytes, 8 * w);
+
+					memory.position((lane * laneLength + i) * BLOCK_WORDS);
+					memory.put(block);
+				}
+			}
+
+			Arrays.fill(h0, (byte) 0);
+
+			for (int pass = 0; pass < iterations; pass++) {
+
+				for (int slice = 0; slice < SYNC_POINTS; slice++) {
+
+					final RecursiveAction[] segments = new RecursiveAction[lanes];
+
+					for (int lane = 0; lane < lanes; lane++)
+						segments[lane] = new Segment(instance, pass, lane, slice);
+
+					runLanes(segments);
+				}
+			}
+
+			// XOR of the last column
+			for (int lane = 0; lane < lanes; lane++) {
+
+				memory.position((lane * laneLength + laneLength - 1) * BLOCK_WORDS);
+				memory.get(block);
+
+				for (int w = 0; w < BLOCK_WORDS; w++)
+					c[w] ^= block[w];
+			}
+
+		} finally {
+			// Wipe the matrix before it returns to the arena
+			Arrays.fill(block, 0L);
+			memory.clear();
+
+			for (int i = 0; i < blocks; i++)
+				memory.put(block);
+
+			if (buffer != null)
+				arena.release(buffer);
+		}
+
+		for (int w = 0; w < BLOCK_WORDS; w++)
+			putLongLE(blockBytes, 8 * w, c[w]);
+
+		final byte[] tag = new byte[tagLength];
+		hashLong(blake2b, blockBytes, tag);
+		Arrays.fill(blockBytes, (byte) 0);
+		return tag;
+	}
+
+
+	/**
+	 * The variable-length hash function H'.
+	 *
+	 * @param blake2b The BLAKE2b hash function to use.
+	 * @param in      The input.
+	 * @param out     The output, of the desired length.
+	 */
+	private static void hashLong(final Blake2b blake2b, final byte[] in, final byte[] out) {
+
+		final int length = out.length;
+
+		blake2b.reset(Math.min(length, Blake2b.MAX_DIGEST_LENGTH));
+		blake2b.updateInt(length);
+		blake2b.update(in);
+
+		if (length <= Blake2b.MAX_DIGEST_LENGTH) {
+			blake2b.digest(out, 0);
+			return;
+		}
+
+		final byte[] v = new byte[Blake2b.MAX_DIGEST_LENGTH];
+		blake2b.digest(v, 0);
+
+		// The first half of each intermediate hash, then the last in full
+		int offset = 0;
+
+		while (length - offset > Blake2b.MAX_DIGEST_LENGTH) {
+
+			System.arraycopy(v, 0, out, offset, Blake2b.MAX_DIGEST_LENGTH / 2);
+			offset += Blake2b.MAX_DIGEST_LENGTH / 2;
+
+			blake2b.reset(Math.min(length - offset, Blake2b.MAX_DIGEST_LENGTH));
+			blake2b.update(v);
+			blake2b.digest(v, 0);
+		}
+
+		System.arraycopy(v, 0, out, offset, length - offset);
+	}
+
+
+	/**
+	 * The memory matrix and its dimensions.
+	 */
+	private static final class Instance {
+
+
+		final LongBuffer memory;
+		final int lanes;
+		final int laneLength;
+		final int segmentLength;
+		final int passes;
+
+
+		Instance(final LongBuffer memory,
+		         final int lanes,
+		         final int laneLength,
+		         final int segmentLength,
+		         final int passes) {
+
+			this.memory = memory;
+			this.lanes = lanes;
+			this.laneLength = laneLength;
+			this.segmentLength = segmentLength;
+			this.passes = passes;
+		}
+	}
+
+
+	/**
+	 * Fills one segment of a lane.
+	 */
+	private static final class Segment extends RecursiveAction {
+
+
+		private static final long serialVersionUID = 1L;
+
+
+		private final Instance instance;
+		private final int pass;
+		private final int lane;
+		private final int slice;
+
+
+		Segment(final Instance instance, final int pass, final int lane, final int slice) {
+
+			this.instance = instance;
+			this.pass = pass;
+			this.lane = lane;
+			this.slice = slice;
+		}
+
+
+		@Override
+		protected void compute() {
+
+			// Own position for the bulk transfers, the lanes share the
+			// content
+			final LongBuffer memory = instance.memory.duplicate();
+			final int laneLength = instance.laneLength;
+			final int segmentLength = instance.segmentLength;
+
+			long[] prev = new long[BLOCK_WORDS];
+			long[] next = new long[BLOCK_WORDS];
+			final long[] ref = new long[BLOCK_WORDS];
+			final long[] r = new long[BLOCK_WORDS];
+			final long[] t = new long[BLOCK_WORDS];
+
+			// Argon2i addressing in the first half of the first pass
+			final boolean dataIndependent = pass == 0 && slice < SYNC_POINTS / 2;
+
+			long[] zero = null;
+			long[] input = null;
+			long[] addresses = null;
+
+			if (dataIndependent) {
+				zero = new long[BLOCK_WORDS];
+				input = new long[BLOCK_WORDS];
+				addresses = new long[BLOCK_WORDS];
+				input[0] = pass;
+				input[1] = lane;
+				input[2] = slice;
+				input[3] = (long) instance.lanes * laneLength;
+				input[4] = instance.passes;
+				input[5] = TYPE_ID;
+			}
+
+			int startIndex = 0;
+
+			if (pass == 0 && slice == 0) {
+				startIndex = 2;
+				if (dataIndependent)
+					nextAddresses(zero, input, addresses, r, t);
+			}
+
+			int currOffset = lane * laneLength + slice * segmentLength + startIndex;
+			final int prevOffset = currOffset % laneLength == 0 ? currOffset + laneLength - 1 : currOffset - 1;
+
+			// The previous block is then always the one last computed
+			memory.position(prevOffset * BLOCK_WORDS);
+			memory.get(prev);
+
+			for (int i = startIndex; i < segmentLength; i++, currOffset++) {
+
+				final long pseudoRand;
+
+				if (dataIndependent) {
+					if (i % BLOCK_WORDS == 0)
+						nextAddresses(zero, input, addresses, r, t);
+					pseudoRand = addresses[i % BLOCK_WORDS];
+				} else {
+					pseudoRand = prev[0];
+				}
+
+				int refLane = (int) ((pseudoRand >>> 32) % instance.lanes);
+
+				if (pass == 0 && slice == 0)
+					refLane = lane;
+
+				final int refIndex = indexAlpha(i, pseudoRand & 0xffffffffL, refLane == lane);
+
+				memory.position((refLane * laneLength + refIndex) * BLOCK_WORDS);
+				memory.get(ref);
+
+				if (pass > 0) {
+					memory.position(currOffset * BLOCK_WORDS);
+					memory.get(next);
+				}
+
+				fillBlock(prev, 0, ref, 0, next, 0, pass > 0, r, t);
+
+				memory.position(currOffset * BLOCK_WORDS);
+				memory.put(next);
+
+				final long[] computed = next;
+				next = prev;
+				prev = computed;
+			}
+		}
+
+
+		/**
+		 * Computes the next block of reference addresses.
+		 */
+		private static void nextAddresses(final long[] zero,
+		                                  final long[] input,
+		                                  final long[] addresses,
+		                                  final long[] r,
+		                                  final long[] t) {
+
+			input[6]++;
+			fillBlock(zero, 0, input, 0, addresses, 0, false, r, t);
+			fillBlock(zero, 0, addresses, 0, addresses, 0, false, r, t);
+		}
+
+
+		/**
+		 * Maps a pseudo-random value to the index of a reference block
+		 * within its lane.
+		 */
+		private int indexAlpha(final int index, final long pseudoRand, final boolean sameLane) {
+
+			final int laneLength = instance.laneLength;
+			final int segmentLength = instance.segmentLength;
+
+			long areaSize;
+
+			if (pass == 0) {
+				if (slice == 0)
+					areaSize = index - 1;
+				else if (sameLane)
+					areaSize = (long) slice * segmentLength + index - 1;
+				else
+					areaSize = (long) slice * segmentLength + (index == 0 ? -1 : 0);
+			} else {
+				if (sameLane)
+					areaSize = laneLength - segmentLength + index - 1;
+				else
+					areaSize = laneLength - segmentLength + (index == 0 ? -1 : 0);
+			}
+
+			long relative = (pseudoRand * pseudoRand) >>> 32;
+			relative = areaSize - 1 - ((areaSize * relative) >>> 32);
+
+			final long start = pass != 0 && slice != SYNC_POINTS - 1 ? (long) (slice + 1) * segmentLength : 0;
+
+			return (int) ((start + relative) % laneLength);
+		}
+	}
+
+
+	/**
+	 * The Argon2 compression function G, with the result optionally
+	 * XORed into the existing next block.
+	 *
+	 * @param x        The previous block array.
+	 * @param xOffset  The previous block offset.
+	 * @param y        The reference block array.
+	 * @param yOffset  The reference block offset.
+	 * @param z        The next block array.
+	 * @param zOffset  The next block offset.
+	 * @param withXOR  {@code true} to XOR into the next block.
+	 * @param r        Scratch block.
+	 * @param t        Scratch block.
+	 */
+	static void fillBlock(final long[] x, final int xOffset,
+	                      final long[] y, final int yOffset,
+	                      final long[] z, final int zOffset,
+	                      final boolean withXOR,
+	                      final long[] r,
+	                      final long[] t) {
+
+		for (int i = 0; i < BLOCK_WORDS; i++)
+			r[i] = x[xOffset + i] ^ y[yOffset + i];
+
+		if (withXOR) {
+			for (int i = 0; i < BLOCK_WORDS; i++)
+				t[i] = r[i] ^ z[zOffset + i];
+		} else {
+			System.arraycopy(r, 0, t, 0, BLOCK_WORDS);
+		}
+
+		// Rows of 16 words
+		for (int i = 0; i < 8; i++) {
+			final int o = 16 * i;
+			round(r, o, o + 1, o + 2, o + 3, o + 4, o + 5, o + 6, o + 7,
+			      o + 8, o + 9, o + 10, o + 11, o + 12, o + 13, o + 14, o + 15);
+		}
+
+		// Columns of 8 word pairs
+		for (int i = 0; i < 8; i++) {
+			final int o = 2 * i;
+			round(r, o, o + 1, o + 16, o + 17, o + 32, o + 33, o + 48, o + 49,
+			      o + 64, o + 65, o + 80, o + 81, o + 96, o + 97, o + 112, o + 113);
+		}
+
+		for (int i = 0; i < BLOCK_WORDS; i++)
+			z[zOffset + i] = t[i] ^ r[i];
+	}
+
+
+	/**
+	 * The BLAKE2b round without message, with the BlaMka multiplication.
+	 */
+	private static void round(final long[] v,
+	                          final int v0, final int v1, final int v2, final int v3,
+	                          final int v4, final int v5, final int v6, final int v7,
+	                          final int v8, final int v9, final int v10, final int v11,
+	                          final int v12, final int v13, final int v14, final int v15) {
+
+		mix(v, v0, v4, v8, v12);
+		mix(v, v1, v5, v9, v13);
+		mix(v, v2, v6, v10, v14);
+		mix(v, v3, v7, v11, v15);
+		mix(v, v0, v5, v10, v15);
+		mix(v, v1, v6, v11, v12);
+		mix(v, v2, v7, v8, v13);
+		mix(v, v3, v4, v9, v14);
+	}
+
+
+	/**
+	 * The BlaMka mixing function.
+	 */
+	private static void mix(final long[] v, final int a, final int b, final int c, final int d) {
+
+		v[a] = blaMka(v[a], v[b]);
+		v[d] = Long.rotateRight(v[d] ^ v[a], 32);
+		v[c] = blaMka(v[c], v[d]);
+		v[b] = Long.rotateRight(v[b] ^ v[c], 24);
+		v[a] = blaMka(v[a], v[b]);
+		v[d] = Long.rotateRight(v[d] ^ v[a], 16);
+		v[c] = blaMka(v[c], v[d]);
+		v[b] = Long.rotateRight(v[b] ^ v[c], 63);
+	}
+
+
+	/**
+	 * The BlaMka addition, x + y + 2 * lo(x) * lo(y).
+	 */
+	private static long blaMka(final long x, final long y) {
+
+		return x + y + 2 * (x & 0xffffffffL) * (y & 0xffffffffL);
+	}
+
+
+	/**
+	 * Writes a 32-bit little-endian integer.
+	 */
+	private static void putIntLE(final byte[] out, final int offset, final int value) {
+
+		out[offset] = (byte) value;
+		out[offset + 1] = (byte) (value >>> 8);
+		out[offset + 2] = (byte) (value >>> 16);
+		out[offset + 3] = (byte) (value >>> 24);
+	}
+
+
+	/**
+	 * Writes a 64-bit little-endian integer.
+	 */
+	private static void putLongLE(final byte[] out, final int offset, final long value) {
+
+		for (int i = 0; i < 8; i++)
+			out[offset + i] = (byte) (value >>> (8 * i));
+	}
+}
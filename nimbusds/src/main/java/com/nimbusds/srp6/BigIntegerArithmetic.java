@@ -0,0 +1,37 @@
+package com.nimbusds.srp6;
+
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+
+/**
+ * Modular arithmetic backend based on {@code java.math.BigInteger}. This is
+ * the default backend of {@link SRP6Routines}.
+ */
+public class BigIntegerArithmetic implements ModularArithmetic, Serializable {
+
+
+	/**
+	 * Serializable class version number
+	 */
+	private static final long serialVersionUID = 2419357512846215703L;
+
+
+	@Override
+	public BigInteger modPow(final SRP6CryptoParams config,
+	                         final BigInteger base,
+	                         final BigInteger exponent) {
+
+		return base.modPow(exponent, config.N);
+	}
+
+
+	@Override
+	public BigInteger modMultiply(final SRP6CryptoParams config,
+	                              final BigInteger x,
+	                              final BigInteger y) {
+
+		return x.multiply(y).mod(config.N);
+	}
+}
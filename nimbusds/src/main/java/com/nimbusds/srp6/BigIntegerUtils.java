@@ -8,6 +8,10 @@ import java.util.Arrays;
 /**
  * Hexadecimal encoding and decoding utility.
  *
+ * <p>The table-driven {@link #encodeHex hex} and {@link #encodeBase64 Base64}
+ * codecs work on fixed-width padded values, such as those for the wire, and
+ * write into caller-supplied buffers without intermediate allocation.
+ *
  * <p>Obtained from Apache Xerces and Aduna Software code on java2s.com.
  *
  * @author Vladimir Dzhuvinov
@@ -81,6 +85,265 @@ public class BigIntegerUtils {
 		return bytes;
 	}
 
+	/**
+	 * Converts a BigInteger into a byte array left-padded with zeros to
+	 * the specified length, e.g. a digest length for evidence messages.
+	 *
+	 * @param bigInteger BigInteger, must not be null, should not be negative
+	 * @param length     The length to pad to, in bytes.
+	 *
+	 * @return byte array of the specified length, or longer without padding
+	 *         if the value doesn't fit.
+	 */
+	public static byte[] bigIntegerToBytes(final BigInteger bigInteger, final int length) {
+		byte[] bytes = bigIntegerToBytes(bigInteger);
+		if (bytes.length >= length) {
+			return bytes;
+		}
+		byte[] padded = new byte[length];
+		System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+		return padded;
+	}
+
+	/**
+	 * The lower-case hex digits.
+	 */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * The standard Base64 alphabet (RFC 4648, section 4).
+	 */
+	private static final char[] BASE64_ALPHABET =
+		"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	/**
+	 * The URL-safe Base64 alphabet (RFC 4648, section 5).
+	 */
+	private static final char[] BASE64URL_ALPHABET =
+		"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+	/**
+	 * Hex digit values by ASCII character, -1 for invalid characters.
+	 */
+	private static final byte[] HEX_VALUES = decodeTable("0123456789abcdef".toCharArray(), "ABCDEF".toCharArray(), 10);
+
+	/**
+	 * Standard Base64 digit values by ASCII character, -1 for invalid
+	 * characters.
+	 */
+	private static final byte[] BASE64_VALUES = decodeTable(BASE64_ALPHABET, null, 0);
+
+	/**
+	 * URL-safe Base64 digit values by ASCII character, -1 for invalid
+	 * characters.
+	 */
+	private static final byte[] BASE64URL_VALUES = decodeTable(BASE64URL_ALPHABET, null, 0);
+
+	/**
+	 * Creates a decoding table for the specified alphabet.
+	 *
+	 * @param alphabet The alphabet.
+	 * @param extra    Additional characters, {@code null} if none.
+	 * @param offset   The value of the first additional character.
+	 *
+	 * @return The table, indexed by ASCII character.
+	 */
+	private static byte[] decodeTable(final char[] alphabet, final char[] extra, final int offset) {
+		byte[] table = new byte[128];
+		Arrays.fill(table, (byte) -1);
+		for (int i = 0; i < alphabet.length; i++) {
+			table[alphabet[i]] = (byte) i;
+		}
+		if (extra != null) {
+			for (int i = 0; i < extra.length; i++) {
+				table[extra[i]] = (byte) (offset + i);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Encodes bytes, e.g. a padded SRP value, into lower-case hex
+	 * characters written to the specified buffer. Leading zeros are
+	 * preserved.
+	 *
+	 * @param src    The bytes to encode. Must not be {@code null}.
+	 * @param srcOff The offset of the first byte.
+	 * @param len    The number of bytes.
+	 * @param dst    The buffer to write to, with space for {@code 2 * len}
+	 *               characters. Must not be {@code null}.
+	 * @param dstOff The offset of the first character.
+	 *
+	 * @return The number of characters written.
+	 */
+	public static int encodeHex(final byte[] src, final int srcOff, final int len, final char[] dst, final int dstOff) {
+		int j = dstOff;
+		for (int i = srcOff; i < srcOff + len; i++) {
+			dst[j++] = HEX_DIGITS[(src[i] >> 4) & 0x0f];
+			dst[j++] = HEX_DIGITS[src[i] & 0x0f];
+		}
+		return j - dstOff;
+	}
+
+	/**
+	 * Decodes hex characters, in upper or lower case, into bytes written
+	 * to the specified buffer.
+	 *
+	 * @param src    The hex characters. Must not be {@code null}.
+	 * @param srcOff The offset of the first character.
+	 * @param len    The number of characters. Must be even.
+	 * @param dst    The buffer to write to, with space for {@code len / 2}
+	 *               bytes. Must not be {@code null}.
+	 * @param dstOff The offset of the first byte.
+	 *
+	 * @return The number of bytes written.
+	 *
+	 * @throws IllegalArgumentException If the length is odd or a character
+	 *                                  is not a hex digit.
+	 */
+	public static int decodeHex(final CharSequence src, final int srcOff, final int len, final byte[] dst, final int dstOff) {
+		if ((len & 1) != 0) {
+			throw new IllegalArgumentException("The hex length must be even");
+		}
+		int j = dstOff;
+		for (int i = srcOff; i < srcOff + len; i += 2) {
+			dst[j++] = (byte) (digit(HEX_VALUES, src.charAt(i)) << 4 | digit(HEX_VALUES, src.charAt(i + 1)));
+		}
+		return j - dstOff;
+	}
+
+	/**
+	 * Returns the number of Base64 characters for the specified number of
+	 * bytes.
+	 *
+	 * @param numBytes The number of bytes.
+	 * @param url      {@code true} for unpadded Base64url, {@code false}
+	 *                 for padded standard Base64.
+	 *
+	 * @return The number of characters.
+	 */
+	public static int getBase64Length(final int numBytes, final boolean url) {
+		return url ? (numBytes * 4 + 2) / 3 : (numBytes + 2) / 3 * 4;
+	}
+
+	/**
+	 * Encodes bytes, e.g. a padded SRP value, into Base64 characters
+	 * written to the specified buffer. Standard Base64 is padded with
+	 * '=', Base64url is unpadded.
+	 *
+	 * @param src    The bytes to encode. Must not be {@code null}.
+	 * @param srcOff The offset of the first byte.
+	 * @param len    The number of bytes.
+	 * @param dst    The buffer to write to, with space for
+	 *               {@link #getBase64Length} characters. Must not be
+	 *               {@code null}.
+	 * @param dstOff The offset of the first character.
+	 * @param url    {@code true} for the URL-safe alphabet.
+	 *
+	 * @return The number of characters written.
+	 */
+	public static int encodeBase64(final byte[] src, final int srcOff, final int len,
+	                               final char[] dst, final int dstOff, final boolean url) {
+		final char[] alphabet = url ? BASE64URL_ALPHABET : BASE64_ALPHABET;
+		final int end = srcOff + len;
+		int i = srcOff;
+		int j = dstOff;
+		for (; i + 2 < end; i += 3) {
+			int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+			dst[j++] = alphabet[bits >>> 18];
+			dst[j++] = alphabet[(bits >>> 12) & 0x3f];
+			dst[j++] = alphabet[(bits >>> 6) & 0x3f];
+			dst[j++] = alphabet[bits & 0x3f];
+		}
+		final int remaining = end - i;
+		if (remaining > 0) {
+			int bits = (src[i] & 0xff) << 16 | (remaining == 2 ? (src[i + 1] & 0xff) << 8 : 0);
+			dst[j++] = alphabet[bits >>> 18];
+			dst[j++] = alphabet[(bits >>> 12) & 0x3f];
+			if (remaining == 2) {
+				dst[j++] = alphabet[(bits >>> 6) & 0x3f];
+			}
+			if (! url) {
+				dst[j++] = '=';
+				if (remaining == 1) {
+					dst[j++] = '=';
+				}
+			}
+		}
+		return j - dstOff;
+	}
+
+	/**
+	 * Decodes Base64 characters into bytes written to the specified
+	 * buffer. Trailing '=' padding is optional.
+	 *
+	 * @param src    The Base64 characters. Must not be {@code null}.
+	 * @param srcOff The offset of the first character.
+	 * @param len    The number of characters, including any padding.
+	 * @param dst    The buffer to write to, with space for the decoded
+	 *               bytes, at most {@code len * 3 / 4}. Must not be
+	 *               {@code null}.
+	 * @param dstOff The offset of the first byte.
+	 * @param url    {@code true} for the URL-safe alphabet.
+	 *
+	 * @return The number of bytes written.
+	 *
+	 * @throws IllegalArgumentException If a character is not in the
+	 *                                  alphabet or the length is invalid.
+	 */
+	public static int decodeBase64(final CharSequence src, final int srcOff, final int len,
+	                               final byte[] dst, final int dstOff, final boolean url) {
+		final byte[] values = url ? BASE64URL_VALUES : BASE64_VALUES;
+		int end = srcOff + len;
+		if (len % 4 == 0) {
+			for (int pad = 0; pad < 2 && end > srcOff && src.charAt(end - 1) == '='; pad++) {
+				end--;
+			}
+		}
+		if ((end - srcOff) % 4 == 1) {
+			throw new IllegalArgumentException("Invalid Base64 length");
+		}
+		int i = srcOff;
+		int j = dstOff;
+		for (; i + 3 < end; i += 4) {
+			int bits = digit(values, src.charAt(i)) << 18 | digit(values, src.charAt(i + 1)) << 12
+				| digit(values, src.charAt(i + 2)) << 6 | digit(values, src.charAt(i + 3));
+			dst[j++] = (byte) (bits >>> 16);
+			dst[j++] = (byte) (bits >>> 8);
+			dst[j++] = (byte) bits;
+		}
+		final int remaining = end - i;
+		if (remaining > 0) {
+			int bits = digit(values, src.charAt(i)) << 18 | digit(values, src.charAt(i + 1)) << 12;
+			if (remaining == 3) {
+				bits |= digit(values, src.charAt(i + 2)) << 6;
+			}
+			dst[j++] = (byte) (bits >>> 16);
+			if (remaining == 3) {
+				dst[j++] = (byte) (bits >>> 8);
+			}
+		}
+		return j - dstOff;
+	}
+
+	/**
+	 * Returns the value of a digit.
+	 *
+	 * @param values The decoding table.
+	 * @param c      The character.
+	 *
+	 * @return The digit value.
+	 *
+	 * @throws IllegalArgumentException If the character is not a digit.
+	 */
+	private static int digit(final byte[] values, final char c) {
+		final int value = c < 128 ? values[c] : -1;
+		if (value < 0) {
+			throw new IllegalArgumentException("Illegal character: " + c);
+		}
+		return value;
+	}
+
 	/**
 	 * Prevents instantiation.
 	 */
@@ -0,0 +1,281 @@
+package com.nimbusds.srp6;
+
+
+/**
+ * Unkeyed BLAKE2b hash function (RFC 7693), for {@link Argon2idXRoutine}.
+ * BLAKE2b is not provided by the Java runtime.
+ *
+ * <p>Instances are not thread-safe.
+ */
+final class Blake2b {
+
+
+	/**
+	 * The maximum digest length, in bytes.
+	 */
+	static final int MAX_DIGEST_LENGTH = 64;
+
+
+	/**
+	 * The block length, in bytes.
+	 */
+	private static final int BLOCK_LENGTH = 128;
+
+
+	/**
+	 * The initialisation vector.
+	 */
+	private static final long[] IV = {
+		0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+		0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+	};
+
+
+	/**
+	 * The message word permutations for each round.
+	 */
+	private static final byte[][] SIGMA = {
+		{  0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15 },
+		{ 14, 10,  4,  8,  9, 15, 13,  6,  1, 12,  0,  2, 11,  7,  5,  3 },
+		{ 11,  8, 12,  0,  5,  2, 15, 13, 10, 14,  3,  6,  7,  1,  9,  4 },
+		{  7,  9,  3,  1, 13, 12, 11, 14,  2,  6,  5, 10,  4,  0, 15,  8 },
+		{  9,  0,  5,  7,  2,  4, 10, 15, 14,  1, 11, 12,  6,  8,  3, 13 },
+		{  2, 12,  6, 10,  0, 11,  8,  3,  4, 13,  7,  5, 15, 14,  1,  9 },
+		{ 12,  5,  1, 15, 14, 13,  4, 10,  0,  7,  6,  3,  9,  2,  8, 11 },
+		{ 13, 11,  7, 14, 12,  1,  3,  9,  5,  0, 15,  4,  8,  6,  2, 10 },
+		{  6, 15, 14,  9, 11,  3,  0,  8, 12,  2, 13,  7,  1,  4, 10,  5 },
+		{ 10,  2,  8,  4,  7,  6,  1,  5, 15, 11,  9, 14,  3, 12, 13,  0 },
+		{  0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15 },
+		{ 14, 10,  4,  8,  9, 15, 13,  6,  1, 12,  0,  2, 11,  7,  5,  3 }
+	};
+
+
+	/**
+	 * The chained state.
+	 */
+	private final long[] h = new long[8];
+
+
+	/**
+	 * The working vector.
+	 */
+	private final long[] v = new long[16];
+
+
+	/**
+	 * The message words.
+	 */
+	private final long[] m = new long[16];
+
+
+	/**
+	 * The pending input block.
+	 */
+	private final byte[] buffer = new byte[BLOCK_LENGTH];
+
+
+	/**
+	 * The number of bytes in the pending input block.
+	 */
+	private int bufferLength;
+
+
+	/**
+	 * The number of bytes compressed so far.
+	 */
+	private long counter;
+
+
+	/**
+	 * The digest length, in bytes.
+	 */
+	private int digestLength;
+
+
+	/**
+	 * Creates a new BLAKE2b hash function.
+	 *
+	 * @param digestLength The digest length, from 1 to 64 bytes.
+	 */
+	Blake2b(final int digestLength) {
+
+		reset(digestLength);
+	}
+
+
+	/**
+	 * Resets the hash function for a new digest of the specified length.
+	 *
+	 * @param digestLength The digest length, from 1 to 64 bytes.
+	 */
+	void reset(final int digestLength) {
+
+		if (digestLength < 1 || digestLength > MAX_DIGEST_LENGTH)
+			throw new IllegalArgumentException("The BLAKE2b digest length must be between 1 and 64 bytes");
+
+		this.digestLength = digestLength;
+
+		System.arraycopy(IV, 0, h, 0, 8);
+		h[0] ^= 0x01010000L ^ digestLength;
+
+		bufferLength = 0;
+		counter = 0;
+	}
+
+
+	/**
+	 * Updates the hash with the specified bytes.
+	 *
+	 * @param in     The input.
+	 * @param offset The input offset.
+	 * @param length The input length.
+	 */
+	void update(final byte[] in, int offset, int length) {
+
+		while (length > 0) {
+
+			// Keep the last block for the final compression
+			if (bufferLength == BLOCK_LENGTH) {
+				counter += BLOCK_LENGTH;
+				compress(buffer, 0, false);
+				bufferLength = 0;
+			}
+
+			final int n = Math.min(length, BLOCK_LENGTH - bufferLength);
+			System.arraycopy(in, offset, buffer, bufferLength, n);
+			bufferLength += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+
+	/**
+	 * Updates the hash with the specified bytes.
+	 *
+	 * @param in The input.
+	 */
+	void update(final byte[] in) {
+
+		update(in, 0, in.length);
+	}
+
+
+	/**
+	 * Updates the hash with a 32-bit little-endian integer.
+	 *
+	 * @param value The integer.
+	 */
+	void updateInt(final int value) {
+
+		update(new byte[] { (byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24) }, 0, 4);
+	}
+
+
+	/**
+	 * Completes the hash. The hash function must be {@link #reset} before
+	 * reuse.
+	 *
+	 * @param out    The output buffer.
+	 * @param offset The output offset.
+	 */
+	void digest(final byte[] out, final int offset) {
+
+		counter += bufferLength;
+
+		for (int i = bufferLength; i < BLOCK_LENGTH; i++)
+			buffer[i] = 0;
+
+		compress(buffer, 0, true);
+
+		for (int i = 0; i < digestLength; i++)
+			out[offset + i] = (byte) (h[i >>> 3] >>> (8 * (i & 7)));
+	}
+
+
+	/**
+	 * Completes the hash.
+	 *
+	 * @return The digest.
+	 */
+	byte[] digest() {
+
+		byte[] out = new byte[digestLength];
+		digest(out, 0);
+		return out;
+	}
+
+
+	/**
+	 * Compresses a block.
+	 *
+	 * @param block  The block.
+	 * @param offset The block offset.
+	 * @param last   {@code true} for the final block.
+	 */
+	private void compress(final byte[] block, final int offset, final boolean last) {
+
+		for (int i = 0; i < 16; i++)
+			m[i] = getLongLE(block, offset + 8 * i);
+
+		System.arraycopy(h, 0, v, 0, 8);
+		System.arraycopy(IV, 0, v, 8, 8);
+
+		v[12] ^= counter;
+
+		if (last)
+			v[14] = ~v[14];
+
+		for (int r = 0; r < 12; r++) {
+
+			final byte[] s = SIGMA[r];
+
+			mix(0, 4,  8, 12, m[s[ 0]], m[s[ 1]]);
+			mix(1, 5,  9, 13, m[s[ 2]], m[s[ 3]]);
+			mix(2, 6, 10, 14, m[s[ 4]], m[s[ 5]]);
+			mix(3, 7, 11, 15, m[s[ 6]], m[s[ 7]]);
+			mix(0, 5, 10, 15, m[s[ 8]], m[s[ 9]]);
+			mix(1, 6, 11, 12, m[s[10]], m[s[11]]);
+			mix(2, 7,  8, 13, m[s[12]], m[s[13]]);
+			mix(3, 4,  9, 14, m[s[14]], m[s[15]]);
+		}
+
+		for (int i = 0; i < 8; i++)
+			h[i] ^= v[i] ^ v[i + 8];
+	}
+
+
+	/**
+	 * Reads a 64-bit little-endian integer.
+	 *
+	 * @param in     The input.
+	 * @param offset The input offset.
+	 *
+	 * @return The integer.
+	 */
+	static long getLongLE(final byte[] in, final int offset) {
+
+		long value = 0;
+
+		for (int i = 7; i >= 0; i--)
+			value = (value << 8) | (in[offset + i] & 0xff);
+
+		return value;
+	}
+
+
+	/**
+	 * The BLAKE2b mixing function G.
+	 */
+	private void mix(final int a, final int b, final int c, final int d, final long x, final long y) {
+
+		v[a] += v[b] + x;
+		v[d] = Long.rotateRight(v[d] ^ v[a], 32);
+		v[c] += v[d];
+		v[b] = Long.rotateRight(v[b] ^ v[c], 24);
+		v[a] += v[b] + y;
+		v[d] = Long.rotateRight(v[d] ^ v[a], 16);
+		v[c] += v[d];
+		v[b] = Long.rotateRight(v[b] ^ v[c], 63);
+	}
+}
@@ -0,0 +1,750 @@
+package com.nimbusds.srp6;
+
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/**
+ * Bounded in-memory cache in front of a {@link VerifierStore}, which also
+ * caches the absence of users.
+ *
+ * <p>For a user identity with no stored record the cache derives a
+ * deterministic mock salt 's' and verifier 'v' from a secret key, and
+ * {@link #step1} proceeds with {@link SRP6ServerSession#mockStep1 mock step
+ * one}. The mock values stay the same for a user identity across requests,
+ * restarts and servers sharing the key, so that probing clients can't tell
+ * unknown users from real ones, and credential stuffing with unknown user
+ * identities is served from memory instead of the backing store. Mock
+ * entries expire after a {@link #setMockTimeToLive time to live}, so that
+ * users registered in the backing store by other servers are seen. Where the
+ * real salts carry key derivation parameters, as those of a
+ * {@link KeyDerivationXRoutine}, the mock salts are encoded by the same
+ * routine, so that they have the same format and parameters.
+ *
+ * <p>The cache is split into shards by user identity, each a segmented LRU:
+ * new entries enter a probationary segment and are promoted to a protected
+ * segment, of 80% of the shard, on their second hit. A flood of one-off user
+ * identities thus only churns the probationary segment, while the records of
+ * returning users stay cached.
+ *
+ * <p>{@link #put Puts} and {@link #remove removals} write through to the
+ * backing store and update the cache, serialised per shard so that the
+ * cache follows the order of the writes. Changes made to the backing store
+ * directly are seen after the entry is evicted or {@link #invalidate
+ * invalidated}.
+ *
+ * <p>This class is thread-safe.
+ */
+public class CachingVerifierStore implements VerifierStore {
+
+
+	/**
+	 * The minimum byte length of the mock key.
+	 */
+	public static final int MIN_KEY_LENGTH = 16;
+
+
+	/**
+	 * The default time to live of mock entries, in seconds.
+	 */
+	public static final int DEFAULT_MOCK_TTL = 60;
+
+
+	/**
+	 * The number of shards.
+	 */
+	private static final int SHARDS = 16;
+
+
+	/**
+	 * The UTF-8 character set.
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * A cached record, real or mock.
+	 */
+	private static final class Entry {
+
+
+		/**
+		 * The record.
+		 */
+		final VerifierRecord record;
+
+
+		/**
+		 * {@code true} for a mock record of an unknown user.
+		 */
+		final boolean mock;
+
+
+		/**
+		 * The creation time, from System.currentTimeMillis().
+		 */
+		final long created;
+
+
+		Entry(final VerifierRecord record, final boolean mock) {
+
+			this.record = record;
+			this.mock = mock;
+			created = System.currentTimeMillis();
+		}
+	}
+
+
+	/**
+	 * A segmented LRU shard.
+	 */
+	private static final class Shard {
+
+
+		/**
+		 * The probationary entries, in insertion order.
+		 */
+		final LinkedHashMap<String,Entry> probation = new LinkedHashMap<>();
+
+
+		/**
+		 * The protected entries, in access order.
+		 */
+		final LinkedHashMap<String,Entry> protect = new LinkedHashMap<>(16, 0.75f, true);
+
+
+		/**
+		 * The maximum number of entries.
+		 */
+		final int maxEntries;
+
+
+		/**
+		 * The maximum number of protected entries.
+		 */
+		final int maxProtected;
+
+
+		/**
+		 * Incremented on each put and removal, so that a record loaded
+		 * from the backing store concurrently with either isn't cached.
+		 */
+		long generation = 0;
+
+
+		/**
+		 * Held across a write to the backing store and the update of
+		 * the shard, so that concurrent puts and removals of a user
+		 * identity leave the cache in the order of the store. Separate
+		 * from the shard monitor so that lookups don't wait for the
+		 * store.
+		 */
+		final Object writeLock = new Object();
+
+
+		Shard(final int maxEntries) {
+
+			this.maxEntries = maxEntries;
+			maxProtected = maxEntries * 4 / 5;
+		}
+
+
+		/**
+		 * Gets an entry, promoting it on a probationary hit.
+		 *
+		 * @param userID The user identity.
+		 *
+		 * @return The entry, {@code null} if not cached.
+		 */
+		synchronized Entry get(final String userID) {
+
+			Entry entry = protect.get(userID);
+
+			if (entry != null)
+				return entry;
+
+			entry = probation.remove(userID);
+
+			if (entry == null)
+				return null;
+
+			protect.put(userID, entry);
+
+			// Demote the least recently used protected entry
+			if (protect.size() > maxProtected) {
+				Iterator<Map.Entry<String,Entry>> it = protect.entrySet().iterator();
+				Map.Entry<String,Entry> eldest = it.next();
+				it.remove();
+				probation.put(eldest.getKey(), eldest.getValue());
+			}
+
+			return entry;
+		}
+
+
+		/**
+		 * Returns the current generation, to be passed to
+		 * {@link #load}.
+		 *
+		 * @return The generation.
+		 */
+		synchronized long generation() {
+
+			return generation;
+		}
+
+
+		/**
+		 * Puts an entry loaded from the backing store, unless an entry
+		 * is already cached or the shard was written to since the
+		 * specified generation.
+		 *
+		 * @param userID     The user identity.
+		 * @param entry      The entry.
+		 * @param generation The generation before the load.
+		 */
+		synchronized void load(final String userID, final Entry entry, final long generation) {
+
+			if (generation != this.generation || protect.containsKey(userID) || probation.containsKey(userID))
+				return;
+
+			insert(userID, entry);
+		}
+
+
+		/**
+		 * Puts an entry, replacing any cached one.
+		 *
+		 * @param userID The user identity.
+		 * @param entry  The entry.
+		 */
+		synchronized void put(final String userID, final Entry entry) {
+
+			generation++;
+
+			if (protect.containsKey(userID)) {
+				protect.put(userID, entry);
+				return;
+			}
+
+			insert(userID, entry);
+		}
+
+
+		/**
+		 * Inserts an entry into the probationary segment, evicting the
+		 * oldest probationary entries if the shard is full.
+		 *
+		 * @param userID The user identity.
+		 * @param entry  The entry.
+		 */
+		private void insert(final String userID, final Entry entry) {
+
+			probation.put(userID, entry);
+
+			// Evict the oldest probationary entries
+			Iterator<String> it = probation.keySet().iterator();
+
+			while (probation.size() + protect.size() > maxEntries && it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+		}
+
+
+		/**
+		 * Removes an expired entry, unless it was replaced meanwhile.
+		 *
+		 * @param userID The user identity.
+		 * @param entry  The expired entry.
+		 */
+		synchronized void expire(final String userID, final Entry entry) {
+
+			if (protect.get(userID) == entry)
+				protect.remove(userID);
+			else if (probation.get(userID) == entry)
+				probation.remove(userID);
+		}
+
+
+		/**
+		 * Removes an entry.
+		 *
+		 * @param userID The user identity.
+		 */
+		synchronized void remove(final String userID) {
+
+			generation++;
+			protect.remove(userID);
+			probation.remove(userID);
+		}
+
+
+		/**
+		 * Returns the number of entries.
+		 *
+		 * @return The number of entries.
+		 */
+		synchronized int size() {
+
+			return probation.size() + protect.size();
+		}
+	}
+
+
+	/**
+	 * The backing store.
+	 */
+	private final VerifierStore store;
+
+
+	/**
+	 * The SRP-6a crypto parameters for the mock verifiers.
+	 */
+	private final SRP6CryptoParams config;
+
+
+	/**
+	 * The byte length of the mock salts.
+	 */
+	private final int mockSaltLength;
+
+
+	/**
+	 * The routine encoding the mock salts, {@code null} for plain random
+	 * salts.
+	 */
+	private final KeyDerivationXRoutine mockSaltEncoder;
+
+
+	/**
+	 * The parameters ID of the mock records.
+	 */
+	private final int mockParamsID;
+
+
+	/**
+	 * The key for deriving the mock records.
+	 */
+	private final SecretKeySpec mockKey;
+
+
+	/**
+	 * The time to live of mock entries, in seconds.
+	 */
+	private volatile int mockTTL = DEFAULT_MOCK_TTL;
+
+
+	/**
+	 * The shards.
+	 */
+	private final Shard[] shards = new Shard[SHARDS];
+
+
+	/**
+	 * The number of lookups served from the cache.
+	 */
+	private final AtomicLong hitCount = new AtomicLong();
+
+
+	/**
+	 * The number of lookups passed to the backing store.
+	 */
+	private final AtomicLong missCount = new AtomicLong();
+
+
+	/**
+	 * HMAC-SHA256 instances for deriving the mock records, per thread.
+	 */
+	private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+
+		@Override
+		protected Mac initialValue() {
+
+			try {
+				Mac mac = Mac.getInstance("HmacSHA256");
+				mac.init(mockKey);
+				return mac;
+
+			} catch (GeneralSecurityException e) {
+
+				throw new IllegalStateException("HmacSHA256 not supported: " + e.getMessage(), e);
+			}
+		}
+	};
+
+
+	/**
+	 * Creates a new caching verifier store with plain random mock salts.
+	 *
+	 * @param store          The backing store. Must not be {@code null}.
+	 * @param maxEntries     The maximum number of cached entries, real and
+	 *                       mock. Must be at least 16.
+	 * @param config         The SRP-6a crypto parameters of the mock
+	 *                       verifiers. Must not be {@code null}.
+	 * @param mockSaltLength The byte length of the mock salts, the same as
+	 *                       of the real salts. Must be positive.
+	 * @param mockParamsID   The parameters ID of the mock records.
+	 * @param mockKey        The secret key for deriving the mock records,
+	 *                       the same on all servers. Must be at least
+	 *                       {@link #MIN_KEY_LENGTH} bytes long.
+	 */
+	public CachingVerifierStore(final VerifierStore store,
+	                            final int maxEntries,
+	                            final SRP6CryptoParams config,
+	                            final int mockSaltLength,
+	                            final int mockParamsID,
+	                            final byte[] mockKey) {
+
+		this(store, maxEntries, config, mockSaltLength, null, mockParamsID, mockKey);
+	}
+
+
+	/**
+	 * Creates a new caching verifier store.
+	 *
+	 * @param store           The backing store. Must not be
+	 *                        {@code null}.
+	 * @param maxEntries      The maximum number of cached entries, real
+	 *                        and mock. Must be at least 16.
+	 * @param config          The SRP-6a crypto parameters of the mock
+	 *                        verifiers. Must not be {@code null}.
+	 * @param mockSaltLength  The number of random bytes of the mock
+	 *                        salts, the same as of the real salts. Must be
+	 *                        positive.
+	 * @param mockSaltEncoder The routine whose
+	 *                        {@link KeyDerivationXRoutine#encodeSalt salt
+	 *                        encoding} the mock salts get, the same as
+	 *                        for new real salts, {@code null} for plain
+	 *                        random salts.
+	 * @param mockParamsID    The parameters ID of the mock records.
+	 * @param mockKey         The secret key for deriving the mock
+	 *                        records, the same on all servers. Must be at
+	 *                        least {@link #MIN_KEY_LENGTH} bytes long.
+	 */
+	public CachingVerifierStore(final VerifierStore store,
+	                            final int maxEntries,
+	                            final SRP6CryptoParams config,
+	                            final int mockSaltLength,
+	                            final KeyDerivationXRoutine mockSaltEncoder,
+	                            final int mockParamsID,
+	                            final byte[] mockKey) {
+
+		if (store == null)
+			throw new IllegalArgumentException("The backing verifier store must not be null");
+
+		this.store = store;
+
+		if (maxEntries < SHARDS)
+			throw new IllegalArgumentException("The maximum number of entries must be at least " + SHARDS);
+
+		for (int i = 0; i < SHARDS; i++)
+			shards[i] = new Shard(maxEntries / SHARDS + (i < maxEntries % SHARDS ? 1 : 0));
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		this.config = config;
+
+		if (mockSaltLength < 1)
+			throw new IllegalArgumentException("The mock salt length must be positive");
+
+		this.mockSaltLength = mockSaltLength;
+
+		this.mockSaltEncoder = mockSaltEncoder;
+
+		this.mockParamsID = mockParamsID;
+
+		if (mockKey == null || mockKey.length < MIN_KEY_LENGTH)
+			throw new IllegalArgumentException("The mock key must be at least " + MIN_KEY_LENGTH + " bytes long");
+
+		this.mockKey = new SecretKeySpec(mockKey, "HmacSHA256");
+	}
+
+
+	/**
+	 * Returns the shard of a user identity.
+	 *
+	 * @param userID The user identity.
+	 *
+	 * @return The shard.
+	 */
+	private Shard shard(final String userID) {
+
+		int h = userID.hashCode();
+		h ^= h >>> 16;
+		return shards[h & (SHARDS - 1)];
+	}
+
+
+	/**
+	 * Looks up the entry of a user identity, loading it from the backing
+	 * store or deriving a mock one if not cached.
+	 *
+	 * @param userID The user identity.
+	 *
+	 * @return The entry.
+	 */
+	private Entry lookup(final String userID)
+		throws IOException {
+
+		if (userID == null)
+			throw new IllegalArgumentException("The user identity 'I' must not be null");
+
+		final Shard shard = shard(userID);
+
+		Entry entry = shard.get(userID);
+
+		if (entry != null && entry.mock &&
+		    System.currentTimeMillis() - entry.created >= mockTTL * 1000L) {
+
+			// Recheck the backing store for a user registered elsewhere
+			shard.expire(userID, entry);
+			entry = null;
+		}
+
+		if (entry != null) {
+			hitCount.incrementAndGet();
+			return entry;
+		}
+
+		missCount.incrementAndGet();
+
+		final long generation = shard.generation();
+
+		VerifierRecord record = store.get(userID);
+
+		entry = record != null ? new Entry(record, false) : new Entry(mockRecord(userID), true);
+
+		// Not cached if a put or removal raced with the load
+		shard.load(userID, entry, generation);
+
+		return entry;
+	}
+
+
+	/**
+	 * Derives the mock record of a user identity. The salt and the
+	 * verifier are HMAC-SHA256 outputs, the salt encoded by the mock salt
+	 * encoder if set and the verifier reduced to the range [1, N).
+	 *
+	 * @param userID The user identity.
+	 *
+	 * @return The mock record.
+	 */
+	VerifierRecord mockRecord(final String userID) {
+
+		byte[] salt = derive("salt", userID, mockSaltLength);
+
+		if (mockSaltEncoder != null)
+			salt = mockSaltEncoder.encodeSalt(salt);
+
+		final int padLength = config.getPadLength();
+
+		// Extra 16 bytes to make the reduction bias negligible
+		BigInteger v = BigIntegerUtils.bigIntegerFromBytes(derive("verifier", userID, padLength + 16));
+		v = v.mod(config.N.subtract(BigInteger.ONE)).add(BigInteger.ONE);
+
+		return new VerifierRecord(salt, BigIntegerUtils.bigIntegerToBytes(v, padLength), mockParamsID);
+	}
+
+
+	/**
+	 * Derives bytes with HMAC-SHA256 in counter mode.
+	 *
+	 * @param label  The label.
+	 * @param userID The user identity.
+	 * @param length The number of bytes.
+	 *
+	 * @return The derived bytes.
+	 */
+	private byte[] derive(final String label, final String userID, final int length) {
+
+		final Mac mac = macs.get();
+
+		final byte[] userIDBytes = userID.getBytes(UTF_8);
+
+		byte[] out = new byte[length];
+
+		for (int i = 0, pos = 0; pos < length; i++) {
+
+			mac.update(label.getBytes(UTF_8));
+			mac.update((byte) 0);
+			mac.update(new byte[]{(byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i});
+			mac.update(userIDBytes);
+
+			byte[] block = mac.doFinal();
+			final int n = Math.min(block.length, length - pos);
+			System.arraycopy(block, 0, out, pos, n);
+			pos += n;
+		}
+
+		return out;
+	}
+
+
+	/**
+	 * Increments a server session to step one for the specified user
+	 * identity, with its cached record, or with a mock record and
+	 * {@link SRP6ServerSession#mockStep1 mock step one} if the user has
+	 * none.
+	 *
+	 * @param session The server session, in its initial state. Must not
+	 *                be {@code null}.
+	 * @param userID  The user identity 'I'. Must not be {@code null} or
+	 *                empty.
+	 *
+	 * @return The record used, real or mock. Respond with its salt 's'
+	 *         and the {@link SRP6Session#getPublicServerValueBytes server
+	 *         public value 'B'}.
+	 *
+	 * @throws IOException If the backing store couldn't be read.
+	 */
+	public VerifierRecord step1(final SRP6ServerSession session, final String userID)
+		throws IOException {
+
+		final Entry entry = lookup(userID);
+
+		if (entry.mock)
+			session.mockStep1(userID, entry.record.salt, entry.record.verifier);
+		else
+			session.step1(userID, entry.record.salt, entry.record.verifier);
+
+		return entry.record;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>Served from the cache, including the absence of a record.
+	 */
+	@Override
+	public VerifierRecord get(final String userID)
+		throws IOException {
+
+		final Entry entry = lookup(userID);
+
+		return entry.mock ? null : entry.record;
+	}
+
+
+	@Override
+	public void put(final String userID, final VerifierRecord record)
+		throws IOException {
+
+		final Shard shard = shard(userID);
+
+		synchronized (shard.writeLock) {
+
+			store.put(userID, record);
+
+			shard.put(userID, new Entry(record, false));
+		}
+	}
+
+
+	@Override
+	public boolean remove(final String userID)
+		throws IOException {
+
+		final Shard shard = shard(userID);
+
+		synchronized (shard.writeLock) {
+
+			final boolean removed = store.remove(userID);
+
+			shard.remove(userID);
+
+			return removed;
+		}
+	}
+
+
+	/**
+	 * Sets the time to live of mock entries. A user identity registered
+	 * in the backing store by another server is seen after this time at
+	 * most.
+	 *
+	 * @param seconds The time to live in seconds, zero to not cache the
+	 *                absence of users.
+	 */
+	public void setMockTimeToLive(final int seconds) {
+
+		if (seconds < 0)
+			throw new IllegalArgumentException("The mock time to live must not be negative");
+
+		mockTTL = seconds;
+	}
+
+
+	/**
+	 * Gets the time to live of mock entries.
+	 *
+	 * @return The time to live in seconds.
+	 */
+	public int getMockTimeToLive() {
+
+		return mockTTL;
+	}
+
+
+	/**
+	 * Removes the cached entry of a user identity, e.g. after the backing
+	 * store was changed directly.
+	 *
+	 * @param userID The user identity 'I'. Must not be {@code null}.
+	 */
+	public void invalidate(final String userID) {
+
+		shard(userID).remove(userID);
+	}
+
+
+	/**
+	 * Gets the number of cached entries, real and mock.
+	 *
+	 * @return The number of entries.
+	 */
+	public int size() {
+
+		int size = 0;
+
+		for (Shard shard: shards)
+			size += shard.size();
+
+		return size;
+	}
+
+
+	/**
+	 * Gets the number of lookups served from the cache.
+	 *
+	 * @return The hit count.
+	 */
+	public long getHitCount() {
+
+		return hitCount.get();
+	}
+
+
+	/**
+	 * Gets the number of lookups passed to the backing store.
+	 *
+	 * @return The miss count.
+	 */
+	public long getMissCount() {
+
+		return missCount.get();
+	}
+}
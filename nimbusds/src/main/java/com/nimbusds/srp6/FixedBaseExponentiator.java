@@ -0,0 +1,308 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+
+
+/**
+ * Fixed-base modular exponentiation g^e (mod N) with a precomputed table
+ * over powers of the generator 'g'.
+ *
+ * <p>Implements the Lim-Lee comb method: the exponent is split into 'h' rows
+ * of 'a' bits, each row into 'v' blocks of 'b' bits, and a table of
+ * v * (2^h - 1) products of powers of 'g' is computed once. An
+ * exponentiation then costs about 'b' squarings and 'a' multiplications in
+ * the Montgomery domain, instead of one squaring per exponent bit with
+ * {@code BigInteger.modPow}. The defaults (h = 8, v = 2) reduce a 2048-bit
+ * exponentiation to 127 squarings and at most 256 multiplications, at the
+ * cost of a 130 KiB table.
+ *
+ * <p>Exponents that are negative, longer than the table or shorter than half
+ * its length (such as the hash-sized password key 'x' with a table sized for
+ * 'N') are handed to {@code BigInteger.modPow}, which is faster for them.
+ * The same applies to even moduli, for which Montgomery arithmetic is
+ * undefined.
+ *
+ * <p>Instances are immutable and thread-safe, and are intended to be shared
+ * through {@link SRP6CryptoParams#getFixedBaseExponentiator}.
+ */
+public final class FixedBaseExponentiator {
+
+
+	/**
+	 * The default number of comb rows 'h'.
+	 */
+	public static final int DEFAULT_ROWS = 8;
+
+
+	/**
+	 * The default number of comb blocks per row 'v'.
+	 */
+	public static final int DEFAULT_BLOCKS = 2;
+
+
+	/**
+	 * The prime parameter 'N'.
+	 */
+	private final BigInteger N;
+
+
+	/**
+	 * The generator parameter 'g'.
+	 */
+	private final BigInteger g;
+
+
+	/**
+	 * The Montgomery modulus, {@code null} if 'N' is even.
+	 */
+	private final MontgomeryModulus modulus;
+
+
+	/**
+	 * The maximum exponent bit length covered by the table.
+	 */
+	private final int maxBits;
+
+
+	/**
+	 * The number of comb rows 'h'.
+	 */
+	private final int h;
+
+
+	/**
+	 * The number of blocks per row 'v'.
+	 */
+	private final int v;
+
+
+	/**
+	 * The number of bits per row 'a'.
+	 */
+	private final int a;
+
+
+	/**
+	 * The number of bits per block 'b'.
+	 */
+	private final int b;
+
+
+	/**
+	 * The precomputed table in the Montgomery domain, indexed by block
+	 * and then by the h-bit comb column value.
+	 */
+	private final int[][][] table;
+
+
+	/**
+	 * Creates a new fixed-base exponentiator with the default comb
+	 * dimensions.
+	 *
+	 * @param N The prime parameter 'N'. Must not be {@code null}.
+	 * @param g The generator parameter 'g'. Must not be {@code null}.
+	 */
+	public FixedBaseExponentiator(final BigInteger N, final BigInteger g) {
+
+		this(N, g, DEFAULT_ROWS, DEFAULT_BLOCKS);
+	}
+
+
+	/**
+	 * Creates a new fixed-base exponentiator for exponents up to the bit
+	 * length of 'N'. The table is computed eagerly.
+	 *
+	 * @param N    The prime parameter 'N'. Must not be {@code null}.
+	 * @param g    The generator parameter 'g'. Must not be {@code null}.
+	 * @param rows The number of comb rows 'h', between 1 and 12. The
+	 *             table size doubles with each row.
+	 * @param blocks The number of blocks per row 'v', one or more. The
+	 *             table size grows linearly with the blocks.
+	 */
+	public FixedBaseExponentiator(final BigInteger N,
+	                              final BigInteger g,
+	                              final int rows,
+	                              final int blocks) {
+
+		this(N, g, N != null ? N.bitLength() : 1, rows, blocks);
+	}
+
+
+	/**
+	 * Creates a new fixed-base exponentiator for exponents up to the
+	 * specified bit length. A table sized for short exponents, such as
+	 * the hash-sized password key 'x', is smaller and faster than one
+	 * covering the full length of 'N'. The table is computed eagerly.
+	 *
+	 * @param N       The prime parameter 'N'. Must not be {@code null}.
+	 * @param g       The generator parameter 'g'. Must not be
+	 *                {@code null}.
+	 * @param maxBits The maximum exponent bit length covered by the
+	 *                table, one or more. Longer exponents are handed to
+	 *                {@code BigInteger.modPow}.
+	 * @param rows    The number of comb rows 'h', between 1 and 12. The
+	 *                table size doubles with each row.
+	 * @param blocks  The number of blocks per row 'v', one or more. The
+	 *                table size grows linearly with the blocks.
+	 */
+	public FixedBaseExponentiator(final BigInteger N,
+	                              final BigInteger g,
+	                              final int maxBits,
+	                              final int rows,
+	                              final int blocks) {
+
+		if (N == null)
+			throw new IllegalArgumentException("The prime parameter 'N' must not be null");
+
+		if (g == null)
+			throw new IllegalArgumentException("The generator parameter 'g' must not be null");
+
+		if (rows < 1 || rows > 12)
+			throw new IllegalArgumentException("The number of comb rows must be between 1 and 12");
+
+		if (blocks < 1)
+			throw new IllegalArgumentException("The number of comb blocks must be one or more");
+
+		if (maxBits < 1)
+			throw new IllegalArgumentException("The maximum exponent bit length must be one or more");
+
+		this.N = N;
+		this.g = g;
+
+		this.maxBits = maxBits;
+		h = rows;
+		a = (maxBits + h - 1) / h;
+		v = Math.min(blocks, a);
+		b = (a + v - 1) / v;
+
+		if (! MontgomeryModulus.isSupported(N)) {
+			modulus = null;
+			table = null;
+			return;
+		}
+
+		modulus = new MontgomeryModulus(N);
+		table = buildTable();
+	}
+
+
+	/**
+	 * Computes the comb table G[j][u] = prod(g^(2^(i*a + j*b))) over the
+	 * set bits 'i' of 'u'.
+	 *
+	 * @return The table in the Montgomery domain.
+	 */
+	private int[][][] buildTable() {
+
+		final long[] scratch = modulus.newScratch();
+
+		// g^(2^(i*a + j*b)) for every row 'i' and block 'j', obtained
+		// from a single chain of squarings
+		int[][][] powers = new int[v][h][];
+
+		int[] cur = modulus.toMontgomery(g.mod(N));
+
+		for (int bit = 0; bit < h * a; bit++) {
+
+			final int i = bit / a;
+			final int offset = bit % a;
+
+			if (offset % b == 0)
+				powers[offset / b][i] = cur.clone();
+
+			modulus.multiply(cur, cur, cur, scratch);
+		}
+
+		int[][][] t = new int[v][1 << h][];
+
+		for (int j = 0; j < v; j++) {
+
+			t[j][0] = modulus.one();
+
+			for (int u = 1; u < (1 << h); u++) {
+
+				final int top = 31 - Integer.numberOfLeadingZeros(u);
+				final int rest = u ^ (1 << top);
+
+				if (rest == 0) {
+					t[j][u] = powers[j][top];
+				} else {
+					t[j][u] = new int[modulus.limbs];
+					modulus.multiply(t[j][rest], powers[j][top], t[j][u], scratch);
+				}
+			}
+		}
+
+		return t;
+	}
+
+
+	/**
+	 * Gets the prime parameter 'N'.
+	 *
+	 * @return The prime parameter 'N'.
+	 */
+	public BigInteger getN() {
+
+		return N;
+	}
+
+
+	/**
+	 * Gets the generator parameter 'g'.
+	 *
+	 * @return The generator parameter 'g'.
+	 */
+	public BigInteger getG() {
+
+		return g;
+	}
+
+
+	/**
+	 * Computes g^e (mod N).
+	 *
+	 * @param e The exponent. Must not be {@code null}.
+	 *
+	 * @return The resulting power of 'g'.
+	 */
+	public BigInteger modPow(final BigInteger e) {
+
+		if (table == null || e.signum() < 0 || e.bitLength() > maxBits || e.bitLength() <= maxBits / 2)
+			return g.modPow(e, N);
+
+		final long[] scratch = modulus.newScratch();
+
+		int[] r = modulus.one();
+
+		for (int k = b - 1; k >= 0; k--) {
+
+			if (k != b - 1)
+				modulus.multiply(r, r, r, scratch);
+
+			for (int j = v - 1; j >= 0; j--) {
+
+				final int column = j * b + k;
+
+				if (column >= a)
+					continue;
+
+				int index = 0;
+
+				for (int i = h - 1; i >= 0; i--) {
+
+					index <<= 1;
+
+					if (e.testBit(i * a + column))
+						index |= 1;
+				}
+
+				if (index != 0)
+					modulus.multiply(r, table[j][index], r, scratch);
+			}
+		}
+
+		return modulus.fromMontgomery(r, scratch);
+	}
+}
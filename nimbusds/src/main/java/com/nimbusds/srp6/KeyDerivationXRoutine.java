@@ -0,0 +1,233 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Base class for password key 'x' routines that use a deliberately slow key
+ * derivation function, to make offline guessing of passwords from stolen
+ * verifiers expensive.
+ *
+ * <p>The cost parameters of the function are carried in the salt 's', which
+ * consists of an algorithm identifier byte, the encoded parameters and the
+ * random salt bytes. Salts must therefore be created with
+ * {@link #generateSalt} or {@link #encodeSalt}. Clients read the parameters
+ * from the salt received from the server, and the parameters of new
+ * verifiers can be raised over time without affecting existing ones. The
+ * parameters read from a salt are checked against fixed upper limits, so
+ * that a rogue server cannot make a client allocate unbounded memory.
+ *
+ * <p>The password key is x = KDF(P, s) with the length of the hash 'H'.
+ * The user identity 'I' is not used.
+ *
+ * <p>Functions with independent lanes compute them in parallel on a
+ * fork-join pool.
+ *
+ * <p>Instances are immutable and thread-safe.
+ */
+public abstract class KeyDerivationXRoutine implements XRoutine {
+
+
+	/**
+	 * The default fork-join pool, created on first use.
+	 */
+	private static final class DefaultPool {
+
+
+		static final ForkJoinPool INSTANCE = new ForkJoinPool();
+	}
+
+
+	/**
+	 * The algorithm identifier byte, never zero so that the salt survives
+	 * conversion to a big integer.
+	 */
+	private final byte algorithm;
+
+
+	/**
+	 * The source of randomness for salts.
+	 */
+	private final RandomSource randomSource;
+
+
+	/**
+	 * The fork-join pool for parallel lanes, {@code null} for the default
+	 * pool.
+	 */
+	private final ForkJoinPool pool;
+
+
+	/**
+	 * Creates a new key derivation 'x' routine.
+	 *
+	 * @param algorithm    The algorithm identifier byte, non-zero.
+	 * @param randomSource The source of randomness for salts. Must not be
+	 *                     {@code null}.
+	 * @param pool         The fork-join pool for parallel lanes,
+	 *                     {@code null} for a shared default pool with one
+	 *                     worker per available processor.
+	 */
+	protected KeyDerivationXRoutine(final byte algorithm,
+	                                final RandomSource randomSource,
+	                                final ForkJoinPool pool) {
+
+		if (algorithm == 0)
+			throw new IllegalArgumentException("The algorithm identifier must not be zero");
+
+		this.algorithm = algorithm;
+
+		if (randomSource == null)
+			throw new IllegalArgumentException("The random source must not be null");
+
+		this.randomSource = randomSource;
+
+		this.pool = pool;
+	}
+
+
+	/**
+	 * Generates a random salt 's' carrying the parameters of this routine.
+	 *
+	 * @param numBytes The number of random bytes, one or more. The salt is
+	 *                 longer by the encoded parameters.
+	 *
+	 * @return The salt 's'.
+	 */
+	public byte[] generateSalt(final int numBytes) {
+
+		if (numBytes < 1)
+			throw new IllegalArgumentException("The number of random salt bytes must be one or more");
+
+		byte[] randomSalt = new byte[numBytes];
+		randomSource.getSecureRandom().nextBytes(randomSalt);
+		return encodeSalt(randomSalt);
+	}
+
+
+	/**
+	 * Encodes the parameters of this routine and the specified random
+	 * salt bytes into a salt 's'.
+	 *
+	 * @param randomSalt The random salt bytes. Must not be {@code null}.
+	 *
+	 * @return The salt 's'.
+	 */
+	public byte[] encodeSalt(final byte[] randomSalt) {
+
+		if (randomSalt == null)
+			throw new IllegalArgumentException("The random salt must not be null");
+
+		ByteBuffer out = ByteBuffer.allocate(1 + getParametersLength() + randomSalt.length);
+		out.put(algorithm);
+		writeParameters(out);
+		out.put(randomSalt);
+		return out.array();
+	}
+
+
+	/**
+	 * Gets the length of the encoded parameters.
+	 *
+	 * @return The length in bytes.
+	 */
+	protected abstract int getParametersLength();
+
+
+	/**
+	 * Writes the parameters of this routine.
+	 *
+	 * @param out The output buffer.
+	 */
+	protected abstract void writeParameters(final ByteBuffer out);
+
+
+	/**
+	 * Derives a key with the parameters read from a salt.
+	 *
+	 * @param salt      The salt, positioned at the encoded parameters and
+	 *                  limited to its end. The remaining bytes after the
+	 *                  parameters are the random salt.
+	 * @param password  The password.
+	 * @param keyLength The key length in bytes.
+	 *
+	 * @return The key.
+	 *
+	 * @throws IllegalArgumentException If the parameters are invalid or
+	 *                                  exceed the limits.
+	 */
+	protected abstract byte[] deriveKey(final ByteBuffer salt, final byte[] password, final int keyLength);
+
+
+	@Override
+	public BigInteger computeX(final MessageDigest digest,
+	                           final byte[] salt,
+	                           final byte[] username,
+	                           final byte[] password) {
+
+		if (salt == null || salt.length < 1 + getParametersLength() || salt[0] != algorithm)
+			throw new IllegalArgumentException("The salt 's' doesn't carry " + getClass().getSimpleName() + " parameters");
+
+		if (password == null)
+			throw new IllegalArgumentException("The user password 'P' must not be null");
+
+		final ByteBuffer in = ByteBuffer.wrap(salt);
+		in.position(1);
+
+		final byte[] key = deriveKey(in, password, digest != null ? digest.getDigestLength() : 32);
+
+		final BigInteger x = BigIntegerUtils.bigIntegerFromBytes(key);
+		Arrays.fill(key, (byte) 0);
+		return x;
+	}
+
+
+	/**
+	 * Reads the random salt bytes remaining after the parameters.
+	 *
+	 * @param salt The salt, positioned after the parameters.
+	 *
+	 * @return The random salt bytes.
+	 */
+	protected static byte[] randomSalt(final ByteBuffer salt) {
+
+		byte[] randomSalt = new byte[salt.remaining()];
+		salt.get(randomSalt);
+		return randomSalt;
+	}
+
+
+	/**
+	 * Runs the specified lanes in parallel on the fork-join pool, or
+	 * inline if there is a single lane.
+	 *
+	 * @param lanes The lanes.
+	 */
+	protected void runLanes(final RecursiveAction[] lanes) {
+
+		if (lanes.length == 1) {
+			lanes[0].invoke();
+			return;
+		}
+
+		final RecursiveAction all = new RecursiveAction() {
+
+			private static final long serialVersionUID = 1L;
+
+
+			@Override
+			protected void compute() {
+
+				invokeAll(lanes);
+			}
+		};
+
+		(pool != null ? pool : DefaultPool.INSTANCE).invoke(all);
+	}
+}
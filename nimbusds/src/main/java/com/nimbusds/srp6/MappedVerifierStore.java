@@ -0,0 +1,1200 @@
+package com.nimbusds.srp6;
+
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+
+/**
+ * {@link VerifierStore} backed by a memory-mapped file of fixed-width
+ * records, indexed by open addressing with linear probing. Lookups read the
+ * page cache directly, without a database or deserialisation, and cost a few
+ * microseconds.
+ *
+ * <p>The file is sized at creation for a maximum number of records, at a
+ * load factor of 3/4, with a maximum salt length and a verifier length,
+ * normally the {@link SRP6CryptoParams#getPadLength byte length of 'N'}.
+ * A record takes 28 bytes plus the salt and verifier lengths, rounded up to
+ * 8, e.g. 304 bytes with 16-byte salts and 2048-bit verifiers; 30 million
+ * users then need a file of about 12 GB, mapped in segments of up to 1 GiB.
+ *
+ * <p>Records are keyed by a 128-bit hash of the user identity, salted with a
+ * random secret kept in the file header, so that the index doesn't reveal
+ * the user identities and probe sequences can't be clustered on purpose.
+ *
+ * <p>Updates write the new record to a free slot before the previous record
+ * is deleted, and each record carries a CRC-32 that is checked on lookup, so
+ * that a lookup sees either the previous or the new record, also after a
+ * process crash mid-write. A store that wasn't closed is scanned when opened
+ * again, to rebuild the record counts and delete records superseded by an
+ * interrupted update. Call {@link #force} to make updates durable against
+ * system crashes.
+ *
+ * <p>Removal and update leave a deleted slot. Deleted slots are reused by
+ * later insertions whose probe sequence passes them, but are never
+ * reclaimed in place: they still end no probe sequence and count against
+ * the capacity, with headroom for updates, so that a store with much churn
+ * eventually fills up. Use {@link #compactTo} to copy the live records to a
+ * new file without the deleted slots, optionally with a larger capacity;
+ * {@link #getOccupiedSlots} tells when this is due.
+ *
+ * <p>This class is thread-safe. Lookups run concurrently, updates are
+ * serialised. The file is locked while open, so that it can't be opened by
+ * another store in the same or another process.
+ */
+public class MappedVerifierStore implements VerifierStore, Closeable {
+
+
+	/**
+	 * The file magic, "SRPV".
+	 */
+	private static final int MAGIC = 0x53525056;
+
+
+	/**
+	 * The file format version.
+	 */
+	private static final int VERSION = 1;
+
+
+	/**
+	 * The byte length of the file header.
+	 */
+	private static final int HEADER_LENGTH = 64;
+
+
+	/**
+	 * The offset of the open flag in the file header, set while a store
+	 * has the file open.
+	 */
+	private static final int OPEN_FLAG_OFFSET = 48;
+
+
+	/**
+	 * The byte length of the record keys.
+	 */
+	private static final int KEY_LENGTH = 16;
+
+
+	/**
+	 * The byte length of the header secret.
+	 */
+	private static final int SECRET_LENGTH = 16;
+
+
+	/**
+	 * The offset of the salt in a record. Preceded by the slot state,
+	 * the salt length, two reserved bytes, the CRC-32, the parameters ID
+	 * and the key.
+	 */
+	private static final int SALT_OFFSET = 12 + KEY_LENGTH;
+
+
+	/**
+	 * The maximum byte length of a mapped segment.
+	 */
+	private static final int MAX_SEGMENT_LENGTH = 1 << 30;
+
+
+	/**
+	 * The maximum number of slots.
+	 */
+	private static final int MAX_SLOTS = 1 << 30;
+
+
+	/**
+	 * Slot state: never used, ends a probe sequence.
+	 */
+	private static final byte EMPTY = 0;
+
+
+	/**
+	 * Slot state: holds a record.
+	 */
+	private static final byte USED = 1;
+
+
+	/**
+	 * Slot state: holds a deleted record, continues a probe sequence.
+	 */
+	private static final byte DELETED = 2;
+
+
+	/**
+	 * The canonical paths of the files open by stores in this process.
+	 * Guarded by itself.
+	 */
+	private static final Set<String> OPEN_PATHS = new HashSet<>();
+
+
+	/**
+	 * The mapped file.
+	 */
+	private final RandomAccessFile file;
+
+
+	/**
+	 * The canonical path of the mapped file.
+	 */
+	private final String path;
+
+
+	/**
+	 * The mapped file header.
+	 */
+	private final MappedByteBuffer header;
+
+
+	/**
+	 * The mapped record segments.
+	 */
+	private final MappedByteBuffer[] segments;
+
+
+	/**
+	 * The number of slots, a power of two.
+	 */
+	private final int slots;
+
+
+	/**
+	 * The log2 of the number of slots per segment.
+	 */
+	private final int segmentShift;
+
+
+	/**
+	 * The maximum salt length.
+	 */
+	private final int maxSaltLength;
+
+
+	/**
+	 * The verifier length.
+	 */
+	private final int verifierLength;
+
+
+	/**
+	 * The record length.
+	 */
+	private final int recordLength;
+
+
+	/**
+	 * The secret salting the record keys.
+	 */
+	private final byte[] secret;
+
+
+	/**
+	 * The number of stored records.
+	 */
+	private int count;
+
+
+	/**
+	 * The number of used and deleted slots.
+	 */
+	private int occupied;
+
+
+	/**
+	 * Indicates a closed store.
+	 */
+	private volatile boolean closed = false;
+
+
+	/**
+	 * Serialises the updates.
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+	/**
+	 * The key hash function, per thread.
+	 */
+	private final ThreadLocal<MessageDigest> digest = new ThreadLocal<MessageDigest>() {
+
+		@Override
+		protected MessageDigest initialValue() {
+
+			try {
+				return MessageDigest.getInstance("SHA-256");
+
+			} catch (NoSuchAlgorithmException e) {
+
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+	};
+
+
+	/**
+	 * Creates a new mapped verifier store.
+	 *
+	 * @param file   The open file, with a valid header.
+	 * @param path   The canonical path of the file.
+	 * @param header The header values: slots, maximum salt length,
+	 *               verifier length, record length, count and occupied
+	 *               slots.
+	 * @param secret The key secret.
+	 */
+	private MappedVerifierStore(final RandomAccessFile file, final String path, final int[] header, final byte[] secret)
+		throws IOException {
+
+		this.file = file;
+		this.path = path;
+		slots = header[0];
+		maxSaltLength = header[1];
+		verifierLength = header[2];
+		recordLength = header[3];
+		count = header[4];
+		occupied = header[5];
+		this.secret = secret;
+
+		int slotsPerSegment = slots;
+
+		while ((long) slotsPerSegment * recordLength > MAX_SEGMENT_LENGTH)
+			slotsPerSegment >>>= 1;
+
+		segmentShift = Integer.numberOfTrailingZeros(slotsPerSegment);
+
+		FileChannel channel = file.getChannel();
+
+		this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH);
+
+		segments = new MappedByteBuffer[slots / slotsPerSegment];
+
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+			                          HEADER_LENGTH + (long) i * slotsPerSegment * recordLength,
+			                          (long) slotsPerSegment * recordLength);
+		}
+
+		// Not closed after the last updates, the counts may be stale
+		if (this.header.get(OPEN_FLAG_OFFSET) != 0 || count < 0 || count > occupied || occupied > slots)
+			recount();
+
+		this.header.put(OPEN_FLAG_OFFSET, (byte) 1);
+		this.header.force();
+	}
+
+
+	/**
+	 * Creates a new verifier store file and opens it.
+	 *
+	 * @param file           The file. Must not exist.
+	 * @param maxRecords     The maximum number of records, including
+	 *                       deleted ones. Must be positive.
+	 * @param maxSaltLength  The maximum salt length, from 1 to 255 bytes.
+	 * @param verifierLength The verifier length, normally the byte length
+	 *                       of 'N'. Must be positive.
+	 *
+	 * @return The verifier store.
+	 *
+	 * @throws IOException If the file exists or couldn't be created.
+	 */
+	public static MappedVerifierStore create(final File file,
+	                                         final int maxRecords,
+	                                         final int maxSaltLength,
+	                                         final int verifierLength)
+		throws IOException {
+
+		byte[] secret = new byte[SECRET_LENGTH];
+		new SecureRandom().nextBytes(secret);
+
+		return create(file, maxRecords, maxSaltLength, verifierLength, secret);
+	}
+
+
+	/**
+	 * Creates a new verifier store file with the specified key secret and
+	 * opens it.
+	 *
+	 * @param file           The file. Must not exist.
+	 * @param maxRecords     The maximum number of records.
+	 * @param maxSaltLength  The maximum salt length.
+	 * @param verifierLength The verifier length.
+	 * @param secret         The key secret.
+	 *
+	 * @return The verifier store.
+	 *
+	 * @throws IOException If the file exists or couldn't be created.
+	 */
+	private static MappedVerifierStore create(final File file,
+	                                          final int maxRecords,
+	                                          final int maxSaltLength,
+	                                          final int verifierLength,
+	                                          final byte[] secret)
+		throws IOException {
+
+		if (maxRecords < 1 || maxRecords > MAX_SLOTS / 4 * 3)
+			throw new IllegalArgumentException("The maximum number of records must be between 1 and " + MAX_SLOTS / 4 * 3);
+
+		if (maxSaltLength < 1 || maxSaltLength > 255)
+			throw new IllegalArgumentException("The maximum salt length must be between 1 and 255");
+
+		if (verifierLength < 1 || verifierLength > 1024)
+			throw new IllegalArgumentException("The verifier length must be between 1 and 1024");
+
+		if (file.exists())
+			throw new IOException("File already exists: " + file);
+
+		int slots = Integer.highestOneBit(Math.max(1, (int) ((maxRecords * 4L + 2) / 3)) - 1) << 1;
+
+		if (slots < 4)
+			slots = 4;
+
+		final int recordLength = (SALT_OFFSET + maxSaltLength + verifierLength + 7) & ~7;
+
+		final String path = file.getCanonicalPath();
+
+		RandomAccessFile raf = openLocked(file, path);
+
+		try {
+			raf.setLength(HEADER_LENGTH + (long) slots * recordLength);
+
+			raf.seek(0);
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeInt(slots);
+			raf.writeInt(maxSaltLength);
+			raf.writeInt(verifierLength);
+			raf.writeInt(recordLength);
+			raf.writeInt(0);
+			raf.writeInt(0);
+			raf.write(secret);
+
+			return new MappedVerifierStore(raf, path, new int[]{slots, maxSaltLength, verifierLength, recordLength, 0, 0}, secret);
+
+		} catch (IOException | RuntimeException e) {
+
+			raf.close();
+			release(path);
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Opens an existing verifier store file.
+	 *
+	 * @param file The file. Must not be {@code null}.
+	 *
+	 * @return The verifier store.
+	 *
+	 * @throws IOException If the file couldn't be opened, is open by
+	 *                     another store or is not a valid verifier store.
+	 */
+	public static MappedVerifierStore open(final File file)
+		throws IOException {
+
+		final String path = file.getCanonicalPath();
+
+		RandomAccessFile raf = openLocked(file, path);
+
+		try {
+			if (raf.length() < HEADER_LENGTH || raf.readInt() != MAGIC)
+				throw new IOException("Not a verifier store: " + file);
+
+			if (raf.readInt() != VERSION)
+				throw new IOException("Unsupported verifier store version: " + file);
+
+			int[] header = new int[6];
+
+			for (int i = 0; i < header.length; i++)
+				header[i] = raf.readInt();
+
+			byte[] secret = new byte[SECRET_LENGTH];
+			raf.readFully(secret);
+
+			final int slots = header[0];
+
+			if (slots < 4 || slots > MAX_SLOTS || Integer.bitCount(slots) != 1 ||
+			    header[1] < 1 || header[1] > 255 ||
+			    header[2] < 1 || header[2] > 1024 ||
+			    header[3] != ((SALT_OFFSET + header[1] + header[2] + 7) & ~7) ||
+			    raf.length() != HEADER_LENGTH + (long) slots * header[3])
+				throw new IOException("Corrupted verifier store header: " + file);
+
+			return new MappedVerifierStore(raf, path, header, secret);
+
+		} catch (IOException | RuntimeException e) {
+
+			raf.close();
+			release(path);
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Opens a verifier store file and locks it exclusively, until it is
+	 * closed. Files open in this process are checked before the file is
+	 * opened again, since closing any descriptor of a file releases the
+	 * locks of the process on it.
+	 *
+	 * @param file The file.
+	 * @param path The canonical path of the file.
+	 *
+	 * @return The open file.
+	 *
+	 * @throws IOException If the file is open by another store or
+	 *                     couldn't be opened.
+	 */
+	private static RandomAccessFile openLocked(final File file, final String path)
+		throws IOException {
+
+		synchronized (OPEN_PATHS) {
+
+			if (! OPEN_PATHS.add(path))
+				throw new IOException("Verifier store in use: " + file);
+		}
+
+		RandomAccessFile raf = null;
+
+		try {
+			raf = new RandomAccessFile(file, "rw");
+
+			if (raf.getChannel().tryLock() == null)
+				throw new IOException("Verifier store in use: " + file);
+
+			return raf;
+
+		} catch (IOException | RuntimeException e) {
+
+			if (raf != null)
+				raf.close();
+
+			release(path);
+
+			if (e instanceof OverlappingFileLockException)
+				throw new IOException("Verifier store in use: " + file);
+
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Releases the canonical path of a closed verifier store file.
+	 *
+	 * @param path The canonical path.
+	 */
+	private static void release(final String path) {
+
+		synchronized (OPEN_PATHS) {
+			OPEN_PATHS.remove(path);
+		}
+	}
+
+
+	/**
+	 * Gets the maximum number of records, including deleted ones.
+	 *
+	 * @return The maximum number of records.
+	 */
+	public int getCapacity() {
+
+		return slots / 4 * 3;
+	}
+
+
+	/**
+	 * Gets the number of stored records.
+	 *
+	 * @return The number of records.
+	 */
+	public int size() {
+
+		lock.readLock().lock();
+
+		try {
+			return count;
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Gets the number of used and deleted slots, which is limited by the
+	 * {@link #getCapacity capacity}. Deleted slots are only freed by
+	 * {@link #compactTo compaction}.
+	 *
+	 * @return The number of occupied slots.
+	 */
+	public int getOccupiedSlots() {
+
+		lock.readLock().lock();
+
+		try {
+			return occupied;
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Returns the record key of a user identity.
+	 *
+	 * @param userID The user identity 'I'.
+	 *
+	 * @return The key.
+	 */
+	private byte[] key(final String userID) {
+
+		MessageDigest md = digest.get();
+		md.reset();
+		md.update(secret);
+		md.update(userID.getBytes(Charset.forName("UTF-8")));
+
+		byte[] key = new byte[KEY_LENGTH];
+		System.arraycopy(md.digest(), 0, key, 0, KEY_LENGTH);
+		return key;
+	}
+
+
+	/**
+	 * Returns the home slot of a key.
+	 *
+	 * @param key The key.
+	 *
+	 * @return The slot.
+	 */
+	private int home(final byte[] key) {
+
+		return ((key[0] & 0xff) << 24 | (key[1] & 0xff) << 16 | (key[2] & 0xff) << 8 | key[3] & 0xff) & (slots - 1);
+	}
+
+
+	/**
+	 * Returns the segment of a slot.
+	 *
+	 * @param slot The slot.
+	 *
+	 * @return The segment.
+	 */
+	private ByteBuffer segment(final int slot) {
+
+		return segments[slot >>> segmentShift];
+	}
+
+
+	/**
+	 * Returns the offset of a slot in its segment.
+	 *
+	 * @param slot The slot.
+	 *
+	 * @return The offset.
+	 */
+	private int offset(final int slot) {
+
+		return (slot & ((1 << segmentShift) - 1)) * recordLength;
+	}
+
+
+	/**
+	 * Checks whether the record in a used slot has the specified key.
+	 *
+	 * @param slot The slot.
+	 * @param key  The key.
+	 *
+	 * @return {@code true} if the key matches.
+	 */
+	private boolean keyMatches(final int slot, final byte[] key) {
+
+		final ByteBuffer segment = segment(slot);
+		final int offset = offset(slot) + 12;
+
+		for (int i = 0; i < KEY_LENGTH; i++) {
+
+			if (segment.get(offset + i) != key[i])
+				return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Reads the record in a slot and verifies its checksum.
+	 *
+	 * @param slot   The slot.
+	 * @param record The buffer for the record bytes, of the record
+	 *               length.
+	 *
+	 * @return {@code true} if the checksum matches.
+	 */
+	private boolean readRecord(final int slot, final byte[] record) {
+
+		ByteBuffer buf = segment(slot).duplicate();
+		buf.position(offset(slot));
+		buf.get(record);
+
+		return checksum(record) == getInt(record, 4);
+	}
+
+
+	/**
+	 * Writes a record to a slot, setting the slot state last.
+	 *
+	 * @param slot   The slot.
+	 * @param record The record bytes.
+	 */
+	private void writeRecord(final int slot, final byte[] record) {
+
+		ByteBuffer buf = segment(slot).duplicate();
+		buf.position(offset(slot) + 1);
+		buf.put(record, 1, recordLength - 1);
+
+		segment(slot).put(offset(slot), record[0]);
+	}
+
+
+	/**
+	 * Computes the checksum of a record, over the salt length and all
+	 * bytes from the parameters ID on.
+	 *
+	 * @param record The record bytes.
+	 *
+	 * @return The checksum.
+	 */
+	private static int checksum(final byte[] record) {
+
+		CRC32 crc = new CRC32();
+		crc.update(record, 1, 1);
+		crc.update(record, 8, record.length - 8);
+		return (int) crc.getValue();
+	}
+
+
+	/**
+	 * Reads a big-endian int.
+	 *
+	 * @param b   The bytes.
+	 * @param off The offset.
+	 *
+	 * @return The int.
+	 */
+	private static int getInt(final byte[] b, final int off) {
+
+		return (b[off] & 0xff) << 24 | (b[off + 1] & 0xff) << 16 | (b[off + 2] & 0xff) << 8 | b[off + 3] & 0xff;
+	}
+
+
+	/**
+	 * Writes a big-endian int.
+	 *
+	 * @param b     The bytes.
+	 * @param off   The offset.
+	 * @param value The int.
+	 */
+	private static void putInt(final byte[] b, final int off, final int value) {
+
+		b[off] = (byte) (value >>> 24);
+		b[off + 1] = (byte) (value >>> 16);
+		b[off + 2] = (byte) (value >>> 8);
+		b[off + 3] = (byte) value;
+	}
+
+
+	/**
+	 * Finds the slot of the valid record with the specified key. Deleted
+	 * slots and records with a bad checksum are skipped.
+	 *
+	 * @param key    The key.
+	 * @param record The buffer for the bytes of the found record, of the
+	 *               record length.
+	 *
+	 * @return The slot, -1 if not found.
+	 */
+	private int find(final byte[] key, final byte[] record) {
+
+		final int home = home(key);
+
+		for (int i = 0; i < slots; i++) {
+
+			final int slot = (home + i) & (slots - 1);
+			final byte state = segment(slot).get(offset(slot));
+
+			if (state == EMPTY)
+				return -1;
+
+			if (state == USED && keyMatches(slot, key) && readRecord(slot, record))
+				return slot;
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Checks that the store is open.
+	 */
+	private void ensureOpen()
+		throws IOException {
+
+		if (closed)
+			throw new IOException("The verifier store is closed");
+	}
+
+
+	/**
+	 * Rebuilds the record counts by a scan of all slots, deleting records
+	 * superseded by an update that was interrupted before the previous
+	 * record was deleted.
+	 */
+	private void recount() {
+
+		final byte[] record = new byte[recordLength];
+		final byte[] scratch = new byte[recordLength];
+		final byte[] key = new byte[KEY_LENGTH];
+
+		count = 0;
+		occupied = 0;
+
+		for (int slot = 0; slot < slots; slot++) {
+
+			final byte state = segment(slot).get(offset(slot));
+
+			if (state == EMPTY)
+				continue;
+
+			occupied++;
+
+			if (state != USED || ! readRecord(slot, record))
+				continue;
+
+			System.arraycopy(record, 12, key, 0, KEY_LENGTH);
+
+			// Only the record a lookup finds counts
+			if (find(key, scratch) == slot)
+				count++;
+			else
+				segment(slot).put(offset(slot), DELETED);
+		}
+
+		writeCounts();
+	}
+
+
+	/**
+	 * Deletes the records with the specified key, including superseded
+	 * ones, except in the specified slot.
+	 *
+	 * @param key  The key.
+	 * @param keep The slot to keep, -1 for none.
+	 *
+	 * @return {@code true} if a valid record was deleted.
+	 */
+	private boolean delete(final byte[] key, final int keep) {
+
+		final int home = home(key);
+
+		final byte[] record = new byte[recordLength];
+
+		boolean deleted = false;
+
+		for (int i = 0; i < slots; i++) {
+
+			final int slot = (home + i) & (slots - 1);
+			final byte state = segment(slot).get(offset(slot));
+
+			if (state == EMPTY)
+				break;
+
+			if (state == USED && slot != keep && keyMatches(slot, key)) {
+				deleted |= readRecord(slot, record);
+				segment(slot).put(offset(slot), DELETED);
+			}
+		}
+
+		return deleted;
+	}
+
+
+	/**
+	 * Updates the counts in the file header.
+	 */
+	private void writeCounts() {
+
+		header.putInt(24, count);
+		header.putInt(28, occupied);
+	}
+
+
+	@Override
+	public VerifierRecord get(final String userID)
+		throws IOException {
+
+		if (userID == null)
+			throw new IllegalArgumentException("The user identity 'I' must not be null");
+
+		final byte[] key = key(userID);
+
+		lock.readLock().lock();
+
+		try {
+			ensureOpen();
+
+			final byte[] record = new byte[recordLength];
+
+			if (find(key, record) < 0)
+				return null;
+
+			final int saltLength = record[1] & 0xff;
+
+			byte[] salt = new byte[saltLength];
+			System.arraycopy(record, SALT_OFFSET, salt, 0, saltLength);
+
+			byte[] verifier = new byte[verifierLength];
+			System.arraycopy(record, SALT_OFFSET + maxSaltLength, verifier, 0, verifierLength);
+
+			return new VerifierRecord(salt, verifier, getInt(record, 8));
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>The verifier is stored left-padded with zeros to the verifier
+	 * length of the store.
+	 *
+	 * @throws IllegalArgumentException If the salt or verifier is too
+	 *                                  long.
+	 * @throws IllegalStateException    If the store is full.
+	 */
+	@Override
+	public void put(final String userID, final VerifierRecord record)
+		throws IOException {
+
+		if (userID == null)
+			throw new IllegalArgumentException("The user identity 'I' must not be null");
+
+		if (record == null)
+			throw new IllegalArgumentException("The verifier record must not be null");
+
+		if (record.salt.length > maxSaltLength)
+			throw new IllegalArgumentException("The salt must not be longer than " + maxSaltLength + " bytes");
+
+		int verifierOffset = 0;
+
+		while (verifierOffset < record.verifier.length && record.verifier[verifierOffset] == 0)
+			verifierOffset++;
+
+		final int verifierBytes = record.verifier.length - verifierOffset;
+
+		if (verifierBytes > verifierLength)
+			throw new IllegalArgumentException("The verifier must not be longer than " + verifierLength + " bytes");
+
+		final byte[] key = key(userID);
+
+		byte[] bytes = new byte[recordLength];
+		bytes[0] = USED;
+		bytes[1] = (byte) record.salt.length;
+		putInt(bytes, 8, record.paramsID);
+		System.arraycopy(key, 0, bytes, 12, KEY_LENGTH);
+		System.arraycopy(record.salt, 0, bytes, SALT_OFFSET, record.salt.length);
+		System.arraycopy(record.verifier, verifierOffset, bytes,
+		                 SALT_OFFSET + maxSaltLength + verifierLength - verifierBytes, verifierBytes);
+		putInt(bytes, 4, checksum(bytes));
+
+		lock.writeLock().lock();
+
+		try {
+			ensureOpen();
+
+			// Find the existing record and the first reusable slot
+			final int home = home(key);
+
+			final byte[] scratch = new byte[recordLength];
+
+			int existing = -1;
+			int free = -1;
+			boolean freeIsEmpty = false;
+
+			for (int i = 0; i < slots; i++) {
+
+				final int slot = (home + i) & (slots - 1);
+				final byte state = segment(slot).get(offset(slot));
+
+				if (state == EMPTY) {
+
+					if (free < 0) {
+						free = slot;
+						freeIsEmpty = true;
+					}
+
+					break;
+				}
+
+				if (state == USED && keyMatches(slot, key)) {
+
+					if (existing < 0 && readRecord(slot, scratch)) {
+						existing = slot;
+						continue;
+					}
+
+					// Torn or superseded record
+					if (free < 0)
+						free = slot;
+
+				} else if (state == DELETED && free < 0) {
+
+					free = slot;
+				}
+			}
+
+			// New records are limited to the capacity, updates have
+			// headroom up to a load of 7/8 for their copy
+			final int maxOccupied = existing < 0 ? getCapacity() : slots - slots / 8;
+
+			if (free < 0 || (freeIsEmpty && occupied >= maxOccupied))
+				throw new IllegalStateException("The verifier store is full");
+
+			writeRecord(free, bytes);
+
+			delete(key, free);
+
+			if (existing < 0)
+				count++;
+
+			if (freeIsEmpty)
+				occupied++;
+
+			writeCounts();
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+
+	@Override
+	public boolean remove(final String userID)
+		throws IOException {
+
+		if (userID == null)
+			throw new IllegalArgumentException("The user identity 'I' must not be null");
+
+		final byte[] key = key(userID);
+
+		lock.writeLock().lock();
+
+		try {
+			ensureOpen();
+
+			if (! delete(key, -1))
+				return false;
+
+			count--;
+			writeCounts();
+			return true;
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Copies the live records to a new verifier store file, without the
+	 * deleted slots and torn or superseded records. The new store has the
+	 * same key secret, salt and verifier lengths as this one. Lookups
+	 * proceed during the copy, updates wait.
+	 *
+	 * <p>To switch over, close this store and replace its file with the
+	 * new one, or use the returned store directly.
+	 *
+	 * @param file       The new file. Must not exist.
+	 * @param maxRecords The maximum number of records of the new store,
+	 *                   including deleted ones. Must not be less than
+	 *                   the {@link #size number of records}.
+	 *
+	 * @return The new verifier store, open.
+	 *
+	 * @throws IOException If this store is closed, or the new file exists
+	 *                     or couldn't be written.
+	 */
+	public MappedVerifierStore compactTo(final File file, final int maxRecords)
+		throws IOException {
+
+		if (file == null)
+			throw new IllegalArgumentException("The file must not be null");
+
+		lock.readLock().lock();
+
+		try {
+			ensureOpen();
+
+			if (maxRecords < count)
+				throw new IllegalArgumentException("The maximum number of records must not be less than " + count);
+
+			final MappedVerifierStore target = create(file, maxRecords, maxSaltLength, verifierLength, secret);
+
+			try {
+				final byte[] record = new byte[recordLength];
+				final byte[] scratch = new byte[recordLength];
+				final byte[] key = new byte[KEY_LENGTH];
+
+				for (int slot = 0; slot < slots; slot++) {
+
+					if (segment(slot).get(offset(slot)) != USED || ! readRecord(slot, record))
+						continue;
+
+					System.arraycopy(record, 12, key, 0, KEY_LENGTH);
+
+					// Only the record a lookup finds, a crash during an
+					// update may leave the previous one
+					if (find(key, scratch) == slot)
+						target.insert(key, record);
+				}
+
+				target.writeCounts();
+
+				return target;
+
+			} catch (RuntimeException e) {
+
+				target.close();
+				file.delete();
+				throw e;
+			}
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Inserts a record into the first empty slot of its probe sequence,
+	 * without checking for an existing one. For filling a new store.
+	 *
+	 * @param key    The key.
+	 * @param record The record bytes, of the record length.
+	 */
+	private void insert(final byte[] key, final byte[] record) {
+
+		final int home = home(key);
+
+		for (int i = 0; i < slots; i++) {
+
+			final int slot = (home + i) & (slots - 1);
+
+			if (segment(slot).get(offset(slot)) == EMPTY) {
+				writeRecord(slot, record);
+				count++;
+				occupied++;
+				return;
+			}
+		}
+
+		throw new IllegalStateException("The verifier store is full");
+	}
+
+
+	/**
+	 * Writes the mapped segments and the header to the storage device.
+	 */
+	private void forceAll() {
+
+		for (MappedByteBuffer segment: segments)
+			segment.force();
+
+		header.force();
+	}
+
+
+	/**
+	 * Writes the updates to the storage device. Lookups proceed
+	 * meanwhile, updates wait.
+	 *
+	 * @throws IOException If the store is closed.
+	 */
+	public void force()
+		throws IOException {
+
+		lock.readLock().lock();
+
+		try {
+			ensureOpen();
+
+			forceAll();
+
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Writes the updates to the storage device and closes the store. The
+	 * mapping is released when the store is garbage collected.
+	 *
+	 * @throws IOException If the file couldn't be closed.
+	 */
+	@Override
+	public void close()
+		throws IOException {
+
+		// Write out the bulk of the updates while lookups proceed
+		lock.readLock().lock();
+
+		try {
+			if (closed)
+				return;
+
+			forceAll();
+
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		lock.writeLock().lock();
+
+		try {
+			if (closed)
+				return;
+
+			// Pages updated since, if any
+			forceAll();
+
+			header.put(OPEN_FLAG_OFFSET, (byte) 0);
+			header.force();
+
+			closed = true;
+
+			file.close();
+
+			release(path);
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+}
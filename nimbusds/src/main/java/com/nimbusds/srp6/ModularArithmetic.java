@@ -0,0 +1,51 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+
+
+/**
+ * Modular arithmetic backend for the SRP-6a routines. The crypto parameters
+ * are passed with each operation so that implementations can keep constants
+ * that depend on the prime 'N' precomputed per {@link SRP6CryptoParams}
+ * instance.
+ *
+ * <p>The default backend is {@link BigIntegerArithmetic}. An alternative
+ * backend can be passed to the {@link SRP6Routines#SRP6Routines(ModularArithmetic)
+ * routines constructor}; it is used by the routine overloads that take
+ * {@link SRP6CryptoParams}.
+ *
+ * <p>Implementations must be thread-safe.
+ */
+public interface ModularArithmetic {
+
+
+	/**
+	 * Computes base^exponent (mod N).
+	 *
+	 * @param config   The SRP-6a crypto parameters supplying the prime
+	 *                 'N'. Must not be {@code null}.
+	 * @param base     The base. Must not be {@code null}.
+	 * @param exponent The exponent. Must not be {@code null} or negative.
+	 *
+	 * @return The resulting power, in the range [0,N-1].
+	 */
+	public BigInteger modPow(final SRP6CryptoParams config,
+	                         final BigInteger base,
+	                         final BigInteger exponent);
+
+
+	/**
+	 * Computes x * y (mod N).
+	 *
+	 * @param config The SRP-6a crypto parameters supplying the prime 'N'.
+	 *               Must not be {@code null}.
+	 * @param x      The first factor. Must not be {@code null}.
+	 * @param y      The second factor. Must not be {@code null}.
+	 *
+	 * @return The resulting product, in the range [0,N-1].
+	 */
+	public BigInteger modMultiply(final SRP6CryptoParams config,
+	                              final BigInteger x,
+	                              final BigInteger y);
+}
@@ -0,0 +1,173 @@
+package com.nimbusds.srp6;
+
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+
+/**
+ * Modular arithmetic backend working in the Montgomery domain over arrays of
+ * 32-bit limbs. The Montgomery constants for 'N' are computed once and
+ * cached by the {@link SRP6CryptoParams crypto parameters}, and
+ * exponentiations run over preallocated limb arrays, so the number of
+ * temporary objects per operation is independent of the exponent length.
+ *
+ * <p>This backend trades speed for allocation rate: on runtimes where
+ * {@code BigInteger.modPow} is compiled to native multiply intrinsics it is
+ * slower in CPU terms, so it is opt-in. Even moduli are delegated to
+ * {@code BigInteger}.
+ */
+public class MontgomeryArithmetic implements ModularArithmetic, Serializable {
+
+
+	/**
+	 * Serializable class version number
+	 */
+	private static final long serialVersionUID = -3183446602415768510L;
+
+
+	@Override
+	public BigInteger modPow(final SRP6CryptoParams config,
+	                         final BigInteger base,
+	                         final BigInteger exponent) {
+
+		final MontgomeryModulus modulus = config.getMontgomeryModulus();
+
+		if (modulus == null || exponent.signum() < 0)
+			return base.modPow(exponent, config.N);
+
+		final long[] scratch = modulus.newScratch();
+
+		return modulus.fromMontgomery(modPow(modulus, modulus.toMontgomery(base.mod(config.N)), exponent, scratch), scratch);
+	}
+
+
+	@Override
+	public BigInteger modMultiply(final SRP6CryptoParams config,
+	                              final BigInteger x,
+	                              final BigInteger y) {
+
+		final MontgomeryModulus modulus = config.getMontgomeryModulus();
+
+		if (modulus == null)
+			return x.multiply(y).mod(config.N);
+
+		final long[] scratch = modulus.newScratch();
+
+		// x * (y * R) * R^-1 = x * y (mod N)
+		int[] out = MontgomeryModulus.toLimbs(x.mod(config.N), modulus.limbs);
+		modulus.multiply(out, modulus.toMontgomery(y.mod(config.N)), out, scratch);
+		return MontgomeryModulus.fromLimbs(out);
+	}
+
+
+	/**
+	 * Left-to-right sliding window exponentiation in the Montgomery
+	 * domain.
+	 *
+	 * @param modulus  The Montgomery modulus.
+	 * @param base     The base in the Montgomery domain.
+	 * @param exponent The exponent. Must not be negative.
+	 * @param scratch  Scratch space from the modulus.
+	 *
+	 * @return The power in the Montgomery domain.
+	 */
+	static int[] modPow(final MontgomeryModulus modulus,
+	                    final int[] base,
+	                    final BigInteger exponent,
+	                    final long[] scratch) {
+
+		final int bits = exponent.bitLength();
+
+		int[] r = modulus.one();
+
+		if (bits == 0)
+			return r;
+
+		final int window = windowSize(bits);
+
+		// Odd powers base^1, base^3, ... base^(2^window - 1)
+		int[][] odd = new int[1 << (window - 1)][];
+		odd[0] = base;
+
+		if (odd.length > 1) {
+
+			int[] square = new int[modulus.limbs];
+			modulus.multiply(base, base, square, scratch);
+
+			for (int i = 1; i < odd.length; i++) {
+				odd[i] = new int[modulus.limbs];
+				modulus.multiply(odd[i - 1], square, odd[i], scratch);
+			}
+		}
+
+		boolean started = false;
+
+		int i = bits - 1;
+
+		while (i >= 0) {
+
+			if (! exponent.testBit(i)) {
+
+				if (started)
+					modulus.multiply(r, r, r, scratch);
+
+				i--;
+				continue;
+			}
+
+			// Longest window [i..j] ending in a set bit
+			int j = Math.max(i - window + 1, 0);
+
+			while (! exponent.testBit(j))
+				j++;
+
+			int value = 0;
+
+			for (int t = i; t >= j; t--)
+				value = (value << 1) | (exponent.testBit(t) ? 1 : 0);
+
+			if (started) {
+
+				for (int t = i; t >= j; t--)
+					modulus.multiply(r, r, r, scratch);
+
+				modulus.multiply(r, odd[value >>> 1], r, scratch);
+
+			} else {
+
+				System.arraycopy(odd[value >>> 1], 0, r, 0, modulus.limbs);
+				started = true;
+			}
+
+			i = j - 1;
+		}
+
+		return r;
+	}
+
+
+	/**
+	 * Returns the sliding window size for the specified exponent length.
+	 *
+	 * @param bits The exponent bit length.
+	 *
+	 * @return The window size, from 1 to 6.
+	 */
+	private static int windowSize(final int bits) {
+
+		if (bits > 671)
+			return 6;
+
+		if (bits > 239)
+			return 5;
+
+		if (bits > 79)
+			return 4;
+
+		if (bits > 23)
+			return 3;
+
+		return bits > 7 ? 2 : 1;
+	}
+}
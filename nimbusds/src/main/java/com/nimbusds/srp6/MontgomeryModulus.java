@@ -0,0 +1,280 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+
+
+/**
+ * Montgomery-domain arithmetic for a fixed odd modulus 'N', operating on
+ * little-endian arrays of 32-bit limbs.
+ *
+ * <p>Values in the Montgomery domain are represented as x * R (mod N) where
+ * R = 2^(32 * n) and n is the number of limbs of 'N'. Multiplication uses
+ * the coarsely integrated operand scanning (CIOS) method and writes into
+ * caller-supplied arrays, so that exponentiation loops allocate nothing
+ * beyond their scratch space.
+ *
+ * <p>Instances are immutable and thread-safe.
+ */
+final class MontgomeryModulus {
+
+
+	/**
+	 * Mask for the lower 32 bits of a long.
+	 */
+	private static final long LIMB_MASK = 0xffffffffL;
+
+
+	/**
+	 * The modulus 'N'.
+	 */
+	final BigInteger N;
+
+
+	/**
+	 * The number of 32-bit limbs of 'N'.
+	 */
+	final int limbs;
+
+
+	/**
+	 * The limbs of 'N', least significant first.
+	 */
+	private final int[] n;
+
+
+	/**
+	 * -N^-1 (mod 2^32).
+	 */
+	private final int nPrime;
+
+
+	/**
+	 * R (mod N), i.e. the number one in the Montgomery domain.
+	 */
+	private final int[] one;
+
+
+	/**
+	 * Creates a new Montgomery modulus.
+	 *
+	 * @param N The modulus. Must be odd, greater than one and not
+	 *          {@code null}.
+	 */
+	MontgomeryModulus(final BigInteger N) {
+
+		if (N == null || N.signum() <= 0 || ! N.testBit(0) || N.equals(BigInteger.ONE))
+			throw new IllegalArgumentException("The Montgomery modulus must be an odd integer greater than one");
+
+		this.N = N;
+
+		limbs = (N.bitLength() + 31) / 32;
+
+		n = toLimbs(N, limbs);
+
+		// Newton iteration, each step doubles the number of correct bits
+		int inv = n[0];
+
+		for (int i = 0; i < 5; i++)
+			inv *= 2 - n[0] * inv;
+
+		nPrime = -inv;
+
+		one = toLimbs(BigInteger.ONE.shiftLeft(32 * limbs).mod(N), limbs);
+	}
+
+
+	/**
+	 * Checks if the specified modulus is supported, i.e. odd and greater
+	 * than one.
+	 *
+	 * @param N The modulus to check. Must not be {@code null}.
+	 *
+	 * @return {@code true} if Montgomery arithmetic applies, else
+	 *         {@code false}.
+	 */
+	static boolean isSupported(final BigInteger N) {
+
+		return N.testBit(0) && N.compareTo(BigInteger.ONE) > 0;
+	}
+
+
+	/**
+	 * Returns a new scratch array suitable for {@link #multiply}.
+	 *
+	 * @return The scratch array.
+	 */
+	long[] newScratch() {
+
+		return new long[limbs + 1];
+	}
+
+
+	/**
+	 * Returns a copy of the number one in the Montgomery domain.
+	 *
+	 * @return R (mod N) as limbs.
+	 */
+	int[] one() {
+
+		return one.clone();
+	}
+
+
+	/**
+	 * Converts a value into the Montgomery domain.
+	 *
+	 * @param x The value to convert. Must not be negative.
+	 *
+	 * @return x * R (mod N) as limbs.
+	 */
+	int[] toMontgomery(final BigInteger x) {
+
+		return toLimbs(x.shiftLeft(32 * limbs).mod(N), limbs);
+	}
+
+
+	/**
+	 * Converts a value out of the Montgomery domain.
+	 *
+	 * @param a       The Montgomery-domain value as limbs.
+	 * @param scratch Scratch space from {@link #newScratch}.
+	 *
+	 * @return a * R^-1 (mod N).
+	 */
+	BigInteger fromMontgomery(final int[] a, final long[] scratch) {
+
+		int[] unit = new int[limbs];
+		unit[0] = 1;
+
+		int[] out = new int[limbs];
+		multiply(a, unit, out, scratch);
+
+		return fromLimbs(out);
+	}
+
+
+	/**
+	 * Computes the Montgomery product out = a * b * R^-1 (mod N). Both
+	 * inputs must be fully reduced. The output array may alias either
+	 * input.
+	 *
+	 * @param a       The first factor as limbs.
+	 * @param b       The second factor as limbs.
+	 * @param out     The array to receive the product.
+	 * @param scratch Scratch space from {@link #newScratch}.
+	 */
+	void multiply(final int[] a, final int[] b, final int[] out, final long[] scratch) {
+
+		final int len = limbs;
+		final long[] t = scratch;
+
+		for (int j = 0; j <= len; j++)
+			t[j] = 0;
+
+		final long n0 = n[0] & LIMB_MASK;
+		final long b0 = b[0] & LIMB_MASK;
+
+		for (int i = 0; i < len; i++) {
+
+			final long ai = a[i] & LIMB_MASK;
+
+			long s = t[0] + ai * b0;
+			final long q = ((int) s * nPrime) & LIMB_MASK;
+			long c1 = s >>> 32;
+			long r = (s & LIMB_MASK) + q * n0;
+			long c2 = r >>> 32;
+
+			for (int j = 1; j < len; j++) {
+				s = t[j] + ai * (b[j] & LIMB_MASK) + c1;
+				c1 = s >>> 32;
+				r = (s & LIMB_MASK) + q * (n[j] & LIMB_MASK) + c2;
+				c2 = r >>> 32;
+				t[j - 1] = r & LIMB_MASK;
+			}
+
+			s = t[len] + c1 + c2;
+			t[len - 1] = s & LIMB_MASK;
+			t[len] = s >>> 32;
+		}
+
+		// The intermediate result is below 2N, subtract N at most once
+		boolean subtract = t[len] != 0;
+
+		if (! subtract) {
+
+			subtract = true;
+
+			for (int i = len - 1; i >= 0; i--) {
+
+				final long ni = n[i] & LIMB_MASK;
+
+				if (t[i] != ni) {
+					subtract = t[i] > ni;
+					break;
+				}
+			}
+		}
+
+		if (subtract) {
+
+			long borrow = 0;
+
+			for (int i = 0; i < len; i++) {
+				final long d = t[i] - (n[i] & LIMB_MASK) - borrow;
+				out[i] = (int) d;
+				borrow = d >>> 63;
+			}
+
+		} else {
+
+			for (int i = 0; i < len; i++)
+				out[i] = (int) t[i];
+		}
+	}
+
+
+	/**
+	 * Converts a non-negative big integer to little-endian 32-bit limbs.
+	 *
+	 * @param x     The big integer. Must fit into the specified number of
+	 *              limbs.
+	 * @param limbs The number of limbs.
+	 *
+	 * @return The limbs.
+	 */
+	static int[] toLimbs(final BigInteger x, final int limbs) {
+
+		final byte[] bytes = x.toByteArray();
+
+		int[] out = new int[limbs];
+
+		for (int i = 0, pos = bytes.length - 1; pos >= 0 && i < limbs * 4; i++, pos--)
+			out[i >>> 2] |= (bytes[pos] & 0xff) << ((i & 3) * 8);
+
+		return out;
+	}
+
+
+	/**
+	 * Converts little-endian 32-bit limbs to a non-negative big integer.
+	 *
+	 * @param a The limbs.
+	 *
+	 * @return The big integer.
+	 */
+	static BigInteger fromLimbs(final int[] a) {
+
+		byte[] bytes = new byte[a.length * 4];
+
+		for (int i = 0; i < a.length; i++) {
+			final int limb = a[a.length - 1 - i];
+			bytes[i * 4] = (byte) (limb >>> 24);
+			bytes[i * 4 + 1] = (byte) (limb >>> 16);
+			bytes[i * 4 + 2] = (byte) (limb >>> 8);
+			bytes[i * 4 + 3] = (byte) limb;
+		}
+
+		return new BigInteger(1, bytes);
+	}
+}
@@ -0,0 +1,258 @@
+package com.nimbusds.srp6;
+
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/**
+ * Password key 'x' routine using PBKDF2 (RFC 8018) with HMAC-SHA1,
+ * HMAC-SHA256 or HMAC-SHA512. PBKDF2 is CPU-hard only; prefer
+ * {@link ScryptXRoutine} or {@link Argon2idXRoutine} where memory is
+ * available.
+ *
+ * <p>The salt 's' carries the algorithm byte 'P', the HMAC hash byte and the
+ * 4-byte iteration count, followed by the random salt bytes.
+ *
+ * <p>Instances are immutable and thread-safe.
+ */
+public class PBKDF2XRoutine extends KeyDerivationXRoutine {
+
+
+	/**
+	 * The supported HMAC hash functions.
+	 */
+	public static enum PRF {
+
+
+		/**
+		 * HMAC-SHA1.
+		 */
+		HMAC_SHA1("HmacSHA1"),
+
+
+		/**
+		 * HMAC-SHA256.
+		 */
+		HMAC_SHA256("HmacSHA256"),
+
+
+		/**
+		 * HMAC-SHA512.
+		 */
+		HMAC_SHA512("HmacSHA512");
+
+
+		/**
+		 * The JCA algorithm name.
+		 */
+		private final String algorithm;
+
+
+		PRF(final String algorithm) {
+
+			this.algorithm = algorithm;
+		}
+
+
+		/**
+		 * Gets the JCA algorithm name.
+		 *
+		 * @return The algorithm name.
+		 */
+		public String getAlgorithm() {
+
+			return algorithm;
+		}
+	}
+
+
+	/**
+	 * The algorithm identifier byte in the salt.
+	 */
+	public static final byte ALGORITHM = 'P';
+
+
+	/**
+	 * The maximum iteration count accepted from a salt.
+	 */
+	public static final int MAX_ITERATIONS = 1 << 24;
+
+
+	/**
+	 * The HMAC hash function.
+	 */
+	private final PRF prf;
+
+
+	/**
+	 * The iteration count.
+	 */
+	private final int iterations;
+
+
+	/**
+	 * Creates a new PBKDF2 'x' routine.
+	 *
+	 * @param prf        The HMAC hash function. Must not be {@code null}.
+	 * @param iterations The iteration count, from 1 to
+	 *                   {@link #MAX_ITERATIONS}.
+	 */
+	public PBKDF2XRoutine(final PRF prf, final int iterations) {
+
+		this(prf, iterations, new ThreadLocalRandomSource());
+	}
+
+
+	/**
+	 * Creates a new PBKDF2 'x' routine.
+	 *
+	 * @param prf          The HMAC hash function. Must not be
+	 *                     {@code null}.
+	 * @param iterations   The iteration count, from 1 to
+	 *                     {@link #MAX_ITERATIONS}.
+	 * @param randomSource The source of randomness for salts. Must not be
+	 *                     {@code null}.
+	 */
+	public PBKDF2XRoutine(final PRF prf, final int iterations, final RandomSource randomSource) {
+
+		super(ALGORITHM, randomSource, (ForkJoinPool) null);
+
+		if (prf == null)
+			throw new IllegalArgumentException("The PRF must not be null");
+
+		this.prf = prf;
+
+		if (iterations < 1 || iterations > MAX_ITERATIONS)
+			throw new IllegalArgumentException("The iteration count must be between 1 and " + MAX_ITERATIONS);
+
+		this.iterations = iterations;
+	}
+
+
+	/**
+	 * Gets the HMAC hash function.
+	 *
+	 * @return The HMAC hash function.
+	 */
+	public PRF getPRF() {
+
+		return prf;
+	}
+
+
+	/**
+	 * Gets the iteration count.
+	 *
+	 * @return The iteration count.
+	 */
+	public int getIterations() {
+
+		return iterations;
+	}
+
+
+	@Override
+	protected int getParametersLength() {
+
+		return 1 + 4;
+	}
+
+
+	@Override
+	protected void writeParameters(final ByteBuffer out) {
+
+		out.put((byte) prf.ordinal());
+		out.putInt(iterations);
+	}
+
+
+	@Override
+	protected byte[] deriveKey(final ByteBuffer salt, final byte[] password, final int keyLength) {
+
+		final int prfOrdinal = salt.get();
+
+		if (prfOrdinal < 0 || prfOrdinal >= PRF.values().length)
+			throw new IllegalArgumentException("Unsupported PBKDF2 PRF");
+
+		final int c = salt.getInt();
+
+		if (c < 1 || c > MAX_ITERATIONS)
+			throw new IllegalArgumentException("The PBKDF2 iteration count must be between 1 and " + MAX_ITERATIONS);
+
+		return pbkdf2(PRF.values()[prfOrdinal], password, randomSalt(salt), c, keyLength);
+	}
+
+
+	/**
+	 * Computes PBKDF2.
+	 *
+	 * @param prf        The HMAC hash function.
+	 * @param password   The password.
+	 * @param salt       The salt.
+	 * @param iterations The iteration count.
+	 * @param keyLength  The key length in bytes.
+	 *
+	 * @return The derived key.
+	 */
+	static byte[] pbkdf2(final PRF prf,
+	                     final byte[] password,
+	                     final byte[] salt,
+	                     final int iterations,
+	                     final int keyLength) {
+
+		final Mac mac;
+
+		try {
+			mac = Mac.getInstance(prf.getAlgorithm());
+
+			// An empty key is not accepted by SecretKeySpec, but is
+			// equivalent to a single zero byte for HMAC
+			mac.init(new SecretKeySpec(password.length > 0 ? password : new byte[1], prf.getAlgorithm()));
+
+		} catch (GeneralSecurityException e) {
+
+			throw new IllegalStateException(prf.getAlgorithm() + " not supported: " + e.getMessage(), e);
+		}
+
+		final int hLen = mac.getMacLength();
+		final byte[] key = new byte[keyLength];
+		final byte[] u = new byte[hLen];
+		final byte[] t = new byte[hLen];
+
+		try {
+			for (int block = 1, offset = 0; offset < keyLength; block++, offset += hLen) {
+
+				mac.update(salt);
+				mac.update((byte) (block >>> 24));
+				mac.update((byte) (block >>> 16));
+				mac.update((byte) (block >>> 8));
+				mac.update((byte) block);
+				mac.doFinal(u, 0);
+
+				System.arraycopy(u, 0, t, 0, hLen);
+
+				for (int i = 1; i < iterations; i++) {
+
+					mac.update(u);
+					mac.doFinal(u, 0);
+
+					for (int j = 0; j < hLen; j++)
+						t[j] ^= u[j];
+				}
+
+				System.arraycopy(t, 0, key, offset, Math.min(hLen, keyLength - offset));
+			}
+
+		} catch (GeneralSecurityException e) {
+
+			throw new IllegalStateException("PBKDF2 failed: " + e.getMessage(), e);
+		}
+
+		return key;
+	}
+}
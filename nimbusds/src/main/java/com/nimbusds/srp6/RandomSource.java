@@ -0,0 +1,29 @@
+package com.nimbusds.srp6;
+
+
+import java.security.SecureRandom;
+
+
+/**
+ * Source of secure randomness for the SRP-6a private values 'a' and 'b' and
+ * for password salts 's'.
+ *
+ * <p>The default source is {@link ThreadLocalRandomSource}. An alternative
+ * source can be passed to the
+ * {@link SRP6Routines#SRP6Routines(ModularArithmetic, RandomSource) routines
+ * constructor}, which the sessions and verifier generators draw from.
+ *
+ * <p>Implementations must be thread-safe.
+ */
+public interface RandomSource {
+
+
+	/**
+	 * Returns a secure random number generator for use by the calling
+	 * thread. The returned instance should not be retained beyond the
+	 * current operation.
+	 *
+	 * @return The secure random number generator.
+	 */
+	public SecureRandom getSecureRandom();
+}
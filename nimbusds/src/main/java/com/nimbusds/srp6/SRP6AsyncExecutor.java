@@ -0,0 +1,565 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Runs the CPU-intensive SRP-6a session steps and verifier generation on a
+ * bounded thread pool, for callers on event loops or UI threads that must not
+ * block.
+ *
+ * <p>Each method submits the operation and returns immediately with a
+ * {@code Future}. The result is also passed to an optional
+ * {@link SRP6Callback} on the worker thread.
+ *
+ * <p>Back-pressure: the default pool has a bounded queue. When the queue is
+ * full the submitting methods throw a {@code RejectedExecutionException}
+ * rather than block the calling thread, so that the caller can shed the load,
+ * e.g. with an HTTP 503 response.
+ *
+ * <p>Sessions are not thread-safe. Submit the next step of a session only
+ * after the previous one has completed, e.g. from its callback.
+ *
+ * <p>Client step one is not offered as it only records the user credentials.
+ */
+public class SRP6AsyncExecutor {
+
+
+	/**
+	 * The executor service.
+	 */
+	private final ExecutorService executor;
+
+
+	/**
+	 * Creates a new asynchronous executor with its own thread pool of
+	 * daemon threads.
+	 *
+	 * @param threads       The number of worker threads, one or more.
+	 * @param queueCapacity The maximum number of queued operations, one
+	 *                      or more. Further submissions are rejected.
+	 */
+	public SRP6AsyncExecutor(final int threads, final int queueCapacity) {
+
+		this(newThreadPool(threads, queueCapacity));
+	}
+
+
+	/**
+	 * Creates a new asynchronous executor on the specified executor
+	 * service. The service should have a bounded queue for back-pressure.
+	 *
+	 * @param executor The executor service. Must not be {@code null}.
+	 */
+	public SRP6AsyncExecutor(final ExecutorService executor) {
+
+		if (executor == null)
+			throw new IllegalArgumentException("The executor service must not be null");
+
+		this.executor = executor;
+	}
+
+
+	/**
+	 * Creates a fixed thread pool with a bounded queue.
+	 *
+	 * @param threads       The number of worker threads.
+	 * @param queueCapacity The queue capacity.
+	 *
+	 * @return The thread pool.
+	 */
+	private static ExecutorService newThreadPool(final int threads, final int queueCapacity) {
+
+		if (threads < 1)
+			throw new IllegalArgumentException("The number of threads must be one or more");
+
+		if (queueCapacity < 1)
+			throw new IllegalArgumentException("The queue capacity must be one or more");
+
+		final AtomicInteger count = new AtomicInteger();
+
+		return new ThreadPoolExecutor(threads, threads,
+		                              0L, TimeUnit.MILLISECONDS,
+		                              new ArrayBlockingQueue<Runnable>(queueCapacity),
+		                              new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable r) {
+
+				Thread thread = new Thread(r, "SRP6AsyncExecutor-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+
+	/**
+	 * Gets the executor service.
+	 *
+	 * @return The executor service.
+	 */
+	public ExecutorService getExecutorService() {
+
+		return executor;
+	}
+
+
+	/**
+	 * Submits {@link SRP6ServerSession#step1 server step one}.
+	 *
+	 * @param session  The server session. Must not be {@code null}.
+	 * @param userID   The identity 'I' of the authenticating user.
+	 * @param s        The password salt 's'.
+	 * @param v        The password verifier 'v'.
+	 * @param callback Optional callback, {@code null} if not required.
+	 *
+	 * @return The future server public value 'B'.
+	 *
+	 * @throws RejectedExecutionException If the queue is full or the
+	 *                                    executor is shut down.
+	 */
+	public Future<BigInteger> serverStep1(final SRP6ServerSession session,
+	                                      final String userID,
+	                                      final BigInteger s,
+	                                      final BigInteger v,
+	                                      final SRP6Callback<BigInteger> callback) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The server session must not be null");
+
+		return submit(new Callable<BigInteger>() {
+
+			@Override
+			public BigInteger call() {
+
+				return session.step1(userID, s, v);
+			}
+
+		}, callback);
+	}
+
+
+	/**
+	 * Submits {@link SRP6ServerSession#step1(String, byte[], byte[])
+	 * server step one} with wire-format values.
+	 *
+	 * @param session  The server session. Must not be {@code null}.
+	 * @param userID   The identity 'I' of the authenticating user.
+	 * @param s        The password salt 's', as stored.
+	 * @param v        The password verifier 'v', as stored.
+	 * @param callback Optional callback, {@code null} if not required.
+	 *
+	 * @return The future server public value 'B', padded to the byte
+	 *         length of 'N'.
+	 *
+	 * @throws RejectedExecutionException If the queue is full or the
+	 *                                    executor is shut down.
+	 */
+	public Future<byte[]> serverStep1(final SRP6ServerSession session,
+	                                  final String userID,
+	                                  final byte[] s,
+	                                  final byte[] v,
+	                                  final SRP6Callback<byte[]> callback) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The server session must not be null");
+
+		return submit(new Callable<byte[]>() {
+
+			@Override
+			public byte[] call() {
+
+				return session.step1(userID, s, v);
+			}
+
+		}, callback);
+	}
+
+
+	/**
+	 * Submits {@link SRP6ServerSession#mockStep1 mock server step one},
+	 * for an unknown user identity.
+	 *
+	 * @param session  The server session. Must not be {@code null}.
+	 * @param userID   The identity 'I' of the authenticating user.
+	 * @param s        The mock password salt 's'.
+	 * @param v        The mock password verifier 'v'.
+	 * @param callback Optional callback, {@code null} if not required.
+	 *
+	 * @return The future server public value 'B'.
+	 *
+	 * @throws RejectedExecutionException If the queue is full or the
+	 *                                    executor is shut down.
+	 */
+	public Future<BigInteger> serverMockStep1(final SRP6ServerSession session,
+	                                          final String userID,
+	                                          final BigInteger s,
+	                                          final BigInteger v,
+	                                          final SRP6Callback<BigInteger> callback) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The server session must not be null");
+
+		return submit(new Callable<BigInteger>() {
+
+			@Override
+			public BigInteger call() {
+
+				return session.mockStep1(userID, s, v);
+			}
+
+		}, callback);
+	}
+
+
+	/**
+	 * Submits {@link SRP6ServerSession#mockStep1(String, byte[], byte[])
+	 * mock server step one} with wire-format values, for an unknown user
+	 * identity.
+	 *
+	 * @param session  The server session. Must not be {@code null}.
+	 * @param userID   The identity 'I' of the authenticating user.
+	 * @param s        The mock password salt 's'.
+	 * @param v        The mock password verifier 'v'.
+	 * @param callback Optional callback, {@code null} if not required.
+	 *
+	 * @return The future server public value 'B', padded to the byte
+	 *         length of 'N'.
+	 *
+	 * @throws RejectedExecutionException If the queue is full or the
+	 *                                    executor is shut down.
+	 */
+	public Future<byte[]> serverMockStep1(final SRP6ServerSession session,
+	                                      final String userID,
+	                                      final byte[] s,
+	                                      final byte[] v,
+	                                      final SRP6Callback<byte[]> callback) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The server session must not be null");
+
+		return submit(new Callable<byte[]>() {
+
+			@Override
+			public byte[] call() {
+
+				return session.mockStep1(userID, s, v);
+			}
+
+		}, callback);
+	}
+
+
+	/**
+	 * Submits {@link SRP6ServerSession#step2 server step two}.
+	 *
+	 * @param session  The server session. Must not be {@code null}.
+	 * @param A        The client public value.
+	 * @param M1       The client evidence message.
+	 * @param callback Optional callback, {@code null} if not required.
+	 *
+	 * @return The future server evidence message 'M2'.
+	 *
+	 * @throws RejectedExecutionException If the queue is full or the
+	 *                                    executor is shut down.
+	 */
+	public Future<BigInteger> serverStep2(final SRP6ServerSession session,
+	                                      final BigInteger A,
+	                                      final BigInteger M1,
+	                                      final SRP6Callback<BigInteger> callback) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The server session must not be null");
+
+		return submit(new Callable<BigInteger>() {
+
+			@Override
+			public BigInteger call()
+				throws SRP6Exception {
+
+				return session.step2(A, M1);
+			}
+
+		}, callback);
+	}
+
+
+	/**
+	 * Submits {@link SRP6ServerSession#step2(byte[], byte[]) server step
+	 * two} with wire-format values.
+	 *
+	 * @param session  The server session. Must not be {@code null}.
+	 * @param A        The client public value, as received.
+	 * @param M1       The client evidence message, as received.
+	 * @param callback Optional callback, {@code null} if not required.
+	 *
+	 * @return The future server evidence message 'M2', of the digest
+	 *         length.
+	 *
+	 * @throws RejectedExecutionException If the queue is full or the
+	 *                                    executor is shut down.
+	 */
+	public Future<byte[]> serverStep2(final SRP6ServerSession session,
+	                                  final byte[] A,
+	                                  final byte[] M1,
+	                                  final SRP6Callback<byte[]> callback) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The server session must not be null");
+
+		return submit(new Callable<byte[]>() {
+
+			@Override
+			public byte[] call()
+				throws SRP6Exception {
+
+				return session.step2(A, M1);
+			}
+
+		}, callback);
+	}
+
+
+	/**
+	 * Submits {@link SRP6ClientSession#step2 client step two}.
+	 *
+	 * @param session  The client session. Must not be {@code null}.
+	 * @param config   The SRP-6a crypto parameters.
+	 * @param s        The password salt 's'.
+	 * @param B        The public server value 'B'.
+	 * @param callback Optional callback, {@code null} if not required.
+	 *
+	 * @return The future client credentials.
+	 *
+	 * @throws RejectedExecutionException If the queue is full or the
+	 *                                    executor is shut down.
+	 */
+	public Future<SRP6ClientCredentials> clientStep2(final SRP6ClientSession session,
+	                                                 final SRP6CryptoParams config,
+	                                                 final BigInteger s,
+	                                                 final BigInteger B,
+	                                                 final SRP6Callback<SRP6ClientCredentials> callback) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The client session must not be null");
+
+		return submit(new Callable<SRP6ClientCredentials>() {
+
+			@Override
+			public SRP6ClientCredentials call()
+				throws SRP6Exception {
+
+				return session.step2(config, s, B);
+			}
+
+		}, callback);
+	}
+
+
+	/**
+	 * Submits {@link SRP6ClientSession#step2(SRP6CryptoParams, byte[], byte[])
+	 * client step two} with wire-format values.
+	 *
+	 * @param session  The client session. Must not be {@code null}.
+	 * @param config   The SRP-6a crypto parameters.
+	 * @param s        The password salt 's', as received.
+	 * @param B        The public server value 'B', as received.
+	 * @param callback Optional callback, {@code null} if not required.
+	 *
+	 * @return The future client credentials.
+	 *
+	 * @throws RejectedExecutionException If the queue is full or the
+	 *                                    executor is shut down.
+	 */
+	public Future<SRP6ClientCredentials> clientStep2(final SRP6ClientSession session,
+	                                                 final SRP6CryptoParams config,
+	                                                 final byte[] s,
+	                                                 final byte[] B,
+	                                                 final SRP6Callback<SRP6ClientCredentials> callback) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The client session must not be null");
+
+		return submit(new Callable<SRP6ClientCredentials>() {
+
+			@Override
+			public SRP6ClientCredentials call()
+				throws SRP6Exception {
+
+				return session.step2(config, s, B);
+			}
+
+		}, callback);
+	}
+
+
+	/**
+	 * Submits {@link SRP6ClientSession#step3 client step three}.
+	 *
+	 * @param session  The client session. Must not be {@code null}.
+	 * @param M2       The server evidence message 'M2'.
+	 * @param callback Optional callback, {@code null} if not required.
+	 *
+	 * @return The future completion, with a {@code null} result.
+	 *
+	 * @throws RejectedExecutionException If the queue is full or the
+	 *                                    executor is shut down.
+	 */
+	public Future<Void> clientStep3(final SRP6ClientSession session,
+	                                final BigInteger M2,
+	                                final SRP6Callback<Void> callback) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The client session must not be null");
+
+		return submit(new Callable<Void>() {
+
+			@Override
+			public Void call()
+				throws SRP6Exception {
+
+				session.step3(M2);
+				return null;
+			}
+
+		}, callback);
+	}
+
+
+	/**
+	 * Submits {@link SRP6ClientSession#step3(byte[]) client step three}
+	 * with a wire-format value.
+	 *
+	 * @param session  The client session. Must not be {@code null}.
+	 * @param M2       The server evidence message 'M2', as received.
+	 * @param callback Optional callback, {@code null} if not required.
+	 *
+	 * @return The future completion, with a {@code null} result.
+	 *
+	 * @throws RejectedExecutionException If the queue is full or the
+	 *                                    executor is shut down.
+	 */
+	public Future<Void> clientStep3(final SRP6ClientSession session,
+	                                final byte[] M2,
+	                                final SRP6Callback<Void> callback) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The client session must not be null");
+
+		return submit(new Callable<Void>() {
+
+			@Override
+			public Void call()
+				throws SRP6Exception {
+
+				session.step3(M2);
+				return null;
+			}
+
+		}, callback);
+	}
+
+
+	/**
+	 * Submits {@link SRP6VerifierGenerator#generateVerifier(BigInteger, String, String)
+	 * verifier generation}.
+	 *
+	 * @param generator The verifier generator. Must not be {@code null}.
+	 * @param salt      The salt 's'.
+	 * @param userID    The user identity 'I', {@code null} if not used.
+	 * @param password  The user password 'P'.
+	 * @param callback  Optional callback, {@code null} if not required.
+	 *
+	 * @return The future verifier 'v'.
+	 *
+	 * @throws RejectedExecutionException If the queue is full or the
+	 *                                    executor is shut down.
+	 */
+	public Future<BigInteger> generateVerifier(final SRP6VerifierGenerator generator,
+	                                           final BigInteger salt,
+	                                           final String userID,
+	                                           final String password,
+	                                           final SRP6Callback<BigInteger> callback) {
+
+		if (generator == null)
+			throw new IllegalArgumentException("The verifier generator must not be null");
+
+		return submit(new Callable<BigInteger>() {
+
+			@Override
+			public BigInteger call() {
+
+				return generator.generateVerifier(salt, userID, password);
+			}
+
+		}, callback);
+	}
+
+
+	/**
+	 * Shuts down the executor service. Submitted operations are
+	 * completed.
+	 */
+	public void shutdown() {
+
+		executor.shutdown();
+	}
+
+
+	/**
+	 * Submits an operation.
+	 *
+	 * @param operation The operation.
+	 * @param callback  Optional callback, {@code null} if not required.
+	 *
+	 * @return The future result.
+	 */
+	private <T> Future<T> submit(final Callable<T> operation, final SRP6Callback<T> callback) {
+
+		final FutureTask<T> task = new FutureTask<T>(operation) {
+
+			@Override
+			protected void done() {
+
+				if (callback == null)
+					return;
+
+				final T result;
+
+				try {
+					result = get();
+
+				} catch (ExecutionException e) {
+
+					callback.onFailure(e.getCause());
+					return;
+
+				} catch (CancellationException | InterruptedException e) {
+
+					callback.onFailure(e);
+					return;
+				}
+
+				callback.onSuccess(result);
+			}
+		};
+
+		executor.execute(task);
+
+		return task;
+	}
+}
@@ -0,0 +1,515 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Bulk generator of password verifier 'v' values, intended for user database
+ * imports and re-keying.
+ *
+ * <p>Entries are read from an iterator in chunks, the verifiers of each chunk
+ * are computed in parallel on a fork-join pool, and the results are passed
+ * to a {@link ResultHandler} on the calling thread, in input order, before
+ * the next chunk is read. Memory use is therefore bounded by the chunk size,
+ * regardless of the number of entries.
+ *
+ * <p>All workers share a fixed-base table for 'g' sized to the password key
+ * 'x', and each worker thread reuses its own message digest instance.
+ *
+ * <p>The verifiers v = g^x (mod N) are identical to those of
+ * {@link SRP6VerifierGenerator} with the same crypto parameters and 'x'
+ * routine; {@link SRP6Routines#computeVerifier} is bypassed in favour of the
+ * shared table.
+ */
+public class SRP6BatchVerifierGenerator {
+
+
+	/**
+	 * The default number of entries processed per chunk.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+
+	/**
+	 * The default byte length of generated salts.
+	 */
+	public static final int DEFAULT_SALT_LENGTH = 16;
+
+
+	/**
+	 * The number of entries below which a chunk is no longer split
+	 * between workers.
+	 */
+	private static final int SPLIT_THRESHOLD = 8;
+
+
+	/**
+	 * A verifier generation entry.
+	 */
+	public static final class Entry {
+
+
+		/**
+		 * The user identity 'I', {@code null} if not used by the 'x'
+		 * routine.
+		 */
+		public final byte[] userID;
+
+
+		/**
+		 * The user password 'P'.
+		 */
+		public final byte[] password;
+
+
+		/**
+		 * The salt 's', {@code null} to generate a random one.
+		 */
+		public final byte[] salt;
+
+
+		/**
+		 * Creates a new verifier generation entry.
+		 *
+		 * @param userID   The user identity 'I'. May be {@code null}
+		 *                 if the default 'x' routine is used or the
+		 *                 custom one ignores it.
+		 * @param password The user password 'P'. Must not be
+		 *                 {@code null}.
+		 * @param salt     The salt 's', {@code null} to generate a
+		 *                 random one.
+		 */
+		public Entry(final byte[] userID, final byte[] password, final byte[] salt) {
+
+			if (password == null)
+				throw new IllegalArgumentException("The password 'P' must not be null");
+
+			this.userID = userID;
+			this.password = password;
+			this.salt = salt;
+		}
+
+
+		/**
+		 * Creates a new verifier generation entry from UTF-8 encoded
+		 * strings.
+		 *
+		 * @param userID   The user identity 'I'. May be {@code null}
+		 *                 if the default 'x' routine is used or the
+		 *                 custom one ignores it.
+		 * @param password The user password 'P'. Must not be
+		 *                 {@code null}.
+		 * @param salt     The salt 's', {@code null} to generate a
+		 *                 random one.
+		 */
+		public Entry(final String userID, final String password, final BigInteger salt) {
+
+			this(userID != null ? userID.getBytes(UTF_8) : null,
+			     password != null ? password.getBytes(UTF_8) : null,
+			     salt != null ? BigIntegerUtils.bigIntegerToBytes(salt) : null);
+		}
+	}
+
+
+	/**
+	 * A verifier generation result.
+	 */
+	public static final class Result {
+
+
+		/**
+		 * The originating entry.
+		 */
+		public final Entry entry;
+
+
+		/**
+		 * The salt 's', as supplied by the entry or generated.
+		 */
+		public final byte[] salt;
+
+
+		/**
+		 * The verifier 'v'.
+		 */
+		public final BigInteger verifier;
+
+
+		/**
+		 * Creates a new verifier generation result.
+		 *
+		 * @param entry    The originating entry.
+		 * @param salt     The salt 's'.
+		 * @param verifier The verifier 'v'.
+		 */
+		private Result(final Entry entry, final byte[] salt, final BigInteger verifier) {
+
+			this.entry = entry;
+			this.salt = salt;
+			this.verifier = verifier;
+		}
+	}
+
+
+	/**
+	 * Receiver of verifier generation results.
+	 */
+	public interface ResultHandler {
+
+
+		/**
+		 * Handles a result. Invoked on the thread that called
+		 * {@link SRP6BatchVerifierGenerator#generate}, in input
+		 * order.
+		 *
+		 * @param result The result.
+		 */
+		public void handle(final Result result);
+	}
+
+
+	/**
+	 * UTF-8, for the string entry constructor.
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * The crypto configuration.
+	 */
+	private final SRP6CryptoParams config;
+
+
+	/**
+	 * The cryptographic routines.
+	 */
+	private final SRP6Routines srp6Routines;
+
+
+	/**
+	 * The fork-join pool, {@code null} to use a pool per batch.
+	 */
+	private final ForkJoinPool pool;
+
+
+	/**
+	 * Shared fixed-base table for 'g', sized to the digest length.
+	 */
+	private final FixedBaseExponentiator generatorTable;
+
+
+	/**
+	 * Per worker thread message digests.
+	 */
+	private final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+
+		@Override
+		protected MessageDigest initialValue() {
+
+			return config.getMessageDigestInstance();
+		}
+	};
+
+
+	/**
+	 * Custom routine for password key 'x' computation.
+	 */
+	private XRoutine xRoutine = null;
+
+
+	/**
+	 * The number of entries processed per chunk.
+	 */
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+
+	/**
+	 * The byte length of generated salts.
+	 */
+	private int saltLength = DEFAULT_SALT_LENGTH;
+
+
+	/**
+	 * Creates a new bulk generator of password verifier 'v' values which
+	 * runs each batch on its own fork-join pool with one worker per
+	 * available processor.
+	 *
+	 * @param config The SRP-6a crypto parameters configuration. Must not
+	 *               be {@code null}.
+	 */
+	public SRP6BatchVerifierGenerator(final SRP6CryptoParams config) {
+
+		this(config, new SRP6Routines(), null);
+	}
+
+
+	/**
+	 * Creates a new bulk generator of password verifier 'v' values.
+	 *
+	 * @param config       The SRP-6a crypto parameters configuration.
+	 *                     Must not be {@code null}.
+	 * @param srp6Routines The cryptographic routines. Must not be
+	 *                     {@code null}.
+	 * @param pool         The fork-join pool to run on, {@code null} to
+	 *                     run each batch on its own pool with one worker
+	 *                     per available processor.
+	 */
+	public SRP6BatchVerifierGenerator(final SRP6CryptoParams config,
+	                                  final SRP6Routines srp6Routines,
+	                                  final ForkJoinPool pool) {
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		this.config = config;
+
+		MessageDigest digest = config.getMessageDigestInstance();
+
+		if (digest == null)
+			throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + config.H);
+
+		if (srp6Routines == null)
+			throw new IllegalArgumentException("The SRP-6a routines must not be null");
+
+		this.srp6Routines = srp6Routines;
+
+		this.pool = pool;
+
+		// The default 'x' is a digest, size the table to it
+		generatorTable = new FixedBaseExponentiator(config.N,
+		                                            config.g,
+		                                            Math.min(digest.getDigestLength() * 8, config.N.bitLength()),
+		                                            FixedBaseExponentiator.DEFAULT_ROWS,
+		                                            FixedBaseExponentiator.DEFAULT_BLOCKS);
+	}
+
+
+	/**
+	 * Sets a custom routine for the password key 'x' computation. The
+	 * routine must be thread-safe.
+	 *
+	 * @param routine The password key 'x' routine or {@code null} to use
+	 *                the {@link SRP6Routines#computeX default one}
+	 *                instead.
+	 */
+	public void setXRoutine(final XRoutine routine) {
+
+		xRoutine = routine;
+	}
+
+
+	/**
+	 * Gets the custom routine for the password key 'x' computation.
+	 *
+	 * @return The routine instance or {@code null} if the default
+	 *         {@link SRP6Routines#computeX default one} is used.
+	 */
+	public XRoutine getXRoutine() {
+
+		return xRoutine;
+	}
+
+
+	/**
+	 * Sets the number of entries processed per chunk. Larger chunks keep
+	 * the workers busier at the cost of memory.
+	 *
+	 * @param chunkSize The chunk size, one or more.
+	 */
+	public void setChunkSize(final int chunkSize) {
+
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("The chunk size must be one or more");
+
+		this.chunkSize = chunkSize;
+	}
+
+
+	/**
+	 * Gets the number of entries processed per chunk.
+	 *
+	 * @return The chunk size.
+	 */
+	public int getChunkSize() {
+
+		return chunkSize;
+	}
+
+
+	/**
+	 * Sets the byte length of salts generated for entries without one.
+	 *
+	 * @param saltLength The salt length, one or more.
+	 */
+	public void setSaltLength(final int saltLength) {
+
+		if (saltLength < 1)
+			throw new IllegalArgumentException("The salt length must be one or more");
+
+		this.saltLength = saltLength;
+	}
+
+
+	/**
+	 * Gets the byte length of salts generated for entries without one.
+	 *
+	 * @return The salt length.
+	 */
+	public int getSaltLength() {
+
+		return saltLength;
+	}
+
+
+	/**
+	 * Generates the verifiers for the specified entries.
+	 *
+	 * @param entries The entries. Must not be {@code null}.
+	 * @param handler The result handler. Must not be {@code null}.
+	 *
+	 * @return The number of generated verifiers.
+	 */
+	public long generate(final Iterable<Entry> entries, final ResultHandler handler) {
+
+		if (entries == null)
+			throw new IllegalArgumentException("The entries must not be null");
+
+		return generate(entries.iterator(), handler);
+	}
+
+
+	/**
+	 * Generates the verifiers for the specified entries. The iterator is
+	 * consumed one chunk at a time.
+	 *
+	 * @param entries The entries. Must not be {@code null}.
+	 * @param handler The result handler. Must not be {@code null}.
+	 *
+	 * @return The number of generated verifiers.
+	 */
+	public long generate(final Iterator<Entry> entries, final ResultHandler handler) {
+
+		if (entries == null)
+			throw new IllegalArgumentException("The entries must not be null");
+
+		if (handler == null)
+			throw new IllegalArgumentException("The result handler must not be null");
+
+		final ForkJoinPool batchPool = pool != null ? pool : new ForkJoinPool();
+
+		try {
+			long count = 0;
+
+			final List<Entry> chunk = new ArrayList<>(chunkSize);
+
+			while (entries.hasNext()) {
+
+				chunk.clear();
+
+				while (chunk.size() < chunkSize && entries.hasNext())
+					chunk.add(entries.next());
+
+				final Result[] results = new Result[chunk.size()];
+
+				batchPool.invoke(new ChunkTask(chunk, results, 0, results.length));
+
+				for (Result result: results)
+					handler.handle(result);
+
+				count += results.length;
+			}
+
+			return count;
+
+		} finally {
+
+			if (pool == null)
+				batchPool.shutdown();
+		}
+	}
+
+
+	/**
+	 * Generates a single verifier.
+	 *
+	 * @param entry The entry.
+	 *
+	 * @return The result.
+	 */
+	private Result generate(final Entry entry) {
+
+		final byte[] salt = entry.salt != null ? entry.salt : srp6Routines.generateRandomSalt(saltLength);
+
+		final MessageDigest digest = digests.get();
+
+		final BigInteger x;
+
+		if (xRoutine != null) {
+			x = xRoutine.computeX(digest, salt, entry.userID, entry.password);
+		} else {
+			x = srp6Routines.computeX(digest, salt, entry.password);
+		}
+
+		digest.reset();
+
+		return new Result(entry, salt, generatorTable.modPow(x));
+	}
+
+
+	/**
+	 * Computes the results for a range of a chunk, splitting it between
+	 * workers.
+	 */
+	private class ChunkTask extends RecursiveAction {
+
+
+		private static final long serialVersionUID = 1L;
+
+
+		private final List<Entry> chunk;
+
+
+		private final Result[] results;
+
+
+		private final int from;
+
+
+		private final int to;
+
+
+		ChunkTask(final List<Entry> chunk, final Result[] results, final int from, final int to) {
+
+			this.chunk = chunk;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+
+		@Override
+		protected void compute() {
+
+			if (to - from <= SPLIT_THRESHOLD) {
+
+				for (int i = from; i < to; i++)
+					results[i] = generate(chunk.get(i));
+
+				return;
+			}
+
+			final int middle = (from + to) >>> 1;
+
+			invokeAll(new ChunkTask(chunk, results, from, middle),
+			          new ChunkTask(chunk, results, middle, to));
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package com.nimbusds.srp6;
+
+
+/**
+ * Callback for the result of an asynchronous SRP-6a operation submitted to an
+ * {@link SRP6AsyncExecutor}.
+ *
+ * @param <T> The result type.
+ */
+public interface SRP6Callback<T> {
+
+
+	/**
+	 * Invoked on the worker thread when the operation completes
+	 * successfully.
+	 *
+	 * @param result The result, {@code null} for operations without one.
+	 */
+	public void onSuccess(final T result);
+
+
+	/**
+	 * Invoked on the worker thread when the operation fails.
+	 *
+	 * @param cause The cause, typically an {@link SRP6Exception}, an
+	 *              {@code IllegalStateException} for a step invoked in
+	 *              the wrong session state or an
+	 *              {@code IllegalArgumentException} for bad input.
+	 */
+	public void onFailure(final Throwable cause);
+}
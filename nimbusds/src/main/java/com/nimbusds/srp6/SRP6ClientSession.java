@@ -5,6 +5,7 @@ import java.io.Serializable;
 import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.security.MessageDigest;
+import java.util.Arrays;
 
 
 /**
@@ -86,25 +87,43 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 	/**
 	 * The user password 'P'.
 	 */
-	private String password;
+	String password;
 	
 	
 	/**
 	 * The password key 'x'.
 	 */
-	private BigInteger x = null;
+	BigInteger x = null;
 	 
 	 
 	/**
 	 * The client private value 'a'.
 	 */
-	private BigInteger a = null;
+	BigInteger a = null;
+
+
+	/**
+	 * The known password verifier v = g^x, {@code null} if none.
+	 */
+	BigInteger v = null;
+
+
+	/**
+	 * The salt 's' of the known password verifier.
+	 */
+	byte[] verifierSalt = null;
+
+
+	/**
+	 * The crypto parameters of the known password verifier.
+	 */
+	SRP6CryptoParams verifierConfig = null;
 	
 	
 	/**
 	 * The current SRP-6a auth state.
 	 */
-	private State state;
+	State state;
 	
 	
 	/**
@@ -124,7 +143,25 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 	 */
 	public SRP6ClientSession(final int timeout) {
 	
-		super(timeout);
+		this(timeout, new SRP6Routines());
+	}
+	
+	
+	/**
+	 * Creates a new client-side SRP-6a authentication session and sets its 
+	 * state to {@link State#INIT}.
+	 *
+	 * @param timeout      The SRP-6a authentication session timeout in
+	 *                     seconds. If the authenticating counterparty
+	 *                     (server or client) fails to respond within the
+	 *                     specified time the session will be closed. If
+	 *                     zero timeouts are disabled.
+	 * @param srp6Routines The math routines to use. Must not be
+	 *                     {@code null}.
+	 */
+	public SRP6ClientSession(final int timeout, final SRP6Routines srp6Routines) {
+	
+		super(timeout, srp6Routines);
 		
 		state = State.INIT;
 		
@@ -208,6 +245,97 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 	}
 	
 	
+	/**
+	 * Precomputes the client private value 'a' and public value 'A' for
+	 * the expected SRP-6a crypto parameters, so that {@link #step2 step
+	 * two} only has to compute the session key once the server replies.
+	 * Call this method after {@link #step1 step one}, while waiting for
+	 * the server response. If step two receives crypto parameters with a
+	 * different 'N' or 'g' the values are computed again.
+	 *
+	 * <p>The values are taken from the {@link #setEphemeralPool ephemeral
+	 * value pool}, if set.
+	 *
+	 * @param config The expected SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#INIT} or
+	 *                               {@link State#STEP_1}.
+	 */
+	public void precompute(final SRP6CryptoParams config) {
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		if (state != State.INIT && state != State.STEP_1)
+			throw new IllegalStateException("State violation: Session must be in INIT or STEP_1 state");
+
+		this.config = config;
+
+		generateEphemeral();
+	}
+
+
+	/**
+	 * Sets the password verifier v = g^x (mod N) of the authenticating
+	 * user, as kept by the client from registration. If the server sends
+	 * the same salt 's' and crypto parameters at {@link #step2 step two},
+	 * the exponentiation g^x is skipped when computing the session key.
+	 * A verifier that doesn't match the password causes authentication
+	 * to fail.
+	 *
+	 * @param config The SRP-6a crypto parameters of the verifier. Must
+	 *               not be {@code null}.
+	 * @param salt   The salt 's' of the verifier, as passed to step two.
+	 *               Must not be {@code null}.
+	 * @param v      The password verifier 'v', {@code null} to clear it.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#INIT} or
+	 *                               {@link State#STEP_1}.
+	 */
+	public void setVerifier(final SRP6CryptoParams config, final byte[] salt, final BigInteger v) {
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		if (salt == null)
+			throw new IllegalArgumentException("The salt 's' must not be null");
+
+		if (state != State.INIT && state != State.STEP_1)
+			throw new IllegalStateException("State violation: Session must be in INIT or STEP_1 state");
+
+		verifierConfig = config;
+		verifierSalt = salt.clone();
+		this.v = v;
+	}
+
+
+	/**
+	 * Generates the client private value 'a' and public value 'A' for
+	 * the current crypto parameters, or takes them from the ephemeral
+	 * value pool.
+	 */
+	private void generateEphemeral() {
+
+		final long start = startTiming();
+
+		SRP6EphemeralPool.Ephemeral ephemeral = takeEphemeral();
+
+		if (ephemeral != null) {
+			a = ephemeral.privateValue;
+			A = srp6Routines.computePooledPublicClientValue(config, a, ephemeral.power);
+			recordPhase(SRP6Metrics.Phase.PRIVATE_VALUE, start);
+		} else {
+			a = generatePrivateValue();
+			final long t = recordPhase(SRP6Metrics.Phase.PRIVATE_VALUE, start);
+			A = srp6Routines.computePublicClientValue(config, a);
+			recordPhase(SRP6Metrics.Phase.PUBLIC_VALUE, t);
+		}
+	}
+	
+	
 	/**
 	 * Receives the password salt 's' and public value 'B' from the server.
 	 * The SRP-6a crypto parameters are also set. The session is incremented
@@ -237,9 +365,116 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 		throws SRP6Exception {
 	
 		// Check arguments
+		
+		if (s == null)
+			throw new IllegalArgumentException("The salt 's' must not be null");
+		
+		if (B == null)
+			throw new IllegalArgumentException("The public server value 'B' must not be null");
+		
+		return computeCredentials(config, s, BigIntegerUtils.bigIntegerToBytes(s), B, null);
+	}
+
+
+	/**
+	 * Receives the password salt 's' and public value 'B' from the server
+	 * as byte arrays, as received on the wire. The SRP-6a crypto
+	 * parameters are also set. The session is incremented to
+	 * {@link State#STEP_2}.
+	 *
+	 * <p>The salt bytes are input to the password key 'x' as they are,
+	 * like in {@link SRP6VerifierGenerator#generateVerifier(byte[],
+	 * byte[], byte[])}. 'B' is converted to a number only for the session
+	 * key computation, the hashing of 'u' and 'M1' uses the bytes as
+	 * received.
+	 *
+	 * <p>Argument origin:
+	 *
+	 * <ul>
+	 *     <li>From server: password salt 's', public value 'B'.
+	 *     <li>From server or pre-agreed: crypto parameters prime 'N',
+	 *         generator 'g' and hash function 'H'.
+	 * </ul>
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be {@code null}.
+	 * @param s      The password salt 's'. Must not be {@code null}.
+	 * @param B      The public server value 'B', as an unsigned big-endian
+	 *               byte array, padded or not. Must not be {@code null}.
+	 *
+	 * @return The client credentials consisting of the client public key
+	 *         'A' and the client evidence message 'M1'. Their padded byte
+	 *         forms are available from {@link #getPublicClientValueBytes}
+	 *         and {@link #getClientEvidenceMessageBytes}.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#STEP_1}.
+	 * @throws SRP6Exception         If the session has timed out or the
+	 *                               public server value 'B' is invalid.
+	 */
+	public SRP6ClientCredentials step2(final SRP6CryptoParams config, final byte[] s, final byte[] B)
+		throws SRP6Exception {
+
+		// Check arguments
+
+		if (s == null)
+			throw new IllegalArgumentException("The salt 's' must not be null");
+
+		if (B == null)
+			throw new IllegalArgumentException("The public server value 'B' must not be null");
+
+		return computeCredentials(config,
+		                          BigIntegerUtils.bigIntegerFromBytes(s), s,
+		                          BigIntegerUtils.bigIntegerFromBytes(B), B);
+	}
+
+
+	/**
+	 * Returns the known password verifier if it matches the specified
+	 * salt and crypto parameters, including the hash algorithm.
+	 *
+	 * @param config    The SRP-6a crypto parameters.
+	 * @param saltBytes The password salt 's' as input to 'x'.
+	 *
+	 * @return The password verifier 'v', {@code null} if not known.
+	 */
+	private BigInteger knownVerifier(final SRP6CryptoParams config, final byte[] saltBytes) {
+
+		if (v == null || ! Arrays.equals(verifierSalt, saltBytes))
+			return null;
+
+		if (! verifierConfig.N.equals(config.N) || ! verifierConfig.g.equals(config.g) ||
+		    ! verifierConfig.H.equalsIgnoreCase(config.H))
+			return null;
+
+		return v;
+	}
+
+
+	/**
+	 * Computes the client credentials at step two.
+	 *
+	 * @param config    The SRP-6a crypto parameters.
+	 * @param s         The password salt 's'.
+	 * @param saltBytes The password salt 's' as input to 'x'.
+	 * @param B         The public server value 'B'.
+	 * @param BBytes    The public server value 'B' as received,
+	 *                  {@code null} if received as a number.
+	 *
+	 * @return The client credentials.
+	 */
+	private SRP6ClientCredentials computeCredentials(final SRP6CryptoParams config,
+	                                                 final BigInteger s,
+	                                                 final byte[] saltBytes,
+	                                                 final BigInteger B,
+	                                                 final byte[] BBytes)
+		throws SRP6Exception {
+
 		if (config == null)
 			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
 
+		// Set by a previous precompute, if any
+		final SRP6CryptoParams precomputed = this.config;
+
 		this.config = config;
 		
 		MessageDigest digest = config.getMessageDigestInstance();
@@ -247,32 +482,27 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 		if (digest == null)
 			throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + config.H);
 		
-		
-		if (s == null)
-			throw new IllegalArgumentException("The salt 's' must not be null");
-			
 		this.s = s;
 		
-		
-		if (B == null)
-			throw new IllegalArgumentException("The public server value 'B' must not be null");
-		
 		this.B = B;
 		
 		
 		// Check current state
 		if (state != State.STEP_1)
 			throw new IllegalStateException("State violation: Session must be in STEP_1 state");
-		
+
+		final long start = startTiming();
 			
 		// Check timeout
 		if (hasTimedOut())
-			throw new SRP6Exception("Session timeout", SRP6Exception.CauseType.TIMEOUT);
+			throw recordFailure(SRP6Metrics.Step.CLIENT_STEP_2,
+				new SRP6Exception("Session timeout", SRP6Exception.CauseType.TIMEOUT));
 		
 		
 		// Check B validity
 		if (! srp6Routines.isValidPublicValue(config.N, B))
-			throw new SRP6Exception("Bad server public value 'B'", SRP6Exception.CauseType.BAD_PUBLIC_VALUE);
+			throw recordFailure(SRP6Metrics.Step.CLIENT_STEP_2,
+				new SRP6Exception("Bad server public value 'B'", SRP6Exception.CauseType.BAD_PUBLIC_VALUE));
 		
 		
 		// Compute the password key 'x'
@@ -280,36 +510,44 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 			
 			// With custom routine
 			x = xRoutine.computeX(config.getMessageDigestInstance(),
-						 BigIntegerUtils.bigIntegerToBytes(s),
+						 saltBytes,
 					     userID.getBytes(Charset.forName("UTF-8")),
 					     password.getBytes(Charset.forName("UTF-8")));
 					     
 		} else {
 			// With default routine
-			x = srp6Routines.computeX(digest, BigIntegerUtils.bigIntegerToBytes(s), password.getBytes(Charset.forName("UTF-8")));
+			x = srp6Routines.computeX(digest, saltBytes, password.getBytes(Charset.forName("UTF-8")));
 			digest.reset();
 		}
+
+		recordPhase(SRP6Metrics.Phase.X, start);
 		
-		// Generate client private and public values
-		a = srp6Routines.generatePrivateValue(config.N, random);
-		digest.reset();
-		
-		A = srp6Routines.computePublicClientValue(config.N, config.g, a);
+		// Generate client private and public values, unless precomputed
+		// for the same 'N' and 'g'
+		if (a == null || precomputed == null || ! precomputed.N.equals(config.N) || ! precomputed.g.equals(config.g))
+			generateEphemeral();
 		
 		
 		// Compute the session key
-		k = srp6Routines.computeK(digest, config.N, config.g);
-		digest.reset();
+		long t = startTiming();
+		k = srp6Routines.computeK(config);
+		t = recordPhase(SRP6Metrics.Phase.K, t);
 		
 		if (hashedKeysRoutine != null) {
 			URoutineContext hashedKeysContext = new URoutineContext(A, B);
 			u = hashedKeysRoutine.computeU(config, hashedKeysContext);
+		} else if (BBytes != null) {
+			u = srp6Routines.computeU(digest, config.N, BigIntegerUtils.bigIntegerToBytes(A), BBytes);
+			digest.reset();
 		} else {
 			u = srp6Routines.computeU(digest, config.N, A, B);
 			digest.reset();
 		}
 		
-		S = srp6Routines.computeSessionKey(config.N, config.g, k, x, u, a, B);
+		t = recordPhase(SRP6Metrics.Phase.U, t);
+
+		S = srp6Routines.computeSessionKey(config, k, x, knownVerifier(config, saltBytes), u, a, B);
+		t = recordPhase(SRP6Metrics.Phase.SESSION_KEY, t);
 		
 		// Compute the client evidence message
 		if (clientEvidenceRoutine != null) {
@@ -320,13 +558,21 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 
 		} else {
 			// With default routine
-			M1 = srp6Routines.computeClientEvidence(digest, A, B, S);
+			if (BBytes != null)
+				M1 = BigIntegerUtils.bigIntegerFromBytes(
+					srp6Routines.computeClientEvidenceBytes(digest, BigIntegerUtils.bigIntegerToBytes(A), BBytes, S));
+			else
+				M1 = srp6Routines.computeClientEvidence(digest, A, B, S);
 			digest.reset();
 		}
 
+		recordPhase(SRP6Metrics.Phase.CLIENT_EVIDENCE, t);
+
 		state = State.STEP_2;
 		
 		updateLastActivityTime();
+
+		recordSuccess(SRP6Metrics.Step.CLIENT_STEP_2, start);
 		
 		return new SRP6ClientCredentials(A, M1);
 	}
@@ -361,38 +607,102 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 			throw new IllegalArgumentException("The server evidence message 'M2' must not be null");
 	
 		this.M2 = M2;
+
+		verifyServerEvidence(M2, BigIntegerUtils.bigIntegerToBytes(M2));
+	}
+
+
+	/**
+	 * Receives the server evidence message 'M2' as a byte array of the
+	 * digest length of 'H'. The evidence is compared in constant time,
+	 * without conversion to a number. The session is incremented to
+	 * {@link State#STEP_3}.
+	 *
+	 * <p>Argument origin:
+	 *
+	 * <ul>
+	 * <li>From server: evidence message 'M2'.
+	 * </ul>
+	 *
+	 * @param M2 The server evidence message 'M2', as an unsigned
+	 *           big-endian byte array. Must not be {@code null}.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#STEP_2}.
+	 * @throws SRP6Exception         If the session has timed out or the
+	 *                               server evidence message 'M2' is
+	 *                               invalid.
+	 */
+	public void step3(final byte[] M2)
+		throws SRP6Exception {
+
+		// Check argument
+
+		if (M2 == null)
+			throw new IllegalArgumentException("The server evidence message 'M2' must not be null");
+
+		verifyServerEvidence(null, M2);
+	}
+
+
+	/**
+	 * Verifies the server evidence message 'M2'.
+	 *
+	 * @param M2      The server evidence message, {@code null} if
+	 *                received as a byte array only.
+	 * @param M2Bytes The server evidence message as an unsigned byte
+	 *                array.
+	 */
+	private void verifyServerEvidence(final BigInteger M2, final byte[] M2Bytes)
+		throws SRP6Exception {
 	
 		// Check current state
 		if (state != State.STEP_2)
 			throw new IllegalStateException("State violation: Session must be in STEP_2 state");
 		
+		final long start = startTiming();
+
 		// Check timeout
 		if (hasTimedOut())
-			throw new SRP6Exception("Session timeout", SRP6Exception.CauseType.TIMEOUT);
+			throw recordFailure(SRP6Metrics.Step.CLIENT_STEP_3,
+				new SRP6Exception("Session timeout", SRP6Exception.CauseType.TIMEOUT));
 	
 
 		// Compute the own server evidence message 'M2'
-		BigInteger computedM2;
+		MessageDigest digest = config.getMessageDigestInstance();
+
+		byte[] computedM2;
 		
 		if (serverEvidenceRoutine != null) {
 		
 			// With custom routine
 			SRP6ServerEvidenceContext ctx = new SRP6ServerEvidenceContext(A, M1, S);
 			
-			computedM2 = serverEvidenceRoutine.computeServerEvidence(config, ctx);
+			computedM2 = BigIntegerUtils.bigIntegerToBytes(serverEvidenceRoutine.computeServerEvidence(config, ctx),
+			                                               digest.getDigestLength());
 
 		} else {
 			// With default routine
-			MessageDigest digest = config.getMessageDigestInstance();
-			computedM2 = srp6Routines.computeServerEvidence(digest, A, M1, S);
+			computedM2 = srp6Routines.computeServerEvidenceBytes(digest, A, BigIntegerUtils.bigIntegerToBytes(M1), S);
 		}
 		
-		if (! computedM2.equals(M2))
-			throw new SRP6Exception("Bad server credentials", SRP6Exception.CauseType.BAD_CREDENTIALS);
+		// Constant-time comparison at the fixed width
+		final boolean badCredentials = ! SRP6Routines.constantTimeEquals(computedM2,
+			SRP6ServerSession.pad(M2Bytes, computedM2.length));
+
+		recordPhase(SRP6Metrics.Phase.SERVER_EVIDENCE, start);
+
+		if (badCredentials)
+			throw recordFailure(SRP6Metrics.Step.CLIENT_STEP_3,
+				new SRP6Exception("Bad server credentials", SRP6Exception.CauseType.BAD_CREDENTIALS));
+
+		this.M2 = M2 != null ? M2 : BigIntegerUtils.bigIntegerFromBytes(M2Bytes);
 
 		state = State.STEP_3;
 		
 		updateLastActivityTime();
+
+		recordSuccess(SRP6Metrics.Step.CLIENT_STEP_3, start);
 	}
 	
 	
@@ -5,6 +5,15 @@ import java.io.Serializable;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -19,6 +28,12 @@ import java.security.NoSuchAlgorithmException;
  * mathematically or by simple table lookup.
  *
  * <p>For convenience this class includes a set of precomputed parameters.
+ * The instances returned by {@link #getInstance(int, String)} are shared.
+ *
+ * <p>The values derived from 'N' and 'g', such as the padded byte arrays,
+ * the Montgomery constants and the fixed-base exponentiation table, are
+ * computed on first use and shared by all instances for a precomputed
+ * group, whatever their hash algorithm.
  *
  * @author Vladimir Dzhuvinov
  * @author Bernard Wittwer
@@ -75,12 +90,112 @@ public class SRP6CryptoParams implements Serializable {
 	public static final BigInteger N_2048 = new BigInteger("21766174458617435773191008891802753781907668374255538511144643224689886235383840957210909013086056401571399717235807266581649606472148410291413364152197364477180887395655483738115072677402235101762521901569820740293149529620419333266262073471054548368736039519702486226506248861060256971802984953561121442680157668000761429988222457090413873973970171927093992114751765168063614761119615476233422096442783117971236371647333871414335895773474667308967050807005509320424799678417036867928316761272274230314067548291133582479583061439577559347101961771406173684378522703483495337037655006751328447510550299250924469288819");
 
 
+	/**
+	 * Precomputed safe 3072-bit prime 'N', as decimal. Origin RFC 5054,
+	 * appendix A.
+	 */
+	public static final BigInteger N_3072 = new BigInteger("5809605995369958062791915965639201402176612226902900533702900882779736177890990861472094774477339581147373410185646378328043729800750470098210924487866935059164371588168047540943981644516632755067501626434556398193186628990071248660819361205119793693985433297036118232914410171876807536457391277857011849897410207519105333355801121109356897459426271845471397952675959440793493071628394122780510124618488232602464649876850458861245784240929258426287699705312584509625419513463605155428017165714465363094021609290561084025893662561222573202082865797821865270991145082200656978177192827024538990239969175546190770645685893438011714430426409338676314743571154537142031573004276428701433036381801705308659830751190352946025482059931306571004727362479688415574702596946457770284148435989129632853918392117997472632693078113129886487399347796982772784615865232621289656944284216824611318709764535152507354116344703769998514148343807");
+
+
+	/**
+	 * Precomputed safe 4096-bit prime 'N', as decimal. Origin RFC 5054,
+	 * appendix A.
+	 */
+	public static final BigInteger N_4096 = new BigInteger("1044388881413152506679602719846529545831269060992135009022588756444338172022322690710444046669809783930111585737890362691860127079270495454517218673016928427459146001866885779762982229321192368303346235204368051010309155674155697460347176946394076535157284994895284821633700921811716738972451834979455897010306333468590751358365138782250372269117968985194322444535687415522007151638638141456178420621277822674995027990278673458629544391736919766299005511505446177668154446234882665961680796576903199116089347634947187778906528008004756692571666922964122566174582776707332452371001272163776841229318324903125740713574141005124561965913888899753461735347970011693256316751660678950830027510255804846105583465055446615090444309583050775808509297040039680057435342253926566240898195863631588888936364129920059308455669454034010391478238784189888594672336242763795138176353222845524644040094258962433613354036104643881925238489224010194193088911666165584229424668165441688927790460608264864204237717002054744337988941974661214699689706521543006262604535890998125752275942608772174376107314217749233048217904944409836238235772306749874396760463376480215133461333478395682746608242585133953883882226786118030184028136755970045385534758453247");
+
+
+	/**
+	 * Precomputed safe 6144-bit prime 'N', as decimal. Origin RFC 5054,
+	 * appendix A.
+	 */
+	public static final BigInteger N_6144 = new BigInteger("33751521821438561184518523159967412330064897805741846548173890474429429901326672445203235101919165483964194359460994881062089387893762814044257438204432573941083014827006090258925875161018096327732335800595831915976014208822304007327848132734933297885803213675261564962603340457220776826322500058091310967253976619973988033663666385188155212656268079501726223369693427999804134467810120772356498596945532366527400517575471969335854905274504119509592366013711954148258884879224599915203456315881034776553083676995718335598586395591169999570824515035017543533352697525287753332500527176569576894926734950469293596134095086603716860086302051544539652689091299099784588919052383463057789440565460681441902442399956419060521629604697347879024654313800186078316526964529288062740879011035175920059192178561473199006205896719435014765345518490882366607110905303449152556221163232127426440691921134648766635695850239231304591744215610985029636895406718880766308249227315984267542266259489684372223916445411015900506239419267909716320331208988978180868987431623710347617992356201449023892203230133009421463914291201346063125219636964261683591541014344239275340735690997732222069758773963390876360546515755280517042160525487302898122311669799679447530453600399342697032714458549591285939453949034981248114322322367238645042515984447890788917823576330019151696568654314153058547592091366014550143819685170068343700104677609041166369760080933413605498962382077778845599834907475953430787446201384567328530675275792962354883770806900827183685718353469574731680520621944540947734619035177180057973022652571032196598229259194875709994709721793154158686515748507274224181316948797104601068212015232921691482496346854413698719750190601102705274481050543239815130686073601076304512284549218459846046082253596762433827419060089029417044871218316020923109988915707117567");
+
+
+	/**
+	 * Precomputed safe 8192-bit prime 'N', as decimal. Origin RFC 5054,
+	 * appendix A.
+	 */
+	public static final BigInteger N_8192 = new BigInteger("1090748135619415929450294929359784500348155124953172211774101106966150168922785639028532473848836817769712164169076432969224698752674677662739994265785437233596157045970922338040698100507861033047312331823982435279475700199860971612732540528796554502867919746776983759391475987142521315878719577519148811830879919426939958487087540965716419167467499326156226529675209172277001377591248147563782880558861083327174154014975134893125116015776318890295960698011614157721282527539468816519319333337503114777192360412281721018955834377615480468479252748867320362385355596601795122806756217713579819870634321561907813255153703950795271232652404894983869492174481652303803498881366210508647263668376514131031102336837488999775744046733651827239395353540348414872854639719294694323450186884189822544540647226987292160693184734654941906936646576130260972193280317171696418971553954161446191759093719524951116705577362073481319296041201283516154269044389257727700289684119460283480452306204130024913879981135908026983868205969318167819680850998649694416907952712904962404937775789698917207356355227455066183815847669135530549755439819480321732925869069136146085326382334628745456398071603058051634209386708703306545903199608523824513729625136659128221100967735450519952404248198262813831097374261650380017277916975324134846574681307337017380830353680623216336949471306191686438249305686413380231046096450953594089375540285037292470929395114028305547452584962074309438151825437902976012891749355198678420603722034900311364893046495761404333938686140037848030916292543273684533640032637639100774502371542479302473698388692892420946478947733800387782741417786484770190108867879778991633218628640533982619322466154883011452291890252336487236086654396093853898628805813177559162076363154436494477507871294119841637867701722166609831201845484078070518041336869808398454625586921201308185638888082699408686536045192649569198110353659943111802300636106509865023943661829436426563007917282050894429388841748885398290707743052973605359277515749619730823773215894755121761467887865327707115573804264519206349215850195195364813387526811742474131549802130246506341207020335797706780705406945275438806265978516209706795702579244075380490231741030862614968783306207869687868108423639971983209077624758080499988275591392787267627182442892809646874228263172435642368588260139161962836121481966092745325488641054238839295138992979335446110090325230955276870524611359124918392740353154294858383359");
+
+
 	/**
 	 * Generator 'g' parameter for {@link #N_256}, {@link #N_512}, 
 	 * {@link #N_768}, {@link #N_1024}, {@link #N_1536}, and
 	 * {@link #N_2048} as decimal.
 	 */
 	public static final BigInteger g_common = BigInteger.valueOf(2);
+
+
+	/**
+	 * Generator 'g' parameter for {@link #N_3072}, {@link #N_4096} and
+	 * {@link #N_6144} as decimal.
+	 */
+	public static final BigInteger g_large = BigInteger.valueOf(5);
+
+
+	/**
+	 * Generator 'g' parameter for {@link #N_8192} as decimal.
+	 */
+	public static final BigInteger g_8192 = BigInteger.valueOf(19);
+
+
+	/**
+	 * The precomputed groups, keyed by bitsize.
+	 */
+	private static final Map<Integer,Group> GROUPS;
+
+
+	static {
+		Map<Integer,Group> groups = new HashMap<>();
+		groups.put(256, new Group(N_256, g_common, true));
+		groups.put(512, new Group(N_512, g_common, true));
+		groups.put(768, new Group(N_768, g_common, true));
+		groups.put(1024, new Group(N_1024, g_common, true));
+		groups.put(1536, new Group(N_1536, g_common, true));
+		groups.put(2048, new Group(N_2048, g_common, true));
+		groups.put(3072, new Group(N_3072, g_large, true));
+		groups.put(4096, new Group(N_4096, g_large, true));
+		groups.put(6144, new Group(N_6144, g_large, true));
+		groups.put(8192, new Group(N_8192, g_8192, true));
+		GROUPS = Collections.unmodifiableMap(groups);
+	}
+
+
+	/**
+	 * The maximum number of cached groups for other than the precomputed
+	 * 'N' and 'g' values.
+	 */
+	private static final int MAX_CUSTOM_GROUPS = 16;
+
+
+	/**
+	 * The number of exponentiations g^e with a group for other than the
+	 * precomputed 'N' and 'g' values, after which its fixed-base table is
+	 * built. The table costs about as much as ten exponentiations.
+	 */
+	static final int CUSTOM_TABLE_THRESHOLD = 32;
+
+
+	/**
+	 * The recently used groups for other than the precomputed 'N' and 'g'
+	 * values, keyed by 'N' and 'g', in access order. Guarded by itself.
+	 */
+	private static final Map<List<BigInteger>,Group> CUSTOM_GROUPS =
+		new LinkedHashMap<List<BigInteger>,Group>(MAX_CUSTOM_GROUPS, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<List<BigInteger>,Group> eldest) {
+
+				return size() > MAX_CUSTOM_GROUPS;
+			}
+		};
+
+
+	/**
+	 * The shared instances for the precomputed groups, keyed by bitsize
+	 * and hash algorithm.
+	 */
+	private static final ConcurrentMap<String,SRP6CryptoParams> INSTANCES = new ConcurrentHashMap<>();
 	
 	
 	/**
@@ -99,6 +214,138 @@ public class SRP6CryptoParams implements Serializable {
 	 * The hash algorithm 'H'.
 	 */
 	public final String H;
+
+
+	/**
+	 * Initialised message digest for 'H' from which new instances are
+	 * cloned, {@code null} if not yet created or not cloneable.
+	 */
+	private transient volatile MessageDigest digestPrototype;
+
+
+	/**
+	 * Indicates that the message digest for 'H' doesn't support cloning
+	 * and new instances must be obtained from the provider.
+	 */
+	private transient volatile boolean digestNotCloneable;
+
+
+	/**
+	 * The values derived from 'N' and 'g', {@code null} if not yet
+	 * resolved after deserialisation.
+	 */
+	private transient volatile Group group;
+
+
+	/**
+	 * Lazily computed multiplier 'k'.
+	 */
+	private transient volatile BigInteger k;
+
+
+	/**
+	 * The values derived from a prime 'N' and generator 'g', computed on
+	 * first use.
+	 */
+	private static final class Group {
+
+
+		/**
+		 * The safe prime 'N'.
+		 */
+		final BigInteger N;
+
+
+		/**
+		 * The generator 'g'.
+		 */
+		final BigInteger g;
+
+
+		/**
+		 * The byte length of 'N'.
+		 */
+		final int padLength;
+
+
+		/**
+		 * Lazily computed 'N' as a byte array, padded to the byte
+		 * length of 'N'.
+		 */
+		volatile byte[] paddedN;
+
+
+		/**
+		 * Lazily computed 'g' as a byte array, padded to the byte
+		 * length of 'N'.
+		 */
+		volatile byte[] paddedG;
+
+
+		/**
+		 * Lazily computed Montgomery constants for 'N'.
+		 */
+		volatile MontgomeryModulus montgomeryModulus;
+
+
+		/**
+		 * Lazily computed fixed-base exponentiation table for 'g'.
+		 */
+		volatile FixedBaseExponentiator fixedBaseExponentiator;
+
+
+		/**
+		 * {@code true} for a precomputed group.
+		 */
+		final boolean precomputed;
+
+
+		/**
+		 * The number of exponentiations g^e without the table.
+		 */
+		final AtomicInteger plainExponentiations = new AtomicInteger();
+
+
+		Group(final BigInteger N, final BigInteger g, final boolean precomputed) {
+
+			this.N = N;
+			this.g = g;
+			padLength = (N.bitLength() + 7) / 8;
+			this.precomputed = precomputed;
+		}
+
+
+		/**
+		 * Returns the precomputed group for the specified values, else
+		 * a cached or new group.
+		 *
+		 * @param N The prime 'N'.
+		 * @param g The generator 'g'.
+		 *
+		 * @return The group.
+		 */
+		static Group of(final BigInteger N, final BigInteger g) {
+
+			Group group = GROUPS.get(N.bitLength());
+
+			if (group != null && group.N.equals(N) && group.g.equals(g))
+				return group;
+
+			final List<BigInteger> key = Arrays.asList(N, g);
+
+			synchronized (CUSTOM_GROUPS) {
+
+				group = CUSTOM_GROUPS.get(key);
+
+				if (group == null) {
+					group = new Group(N, g, false);
+					CUSTOM_GROUPS.put(key, group);
+				}
+
+				return group;
+			}
+		}
+	}
 	
 	
 	/**
@@ -106,12 +353,13 @@ public class SRP6CryptoParams implements Serializable {
 	 * and 'g' values and the specified hash algorithm 'H'.
 	 *
 	 * @param bitsize The preferred prime number bitsize. Must exist as a 
-	 *                precomputed constant.
+	 *                precomputed constant: 256, 512, 768, 1024, 1536,
+	 *                2048, 3072, 4096, 6144 or 8192.
 	 * @param H       The preferred hash algorithm. Must be supported by the 
 	 *                default security provider of the underlying Java 
 	 *                runtime.
 	 *
-	 * @return The matching SRP-6a crypto parameters instance, or
+	 * @return The matching shared SRP-6a crypto parameters instance, or
 	 *         {@code null} if no matching constants or hash algorithm
 	 *         provider could be found.
 	 */
@@ -119,27 +367,27 @@ public class SRP6CryptoParams implements Serializable {
 	
 		if (H == null || H.isEmpty())
 			throw new IllegalArgumentException("Undefined hash algorithm 'H'");
-			
-		if (bitsize == 256)
-			return new SRP6CryptoParams(N_256, g_common, H);
-		
-		else if (bitsize == 512)
-			return new SRP6CryptoParams(N_512, g_common, H);
-			
-		else if (bitsize == 768)
-			return new SRP6CryptoParams(N_768, g_common, H);
-			
-		else if (bitsize == 1024)
-			return new SRP6CryptoParams(N_1024, g_common, H);
 
-		else if (bitsize == 1536)
-			return new SRP6CryptoParams(N_1536, g_common, H);
+		final Group group = GROUPS.get(bitsize);
 
-		else if (bitsize == 2048)
-			return new SRP6CryptoParams(N_2048, g_common, H);
-		
-		else
+		if (group == null)
 			return null;
+
+		final String key = bitsize + ":" + H;
+
+		SRP6CryptoParams params = INSTANCES.get(key);
+
+		if (params == null) {
+
+			params = new SRP6CryptoParams(group, H);
+
+			SRP6CryptoParams existing = INSTANCES.putIfAbsent(key, params);
+
+			if (existing != null)
+				params = existing;
+		}
+
+		return params;
 	}
 	
 	
@@ -222,24 +470,282 @@ public class SRP6CryptoParams implements Serializable {
 			throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + H);
 		
 		this.H = H;
+
+		group = Group.of(N, g);
+	}
+
+
+	/**
+	 * Creates a new SRP-6a crypto parameters instance for a precomputed
+	 * group.
+	 *
+	 * @param group The precomputed group.
+	 * @param H     The hash algorithm.
+	 */
+	private SRP6CryptoParams(final Group group, final String H) {
+
+		this(group.N, group.g, H);
 	}
 	
 	
 	/**
 	 * Returns a new message digest instance for the hash algorithm 'H'.
 	 *
+	 * <p>The provider lookup is performed once; subsequent instances are
+	 * cloned from a pristine prototype, which avoids the synchronised
+	 * security provider lookup on every call. Digests that don't support
+	 * cloning are looked up each time.
+	 *
 	 * @return A new message digest instance or {@code null} if not 
 	 *         supported by the default security provider of the underlying
 	 *         Java runtime.
 	 */
 	public MessageDigest getMessageDigestInstance() {
+
+		MessageDigest prototype = digestPrototype;
+
+		if (prototype != null) {
+
+			try {
+				return (MessageDigest) prototype.clone();
+
+			} catch (CloneNotSupportedException e) {
+
+				// not expected, the prototype was checked on creation
+			}
+		}
 	
+		final MessageDigest digest;
+
 		try {
-			return MessageDigest.getInstance(H);
+			digest = MessageDigest.getInstance(H);
 		
 		} catch (NoSuchAlgorithmException e) {
 		
 			return null;
 		}
+
+		if (prototype == null && ! digestNotCloneable) {
+
+			try {
+				digestPrototype = (MessageDigest) digest.clone();
+
+			} catch (CloneNotSupportedException e) {
+
+				digestNotCloneable = true;
+			}
+		}
+
+		return digest;
+	}
+	
+	
+	/**
+	 * Returns the pad length for values of this group, i.e. the byte
+	 * length of 'N'.
+	 *
+	 * @return The pad length in bytes.
+	 */
+	public int getPadLength() {
+
+		return group().padLength;
+	}
+
+
+	/**
+	 * Returns the prime 'N' as a big-endian byte array, padded to
+	 * {@link #getPadLength}.
+	 *
+	 * @return A copy of the padded 'N'.
+	 */
+	public byte[] getPaddedN() {
+
+		return paddedN().clone();
+	}
+
+
+	/**
+	 * Returns the generator 'g' as a big-endian byte array, left-padded
+	 * with zeros to {@link #getPadLength}.
+	 *
+	 * @return A copy of the padded 'g'.
+	 */
+	public byte[] getPaddedG() {
+
+		return paddedG().clone();
+	}
+
+
+	/**
+	 * Returns the cached padded 'N' without copying. Must not be
+	 * modified.
+	 *
+	 * @return The padded 'N'.
+	 */
+	byte[] paddedN() {
+
+		final Group group = group();
+
+		byte[] result = group.paddedN;
+
+		if (result == null)
+			group.paddedN = result = pad(N);
+
+		return result;
+	}
+
+
+	/**
+	 * Returns the cached padded 'g' without copying. Must not be
+	 * modified.
+	 *
+	 * @return The padded 'g'.
+	 */
+	byte[] paddedG() {
+
+		final Group group = group();
+
+		byte[] result = group.paddedG;
+
+		if (result == null)
+			group.paddedG = result = pad(g);
+
+		return result;
+	}
+
+
+	/**
+	 * Returns the values derived from 'N' and 'g', resolving them after
+	 * deserialisation.
+	 *
+	 * @return The group.
+	 */
+	private Group group() {
+
+		Group result = group;
+
+		if (result == null)
+			group = result = Group.of(N, g);
+
+		return result;
+	}
+
+
+	/**
+	 * Pads the specified value to {@link #getPadLength}.
+	 *
+	 * @param value The value to pad. Must not be {@code null}.
+	 *
+	 * @return The padded value.
+	 */
+	private byte[] pad(final BigInteger value) {
+
+		final byte[] bytes = BigIntegerUtils.bigIntegerToBytes(value);
+		final int length = Math.max(getPadLength(), bytes.length);
+
+		byte[] padded = new byte[length];
+		System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+		return padded;
+	}
+
+
+	/**
+	 * Returns the SRP-6a multiplier k = H(N | PAD(g)) for these crypto
+	 * parameters. The value is computed on first use and cached, since it
+	 * depends only on 'N', 'g' and 'H'.
+	 *
+	 * <p>Specification: RFC 5054.
+	 *
+	 * @return The multiplier 'k'.
+	 */
+	public BigInteger getK() {
+
+		BigInteger result = k;
+
+		if (result == null) {
+
+			MessageDigest digest = getMessageDigestInstance();
+
+			if (digest == null)
+				throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + H);
+
+			digest.update(paddedN());
+			digest.update(paddedG());
+
+			k = result = BigIntegerUtils.bigIntegerFromBytes(digest.digest());
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Returns the Montgomery constants for the prime 'N', computed on
+	 * first use.
+	 *
+	 * @return The Montgomery modulus, {@code null} if 'N' is even.
+	 */
+	MontgomeryModulus getMontgomeryModulus() {
+
+		final Group group = group();
+
+		MontgomeryModulus result = group.montgomeryModulus;
+
+		if (result == null && MontgomeryModulus.isSupported(N))
+			group.montgomeryModulus = result = new MontgomeryModulus(N);
+
+		return result;
+	}
+
+
+	/**
+	 * Computes g^e (mod N) with the {@link #getFixedBaseExponentiator
+	 * fixed-base table}. For other than the precomputed 'N' and 'g'
+	 * values the table is only built once the group has been used for
+	 * {@link #CUSTOM_TABLE_THRESHOLD} exponentiations, until then
+	 * {@code BigInteger.modPow} is used, so that parameters created for a
+	 * single handshake don't pay for the table.
+	 *
+	 * @param e The exponent. Must not be {@code null}.
+	 *
+	 * @return The power g^e (mod N).
+	 */
+	BigInteger modPowG(final BigInteger e) {
+
+		final Group group = group();
+
+		if (group.fixedBaseExponentiator == null && ! group.precomputed &&
+		    group.plainExponentiations.incrementAndGet() <= CUSTOM_TABLE_THRESHOLD)
+			return g.modPow(e, N);
+
+		return getFixedBaseExponentiator().modPow(e);
+	}
+
+
+	/**
+	 * Returns the fixed-base exponentiator for the generator 'g' and
+	 * prime 'N' of these crypto parameters. The underlying table is
+	 * computed on first use and shared by all callers.
+	 *
+	 * @return The fixed-base exponentiator.
+	 */
+	public FixedBaseExponentiator getFixedBaseExponentiator() {
+
+		final Group group = group();
+
+		FixedBaseExponentiator result = group.fixedBaseExponentiator;
+
+		if (result == null) {
+
+			synchronized (group) {
+
+				result = group.fixedBaseExponentiator;
+
+				if (result == null)
+					group.fixedBaseExponentiator = result = new FixedBaseExponentiator(N, g);
+			}
+		}
+
+		return result;
 	}
 }
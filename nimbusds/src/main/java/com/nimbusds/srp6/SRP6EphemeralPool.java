@@ -0,0 +1,345 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Bounded pool of precomputed ephemeral SRP-6a values, pairs of a private
+ * value 'e' and its power g^e (mod N), for one set of crypto parameters.
+ *
+ * <p>The values do not depend on the user, so they can be computed ahead of
+ * time. A {@link #start started} pool is refilled by a daemon thread which
+ * blocks while the pool is full, so that the exponentiations run ahead of
+ * {@link SRP6ServerSession#step1 step one}. The thread has the minimum
+ * priority, which most schedulers treat as a hint only: it takes a core
+ * whenever the pool has room, also at peak load. Size the pool for the
+ * bursts to absorb. When the pool is empty {@link #take} computes a value on
+ * the calling thread and counts a miss.
+ *
+ * <p>If computing a value fails the refill thread ends, passing the
+ * exception to its uncaught exception handler, and the pool is no longer
+ * {@link #isStarted started}.
+ *
+ * <p>Set the pool on server sessions with
+ * {@link SRP6Session#setEphemeralPool}. Each value is handed out once. The
+ * sessions compute their public values from the pooled powers g^e, or with
+ * their own routines if these override the public value computation.
+ *
+ * <p>This class is thread-safe.
+ */
+public class SRP6EphemeralPool {
+
+
+	/**
+	 * A precomputed ephemeral value.
+	 */
+	public static final class Ephemeral {
+
+
+		/**
+		 * The private value 'e', to be used as 'a' or 'b'.
+		 */
+		public final BigInteger privateValue;
+
+
+		/**
+		 * The power g^e (mod N).
+		 */
+		public final BigInteger power;
+
+
+		/**
+		 * Creates a new ephemeral value.
+		 *
+		 * @param privateValue The private value 'e'.
+		 * @param power        The power g^e (mod N).
+		 */
+		private Ephemeral(final BigInteger privateValue, final BigInteger power) {
+
+			this.privateValue = privateValue;
+			this.power = power;
+		}
+	}
+
+
+	/**
+	 * The crypto parameters.
+	 */
+	private final SRP6CryptoParams config;
+
+
+	/**
+	 * The cryptographic routines.
+	 */
+	private final SRP6Routines srp6Routines;
+
+
+	/**
+	 * The pooled values.
+	 */
+	private final BlockingQueue<Ephemeral> queue;
+
+
+	/**
+	 * The maximum number of pooled values.
+	 */
+	private final int capacity;
+
+
+	/**
+	 * The number of values taken from the pool.
+	 */
+	private final AtomicLong hitCount = new AtomicLong();
+
+
+	/**
+	 * The number of values computed on take for an empty pool.
+	 */
+	private final AtomicLong missCount = new AtomicLong();
+
+
+	/**
+	 * The refill thread, {@code null} if not started. Guarded by this.
+	 */
+	private Thread refiller = null;
+
+
+	/**
+	 * Creates a new ephemeral value pool with the default routines. The
+	 * pool must be {@link #start started} or {@link #fill filled} to
+	 * hold values.
+	 *
+	 * @param config   The SRP-6a crypto parameters. Must not be
+	 *                 {@code null}.
+	 * @param capacity The maximum number of pooled values, one or more.
+	 */
+	public SRP6EphemeralPool(final SRP6CryptoParams config, final int capacity) {
+
+		this(config, capacity, new SRP6Routines());
+	}
+
+
+	/**
+	 * Creates a new ephemeral value pool. The pool must be
+	 * {@link #start started} or {@link #fill filled} to hold values.
+	 *
+	 * @param config       The SRP-6a crypto parameters. Must not be
+	 *                     {@code null}.
+	 * @param capacity     The maximum number of pooled values, one or
+	 *                     more.
+	 * @param srp6Routines The routines to generate the private values
+	 *                     with. Must not be {@code null}.
+	 */
+	public SRP6EphemeralPool(final SRP6CryptoParams config, final int capacity, final SRP6Routines srp6Routines) {
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		this.config = config;
+
+		if (capacity < 1)
+			throw new IllegalArgumentException("The capacity must be one or more");
+
+		this.capacity = capacity;
+
+		queue = new ArrayBlockingQueue<>(capacity);
+
+		if (srp6Routines == null)
+			throw new IllegalArgumentException("The SRP-6a routines must not be null");
+
+		this.srp6Routines = srp6Routines;
+	}
+
+
+	/**
+	 * Gets the SRP-6a crypto parameters.
+	 *
+	 * @return The crypto parameters.
+	 */
+	public SRP6CryptoParams getCryptoParams() {
+
+		return config;
+	}
+
+
+	/**
+	 * Checks if the values of this pool are valid for the specified
+	 * crypto parameters, i.e. they have the same 'N' and 'g'.
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 *
+	 * @return {@code true} if the values are valid for the crypto
+	 *         parameters, else {@code false}.
+	 */
+	public boolean supports(final SRP6CryptoParams config) {
+
+		return config == this.config || (config.N.equals(this.config.N) && config.g.equals(this.config.g));
+	}
+
+
+	/**
+	 * Computes a new ephemeral value.
+	 *
+	 * @return The ephemeral value.
+	 */
+	private Ephemeral compute() {
+
+		final BigInteger e = srp6Routines.generatePrivateValue(config.N);
+
+		return new Ephemeral(e, config.modPowG(e));
+	}
+
+
+	/**
+	 * Takes a value from the pool, or computes one if the pool is empty.
+	 *
+	 * @return The ephemeral value.
+	 */
+	public Ephemeral take() {
+
+		Ephemeral e = queue.poll();
+
+		if (e != null) {
+			hitCount.incrementAndGet();
+			return e;
+		}
+
+		missCount.incrementAndGet();
+		return compute();
+	}
+
+
+	/**
+	 * Fills the pool to its capacity on the calling thread, e.g. to warm
+	 * it up before taking load.
+	 */
+	public void fill() {
+
+		while (queue.remainingCapacity() > 0 && queue.offer(compute())) {
+			// continue
+		}
+	}
+
+
+	/**
+	 * Starts the background refill thread. Has no effect if already
+	 * started. Restarts the thread after it ended on a failed
+	 * computation.
+	 */
+	public synchronized void start() {
+
+		if (refiller != null)
+			return;
+
+		refiller = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+
+				try {
+					while (! Thread.currentThread().isInterrupted())
+						queue.put(compute());
+
+				} catch (InterruptedException e) {
+					// stopped
+
+				} finally {
+					// Also on a failed computation
+					stopped(Thread.currentThread());
+				}
+			}
+
+		}, "SRP6EphemeralPool-refill");
+
+		refiller.setDaemon(true);
+		refiller.setPriority(Thread.MIN_PRIORITY);
+		refiller.start();
+	}
+
+
+	/**
+	 * Stops the background refill thread. The pooled values remain
+	 * available. Has no effect if not started.
+	 */
+	public synchronized void stop() {
+
+		if (refiller == null)
+			return;
+
+		refiller.interrupt();
+		refiller = null;
+	}
+
+
+	/**
+	 * Clears the refill thread when it ends, unless already replaced.
+	 *
+	 * @param thread The ending refill thread.
+	 */
+	private synchronized void stopped(final Thread thread) {
+
+		if (refiller == thread)
+			refiller = null;
+	}
+
+
+	/**
+	 * Returns {@code true} if the background refill thread is started.
+	 *
+	 * @return {@code true} if started, else {@code false}.
+	 */
+	public synchronized boolean isStarted() {
+
+		return refiller != null;
+	}
+
+
+	/**
+	 * Gets the maximum number of pooled values.
+	 *
+	 * @return The capacity.
+	 */
+	public int getCapacity() {
+
+		return capacity;
+	}
+
+
+	/**
+	 * Gets the current number of pooled values.
+	 *
+	 * @return The pool depth.
+	 */
+	public int getDepth() {
+
+		return queue.size();
+	}
+
+
+	/**
+	 * Gets the number of values taken from the pool.
+	 *
+	 * @return The number of hits.
+	 */
+	public long getHitCount() {
+
+		return hitCount.get();
+	}
+
+
+	/**
+	 * Gets the number of values computed on take because the pool was
+	 * empty.
+	 *
+	 * @return The number of misses.
+	 */
+	public long getMissCount() {
+
+		return missCount.get();
+	}
+}
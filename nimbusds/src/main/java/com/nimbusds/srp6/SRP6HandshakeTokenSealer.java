@@ -0,0 +1,423 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/**
+ * Seals the state of server-side SRP-6a authentication sessions into
+ * encrypted and authenticated handshake tokens, for stateless servers.
+ *
+ * <p>Usage:
+ *
+ * <ul>
+ *     <li>After {@link SRP6ServerSession#step1 step one} {@link #seal seal}
+ *         the session and return the token to the client along with the salt
+ *         's' and the public server value 'B'. The session can then be
+ *         discarded.
+ *     <li>On receiving the client credentials together with the token, on
+ *         any server node sharing the secret key,
+ *         {@link #unseal unseal} the token with the password verifier 'v'
+ *         looked up again for the user and proceed to
+ *         {@link SRP6ServerSession#step2 step two}. Custom routines must be
+ *         set on the unsealed session as on the original one.
+ * </ul>
+ *
+ * <p>The token carries the server private value 'b', the public server value
+ * 'B', the salt 's', the user identity 'I', a fingerprint of the verifier
+ * 'v', the timeout and the step one timestamp. The verifier itself is not
+ * included. The payload is encrypted with AES-CBC and authenticated with
+ * HMAC-SHA256 in encrypt-then-MAC mode, with keys derived from a shared
+ * secret.
+ *
+ * <p>A token may be unsealed repeatedly until it expires. Each use still
+ * requires proof of the password, but applications that need handshakes to
+ * be strictly single-use must record the tokens they have accepted.
+ *
+ * <p>This class is thread-safe.
+ */
+public class SRP6HandshakeTokenSealer {
+
+
+	/**
+	 * The current token version.
+	 */
+	public static final int VERSION = 1;
+
+
+	/**
+	 * The minimum secret key length, in bytes.
+	 */
+	public static final int MIN_KEY_LENGTH = 32;
+
+
+	/**
+	 * The AES block and IV length.
+	 */
+	private static final int IV_LENGTH = 16;
+
+
+	/**
+	 * The HMAC-SHA256 tag length.
+	 */
+	private static final int TAG_LENGTH = 32;
+
+
+	/**
+	 * The verifier fingerprint length.
+	 */
+	private static final int FINGERPRINT_LENGTH = 16;
+
+
+	/**
+	 * Flag for a session with a mock user identity.
+	 */
+	private static final int NO_SUCH_USER_IDENTITY = 1;
+
+
+	/**
+	 * UTF-8, for the user identity and key derivation labels.
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * The crypto parameters.
+	 */
+	private final SRP6CryptoParams config;
+
+
+	/**
+	 * The cryptographic routines for unsealed sessions.
+	 */
+	private final SRP6Routines srp6Routines;
+
+
+	/**
+	 * The maximum token age in seconds, for sessions without a timeout.
+	 */
+	private final int defaultTimeout;
+
+
+	/**
+	 * The AES encryption key.
+	 */
+	private final SecretKeySpec encryptionKey;
+
+
+	/**
+	 * The HMAC-SHA256 key.
+	 */
+	private final SecretKeySpec macKey;
+
+
+	/**
+	 * Per thread ciphers.
+	 */
+	private final ThreadLocal<Cipher> ciphers = new ThreadLocal<Cipher>() {
+
+		@Override
+		protected Cipher initialValue() {
+
+			try {
+				return Cipher.getInstance("AES/CBC/PKCS5Padding");
+
+			} catch (GeneralSecurityException e) {
+
+				throw new IllegalStateException("AES/CBC/PKCS5Padding not supported: " + e.getMessage(), e);
+			}
+		}
+	};
+
+
+	/**
+	 * Per thread MACs.
+	 */
+	private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+
+		@Override
+		protected Mac initialValue() {
+
+			return newMac(macKey);
+		}
+	};
+
+
+	/**
+	 * Creates a new handshake token sealer. Unsealed sessions use the
+	 * default routines.
+	 *
+	 * @param config         The SRP-6a crypto parameters. Must not be
+	 *                       {@code null}.
+	 * @param key            The secret key shared by the server nodes, at
+	 *                       least {@link #MIN_KEY_LENGTH} random bytes.
+	 * @param defaultTimeout The maximum token age in seconds for sessions
+	 *                       without a timeout of their own, one or more.
+	 */
+	public SRP6HandshakeTokenSealer(final SRP6CryptoParams config,
+	                                final byte[] key,
+	                                final int defaultTimeout) {
+
+		this(config, key, defaultTimeout, new SRP6Routines());
+	}
+
+
+	/**
+	 * Creates a new handshake token sealer.
+	 *
+	 * @param config         The SRP-6a crypto parameters. Must not be
+	 *                       {@code null}.
+	 * @param key            The secret key shared by the server nodes, at
+	 *                       least {@link #MIN_KEY_LENGTH} random bytes.
+	 * @param defaultTimeout The maximum token age in seconds for sessions
+	 *                       without a timeout of their own, one or more.
+	 * @param srp6Routines   The math routines for sealing and unsealed
+	 *                       sessions. Must not be {@code null}.
+	 */
+	public SRP6HandshakeTokenSealer(final SRP6CryptoParams config,
+	                                final byte[] key,
+	                                final int defaultTimeout,
+	                                final SRP6Routines srp6Routines) {
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		this.config = config;
+
+		if (config.getMessageDigestInstance() == null)
+			throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + config.H);
+
+		if (key == null || key.length < MIN_KEY_LENGTH)
+			throw new IllegalArgumentException("The secret key must be at least " + MIN_KEY_LENGTH + " bytes long");
+
+		if (defaultTimeout < 1)
+			throw new IllegalArgumentException("The default timeout must be one or more");
+
+		this.defaultTimeout = defaultTimeout;
+
+		if (srp6Routines == null)
+			throw new IllegalArgumentException("The SRP-6a routines must not be null");
+
+		this.srp6Routines = srp6Routines;
+
+		// Derive separate keys for encryption and authentication
+		Mac kdf = newMac(new SecretKeySpec(key, "HmacSHA256"));
+
+		encryptionKey = new SecretKeySpec(Arrays.copyOf(kdf.doFinal("SRP-6a token encryption".getBytes(UTF_8)), 16), "AES");
+		macKey = new SecretKeySpec(kdf.doFinal("SRP-6a token authentication".getBytes(UTF_8)), "HmacSHA256");
+	}
+
+
+	/**
+	 * Creates a new HMAC-SHA256 instance.
+	 *
+	 * @param key The key.
+	 *
+	 * @return The MAC.
+	 */
+	private static Mac newMac(final SecretKeySpec key) {
+
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(key);
+			return mac;
+
+		} catch (GeneralSecurityException e) {
+
+			throw new IllegalStateException("HmacSHA256 not supported: " + e.getMessage(), e);
+		}
+	}
+
+
+	/**
+	 * Gets the SRP-6a crypto parameters.
+	 *
+	 * @return The crypto parameters.
+	 */
+	public SRP6CryptoParams getCryptoParams() {
+
+		return config;
+	}
+
+
+	/**
+	 * Seals a server session after step one into a handshake token.
+	 *
+	 * @param session The server session, in {@link SRP6ServerSession.State#STEP_1}
+	 *                and with the crypto parameters of this sealer. Must
+	 *                not be {@code null}.
+	 *
+	 * @return The handshake token.
+	 */
+	public byte[] seal(final SRP6ServerSession session) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The server session must not be null");
+
+		if (session.getState() != SRP6ServerSession.State.STEP_1)
+			throw new IllegalStateException("State violation: Session must be in STEP_1 state");
+
+		if (! session.config.N.equals(config.N) || ! session.config.g.equals(config.g) || ! session.config.H.equals(config.H))
+			throw new IllegalArgumentException("The session crypto parameters don't match those of the sealer");
+
+		final byte[] userID = session.userID.getBytes(UTF_8);
+		final byte[] salt = session.s.toByteArray();
+		final int padLength = config.getPadLength();
+
+		final ByteBuffer plaintext = ByteBuffer.allocate(1 + 4 + 8 + FINGERPRINT_LENGTH +
+		                                                 2 + userID.length + 2 + salt.length +
+		                                                 2 * padLength);
+
+		plaintext.put((byte) (session.noSuchUserIdentity ? NO_SUCH_USER_IDENTITY : 0));
+		plaintext.putInt(session.getTimeout());
+		plaintext.putLong(session.getLastActivityTime());
+		plaintext.put(fingerprint(session.v));
+		SRP6SessionCodec.putBytes(plaintext, userID);
+		SRP6SessionCodec.putBytes(plaintext, salt);
+		SRP6SessionCodec.putFixed(plaintext, session.b, padLength);
+		SRP6SessionCodec.putFixed(plaintext, session.B, padLength);
+
+		final byte[] iv = new byte[IV_LENGTH];
+		srp6Routines.getRandomSource().getSecureRandom().nextBytes(iv);
+
+		final byte[] ciphertext;
+
+		try {
+			Cipher cipher = ciphers.get();
+			cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+			ciphertext = cipher.doFinal(plaintext.array());
+
+		} catch (GeneralSecurityException e) {
+
+			throw new IllegalStateException("Token encryption failed: " + e.getMessage(), e);
+		}
+
+		final ByteBuffer token = ByteBuffer.allocate(1 + IV_LENGTH + ciphertext.length + TAG_LENGTH);
+		token.put((byte) VERSION);
+		token.put(iv);
+		token.put(ciphertext);
+
+		final Mac mac = macs.get();
+		mac.update(token.array(), 0, token.position());
+		token.put(mac.doFinal());
+
+		return token.array();
+	}
+
+
+	/**
+	 * Unseals a handshake token into a server session ready for step two.
+	 *
+	 * @param token The handshake token. Must not be {@code null}.
+	 * @param v     The password verifier 'v' of the user, as looked up
+	 *              for step one. Must not be {@code null}.
+	 *
+	 * @return The server session, in
+	 *         {@link SRP6ServerSession.State#STEP_1}.
+	 *
+	 * @throws SRP6Exception If the token is invalid, was issued for
+	 *                       another verifier or has expired.
+	 */
+	public SRP6ServerSession unseal(final byte[] token, final BigInteger v)
+		throws SRP6Exception {
+
+		if (token == null)
+			throw new IllegalArgumentException("The handshake token must not be null");
+
+		if (v == null)
+			throw new IllegalArgumentException("The verifier 'v' must not be null");
+
+		if (token.length < 1 + IV_LENGTH + IV_LENGTH + TAG_LENGTH || token[0] != VERSION)
+			throw new SRP6Exception("Bad handshake token", SRP6Exception.CauseType.BAD_CREDENTIALS);
+
+		final int tagOffset = token.length - TAG_LENGTH;
+
+		final Mac mac = macs.get();
+		mac.update(token, 0, tagOffset);
+
+		if (! SRP6Routines.constantTimeEquals(mac.doFinal(), Arrays.copyOfRange(token, tagOffset, token.length)))
+			throw new SRP6Exception("Bad handshake token", SRP6Exception.CauseType.BAD_CREDENTIALS);
+
+		final ByteBuffer plaintext;
+
+		try {
+			Cipher cipher = ciphers.get();
+			cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(token, 1, IV_LENGTH));
+			plaintext = ByteBuffer.wrap(cipher.doFinal(token, 1 + IV_LENGTH, tagOffset - 1 - IV_LENGTH));
+
+		} catch (GeneralSecurityException e) {
+
+			// Authenticated, hence sealed with another key or code
+			throw new SRP6Exception("Bad handshake token", SRP6Exception.CauseType.BAD_CREDENTIALS);
+		}
+
+		final int padLength = config.getPadLength();
+
+		final SRP6ServerSession session;
+		final byte[] fingerprint = new byte[FINGERPRINT_LENGTH];
+
+		try {
+			final int flags = plaintext.get();
+
+			session = new SRP6ServerSession(config, plaintext.getInt(), srp6Routines);
+			session.lastActivity = plaintext.getLong();
+			plaintext.get(fingerprint);
+			session.userID = new String(SRP6SessionCodec.getBytes(plaintext), UTF_8);
+			session.s = new BigInteger(SRP6SessionCodec.getBytes(plaintext));
+			session.b = SRP6SessionCodec.getFixed(plaintext, padLength);
+			session.B = SRP6SessionCodec.getFixed(plaintext, padLength);
+			session.noSuchUserIdentity = (flags & NO_SUCH_USER_IDENTITY) != 0;
+
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+
+			throw new SRP6Exception("Bad handshake token", SRP6Exception.CauseType.BAD_CREDENTIALS);
+		}
+
+		final int timeout = session.getTimeout() > 0 ? session.getTimeout() : defaultTimeout;
+
+		if (System.currentTimeMillis() > session.getLastActivityTime() + timeout * 1000L)
+			throw new SRP6Exception("Session timeout", SRP6Exception.CauseType.TIMEOUT);
+
+		if (! SRP6Routines.constantTimeEquals(fingerprint, fingerprint(v)))
+			throw new SRP6Exception("Bad handshake token", SRP6Exception.CauseType.BAD_CREDENTIALS);
+
+		session.v = v;
+		session.k = srp6Routines.computeK(config);
+		session.state = SRP6ServerSession.State.STEP_1;
+
+		return session;
+	}
+
+
+	/**
+	 * Computes the fingerprint of a verifier, the leading bytes of
+	 * H(PAD(N) | PAD(g) | PAD(v)).
+	 *
+	 * @param v The verifier 'v'.
+	 *
+	 * @return The fingerprint.
+	 */
+	private byte[] fingerprint(final BigInteger v) {
+
+		if (v.signum() < 0)
+			throw new IllegalArgumentException("The verifier 'v' must not be negative");
+
+		MessageDigest digest = config.getMessageDigestInstance();
+		digest.update(config.paddedN());
+		digest.update(config.paddedG());
+		SRP6Routines.updatePadded(digest, v, Math.max(config.getPadLength(), (v.bitLength() + 7) / 8));
+
+		return Arrays.copyOf(digest.digest(), FINGERPRINT_LENGTH);
+	}
+}
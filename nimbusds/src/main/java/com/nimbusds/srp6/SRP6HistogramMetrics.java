@@ -0,0 +1,157 @@
+package com.nimbusds.srp6;
+
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * In-process SRP-6a metrics, with a {@link SRP6LatencyHistogram latency
+ * histogram} for each computation phase and each successful step, and
+ * outcome counters for each step by {@link SRP6Exception.CauseType cause
+ * type}.
+ *
+ * <p>Share one instance between all sessions and scrape it periodically,
+ * e.g. from a metrics exporter.
+ *
+ * <p>This class is thread-safe.
+ */
+public class SRP6HistogramMetrics implements SRP6Metrics {
+
+
+	/**
+	 * The phase latency histograms.
+	 */
+	private final Map<Phase,SRP6LatencyHistogram> phases = new EnumMap<>(Phase.class);
+
+
+	/**
+	 * The successful step latency histograms.
+	 */
+	private final Map<Step,SRP6LatencyHistogram> steps = new EnumMap<>(Step.class);
+
+
+	/**
+	 * The failure counters, indexed by step and cause type.
+	 */
+	private final AtomicLongArray failures =
+		new AtomicLongArray(Step.values().length * SRP6Exception.CauseType.values().length);
+
+
+	/**
+	 * Creates new histogram metrics.
+	 */
+	public SRP6HistogramMetrics() {
+
+		for (Phase phase: Phase.values())
+			phases.put(phase, new SRP6LatencyHistogram());
+
+		for (Step step: Step.values())
+			steps.put(step, new SRP6LatencyHistogram());
+	}
+
+
+	@Override
+	public void recordPhase(final Phase phase, final long nanos) {
+
+		phases.get(phase).record(nanos);
+	}
+
+
+	@Override
+	public void recordSuccess(final Step step, final long nanos) {
+
+		steps.get(step).record(nanos);
+	}
+
+
+	@Override
+	public void recordFailure(final Step step, final SRP6Exception.CauseType cause) {
+
+		failures.incrementAndGet(failureIndex(step, cause));
+	}
+
+
+	/**
+	 * Returns the failure counter index.
+	 *
+	 * @param step  The step.
+	 * @param cause The cause type.
+	 *
+	 * @return The index.
+	 */
+	private static int failureIndex(final Step step, final SRP6Exception.CauseType cause) {
+
+		return step.ordinal() * SRP6Exception.CauseType.values().length + cause.ordinal();
+	}
+
+
+	/**
+	 * Gets the latency histogram of a computation phase.
+	 *
+	 * @param phase The phase. Must not be {@code null}.
+	 *
+	 * @return The histogram, in nanoseconds.
+	 */
+	public SRP6LatencyHistogram getPhaseHistogram(final Phase phase) {
+
+		return phases.get(phase);
+	}
+
+
+	/**
+	 * Gets the latency histogram of the successful completions of a step.
+	 *
+	 * @param step The step. Must not be {@code null}.
+	 *
+	 * @return The histogram, in nanoseconds.
+	 */
+	public SRP6LatencyHistogram getStepHistogram(final Step step) {
+
+		return steps.get(step);
+	}
+
+
+	/**
+	 * Gets the number of successful completions of a step.
+	 *
+	 * @param step The step. Must not be {@code null}.
+	 *
+	 * @return The success count.
+	 */
+	public long getSuccessCount(final Step step) {
+
+		return steps.get(step).getCount();
+	}
+
+
+	/**
+	 * Gets the number of failures of a step with the specified cause.
+	 *
+	 * @param step  The step. Must not be {@code null}.
+	 * @param cause The cause type. Must not be {@code null}.
+	 *
+	 * @return The failure count.
+	 */
+	public long getFailureCount(final Step step, final SRP6Exception.CauseType cause) {
+
+		return failures.get(failureIndex(step, cause));
+	}
+
+
+	/**
+	 * Clears all histograms and counters.
+	 */
+	public void reset() {
+
+		for (SRP6LatencyHistogram histogram: phases.values())
+			histogram.reset();
+
+		for (SRP6LatencyHistogram histogram: steps.values())
+			histogram.reset();
+
+		for (int i = 0; i < failures.length(); i++)
+			failures.set(i, 0L);
+	}
+}
@@ -0,0 +1,215 @@
+package com.nimbusds.srp6;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Latency histogram with log-linear buckets, in the style of HdrHistogram.
+ * Values below 128 are counted exactly; larger values fall in 64 buckets per
+ * power of two, i.e. with a relative error below 1.6%. Values above
+ * about 73 minutes in nanoseconds are counted in the last bucket.
+ *
+ * <p>Recording is lock-free and allocation-free. Reads are not atomic with
+ * respect to concurrent recordings, which is sufficient for periodic
+ * scraping.
+ */
+public class SRP6LatencyHistogram {
+
+
+	/**
+	 * The number of bits of precision within each power of two.
+	 */
+	private static final int PRECISION_BITS = 6;
+
+
+	/**
+	 * The number of sub-buckets per power of two.
+	 */
+	private static final int SUB_BUCKETS = 1 << PRECISION_BITS;
+
+
+	/**
+	 * The highest tracked bit of a value.
+	 */
+	private static final int MAX_BIT = 41;
+
+
+	/**
+	 * The bucket counts.
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray((MAX_BIT - PRECISION_BITS + 2) * SUB_BUCKETS);
+
+
+	/**
+	 * The number of recorded values.
+	 */
+	private final AtomicLong count = new AtomicLong();
+
+
+	/**
+	 * The sum of the recorded values.
+	 */
+	private final AtomicLong total = new AtomicLong();
+
+
+	/**
+	 * The maximum recorded value.
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+
+	/**
+	 * Returns the bucket index for the specified value.
+	 *
+	 * @param value The value, zero or positive.
+	 *
+	 * @return The bucket index.
+	 */
+	static int indexOf(final long value) {
+
+		final int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - PRECISION_BITS);
+
+		if (shift > MAX_BIT - PRECISION_BITS)
+			return (MAX_BIT - PRECISION_BITS + 2) * SUB_BUCKETS - 1;
+
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+
+	/**
+	 * Returns the highest value counted in the specified bucket.
+	 *
+	 * @param index The bucket index.
+	 *
+	 * @return The highest value of the bucket.
+	 */
+	static long highestValueOf(final int index) {
+
+		final int shift = Math.max(0, (index >>> PRECISION_BITS) - 1);
+
+		final long subBucket = index - (long) shift * SUB_BUCKETS;
+
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value The value, e.g. a latency in nanoseconds. Negative
+	 *              values are recorded as zero.
+	 */
+	public void record(final long value) {
+
+		final long v = Math.max(0L, value);
+
+		counts.incrementAndGet(indexOf(v));
+		count.incrementAndGet();
+		total.addAndGet(v);
+
+		long current = max.get();
+
+		while (v > current && ! max.compareAndSet(current, v))
+			current = max.get();
+	}
+
+
+	/**
+	 * Gets the number of recorded values.
+	 *
+	 * @return The count.
+	 */
+	public long getCount() {
+
+		return count.get();
+	}
+
+
+	/**
+	 * Gets the sum of the recorded values.
+	 *
+	 * @return The sum.
+	 */
+	public long getTotal() {
+
+		return total.get();
+	}
+
+
+	/**
+	 * Gets the maximum recorded value.
+	 *
+	 * @return The maximum, zero if none recorded.
+	 */
+	public long getMax() {
+
+		return max.get();
+	}
+
+
+	/**
+	 * Gets the mean of the recorded values.
+	 *
+	 * @return The mean, zero if none recorded.
+	 */
+	public double getMean() {
+
+		final long n = count.get();
+
+		return n == 0 ? 0.0 : (double) total.get() / n;
+	}
+
+
+	/**
+	 * Gets the value at the specified percentile, as the highest value of
+	 * the bucket that contains it, capped by the maximum.
+	 *
+	 * @param percentile The percentile, from 0 to 100.
+	 *
+	 * @return The value, zero if none recorded.
+	 */
+	public long getValueAtPercentile(final double percentile) {
+
+		if (percentile < 0.0 || percentile > 100.0)
+			throw new IllegalArgumentException("The percentile must be between 0 and 100");
+
+		long n = 0;
+
+		for (int i = 0; i < counts.length(); i++)
+			n += counts.get(i);
+
+		if (n == 0)
+			return 0L;
+
+		final long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * n));
+
+		long seen = 0;
+
+		for (int i = 0; i < counts.length(); i++) {
+
+			seen += counts.get(i);
+
+			if (seen >= rank)
+				return Math.min(highestValueOf(i), max.get());
+		}
+
+		return max.get();
+	}
+
+
+	/**
+	 * Clears the histogram. Values recorded concurrently may be partially
+	 * lost.
+	 */
+	public void reset() {
+
+		for (int i = 0; i < counts.length(); i++)
+			counts.set(i, 0L);
+
+		count.set(0L);
+		total.set(0L);
+		max.set(0L);
+	}
+}
@@ -0,0 +1,133 @@
+package com.nimbusds.srp6;
+
+
+/**
+ * Instrumentation interface for SRP-6a sessions. Receives the latencies of
+ * the individual computation phases and the outcome of each step.
+ *
+ * <p>Set an implementation on sessions with {@link SRP6Session#setMetrics}.
+ * Sessions without one don't read the clock, so instrumentation costs
+ * nothing when disabled. {@link SRP6HistogramMetrics} is an in-process
+ * implementation for scraping by a metrics exporter.
+ *
+ * <p>Implementations must be thread-safe and should not block, as they are
+ * called on the authentication hot path.
+ */
+public interface SRP6Metrics {
+
+
+	/**
+	 * Computation phases of the session steps.
+	 */
+	public static enum Phase {
+
+
+		/**
+		 * The password key 'x' (client).
+		 */
+		X,
+
+
+		/**
+		 * The multiplier 'k'.
+		 */
+		K,
+
+
+		/**
+		 * Generation of the private value 'a' or 'b', including the
+		 * public value if taken from an ephemeral pool.
+		 */
+		PRIVATE_VALUE,
+
+
+		/**
+		 * The public value 'A' or 'B'.
+		 */
+		PUBLIC_VALUE,
+
+
+		/**
+		 * The hashed keys 'u'.
+		 */
+		U,
+
+
+		/**
+		 * The session key 'S'.
+		 */
+		SESSION_KEY,
+
+
+		/**
+		 * The client evidence 'M1', including its verification by
+		 * the server.
+		 */
+		CLIENT_EVIDENCE,
+
+
+		/**
+		 * The server evidence 'M2', including its verification by the
+		 * client.
+		 */
+		SERVER_EVIDENCE
+	}
+
+
+	/**
+	 * The instrumented session steps.
+	 */
+	public static enum Step {
+
+
+		/**
+		 * {@link SRP6ServerSession#step1 Server step one}.
+		 */
+		SERVER_STEP_1,
+
+
+		/**
+		 * {@link SRP6ServerSession#step2 Server step two}.
+		 */
+		SERVER_STEP_2,
+
+
+		/**
+		 * {@link SRP6ClientSession#step2 Client step two}.
+		 */
+		CLIENT_STEP_2,
+
+
+		/**
+		 * {@link SRP6ClientSession#step3 Client step three}.
+		 */
+		CLIENT_STEP_3
+	}
+
+
+	/**
+	 * Records the latency of a computation phase.
+	 *
+	 * @param phase The phase.
+	 * @param nanos The latency in nanoseconds.
+	 */
+	void recordPhase(final Phase phase, final long nanos);
+
+
+	/**
+	 * Records a successfully completed step.
+	 *
+	 * @param step  The step.
+	 * @param nanos The step latency in nanoseconds.
+	 */
+	void recordSuccess(final Step step, final long nanos);
+
+
+	/**
+	 * Records a step that failed with an {@link SRP6Exception}.
+	 *
+	 * @param step  The step.
+	 * @param cause The cause type.
+	 */
+	void recordFailure(final Step step, final SRP6Exception.CauseType cause);
+}
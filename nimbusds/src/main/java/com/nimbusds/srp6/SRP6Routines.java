@@ -24,6 +24,13 @@ import java.util.concurrent.atomic.AtomicInteger;
  *         Password protocol", table 5, from 2002.
  * </ul>
  *
+ * <p>The sessions call the routine overloads that take
+ * {@link SRP6CryptoParams}, which draw on values cached and precomputed
+ * by the crypto parameters. If a subclass overrides the corresponding
+ * routine taking the individual parameters, such as
+ * {@link #computeK(MessageDigest, BigInteger, BigInteger)}, the overload
+ * calls the overriding method instead.
+ *
  * <p>This class contains portions of code from Bouncy Castle's SRP6 
  * implementation.
  *
@@ -31,6 +38,97 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class SRP6Routines implements Serializable {
 
+
+	/**
+	 * Shared source of leading zeros for padded hashing. Never written to.
+	 */
+	private static final byte[] ZERO_PADDING = new byte[128];
+
+
+	/**
+	 * The modular arithmetic backend.
+	 */
+	protected final ModularArithmetic arithmetic;
+
+
+	/**
+	 * The source of randomness for salts and private values.
+	 */
+	protected final RandomSource randomSource;
+
+
+	/**
+	 * Source of randomness for subclasses, initially a generator shared
+	 * by all instances. If a subclass sets another generator, it takes
+	 * the place of the {@link #randomSource random source} for salts and
+	 * private values.
+	 *
+	 * @deprecated Pass a {@link RandomSource} to the
+	 *             {@link #SRP6Routines(ModularArithmetic, RandomSource)
+	 *             constructor} instead.
+	 */
+	@Deprecated
+	protected SecureRandom random = SharedSecureRandom.INSTANCE;
+
+
+	/**
+	 * {@code true} if a subclass overrides
+	 * {@link #computeK(MessageDigest, BigInteger, BigInteger)}, in which
+	 * case the multiplier cached by the crypto parameters isn't used.
+	 */
+	private final boolean overridesComputeK;
+
+
+	/**
+	 * {@code true} if a subclass overrides
+	 * {@link #computePublicClientValue(BigInteger, BigInteger, BigInteger)},
+	 * in which case the fixed-base table isn't used for 'A'.
+	 */
+	private final boolean overridesPublicClientValue;
+
+
+	/**
+	 * {@code true} if a subclass overrides
+	 * {@link #computePublicServerValue(BigInteger, BigInteger, BigInteger, BigInteger, BigInteger)},
+	 * in which case the fixed-base table isn't used for 'B'.
+	 */
+	private final boolean overridesPublicServerValue;
+
+
+	/**
+	 * {@code true} if a subclass overrides either public client value
+	 * routine, in which case pooled powers aren't used for 'A'.
+	 */
+	private final boolean overridesAnyPublicClientValue;
+
+
+	/**
+	 * {@code true} if a subclass overrides either public server value
+	 * routine, in which case pooled powers aren't used for 'B'.
+	 */
+	private final boolean overridesAnyPublicServerValue;
+
+
+	/**
+	 * {@code true} if a subclass overrides the server-side
+	 * {@link #computeSessionKey(BigInteger, BigInteger, BigInteger, BigInteger, BigInteger)}.
+	 */
+	private final boolean overridesServerSessionKey;
+
+
+	/**
+	 * {@code true} if a subclass overrides the client-side
+	 * {@link #computeSessionKey(BigInteger, BigInteger, BigInteger, BigInteger, BigInteger, BigInteger, BigInteger)}.
+	 */
+	private final boolean overridesClientSessionKey;
+
+
+	/**
+	 * {@code true} if a subclass overrides
+	 * {@link #computeVerifier(BigInteger, BigInteger, BigInteger)}.
+	 */
+	private final boolean overridesVerifier;
+
 	
 	/**
 	 * Computes the SRP-6 multiplier k = H(N | PAD(g))
@@ -49,18 +147,41 @@ public class SRP6Routines implements Serializable {
 	
 		return hashPaddedPair(digest, N, N, g);
 	}
-	
-	protected SecureRandom random = new SecureRandom();
+
 
 	/**
-	 * Generates a random salt 's'.
+	 * Returns the SRP-6 multiplier k = H(N | PAD(g)) for the specified
+	 * crypto parameters. The value is {@link SRP6CryptoParams#getK cached}
+	 * by the crypto parameters, so repeated calls perform no hashing.
+	 * If a subclass overrides
+	 * {@link #computeK(MessageDigest, BigInteger, BigInteger)} the
+	 * overriding method is called instead.
+	 *
+	 * <p>Specification: RFC 5054.
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 *
+	 * @return The resulting multiplier 'k'.
+	 */
+	public BigInteger computeK(final SRP6CryptoParams config) {
+
+		if (overridesComputeK)
+			return computeK(config.getMessageDigestInstance(), config.N, config.g);
+
+		return config.getK();
+	}
+	
+	/**
+	 * Generates a random salt 's' from the {@link #getRandomSource random
+	 * source} of these routines.
 	 *
 	 * @param numBytes The number of bytes the salt 's' must have.
 	 *
 	 * @return The salt 's' as a byte array.
 	 */
 	public byte[] generateRandomSalt(final int numBytes) {
-		return generateRandomSalt(numBytes, random);
+		return generateRandomSalt(numBytes, getRandomSource().getSecureRandom());
 	}
 
 	/**
@@ -122,6 +243,49 @@ public class SRP6Routines implements Serializable {
 		return g.modPow(x, N);
 	}
 
+
+	/**
+	 * Computes a verifier v = g^x (mod N) with the modular arithmetic
+	 * backend of these routines. If a subclass overrides
+	 * {@link #computeVerifier(BigInteger, BigInteger, BigInteger)} the
+	 * overriding method is called instead.
+	 *
+	 * <p>Specification: RFC 5054.
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 * @param x      The password key 'x', see {@link #computeX}. Must not
+	 *               be {@code null}.
+	 *
+	 * @return The resulting verifier 'v'.
+	 */
+	public BigInteger computeVerifier(final SRP6CryptoParams config,
+	                                  final BigInteger x) {
+
+		if (overridesVerifier)
+			return computeVerifier(config.N, config.g, x);
+
+		return arithmetic.modPow(config, config.g, x);
+	}
+
+	/**
+	 * Generates a random SRP-6a client or server private value ('a' or
+	 * 'b') from the {@link #getRandomSource random source} of these
+	 * routines. The value is in the range [1,N-1] generated by a random
+	 * number of at least 256 bits.
+	 *
+	 * <p>Specification: RFC 5054.
+	 *
+	 * @param N The prime parameter 'N'. Must not be {@code null}.
+	 *
+	 * @return The resulting client or server private value ('a' or 'b').
+	 */
+	public BigInteger generatePrivateValue(final BigInteger N) {
+
+		return generatePrivateValue(N, getRandomSource().getSecureRandom());
+	}
+
+
 	/**
 	 * Generates a random SRP-6a client or server private value ('a' or 
 	 * 'b') which is in the range [1,N-1] generated by a random number of
@@ -166,6 +330,32 @@ public class SRP6Routines implements Serializable {
 	                                                    
 		return g.modPow(a, N);
 	}
+
+
+	/**
+	 * Computes the public client value A = g^a (mod N) with the
+	 * precomputed {@link SRP6CryptoParams#getFixedBaseExponentiator
+	 * fixed-base table} of the crypto parameters. If a subclass overrides
+	 * {@link #computePublicClientValue(BigInteger, BigInteger, BigInteger)}
+	 * the overriding method is called instead.
+	 *
+	 * <p>Specification: RFC 5054.
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 * @param a      The private client value 'a'. Must not be
+	 *               {@code null}.
+	 *
+	 * @return The public client value 'A'.
+	 */
+	public BigInteger computePublicClientValue(final SRP6CryptoParams config,
+	                                           final BigInteger a) {
+
+		if (overridesPublicClientValue)
+			return computePublicClientValue(config.N, config.g, a);
+
+		return config.modPowG(a);
+	}
 	
 	
 	
@@ -194,6 +384,113 @@ public class SRP6Routines implements Serializable {
 		// Below from http://srp.stanford.edu/demo/demo.html
 		return g.modPow(b, N).add(v.multiply(k)).mod(N);
 	}
+
+
+	/**
+	 * Computes the public server value B = k * v + g^b (mod N) with the
+	 * precomputed {@link SRP6CryptoParams#getFixedBaseExponentiator
+	 * fixed-base table} of the crypto parameters. If a subclass overrides
+	 * {@link #computePublicServerValue(BigInteger, BigInteger, BigInteger, BigInteger, BigInteger)}
+	 * the overriding method is called instead.
+	 *
+	 * <p>Specification: RFC 5054.
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 * @param k      The SRP-6a multiplier 'k'. Must not be {@code null}.
+	 * @param v      The password verifier 'v'. Must not be {@code null}.
+	 * @param b      The private server value 'b'. Must not be
+	 *               {@code null}.
+	 *
+	 * @return The public server value 'B'.
+	 */
+	public BigInteger computePublicServerValue(final SRP6CryptoParams config,
+	                                           final BigInteger k,
+	                                           final BigInteger v,
+	                                           final BigInteger b) {
+
+		if (overridesPublicServerValue)
+			return computePublicServerValue(config.N, config.g, k, v, b);
+
+		return computePublicServerValueFromPower(config, k, v, config.modPowG(b));
+	}
+
+
+	/**
+	 * Computes the public server value B = k * v + g^b (mod N) from a
+	 * precomputed power g^b, as taken from an {@link SRP6EphemeralPool}.
+	 * Sessions with a pool use this routine in place of
+	 * {@link #computePublicServerValue(SRP6CryptoParams, BigInteger, BigInteger, BigInteger)},
+	 * unless a subclass overrides that or the legacy routine.
+	 *
+	 * <p>Specification: RFC 5054.
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 * @param k      The SRP-6a multiplier 'k'. Must not be {@code null}.
+	 * @param v      The password verifier 'v'. Must not be {@code null}.
+	 * @param gb     The power g^b (mod N). Must not be {@code null}.
+	 *
+	 * @return The public server value 'B'.
+	 */
+	public BigInteger computePublicServerValueFromPower(final SRP6CryptoParams config,
+	                                                    final BigInteger k,
+	                                                    final BigInteger v,
+	                                                    final BigInteger gb) {
+
+		return gb.add(v.multiply(k)).mod(config.N);
+	}
+
+
+	/**
+	 * Computes the public client value 'A' for a private value 'a' taken
+	 * from an {@link SRP6EphemeralPool}, which is its pooled power g^a
+	 * unless a subclass overrides a public client value routine, in which
+	 * case the overriding routine is called.
+	 *
+	 * @param config The SRP-6a crypto parameters.
+	 * @param a      The pooled private client value 'a'.
+	 * @param ga     The pooled power g^a (mod N).
+	 *
+	 * @return The public client value 'A'.
+	 */
+	BigInteger computePooledPublicClientValue(final SRP6CryptoParams config,
+	                                          final BigInteger a,
+	                                          final BigInteger ga) {
+
+		if (overridesAnyPublicClientValue)
+			return computePublicClientValue(config, a);
+
+		return ga;
+	}
+
+
+	/**
+	 * Computes the public server value 'B' for a private value 'b' taken
+	 * from an {@link SRP6EphemeralPool}, from its pooled power g^b with
+	 * {@link #computePublicServerValueFromPower}, unless a subclass
+	 * overrides a public server value routine, in which case the
+	 * overriding routine is called.
+	 *
+	 * @param config The SRP-6a crypto parameters.
+	 * @param k      The SRP-6a multiplier 'k'.
+	 * @param v      The password verifier 'v'.
+	 * @param b      The pooled private server value 'b'.
+	 * @param gb     The pooled power g^b (mod N).
+	 *
+	 * @return The public server value 'B'.
+	 */
+	BigInteger computePooledPublicServerValue(final SRP6CryptoParams config,
+	                                          final BigInteger k,
+	                                          final BigInteger v,
+	                                          final BigInteger b,
+	                                          final BigInteger gb) {
+
+		if (overridesAnyPublicServerValue)
+			return computePublicServerValue(config, k, v, b);
+
+		return computePublicServerValueFromPower(config, k, v, gb);
+	}
 	
 	
 	/**
@@ -234,6 +531,36 @@ public class SRP6Routines implements Serializable {
 	                                
 		return hashPaddedPair(digest, N, A, B);
 	}
+
+
+	/**
+	 * Computes the random scrambling parameter u = H(PAD(A) | PAD(B))
+	 * from the public values as received on the wire, without conversion
+	 * to a number.
+	 *
+	 * <p>Specification: RFC 5054.
+	 *
+	 * @param digest The hash function 'H'. Must not be {@code null}.
+	 * @param N      The prime parameter 'N'. Must not be {@code null}.
+	 * @param A      The public client value 'A', as an unsigned big-endian
+	 *               byte array, padded or not. Must not be {@code null}.
+	 * @param B      The public server value 'B', as an unsigned big-endian
+	 *               byte array, padded or not. Must not be {@code null}.
+	 *
+	 * @return The resulting 'u' value.
+	 */
+	public BigInteger computeU(final MessageDigest digest,
+	                           final BigInteger N,
+	                           final byte[] A,
+	                           final byte[] B) {
+
+		final int padLength = (N.bitLength() + 7) / 8;
+
+		updatePadded(digest, A, padLength);
+		updatePadded(digest, B, padLength);
+
+		return BigIntegerUtils.bigIntegerFromBytes(digest.digest());
+	}
 	
 	
 	/**
@@ -266,6 +593,59 @@ public class SRP6Routines implements Serializable {
 		final BigInteger tmp = g.modPow(x, N).multiply(k);
 		return B.subtract(tmp).modPow(exp, N);
 	}
+
+
+	/**
+	 * Computes the session key S = (B - k * v) ^ (a + u * x) (mod N)
+	 * from client-side parameters, where v = g^x (mod N). This is the
+	 * routine used by {@link SRP6ClientSession}; override it, or the
+	 * {@link #computeSessionKey(BigInteger, BigInteger, BigInteger, BigInteger, BigInteger, BigInteger, BigInteger)
+	 * routine taking the prime 'N'}, to plug in an alternative
+	 * implementation. An override of the latter is called from here,
+	 * without the precomputed g^x.
+	 *
+	 * <p>The value g^x is exactly the verifier 'v' for the user's salt
+	 * and password. Clients that already hold it, for example from
+	 * registration, may pass it to skip that exponentiation, see
+	 * {@link SRP6ClientSession#setVerifier}; otherwise it is computed
+	 * here. The base is reduced modulo 'N' before the
+	 * final exponentiation.
+	 *
+	 * <p>Specification: RFC 5054
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 * @param k      The SRP-6a multiplier 'k'. Must not be {@code null}.
+	 * @param x      The 'x' value, see {@link #computeX}. Must not be
+	 *               {@code null}.
+	 * @param v      The precomputed g^x (mod N), {@code null} to compute
+	 *               it.
+	 * @param u      The random scrambling parameter 'u'. Must not be
+	 *               {@code null}.
+	 * @param a      The private client value 'a'. Must not be
+	 *               {@code null}.
+	 * @param B      The public server value 'B'. Must not be
+	 *               {@code null}.
+	 *
+	 * @return The resulting session key 'S'.
+	 */
+	public BigInteger computeSessionKey(final SRP6CryptoParams config,
+	                                    final BigInteger k,
+	                                    final BigInteger x,
+	                                    final BigInteger v,
+	                                    final BigInteger u,
+	                                    final BigInteger a,
+	                                    final BigInteger B) {
+
+		if (overridesClientSessionKey)
+			return computeSessionKey(config.N, config.g, k, x, u, a, B);
+
+		final BigInteger gx = v != null ? v : computeVerifier(config, x);
+
+		final BigInteger base = B.subtract(arithmetic.modMultiply(config, k, gx)).mod(config.N);
+		final BigInteger exp = u.multiply(x).add(a);
+		return arithmetic.modPow(config, base, exp);
+	}
 	
 	
 	/**
@@ -291,6 +671,51 @@ public class SRP6Routines implements Serializable {
 	
 		return v.modPow(u, N).multiply(A).modPow(b, N);
 	}
+
+
+	/**
+	 * Computes the session key S = (A * v^u) ^ b (mod N) from server-side
+	 * parameters. This is the routine used by {@link SRP6ServerSession};
+	 * override it, or the
+	 * {@link #computeSessionKey(BigInteger, BigInteger, BigInteger, BigInteger, BigInteger)
+	 * routine taking the prime 'N'}, to plug in an alternative
+	 * implementation. An override of the latter is called from here.
+	 *
+	 * <p>The default implementation multiplies v^u and 'A' modulo 'N'
+	 * with the {@link #getArithmetic arithmetic backend}, so that the
+	 * final exponentiation starts from a residue below 'N'. A
+	 * simultaneous (Shamir / Straus) evaluation of A^b * v^(u * b)
+	 * brings no gain here: the product u * b is as long as 'b', so the
+	 * joint exponentiation needs as many squarings as the direct
+	 * formula, while v^u with the hash-sized 'u' is already cheap.
+	 *
+	 * <p>Specification: RFC 5054
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 * @param v      The password verifier 'v'. Must not be {@code null}.
+	 * @param u      The random scrambling parameter 'u'. Must not be
+	 *               {@code null}.
+	 * @param A      The public client value 'A'. Must not be
+	 *               {@code null}.
+	 * @param b      The private server value 'b'. Must not be
+	 *               {@code null}.
+	 *
+	 * @return The resulting session key 'S'.
+	 */
+	public BigInteger computeSessionKey(final SRP6CryptoParams config,
+	                                    final BigInteger v,
+	                                    final BigInteger u,
+	                                    final BigInteger A,
+	                                    final BigInteger b) {
+
+		if (overridesServerSessionKey)
+			return computeSessionKey(config.N, v, u, A, b);
+
+		final BigInteger vu = arithmetic.modPow(config, v, u);
+
+		return arithmetic.modPow(config, arithmetic.modMultiply(config, vu, A), b);
+	}
 	
 	
 	/**
@@ -312,11 +737,60 @@ public class SRP6Routines implements Serializable {
 	                                               final BigInteger B,
 	                                               final BigInteger S) {
 		
+		return BigIntegerUtils.bigIntegerFromBytes(computeClientEvidenceBytes(digest, A, B, S));
+	}
+
+
+	/**
+	 * Computes the client evidence message M1 = H(A | B | S) as a byte
+	 * array of the digest length, for comparison with
+	 * {@link #constantTimeEquals}.
+	 *
+	 * @param digest The hash function 'H'. Must not be {@code null}.
+	 * @param A      The public client value 'A'. Must not be {@code null}.
+	 * @param B      The public server value 'B'. Must note be {@code null}.
+	 * @param S      The session key 'S'. Must not be {@code null}.
+	 *
+	 * @return The resulting client evidence message 'M1'.
+	 */
+	public byte[] computeClientEvidenceBytes(final MessageDigest digest,
+	                                         final BigInteger A,
+	                                         final BigInteger B,
+	                                         final BigInteger S) {
+
 		digest.update(BigIntegerUtils.bigIntegerToBytes(A));
 		digest.update(BigIntegerUtils.bigIntegerToBytes(B));
 		digest.update(BigIntegerUtils.bigIntegerToBytes(S));
 
-		return BigIntegerUtils.bigIntegerFromBytes(digest.digest());
+		return digest.digest();
+	}
+
+
+	/**
+	 * Computes the client evidence message M1 = H(A | B | S) as a byte
+	 * array of the digest length, from the public values as received on
+	 * the wire. Leading zeros of 'A' and 'B' are not hashed, as for the
+	 * numeric form.
+	 *
+	 * @param digest The hash function 'H'. Must not be {@code null}.
+	 * @param A      The public client value 'A', as an unsigned big-endian
+	 *               byte array. Must not be {@code null}.
+	 * @param B      The public server value 'B', as an unsigned big-endian
+	 *               byte array. Must not be {@code null}.
+	 * @param S      The session key 'S'. Must not be {@code null}.
+	 *
+	 * @return The resulting client evidence message 'M1'.
+	 */
+	public byte[] computeClientEvidenceBytes(final MessageDigest digest,
+	                                         final byte[] A,
+	                                         final byte[] B,
+	                                         final BigInteger S) {
+
+		updateUnpadded(digest, A);
+		updateUnpadded(digest, B);
+		digest.update(BigIntegerUtils.bigIntegerToBytes(S));
+
+		return digest.digest();
 	}
 	
 	
@@ -340,11 +814,61 @@ public class SRP6Routines implements Serializable {
 	                                                  final BigInteger M1,
 	                                                  final BigInteger S) {
 	
+		return BigIntegerUtils.bigIntegerFromBytes(
+			computeServerEvidenceBytes(digest, A, BigIntegerUtils.bigIntegerToBytes(M1), S));
+	}
+
+
+	/**
+	 * Computes the server evidence message M2 = H(A | M1 | S) as a byte
+	 * array of the digest length, for comparison with
+	 * {@link #constantTimeEquals}.
+	 *
+	 * @param digest The hash function 'H'. Must not be {@code null}.
+	 * @param A      The public client value 'A'. Must not be {@code null}.
+	 * @param M1     The client evidence message 'M1', as an unsigned
+	 *               big-endian byte array. Leading zeros are not hashed,
+	 *               as for the numeric form. Must not be {@code null}.
+	 * @param S      The session key 'S'. Must not be {@code null}.
+	 *
+	 * @return The resulting server evidence message 'M2'.
+	 */
+	public byte[] computeServerEvidenceBytes(final MessageDigest digest,
+	                                         final BigInteger A,
+	                                         final byte[] M1,
+	                                         final BigInteger S) {
+
 		digest.update(BigIntegerUtils.bigIntegerToBytes(A));
-		digest.update(BigIntegerUtils.bigIntegerToBytes(M1));
+		updateUnpadded(digest, M1);
 		digest.update(BigIntegerUtils.bigIntegerToBytes(S));
-		
-		return BigIntegerUtils.bigIntegerFromBytes(digest.digest());
+
+		return digest.digest();
+	}
+
+
+	/**
+	 * Compares two byte arrays, such as evidence messages, in time that
+	 * depends only on their length, so that a mismatch doesn't reveal how
+	 * many leading bytes matched. Unlike
+	 * {@code MessageDigest.isEqual} this is constant-time on all
+	 * runtimes.
+	 *
+	 * @param a The first array. Must not be {@code null}.
+	 * @param b The second array. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the arrays are equal, else {@code false}.
+	 */
+	public static boolean constantTimeEquals(final byte[] a, final byte[] b) {
+
+		if (a.length != b.length)
+			return false;
+
+		int diff = 0;
+
+		for (int i = 0; i < a.length; i++)
+			diff |= a[i] ^ b[i];
+
+		return diff == 0;
 	}
 	
 	
@@ -369,17 +893,105 @@ public class SRP6Routines implements Serializable {
 	                                           
 		final int padLength = (N.bitLength() + 7) / 8;
 		
-		byte[] n1_bytes = getPadded(n1, padLength);
-
-		byte[] n2_bytes = getPadded(n2, padLength);
-
-		digest.update(n1_bytes);
-		digest.update(n2_bytes);
+		updatePadded(digest, n1, padLength);
+		updatePadded(digest, n2, padLength);
 		
 		byte[] output = digest.digest();
 		
 		return BigIntegerUtils.bigIntegerFromBytes(output);
 	}
+
+
+	/**
+	 * Updates a digest with a big integer padded with leading zeros up to
+	 * the specified length. Equivalent to hashing the output of
+	 * {@link #getPadded}, but the zeros are streamed from a shared buffer
+	 * and the magnitude is taken directly from
+	 * {@code BigInteger.toByteArray()}, so the only allocation is that of
+	 * the magnitude itself.
+	 *
+	 * @param digest The digest to update. Must not be {@code null}.
+	 * @param n      The big integer to pad and hash. Must not be
+	 *               {@code null} or negative.
+	 * @param length The required length of the padded big integer.
+	 */
+	protected static void updatePadded(final MessageDigest digest,
+	                                   final BigInteger n,
+	                                   final int length) {
+
+		final byte[] bs = n.toByteArray();
+
+		// Skip the sign byte
+		final int offset = bs[0] == 0 ? 1 : 0;
+		final int len = bs.length - offset;
+
+		for (int zeros = length - len; zeros > 0; zeros -= ZERO_PADDING.length)
+			digest.update(ZERO_PADDING, 0, Math.min(zeros, ZERO_PADDING.length));
+
+		digest.update(bs, offset, len);
+	}
+
+
+	/**
+	 * Updates a digest with an unsigned big-endian byte array padded with
+	 * leading zeros up to the specified length. Leading zeros already
+	 * present in the array are accounted for, so the result is the same
+	 * as for the {@link #updatePadded(MessageDigest, BigInteger, int)
+	 * numeric form}.
+	 *
+	 * @param digest The digest to update. Must not be {@code null}.
+	 * @param bytes  The unsigned big-endian value. Must not be
+	 *               {@code null}.
+	 * @param length The required length of the padded value.
+	 */
+	protected static void updatePadded(final MessageDigest digest,
+	                                   final byte[] bytes,
+	                                   final int length) {
+
+		final int offset = leadingZeros(bytes);
+		final int len = bytes.length - offset;
+
+		for (int zeros = length - len; zeros > 0; zeros -= ZERO_PADDING.length)
+			digest.update(ZERO_PADDING, 0, Math.min(zeros, ZERO_PADDING.length));
+
+		digest.update(bytes, offset, len);
+	}
+
+
+	/**
+	 * Updates a digest with an unsigned big-endian byte array with its
+	 * leading zeros skipped, as for
+	 * {@link BigIntegerUtils#bigIntegerToBytes(BigInteger)}.
+	 *
+	 * @param digest The digest to update. Must not be {@code null}.
+	 * @param bytes  The unsigned big-endian value. Must not be
+	 *               {@code null}.
+	 */
+	protected static void updateUnpadded(final MessageDigest digest,
+	                                     final byte[] bytes) {
+
+		final int offset = leadingZeros(bytes);
+
+		digest.update(bytes, offset, bytes.length - offset);
+	}
+
+
+	/**
+	 * Returns the number of leading zero bytes of an array.
+	 *
+	 * @param bytes The array. Must not be {@code null}.
+	 *
+	 * @return The number of leading zero bytes.
+	 */
+	private static int leadingZeros(final byte[] bytes) {
+
+		int offset = 0;
+
+		while (offset < bytes.length && bytes[offset] == 0)
+			offset++;
+
+		return offset;
+	}
 	
 	
 	/**
@@ -405,7 +1017,124 @@ public class SRP6Routines implements Serializable {
 		return bs;
 	}
 
+	/**
+	 * Creates a new instance of the SRP-6a routines with the default
+	 * {@link BigIntegerArithmetic} backend and
+	 * {@link ThreadLocalRandomSource} random source.
+	 */
 	public SRP6Routines() {
-		// empty
+		this(new BigIntegerArithmetic());
+	}
+
+
+	/**
+	 * Creates a new instance of the SRP-6a routines with the specified
+	 * modular arithmetic backend and the default
+	 * {@link ThreadLocalRandomSource} random source. The backend is used
+	 * by the routine overloads that take {@link SRP6CryptoParams}.
+	 *
+	 * @param arithmetic The modular arithmetic backend. Must not be
+	 *                   {@code null}.
+	 */
+	public SRP6Routines(final ModularArithmetic arithmetic) {
+
+		this(arithmetic, new ThreadLocalRandomSource());
+	}
+
+
+	/**
+	 * Creates a new instance of the SRP-6a routines with the specified
+	 * modular arithmetic backend and random source.
+	 *
+	 * @param arithmetic   The modular arithmetic backend. Must not be
+	 *                     {@code null}.
+	 * @param randomSource The source of randomness for salts and private
+	 *                     values. Must not be {@code null}.
+	 */
+	public SRP6Routines(final ModularArithmetic arithmetic, final RandomSource randomSource) {
+
+		if (arithmetic == null)
+			throw new IllegalArgumentException("The modular arithmetic backend must not be null");
+
+		this.arithmetic = arithmetic;
+
+		if (randomSource == null)
+			throw new IllegalArgumentException("The random source must not be null");
+
+		this.randomSource = randomSource;
+
+		overridesComputeK = overrides("computeK", MessageDigest.class, BigInteger.class, BigInteger.class);
+		overridesPublicClientValue = overrides("computePublicClientValue", BigInteger.class, BigInteger.class, BigInteger.class);
+		overridesPublicServerValue = overrides("computePublicServerValue",
+			BigInteger.class, BigInteger.class, BigInteger.class, BigInteger.class, BigInteger.class);
+		overridesAnyPublicClientValue = overridesPublicClientValue ||
+			overrides("computePublicClientValue", SRP6CryptoParams.class, BigInteger.class);
+		overridesAnyPublicServerValue = overridesPublicServerValue ||
+			overrides("computePublicServerValue", SRP6CryptoParams.class, BigInteger.class, BigInteger.class, BigInteger.class);
+		overridesServerSessionKey = overrides("computeSessionKey",
+			BigInteger.class, BigInteger.class, BigInteger.class, BigInteger.class, BigInteger.class);
+		overridesClientSessionKey = overrides("computeSessionKey",
+			BigInteger.class, BigInteger.class, BigInteger.class, BigInteger.class, BigInteger.class,
+			BigInteger.class, BigInteger.class);
+		overridesVerifier = overrides("computeVerifier", BigInteger.class, BigInteger.class, BigInteger.class);
+	}
+
+
+	/**
+	 * Checks if a public routine of this class is overridden by the
+	 * runtime class of this instance.
+	 *
+	 * @param name           The method name. Must not be {@code null}.
+	 * @param parameterTypes The method parameter types.
+	 *
+	 * @return {@code true} if the method is overridden, else
+	 *         {@code false}.
+	 */
+	private boolean overrides(final String name, final Class<?>... parameterTypes) {
+
+		try {
+			return getClass().getMethod(name, parameterTypes).getDeclaringClass() != SRP6Routines.class;
+
+		} catch (NoSuchMethodException e) {
+
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+
+	/**
+	 * Gets the modular arithmetic backend.
+	 *
+	 * @return The modular arithmetic backend.
+	 */
+	public ModularArithmetic getArithmetic() {
+
+		return arithmetic;
+	}
+
+
+	/**
+	 * Gets the source of randomness for salts and private values. If a
+	 * subclass has set the deprecated {@link #random} field, a source
+	 * returning that generator.
+	 *
+	 * @return The random source.
+	 */
+	@SuppressWarnings("deprecation")
+	public RandomSource getRandomSource() {
+
+		final SecureRandom subclassRandom = random;
+
+		if (subclassRandom == null || subclassRandom == SharedSecureRandom.INSTANCE)
+			return randomSource;
+
+		return new RandomSource() {
+
+			@Override
+			public SecureRandom getSecureRandom() {
+
+				return subclassRandom;
+			}
+		};
 	}
 }
@@ -4,6 +4,7 @@ package com.nimbusds.srp6;
 import java.io.Serializable;
 import java.math.BigInteger;
 import java.security.MessageDigest;
+import java.util.Arrays;
 
 
 /**
@@ -79,25 +80,33 @@ public class SRP6ServerSession extends SRP6Session implements Serializable {
 	 * Indicates a non-existing use identity and implies mock salt 's' and
 	 * verifier 'v' values.
 	 */
-	private boolean noSuchUserIdentity = false;
+	boolean noSuchUserIdentity = false;
 	
 	
 	/**
 	 * The password verifier 'v'.
 	 */
-	private BigInteger v = null;
+	BigInteger v = null;
 	
 	
 	/**
 	 * The server private value 'b'.
 	 */
-	private BigInteger b = null;
+	BigInteger b = null;
+	
+	
+	/**
+	 * The server public value 'B' padded to the byte length of 'N', as
+	 * returned by the byte array {@link #step1(String, byte[], byte[])
+	 * step one}, {@code null} if not computed.
+	 */
+	private transient byte[] paddedB = null;
 	
 	
 	/**
 	 * The current SRP-6a auth state.
 	 */
-	private State state;
+	State state;
 	
 	
 	/**
@@ -113,7 +122,27 @@ public class SRP6ServerSession extends SRP6Session implements Serializable {
 	 */
 	public SRP6ServerSession(final SRP6CryptoParams config, final int timeout) {
 	
-		super(timeout);
+		this(config, timeout, new SRP6Routines());
+	}
+	
+	
+	/**
+	 * Creates a new server-side SRP-6a authentication session and sets its 
+	 * state to {@link State#INIT}.
+	 *
+	 * @param config       The SRP-6a crypto parameters configuration. Must
+	 *                     not be {@code null}.
+	 * @param timeout      The SRP-6a authentication session timeout in
+	 *                     seconds. If the authenticating counterparty
+	 *                     (server or client) fails to respond within the
+	 *                     specified time the session will be closed. If
+	 *                     zero timeouts are disabled.
+	 * @param srp6Routines The math routines to use. Must not be
+	 *                     {@code null}.
+	 */
+	public SRP6ServerSession(final SRP6CryptoParams config, final int timeout, final SRP6Routines srp6Routines) {
+	
+		super(timeout, srp6Routines);
 		
 		if (config == null)
 			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
@@ -190,20 +219,31 @@ public class SRP6ServerSession extends SRP6Session implements Serializable {
 		if (state != State.INIT)
 			throw new IllegalStateException("State violation: Session must be in INIT state");
 		
-		MessageDigest digest = config.getMessageDigestInstance();
-		
+		final long start = startTiming();
+
 		// Generate server private and public values
-		k = srp6Routines.computeK(digest, config.N, config.g);
-		digest.reset();
-		
-		b = srp6Routines.generatePrivateValue(config.N, random);
-		digest.reset();
+		k = srp6Routines.computeK(config);
+		long t = recordPhase(SRP6Metrics.Phase.K, start);
 		
-		B = srp6Routines.computePublicServerValue(config.N, config.g, k, v, b);
+		SRP6EphemeralPool.Ephemeral ephemeral = takeEphemeral();
+
+		if (ephemeral != null) {
+			b = ephemeral.privateValue;
+			t = recordPhase(SRP6Metrics.Phase.PRIVATE_VALUE, t);
+			B = srp6Routines.computePooledPublicServerValue(config, k, v, b, ephemeral.power);
+		} else {
+			b = generatePrivateValue();
+			t = recordPhase(SRP6Metrics.Phase.PRIVATE_VALUE, t);
+			B = srp6Routines.computePublicServerValue(config, k, v, b);
+		}
+
+		recordPhase(SRP6Metrics.Phase.PUBLIC_VALUE, t);
 
 		state = State.STEP_1;
 		
 		updateLastActivityTime();
+
+		recordSuccess(SRP6Metrics.Step.SERVER_STEP_1, start);
 		
 		return B;
 	}
@@ -243,6 +283,76 @@ public class SRP6ServerSession extends SRP6Session implements Serializable {
 		
 		return step1(userID, s, v);
 	}
+
+	
+	/**
+	 * Increments this SRP-6a authentication session to
+	 * {@link State#STEP_1}, with the salt and verifier as stored and the
+	 * server public value as sent on the wire.
+	 *
+	 * <p>Argument origin:
+	 *
+	 * <ul>
+	 *     <li>From client: user identity 'I'.
+	 *     <li>From server database: matching salt 's' and password verifier
+	 *        'v' values.
+	 * </ul>
+	 *
+	 * @param userID The identity 'I' of the authenticating user. Must not
+	 *               be {@code null} or empty.
+	 * @param s      The password salt 's', as an unsigned big-endian byte
+	 *               array. Must not be {@code null}.
+	 * @param v      The password verifier 'v', as an unsigned big-endian
+	 *               byte array. Must not be {@code null}.
+	 *
+	 * @return The server public value 'B', padded to the byte length of
+	 *         'N'.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#INIT}.
+	 */
+	public byte[] step1(final String userID, final byte[] s, final byte[] v) {
+
+		if (s == null)
+			throw new IllegalArgumentException("The salt 's' must not be null");
+
+		if (v == null)
+			throw new IllegalArgumentException("The verifier 'v' must not be null");
+
+		step1(userID, BigIntegerUtils.bigIntegerFromBytes(s), BigIntegerUtils.bigIntegerFromBytes(v));
+
+		paddedB = BigIntegerUtils.bigIntegerToBytes(B, config.getPadLength());
+
+		return paddedB.clone();
+	}
+
+
+	/**
+	 * Increments this SRP-6a authentication session to
+	 * {@link State#STEP_1} indicating a non-existing user identity 'I'
+	 * with mock (simulated) salt 's' and password verifier 'v' values,
+	 * given as byte arrays. See {@link #mockStep1(String, BigInteger,
+	 * BigInteger)}.
+	 *
+	 * @param userID The identity 'I' of the authenticating user. Must not
+	 *               be {@code null} or empty.
+	 * @param s      The password salt 's', as an unsigned big-endian byte
+	 *               array. Must not be {@code null}.
+	 * @param v      The password verifier 'v', as an unsigned big-endian
+	 *               byte array. Must not be {@code null}.
+	 *
+	 * @return The server public value 'B', padded to the byte length of
+	 *         'N'.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#INIT}.
+	 */
+	public byte[] mockStep1(final String userID, final byte[] s, final byte[] v) {
+
+		noSuchUserIdentity = true;
+
+		return step1(userID, s, v);
+	}
 	
 	
 	/**
@@ -274,76 +384,268 @@ public class SRP6ServerSession extends SRP6Session implements Serializable {
 		
 		if (A == null)
 			throw new IllegalArgumentException("The client public value 'A' must not be null");
-			
-		this.A = A;
 		
 		if (M1 == null)
 			throw new IllegalArgumentException("The client evidence message 'M1' must not be null");
 		
 		this.M1 = M1;
+
+		verifyClientEvidence(A, null, M1, BigIntegerUtils.bigIntegerToBytes(M1));
+
+		return M2;
+	}
+
+
+	/**
+	 * Increments this SRP-6a authentication session to
+	 * {@link State#STEP_2}, with the evidence messages as byte arrays of
+	 * the digest length of 'H'. The client evidence is compared in
+	 * constant time, without conversion to a number.
+	 *
+	 * <p>Argument origin:
+	 *
+	 * <ul>
+	 *     <li>From client: public value 'A' and evidence message 'M1'.
+	 * </ul>
+	 *
+	 * @param A  The client public value. Must not be {@code null}.
+	 * @param M1 The client evidence message, as an unsigned big-endian
+	 *           byte array. Must not be {@code null}.
+	 *
+	 * @return The server evidence message 'M2', as a byte array of the
+	 *         digest length.
+	 *
+	 * @throws SRP6Exception If the session has timed out, the client public
+	 *                       value 'A' is invalid or the user credentials
+	 *                       are invalid.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#STEP_1}.
+	 */
+	public byte[] step2(final BigInteger A, final byte[] M1)
+		throws SRP6Exception {
+
+		// Check arguments
+
+		if (A == null)
+			throw new IllegalArgumentException("The client public value 'A' must not be null");
+
+		if (M1 == null)
+			throw new IllegalArgumentException("The client evidence message 'M1' must not be null");
+
+		return verifyClientEvidence(A, null, null, M1);
+	}
+
+
+	/**
+	 * Increments this SRP-6a authentication session to
+	 * {@link State#STEP_2}, with the client values as received on the
+	 * wire. 'A' is converted to a number only for the session key
+	 * computation, the hashing of 'u' and 'M1' uses the bytes as
+	 * received.
+	 *
+	 * <p>Argument origin:
+	 *
+	 * <ul>
+	 *     <li>From client: public value 'A' and evidence message 'M1'.
+	 * </ul>
+	 *
+	 * @param A  The client public value, as an unsigned big-endian byte
+	 *           array, padded or not. Must not be {@code null}.
+	 * @param M1 The client evidence message, as an unsigned big-endian
+	 *           byte array. Must not be {@code null}.
+	 *
+	 * @return The server evidence message 'M2', as a byte array of the
+	 *         digest length.
+	 *
+	 * @throws SRP6Exception If the session has timed out, the client public
+	 *                       value 'A' is invalid or the user credentials
+	 *                       are invalid.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#STEP_1}.
+	 */
+	public byte[] step2(final byte[] A, final byte[] M1)
+		throws SRP6Exception {
+
+		// Check arguments
+
+		if (A == null)
+			throw new IllegalArgumentException("The client public value 'A' must not be null");
+
+		if (M1 == null)
+			throw new IllegalArgumentException("The client evidence message 'M1' must not be null");
+
+		return verifyClientEvidence(BigIntegerUtils.bigIntegerFromBytes(A), A, null, M1);
+	}
+
+
+	/**
+	 * Verifies the client evidence message 'M1' and computes the server
+	 * evidence message 'M2'.
+	 *
+	 * @param A       The client public value.
+	 * @param ABytes  The client public value as received, {@code null}
+	 *                if received as a number.
+	 * @param M1      The client evidence message, {@code null} if
+	 *                received as a byte array only.
+	 * @param M1Bytes The client evidence message as an unsigned byte
+	 *                array.
+	 *
+	 * @return The server evidence message 'M2', as a byte array of the
+	 *         digest length.
+	 */
+	private byte[] verifyClientEvidence(final BigInteger A,
+	                                    final byte[] ABytes,
+	                                    final BigInteger M1,
+	                                    final byte[] M1Bytes)
+		throws SRP6Exception {
+
+		this.A = A;
 	
 		// Check current state
 		if (state != State.STEP_1)
 			throw new IllegalStateException("State violation: Session must be in STEP_1 state");
 		
+		final long start = startTiming();
+
 		// Check timeout
 		if (hasTimedOut())
-			throw new SRP6Exception("Session timeout", SRP6Exception.CauseType.TIMEOUT);
+			throw recordFailure(SRP6Metrics.Step.SERVER_STEP_2,
+				new SRP6Exception("Session timeout", SRP6Exception.CauseType.TIMEOUT));
 	
 		// Check A validity
 		if (! srp6Routines.isValidPublicValue(config.N, A))
-			throw new SRP6Exception("Bad client public value 'A'", SRP6Exception.CauseType.BAD_PUBLIC_VALUE);
+			throw recordFailure(SRP6Metrics.Step.SERVER_STEP_2,
+				new SRP6Exception("Bad client public value 'A'", SRP6Exception.CauseType.BAD_PUBLIC_VALUE));
 		
 		MessageDigest digest = config.getMessageDigestInstance();
+
+		final int evidenceLength = digest.getDigestLength();
 		
 		if (hashedKeysRoutine != null) {
 			URoutineContext hashedKeysContext = new URoutineContext(A, B);
 			u = hashedKeysRoutine.computeU(config, hashedKeysContext);
+		} else if (ABytes != null) {
+			u = srp6Routines.computeU(digest, config.N, ABytes, paddedB());
+			digest.reset();
 		} else {
 			u = srp6Routines.computeU(digest, config.N, A, B);
 			digest.reset();
 		}
+
+		long t = recordPhase(SRP6Metrics.Phase.U, start);
 		
-		S = srp6Routines.computeSessionKey(config.N, v, u, A, b);
+		S = srp6Routines.computeSessionKey(config, v, u, A, b);
+		t = recordPhase(SRP6Metrics.Phase.SESSION_KEY, t);
 		
 		// Compute the own client evidence message 'M1'
-		BigInteger computedM1;
+		byte[] computedM1;
 		
 		if (clientEvidenceRoutine != null) {
 		
 			// With custom routine
 			SRP6ClientEvidenceContext ctx = new SRP6ClientEvidenceContext(userID, s, A, B, S);
-			computedM1 = clientEvidenceRoutine.computeClientEvidence(config, ctx);
+			computedM1 = BigIntegerUtils.bigIntegerToBytes(clientEvidenceRoutine.computeClientEvidence(config, ctx), evidenceLength);
 		}
 		else {
 			// With default routine
-			computedM1 = srp6Routines.computeClientEvidence(digest, A, B, S);
+			if (ABytes != null)
+				computedM1 = srp6Routines.computeClientEvidenceBytes(digest, ABytes, paddedB(), S);
+			else
+				computedM1 = srp6Routines.computeClientEvidenceBytes(digest, A, B, S);
 			digest.reset();
 		}
 
-		// Check for previous mock step 1 then check whether password proof works.
-		if (noSuchUserIdentity || ! computedM1.equals(M1))
-			throw new SRP6Exception("Bad client credentials", SRP6Exception.CauseType.BAD_CREDENTIALS);
+		// Check for previous mock step 1 then check whether password
+		// proof works, in constant time at the fixed width
+		final boolean badCredentials = noSuchUserIdentity |
+			! SRP6Routines.constantTimeEquals(computedM1, pad(M1Bytes, computedM1.length));
+
+		t = recordPhase(SRP6Metrics.Phase.CLIENT_EVIDENCE, t);
+
+		if (badCredentials)
+			throw recordFailure(SRP6Metrics.Step.SERVER_STEP_2,
+				new SRP6Exception("Bad client credentials", SRP6Exception.CauseType.BAD_CREDENTIALS));
+
+		this.M1 = M1 != null ? M1 : BigIntegerUtils.bigIntegerFromBytes(M1Bytes);
 	
 		state = State.STEP_2;
 		
+		byte[] M2Bytes;
 		
 		if (serverEvidenceRoutine != null) {
 		
 			// With custom routine
-			SRP6ServerEvidenceContext ctx = new SRP6ServerEvidenceContext(A, M1, S);
+			SRP6ServerEvidenceContext ctx = new SRP6ServerEvidenceContext(A, this.M1, S);
 			
 			M2 = serverEvidenceRoutine.computeServerEvidence(config, ctx);
+			M2Bytes = BigIntegerUtils.bigIntegerToBytes(M2, evidenceLength);
 		}
 		else {
 			// With default routine
-			M2 = srp6Routines.computeServerEvidence(digest, A, M1, S);
+			M2Bytes = srp6Routines.computeServerEvidenceBytes(digest, A, M1Bytes, S);
+			M2 = BigIntegerUtils.bigIntegerFromBytes(M2Bytes);
 			digest.reset();
 		}
+
+		recordPhase(SRP6Metrics.Phase.SERVER_EVIDENCE, t);
 		
 		updateLastActivityTime();
+
+		recordSuccess(SRP6Metrics.Step.SERVER_STEP_2, start);
 		
-		return M2;
+		return M2Bytes;
+	}
+
+
+	/**
+	 * Returns the server public value 'B' padded to the byte length of
+	 * 'N'.
+	 *
+	 * @return The padded server public value 'B'.
+	 */
+	private byte[] paddedB() {
+
+		if (paddedB == null)
+			paddedB = BigIntegerUtils.bigIntegerToBytes(B, config.getPadLength());
+
+		return paddedB;
+	}
+
+
+	/**
+	 * Left-pads a received evidence message with zeros to the specified
+	 * length. Excess leading zeros, such as the sign byte of
+	 * {@code BigInteger.toByteArray()}, are stripped first.
+	 *
+	 * @param evidence The evidence message.
+	 * @param length   The length.
+	 *
+	 * @return The padded evidence message, unchanged if longer than the
+	 *         length after stripping leading zeros.
+	 */
+	static byte[] pad(final byte[] evidence, final int length) {
+
+		if (evidence.length > length) {
+
+			int start = 0;
+
+			while (evidence.length - start > length && evidence[start] == 0)
+				start++;
+
+			if (evidence.length - start > length)
+				return evidence;
+
+			return Arrays.copyOfRange(evidence, start, evidence.length);
+		}
+
+		if (evidence.length == length)
+			return evidence;
+
+		byte[] padded = new byte[length];
+		System.arraycopy(evidence, 0, padded, length - evidence.length, evidence.length);
+		return padded;
 	}
 	
 	
@@ -0,0 +1,631 @@
+package com.nimbusds.srp6;
+
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Registry of server-side SRP-6a authentication sessions awaiting
+ * {@link SRP6ServerSession#step2 step two}, keyed by an opaque handshake ID.
+ *
+ * <p>Usage:
+ *
+ * <ul>
+ *     <li>After {@link SRP6ServerSession#step1 step one}
+ *         {@link #register register} the session and return the handshake
+ *         ID to the client along with the salt 's' and the public server
+ *         value 'B'.
+ *     <li>On receiving the client credentials {@link #take take} the session
+ *         for the handshake ID echoed by the client and proceed to step two.
+ *         A handshake ID can be taken only once.
+ * </ul>
+ *
+ * <p>Sessions expire after their own {@link SRP6Session#getTimeout timeout},
+ * or after the default timeout of the registry if they have none. Expired
+ * sessions are removed by a hierarchical timing wheel: each session is filed
+ * in a slot by its expiry tick and the wheel is advanced tick by tick, so
+ * that expiration costs time proportional to the expired sessions rather than
+ * to the registered ones. The wheel is advanced on each registration and may
+ * also be advanced periodically by calling {@link #expireSessions}.
+ *
+ * <p>When the registry is full the session closest to expiry is evicted to
+ * make room for a new one.
+ *
+ * <p>This class is thread-safe.
+ */
+public class SRP6ServerSessionRegistry {
+
+
+	/**
+	 * The default tick duration of the timing wheel, in milliseconds.
+	 */
+	public static final long DEFAULT_TICK_MILLIS = 1000;
+
+
+	/**
+	 * The byte length of the handshake IDs.
+	 */
+	private static final int HANDSHAKE_ID_LENGTH = 16;
+
+
+	/**
+	 * The number of bits indexing the slots of each wheel level.
+	 */
+	private static final int SLOT_BITS = 6;
+
+
+	/**
+	 * The number of slots of each wheel level.
+	 */
+	private static final int SLOTS = 1 << SLOT_BITS;
+
+
+	/**
+	 * The number of wheel levels. Four levels of 64 slots cover 2^24
+	 * ticks, about 194 days with the default tick.
+	 */
+	private static final int LEVELS = 4;
+
+
+	/**
+	 * Hexadecimal digits for the handshake IDs.
+	 */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
+	/**
+	 * A registered session, linked into a slot of the timing wheel.
+	 */
+	private static final class Entry {
+
+
+		final String handshakeID;
+
+
+		final SRP6ServerSession session;
+
+
+		final long deadline;
+
+
+		Entry prev;
+
+
+		Entry next;
+
+
+		int level = -1;
+
+
+		int slot;
+
+
+		Entry(final String handshakeID, final SRP6ServerSession session, final long deadline) {
+
+			this.handshakeID = handshakeID;
+			this.session = session;
+			this.deadline = deadline;
+		}
+	}
+
+
+	/**
+	 * The registered sessions by handshake ID.
+	 */
+	private final ConcurrentMap<String,Entry> sessions = new ConcurrentHashMap<>();
+
+
+	/**
+	 * The slot list heads of the timing wheel, by level and slot. Guarded
+	 * by this.
+	 */
+	private final Entry[][] wheel = new Entry[LEVELS][SLOTS];
+
+
+	/**
+	 * The last tick processed by the timing wheel. Guarded by this.
+	 */
+	private long currentTick;
+
+
+	/**
+	 * The maximum number of registered sessions.
+	 */
+	private final int maxSessions;
+
+
+	/**
+	 * The default session timeout, in seconds.
+	 */
+	private final int defaultTimeout;
+
+
+	/**
+	 * The tick duration of the timing wheel, in milliseconds.
+	 */
+	private final long tickMillis;
+
+
+	/**
+	 * The source of randomness for the handshake IDs.
+	 */
+	private final RandomSource randomSource;
+
+
+	/**
+	 * The number of expired sessions.
+	 */
+	private final AtomicLong expiredCount = new AtomicLong();
+
+
+	/**
+	 * The number of sessions evicted for lack of room.
+	 */
+	private final AtomicLong evictedCount = new AtomicLong();
+
+
+	/**
+	 * Creates a new server session registry with a timing wheel of
+	 * one second ticks.
+	 *
+	 * @param maxSessions    The maximum number of registered sessions,
+	 *                       one or more.
+	 * @param defaultTimeout The timeout in seconds for sessions without
+	 *                       one of their own, one or more.
+	 */
+	public SRP6ServerSessionRegistry(final int maxSessions, final int defaultTimeout) {
+
+		this(maxSessions, defaultTimeout, DEFAULT_TICK_MILLIS, new ThreadLocalRandomSource());
+	}
+
+
+	/**
+	 * Creates a new server session registry.
+	 *
+	 * @param maxSessions    The maximum number of registered sessions,
+	 *                       one or more.
+	 * @param defaultTimeout The timeout in seconds for sessions without
+	 *                       one of their own, one or more.
+	 * @param tickMillis     The tick duration of the timing wheel in
+	 *                       milliseconds, one or more. Sessions are
+	 *                       removed up to one tick after they expire.
+	 * @param randomSource   The source of randomness for the handshake
+	 *                       IDs. Must not be {@code null}.
+	 */
+	public SRP6ServerSessionRegistry(final int maxSessions,
+	                                 final int defaultTimeout,
+	                                 final long tickMillis,
+	                                 final RandomSource randomSource) {
+
+		if (maxSessions < 1)
+			throw new IllegalArgumentException("The maximum number of sessions must be one or more");
+
+		this.maxSessions = maxSessions;
+
+		if (defaultTimeout < 1)
+			throw new IllegalArgumentException("The default timeout must be one or more");
+
+		this.defaultTimeout = defaultTimeout;
+
+		if (tickMillis < 1)
+			throw new IllegalArgumentException("The tick duration must be one or more");
+
+		this.tickMillis = tickMillis;
+
+		if (randomSource == null)
+			throw new IllegalArgumentException("The random source must not be null");
+
+		this.randomSource = randomSource;
+
+		currentTick = System.currentTimeMillis() / tickMillis;
+	}
+
+
+	/**
+	 * Gets the maximum number of registered sessions.
+	 *
+	 * @return The maximum number of sessions.
+	 */
+	public int getMaxSessions() {
+
+		return maxSessions;
+	}
+
+
+	/**
+	 * Gets the timeout for sessions without one of their own.
+	 *
+	 * @return The default timeout, in seconds.
+	 */
+	public int getDefaultTimeout() {
+
+		return defaultTimeout;
+	}
+
+
+	/**
+	 * Registers a server session, typically after
+	 * {@link SRP6ServerSession#step1 step one}. Expired sessions are
+	 * removed first and if the registry is still full the session closest
+	 * to expiry is evicted.
+	 *
+	 * @param session The server session. Must not be {@code null}.
+	 *
+	 * @return The handshake ID for the session.
+	 */
+	public String register(final SRP6ServerSession session) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The server session must not be null");
+
+		final int timeout = session.getTimeout() > 0 ? session.getTimeout() : defaultTimeout;
+
+		final long deadline = session.getLastActivityTime() + timeout * 1000L;
+
+		Entry entry;
+
+		do {
+			entry = new Entry(generateHandshakeID(), session, deadline);
+
+		} while (sessions.putIfAbsent(entry.handshakeID, entry) != null);
+
+		synchronized (this) {
+
+			advance(System.currentTimeMillis() / tickMillis);
+
+			while (sessions.size() > maxSessions) {
+
+				Entry victim = first(entry);
+
+				if (victim == null)
+					break;
+
+				unlink(victim);
+
+				if (sessions.remove(victim.handshakeID, victim))
+					evictedCount.incrementAndGet();
+			}
+
+			// Taken concurrently in the meantime
+			if (sessions.get(entry.handshakeID) == entry)
+				schedule(entry, currentTick + 1);
+		}
+
+		return entry.handshakeID;
+	}
+
+
+	/**
+	 * Retrieves and removes the server session with the specified
+	 * handshake ID, typically to proceed to
+	 * {@link SRP6ServerSession#step2 step two}.
+	 *
+	 * @param handshakeID The handshake ID. May be {@code null}.
+	 *
+	 * @return The server session, {@code null} if none is registered for
+	 *         the handshake ID or the session has expired.
+	 */
+	public SRP6ServerSession take(final String handshakeID) {
+
+		if (handshakeID == null)
+			return null;
+
+		final Entry entry = sessions.remove(handshakeID);
+
+		if (entry == null)
+			return null;
+
+		synchronized (this) {
+			unlink(entry);
+		}
+
+		if (System.currentTimeMillis() > entry.deadline) {
+			expiredCount.incrementAndGet();
+			return null;
+		}
+
+		return entry.session;
+	}
+
+
+	/**
+	 * Advances the timing wheel to the current time and removes the
+	 * expired sessions.
+	 */
+	public void expireSessions() {
+
+		synchronized (this) {
+			advance(System.currentTimeMillis() / tickMillis);
+		}
+	}
+
+
+	/**
+	 * Gets the number of registered sessions, including expired sessions
+	 * that are yet to be removed.
+	 *
+	 * @return The number of live sessions.
+	 */
+	public int getLiveCount() {
+
+		return sessions.size();
+	}
+
+
+	/**
+	 * Gets the number of sessions that expired before being taken.
+	 *
+	 * @return The number of expired sessions.
+	 */
+	public long getExpiredCount() {
+
+		return expiredCount.get();
+	}
+
+
+	/**
+	 * Gets the number of sessions evicted to make room for new ones.
+	 *
+	 * @return The number of evicted sessions.
+	 */
+	public long getEvictedCount() {
+
+		return evictedCount.get();
+	}
+
+
+	/**
+	 * Generates a random handshake ID.
+	 *
+	 * @return The handshake ID, as a hexadecimal string.
+	 */
+	private String generateHandshakeID() {
+
+		byte[] bytes = new byte[HANDSHAKE_ID_LENGTH];
+		randomSource.getSecureRandom().nextBytes(bytes);
+
+		char[] chars = new char[bytes.length * 2];
+
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+
+		return new String(chars);
+	}
+
+
+	/**
+	 * Returns the first tick that begins at or after the deadline of an
+	 * entry, so that no session is removed before it expires.
+	 *
+	 * @param entry The entry.
+	 *
+	 * @return The deadline tick.
+	 */
+	private long deadlineTick(final Entry entry) {
+
+		return (entry.deadline + tickMillis - 1) / tickMillis;
+	}
+
+
+	/**
+	 * Files an entry into the timing wheel. The entry goes to the lowest
+	 * level at which its expiry tick shares the higher order slot indices
+	 * with the current tick, so that it is cascaded down to the next level
+	 * when the current tick reaches its slot. Entries beyond the range of
+	 * the wheel are filed at its far end and rescheduled when reached.
+	 * Must be called while holding the lock.
+	 *
+	 * @param entry   The entry.
+	 * @param minTick The earliest tick to file the entry at, the current
+	 *                tick if not yet processed, else the next one.
+	 */
+	private void schedule(final Entry entry, final long minTick) {
+
+		final long tick = Math.max(deadlineTick(entry), minTick);
+
+		int level = 0;
+
+		while (level < LEVELS - 1 && (tick >>> (SLOT_BITS * (level + 1))) != (currentTick >>> (SLOT_BITS * (level + 1))))
+			level++;
+
+		final int slot;
+
+		if ((tick >>> (SLOT_BITS * LEVELS)) != (currentTick >>> (SLOT_BITS * LEVELS))) {
+			// Out of range, wait at the slot before the current one
+			slot = (int) ((currentTick >>> (SLOT_BITS * level)) - 1) & (SLOTS - 1);
+		} else {
+			slot = (int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+		}
+
+		entry.level = level;
+		entry.slot = slot;
+		entry.prev = null;
+		entry.next = wheel[level][slot];
+
+		if (entry.next != null)
+			entry.next.prev = entry;
+
+		wheel[level][slot] = entry;
+	}
+
+
+	/**
+	 * Removes an entry from the timing wheel, if filed. Must be called
+	 * while holding the lock.
+	 *
+	 * @param entry The entry.
+	 */
+	private void unlink(final Entry entry) {
+
+		if (entry.level < 0)
+			return;
+
+		if (entry.prev != null)
+			entry.prev.next = entry.next;
+		else
+			wheel[entry.level][entry.slot] = entry.next;
+
+		if (entry.next != null)
+			entry.next.prev = entry.prev;
+
+		entry.prev = null;
+		entry.next = null;
+		entry.level = -1;
+	}
+
+
+	/**
+	 * Detaches the entries of a slot. Must be called while holding the
+	 * lock.
+	 *
+	 * @param level The wheel level.
+	 * @param slot  The slot.
+	 *
+	 * @return The first detached entry, {@code null} if none.
+	 */
+	private Entry detach(final int level, final int slot) {
+
+		Entry head = wheel[level][slot];
+		wheel[level][slot] = null;
+
+		for (Entry e = head; e != null; e = e.next)
+			e.level = -1;
+
+		return head;
+	}
+
+
+	/**
+	 * Returns the next tick after the current one at which the timing
+	 * wheel has work to do: a non-empty level 0 slot to expire or a
+	 * non-empty higher level slot to cascade. Must be called while
+	 * holding the lock.
+	 *
+	 * @return The tick, {@link Long#MAX_VALUE} if the wheel is empty.
+	 */
+	private long nextEventTick() {
+
+		long next = Long.MAX_VALUE;
+
+		for (int level = 0; level < LEVELS; level++) {
+
+			final int shift = SLOT_BITS * level;
+			final long base = currentTick >>> shift;
+
+			// The slots of a level are reached in turn at its boundaries
+			for (int i = 1; i <= SLOTS; i++) {
+
+				final long t = (base + i) << shift;
+
+				if (t >= next)
+					break;
+
+				if (wheel[level][(int) (base + i) & (SLOTS - 1)] != null) {
+					next = t;
+					break;
+				}
+			}
+		}
+
+		return next;
+	}
+
+
+	/**
+	 * Advances the timing wheel to the specified tick, cascading the
+	 * higher levels and expiring the sessions due. Ticks with no work
+	 * are skipped, so that an idle period doesn't cost a step per tick.
+	 * Must be called while holding the lock.
+	 *
+	 * @param tick The tick to advance to.
+	 */
+	void advance(final long tick) {
+
+		while (currentTick < tick) {
+
+			final long eventTick = nextEventTick();
+
+			if (eventTick > tick) {
+				// Nothing due up to the tick, the filed entries keep
+				// their slots
+				currentTick = tick;
+				return;
+			}
+
+			currentTick = eventTick;
+
+			// Cascade the levels whose lower slot indices have wrapped,
+			// from the highest down
+			int levels = 0;
+
+			while (levels < LEVELS - 1 && (currentTick & ((1L << (SLOT_BITS * (levels + 1))) - 1)) == 0)
+				levels++;
+
+			for (int level = levels; level > 0; level--) {
+
+				int slot = (int) (currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+
+				Entry e = detach(level, slot);
+
+				while (e != null) {
+					Entry next = e.next;
+					schedule(e, currentTick);
+					e = next;
+				}
+			}
+
+			Entry e = detach(0, (int) currentTick & (SLOTS - 1));
+
+			while (e != null) {
+
+				Entry next = e.next;
+
+				if (deadlineTick(e) > currentTick) {
+					// Filed at the far end of the wheel, not yet due
+					schedule(e, currentTick + 1);
+				} else if (sessions.remove(e.handshakeID, e)) {
+					expiredCount.incrementAndGet();
+				}
+
+				e = next;
+			}
+		}
+	}
+
+
+	/**
+	 * Finds the filed entry closest to expiry, scanning the wheel from the
+	 * current tick onwards. Must be called while holding the lock.
+	 *
+	 * @param exclude An entry to skip.
+	 *
+	 * @return The entry, {@code null} if none other is filed.
+	 */
+	private Entry first(final Entry exclude) {
+
+		for (int level = 0; level < LEVELS; level++) {
+
+			int start = (int) (currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+
+			for (int i = 0; i < SLOTS; i++) {
+
+				Entry best = null;
+
+				for (Entry e = wheel[level][(start + i) & (SLOTS - 1)]; e != null; e = e.next) {
+
+					if (e != exclude && (best == null || e.deadline < best.deadline))
+						best = e;
+				}
+
+				if (best != null)
+					return best;
+			}
+		}
+
+		return null;
+	}
+}
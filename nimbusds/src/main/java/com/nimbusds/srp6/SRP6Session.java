@@ -35,9 +35,17 @@ public abstract class SRP6Session implements Serializable {
 
 
 	/**
-	 * Source of randomness.
+	 * Source of randomness for subclasses, initially a generator shared
+	 * by all instances. If a subclass sets another generator, it takes
+	 * the place of the random source of the {@link #srp6Routines
+	 * routines} for the private values 'a' and 'b'.
+	 *
+	 * @deprecated Pass routines with a {@link RandomSource} to the
+	 *             constructor instead.
 	 */
-	protected SecureRandom random = new SecureRandom();
+	@Deprecated
+	protected SecureRandom random = SharedSecureRandom.INSTANCE;
+
 
 	/**
 	 * The SRP-6a authentication session timeout in seconds. If the 
@@ -126,6 +134,18 @@ public abstract class SRP6Session implements Serializable {
 	protected URoutine hashedKeysRoutine = null;
 
 
+	/**
+	 * Optional pool of precomputed ephemeral values, not serialised.
+	 */
+	protected transient SRP6EphemeralPool ephemeralPool = null;
+
+
+	/**
+	 * Optional instrumentation, not serialised.
+	 */
+	protected transient SRP6Metrics metrics = null;
+
+
 	/**
 	 * Optional storage of arbitrary session attributes.
 	 */
@@ -383,6 +403,75 @@ public abstract class SRP6Session implements Serializable {
 	}
 
 
+	/**
+	 * Gets the public client value 'A' as a byte array padded to the byte
+	 * length of 'N', for the wire.
+	 *
+	 * @return The public client value 'A' if available, else
+	 *         {@code null}.
+	 */
+	public byte[] getPublicClientValueBytes() {
+
+		return A != null ? BigIntegerUtils.bigIntegerToBytes(A, config.getPadLength()) : null;
+	}
+
+
+	/**
+	 * Gets the public server value 'B' as a byte array padded to the byte
+	 * length of 'N', for the wire.
+	 *
+	 * @return The public server value 'B' if available, else
+	 *         {@code null}.
+	 */
+	public byte[] getPublicServerValueBytes() {
+
+		return B != null ? BigIntegerUtils.bigIntegerToBytes(B, config.getPadLength()) : null;
+	}
+
+
+	/**
+	 * Gets the client evidence message 'M1' as a byte array of the digest
+	 * length of 'H', for the wire.
+	 *
+	 * @return The client evidence message 'M1' if available, else
+	 *         {@code null}.
+	 */
+	public byte[] getClientEvidenceMessageBytes() {
+
+		return M1 != null ? BigIntegerUtils.bigIntegerToBytes(M1, getEvidenceLength()) : null;
+	}
+
+
+	/**
+	 * Gets the server evidence message 'M2' as a byte array of the digest
+	 * length of 'H', for the wire.
+	 *
+	 * @return The server evidence message 'M2' if available, else
+	 *         {@code null}.
+	 */
+	public byte[] getServerEvidenceMessageBytes() {
+
+		return M2 != null ? BigIntegerUtils.bigIntegerToBytes(M2, getEvidenceLength()) : null;
+	}
+
+
+	/**
+	 * Returns the length of the evidence messages, i.e. the digest length
+	 * of 'H'.
+	 *
+	 * @return The evidence length in bytes.
+	 */
+	protected int getEvidenceLength() {
+
+		MessageDigest digest = config.getMessageDigestInstance();
+
+		if (digest == null)
+			throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + config.H);
+
+		return digest.getDigestLength();
+	}
+
+
 	/**
 	 * Gets the shared session key 'S'
 	 *
@@ -418,6 +507,156 @@ public abstract class SRP6Session implements Serializable {
 	}
 	
 	
+	/**
+	 * Sets a pool of precomputed ephemeral values, saving the
+	 * exponentiation for the server private value 'b' and g^b (mod N) in
+	 * {@link SRP6ServerSession#step1 server step one}, and for the client
+	 * private value 'a' and public value 'A' in
+	 * {@link SRP6ClientSession#step2 client step two}. The pool must be
+	 * for the same crypto parameters as the session. Note that the pool is
+	 * not serialised with the session.
+	 *
+	 * @param pool The ephemeral value pool, {@code null} to compute the
+	 *             values on demand.
+	 */
+	public void setEphemeralPool(final SRP6EphemeralPool pool) {
+
+		ephemeralPool = pool;
+	}
+
+
+	/**
+	 * Gets the pool of precomputed ephemeral values.
+	 *
+	 * @return The ephemeral value pool, {@code null} if not specified.
+	 */
+	public SRP6EphemeralPool getEphemeralPool() {
+
+		return ephemeralPool;
+	}
+
+
+	/**
+	 * Generates a private value ('a' or 'b') for the current crypto
+	 * parameters, from the deprecated {@link #random} field if set by a
+	 * subclass.
+	 *
+	 * @return The private value.
+	 */
+	@SuppressWarnings("deprecation")
+	protected BigInteger generatePrivateValue() {
+
+		if (random != null && random != SharedSecureRandom.INSTANCE)
+			return srp6Routines.generatePrivateValue(config.N, random);
+
+		return srp6Routines.generatePrivateValue(config.N);
+	}
+
+
+	/**
+	 * Takes a value from the ephemeral value pool, if set.
+	 *
+	 * @return The ephemeral value, {@code null} if no pool is set.
+	 */
+	protected SRP6EphemeralPool.Ephemeral takeEphemeral() {
+
+		if (ephemeralPool == null)
+			return null;
+
+		if (! ephemeralPool.supports(config))
+			throw new IllegalArgumentException("The ephemeral pool crypto parameters don't match those of the session");
+
+		return ephemeralPool.take();
+	}
+	
+	
+	/**
+	 * Sets the instrumentation to receive the phase latencies and step
+	 * outcomes of this session. Note that the instrumentation is not
+	 * serialised with the session.
+	 *
+	 * @param metrics The instrumentation, {@code null} to disable.
+	 */
+	public void setMetrics(final SRP6Metrics metrics) {
+
+		this.metrics = metrics;
+	}
+
+
+	/**
+	 * Gets the instrumentation of this session.
+	 *
+	 * @return The instrumentation, {@code null} if disabled.
+	 */
+	public SRP6Metrics getMetrics() {
+
+		return metrics;
+	}
+
+
+	/**
+	 * Starts timing, if instrumentation is enabled.
+	 *
+	 * @return The start time in nanoseconds, zero if disabled.
+	 */
+	protected long startTiming() {
+
+		return metrics != null ? System.nanoTime() : 0L;
+	}
+
+
+	/**
+	 * Records the latency of a computation phase, if instrumentation is
+	 * enabled.
+	 *
+	 * @param phase The phase.
+	 * @param start The start time of the phase in nanoseconds.
+	 *
+	 * @return The end time of the phase in nanoseconds, to start the
+	 *         next phase with, zero if disabled.
+	 */
+	protected long recordPhase(final SRP6Metrics.Phase phase, final long start) {
+
+		if (metrics == null)
+			return 0L;
+
+		final long now = System.nanoTime();
+		metrics.recordPhase(phase, now - start);
+		return now;
+	}
+
+
+	/**
+	 * Records a successfully completed step, if instrumentation is
+	 * enabled.
+	 *
+	 * @param step  The step.
+	 * @param start The start time of the step in nanoseconds.
+	 */
+	protected void recordSuccess(final SRP6Metrics.Step step, final long start) {
+
+		if (metrics != null)
+			metrics.recordSuccess(step, System.nanoTime() - start);
+	}
+
+
+	/**
+	 * Records a failed step, if instrumentation is enabled.
+	 *
+	 * @param step      The step.
+	 * @param exception The exception to throw.
+	 *
+	 * @return The exception.
+	 */
+	protected SRP6Exception recordFailure(final SRP6Metrics.Step step, final SRP6Exception exception) {
+
+		if (metrics != null)
+			metrics.recordFailure(step, exception.getCauseType());
+
+		return exception;
+	}
+	
+	
 	/**
 	 * Sets a session attribute. This method can be used to store arbitrary
 	 * objects with this session and retrieve them later with 
@@ -0,0 +1,756 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+
+/**
+ * Compact binary codec for the state of client and server-side SRP-6a
+ * authentication sessions, intended for parking handshakes in a shared cache
+ * between the protocol steps.
+ *
+ * <p>A codec is bound to a single set of SRP-6a crypto parameters, which are
+ * identified in the encoding by a 4-byte fingerprint rather than included in
+ * full. Values bounded by the prime 'N' are written as fixed-width unsigned
+ * integers padded to the length of 'N', the others with a 2-byte length
+ * prefix.
+ *
+ * <p>The encoding holds:
+ *
+ * <ul>
+ *     <li>A version byte, the session type and its state.
+ *     <li>Which of the custom routines for 'x', 'M1', 'M2' and 'u' were set
+ *         on the session. The routines themselves are not encoded; the same
+ *         ones must be {@link #setXRoutine set on the codec} to decode the
+ *         session, and are then set on the decoded session.
+ *     <li>The timeout and the last activity timestamp.
+ *     <li>The user identity 'I', the client password 'P' and the SRP-6a
+ *         variables computed so far. The multiplier 'k' is recomputed on
+ *         decoding.
+ * </ul>
+ *
+ * <p>Session {@link SRP6Session#setAttribute attributes} are not encoded.
+ *
+ * <p>This class is thread-safe once the custom routines are set.
+ */
+public class SRP6SessionCodec {
+
+
+	/**
+	 * The current encoding version.
+	 */
+	public static final int VERSION = 1;
+
+
+	/**
+	 * The session type byte for server sessions.
+	 */
+	private static final byte SERVER = 0;
+
+
+	/**
+	 * The session type byte for client sessions.
+	 */
+	private static final byte CLIENT = 1;
+
+
+	/**
+	 * Flag for a custom password key 'x' routine.
+	 */
+	private static final int X_ROUTINE = 1;
+
+
+	/**
+	 * Flag for a custom client evidence message 'M1' routine.
+	 */
+	private static final int CLIENT_EVIDENCE_ROUTINE = 1 << 1;
+
+
+	/**
+	 * Flag for a custom server evidence message 'M2' routine.
+	 */
+	private static final int SERVER_EVIDENCE_ROUTINE = 1 << 2;
+
+
+	/**
+	 * Flag for a custom hashed keys 'u' routine.
+	 */
+	private static final int HASHED_KEYS_ROUTINE = 1 << 3;
+
+
+	/**
+	 * Flag for a server session with a mock user identity.
+	 */
+	private static final int NO_SUCH_USER_IDENTITY = 1 << 4;
+
+
+	/**
+	 * Flag for a session with crypto parameters, unset for client sessions
+	 * before step two.
+	 */
+	private static final int CRYPTO_PARAMS = 1 << 5;
+
+
+	/**
+	 * The order of the encoded values. The constants are their bits in
+	 * the presence and variable-width masks.
+	 */
+	private static final int
+		USER_ID  = 0,
+		PASSWORD = 1,
+		SALT     = 2,
+		V        = 3,
+		X        = 4,
+		PRIVATE  = 5,
+		A        = 6,
+		B        = 7,
+		K        = 8,
+		U        = 9,
+		S        = 10,
+		M1       = 11,
+		M2       = 12;
+
+
+	/**
+	 * The values written as fixed-width unsigned integers when within the
+	 * padded length of 'N'.
+	 */
+	private static final int FIXED_WIDTH = (1 << V) | (1 << PRIVATE) | (1 << A) | (1 << B) | (1 << S);
+
+
+	/**
+	 * UTF-8, for the user identity and password.
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * The crypto parameters.
+	 */
+	private final SRP6CryptoParams config;
+
+
+	/**
+	 * The fingerprint of the crypto parameters.
+	 */
+	private final int fingerprint;
+
+
+	/**
+	 * The cryptographic routines for decoded sessions.
+	 */
+	private final SRP6Routines srp6Routines;
+
+
+	/**
+	 * Custom routine for password key 'x' computation.
+	 */
+	private XRoutine xRoutine = null;
+
+
+	/**
+	 * Custom routine for the client evidence message 'M1' computation.
+	 */
+	private ClientEvidenceRoutine clientEvidenceRoutine = null;
+
+
+	/**
+	 * Custom routine for the server evidence message 'M2' computation.
+	 */
+	private ServerEvidenceRoutine serverEvidenceRoutine = null;
+
+
+	/**
+	 * Custom routine for the hashed keys 'u' computation.
+	 */
+	private URoutine hashedKeysRoutine = null;
+
+
+	/**
+	 * Creates a new session codec. Decoded sessions use the default
+	 * routines.
+	 *
+	 * @param config The SRP-6a crypto parameters of the sessions. Must
+	 *               not be {@code null}.
+	 */
+	public SRP6SessionCodec(final SRP6CryptoParams config) {
+
+		this(config, new SRP6Routines());
+	}
+
+
+	/**
+	 * Creates a new session codec.
+	 *
+	 * @param config       The SRP-6a crypto parameters of the sessions.
+	 *                     Must not be {@code null}.
+	 * @param srp6Routines The math routines for decoded sessions. Must
+	 *                     not be {@code null}.
+	 */
+	public SRP6SessionCodec(final SRP6CryptoParams config, final SRP6Routines srp6Routines) {
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		this.config = config;
+
+		if (config.getMessageDigestInstance() == null)
+			throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + config.H);
+
+		if (srp6Routines == null)
+			throw new IllegalArgumentException("The SRP-6a routines must not be null");
+
+		this.srp6Routines = srp6Routines;
+
+		fingerprint = computeFingerprint(config);
+	}
+
+
+	/**
+	 * Computes the fingerprint of the specified crypto parameters from
+	 * the leading bytes of H(H | N | g).
+	 *
+	 * @param config The crypto parameters.
+	 *
+	 * @return The fingerprint.
+	 */
+	private static int computeFingerprint(final SRP6CryptoParams config) {
+
+		byte[] hash = config.getMessageDigestInstance().digest(
+			(config.H + ':' + config.N.toString(16) + ':' + config.g.toString(16)).getBytes(UTF_8));
+
+		return ByteBuffer.wrap(hash).getInt();
+	}
+
+
+	/**
+	 * Gets the SRP-6a crypto parameters of the sessions.
+	 *
+	 * @return The crypto parameters.
+	 */
+	public SRP6CryptoParams getCryptoParams() {
+
+		return config;
+	}
+
+
+	/**
+	 * Sets the custom routine for the password key 'x' computation of
+	 * decoded client sessions.
+	 *
+	 * @param routine The routine, {@code null} if none.
+	 */
+	public void setXRoutine(final XRoutine routine) {
+
+		xRoutine = routine;
+	}
+
+
+	/**
+	 * Sets the custom routine for the client evidence message 'M1'
+	 * computation of decoded sessions.
+	 *
+	 * @param routine The routine, {@code null} if none.
+	 */
+	public void setClientEvidenceRoutine(final ClientEvidenceRoutine routine) {
+
+		clientEvidenceRoutine = routine;
+	}
+
+
+	/**
+	 * Sets the custom routine for the server evidence message 'M2'
+	 * computation of decoded sessions.
+	 *
+	 * @param routine The routine, {@code null} if none.
+	 */
+	public void setServerEvidenceRoutine(final ServerEvidenceRoutine routine) {
+
+		serverEvidenceRoutine = routine;
+	}
+
+
+	/**
+	 * Sets the custom routine for the hashed keys 'u' computation of
+	 * decoded sessions.
+	 *
+	 * @param routine The routine, {@code null} if none.
+	 */
+	public void setHashedKeysRoutine(final URoutine routine) {
+
+		hashedKeysRoutine = routine;
+	}
+
+
+	/**
+	 * Encodes the state of a server session.
+	 *
+	 * @param session The server session. Must not be {@code null} and
+	 *                must use the crypto parameters of this codec.
+	 *
+	 * @return The encoded state.
+	 */
+	public byte[] encode(final SRP6ServerSession session) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The server session must not be null");
+
+		int flags = routineFlags(session) | CRYPTO_PARAMS;
+
+		if (session.noSuchUserIdentity)
+			flags |= NO_SUCH_USER_IDENTITY;
+
+		BigInteger[] values = new BigInteger[M2 + 1];
+		values[V] = session.v;
+		values[PRIVATE] = session.b;
+
+		return encode(session, SERVER, session.state.ordinal(), flags, null, values);
+	}
+
+
+	/**
+	 * Encodes the state of a client session.
+	 *
+	 * @param session The client session. Must not be {@code null} and
+	 *                must use the crypto parameters of this codec, if
+	 *                set.
+	 *
+	 * @return The encoded state.
+	 */
+	public byte[] encode(final SRP6ClientSession session) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The client session must not be null");
+
+		int flags = routineFlags(session);
+
+		if (session.getXRoutine() != null)
+			flags |= X_ROUTINE;
+
+		if (session.config != null)
+			flags |= CRYPTO_PARAMS;
+
+		BigInteger[] values = new BigInteger[M2 + 1];
+		values[X] = session.x;
+		values[PRIVATE] = session.a;
+
+		return encode(session, CLIENT, session.state.ordinal(), flags, session.password, values);
+	}
+
+
+	/**
+	 * Returns the flags of the custom routines set on a session.
+	 *
+	 * @param session The session.
+	 *
+	 * @return The routine flags.
+	 */
+	private static int routineFlags(final SRP6Session session) {
+
+		int flags = 0;
+
+		if (session.clientEvidenceRoutine != null)
+			flags |= CLIENT_EVIDENCE_ROUTINE;
+
+		if (session.serverEvidenceRoutine != null)
+			flags |= SERVER_EVIDENCE_ROUTINE;
+
+		if (session.hashedKeysRoutine != null)
+			flags |= HASHED_KEYS_ROUTINE;
+
+		return flags;
+	}
+
+
+	/**
+	 * Encodes the state of a session.
+	 *
+	 * @param session  The session.
+	 * @param type     The session type byte.
+	 * @param state    The session state ordinal.
+	 * @param flags    The flags.
+	 * @param password The client password 'P', {@code null} if none.
+	 * @param values   The type specific values, completed here with the
+	 *                 common ones.
+	 *
+	 * @return The encoded state.
+	 */
+	private byte[] encode(final SRP6Session session,
+	                      final byte type,
+	                      final int state,
+	                      final int flags,
+	                      final String password,
+	                      final BigInteger[] values) {
+
+		if (session.config != null && session.config != config &&
+		    (! session.config.N.equals(config.N) || ! session.config.g.equals(config.g) || ! session.config.H.equals(config.H)))
+			throw new IllegalArgumentException("The session crypto parameters don't match those of the codec");
+
+		values[SALT] = session.s;
+		values[A] = session.A;
+		values[B] = session.B;
+		values[K] = session.k;
+		values[U] = session.u;
+		values[S] = session.S;
+		values[M1] = session.M1;
+		values[M2] = session.M2;
+
+		final byte[] userID = session.userID != null ? session.userID.getBytes(UTF_8) : null;
+		final byte[] passwordBytes = password != null ? password.getBytes(UTF_8) : null;
+
+		final int padLength = config.getPadLength();
+
+		int present = 0;
+		int variable = 0;
+		int length = 4 + 4 + 4 + 8 + 2 + 2;
+
+		if (userID != null) {
+			present |= 1 << USER_ID;
+			length += 2 + userID.length;
+		}
+
+		if (passwordBytes != null) {
+			present |= 1 << PASSWORD;
+			length += 2 + passwordBytes.length;
+		}
+
+		final byte[][] magnitudes = new byte[values.length][];
+
+		for (int i = SALT; i < values.length; i++) {
+
+			final BigInteger value = values[i];
+
+			if (value == null)
+				continue;
+
+			present |= 1 << i;
+
+			if (i == K)
+				continue; // recomputed
+
+			if ((FIXED_WIDTH & (1 << i)) != 0 && value.signum() >= 0 && value.bitLength() <= padLength * 8) {
+				length += padLength;
+				continue;
+			}
+
+			variable |= 1 << i;
+			magnitudes[i] = value.toByteArray();
+
+			if (magnitudes[i].length > 0xffff)
+				throw new IllegalArgumentException("Value too large to encode");
+
+			length += 2 + magnitudes[i].length;
+		}
+
+		final ByteBuffer out = ByteBuffer.allocate(length);
+
+		out.put((byte) VERSION);
+		out.put(type);
+		out.put((byte) state);
+		out.put((byte) flags);
+		out.putInt(fingerprint);
+		out.putInt(session.timeout);
+		out.putLong(session.lastActivity);
+		out.putShort((short) present);
+		out.putShort((short) variable);
+
+		if (userID != null)
+			putBytes(out, userID);
+
+		if (passwordBytes != null)
+			putBytes(out, passwordBytes);
+
+		for (int i = SALT; i < values.length; i++) {
+
+			if (values[i] == null || i == K)
+				continue;
+
+			if (magnitudes[i] != null) {
+				putBytes(out, magnitudes[i]);
+			} else {
+				putFixed(out, values[i], padLength);
+			}
+		}
+
+		return out.array();
+	}
+
+
+	/**
+	 * Decodes the state of a server session.
+	 *
+	 * @param bytes The encoded state. Must not be {@code null}.
+	 *
+	 * @return The server session.
+	 *
+	 * @throws IllegalArgumentException If the encoding is invalid, of a
+	 *                                  client session, for other crypto
+	 *                                  parameters or with custom routines
+	 *                                  not set on this codec.
+	 */
+	public SRP6ServerSession decodeServerSession(final byte[] bytes) {
+
+		final ByteBuffer in = header(bytes, SERVER);
+
+		final int stateOrdinal = in.get(2);
+		final int flags = in.get(3);
+
+		if (stateOrdinal < 0 || stateOrdinal >= SRP6ServerSession.State.values().length)
+			throw new IllegalArgumentException("Invalid session state");
+
+		final SRP6ServerSession session = new SRP6ServerSession(config, in.getInt(8), srp6Routines);
+
+		final BigInteger[] values = decode(in, session, flags);
+
+		session.state = SRP6ServerSession.State.values()[stateOrdinal];
+		session.noSuchUserIdentity = (flags & NO_SUCH_USER_IDENTITY) != 0;
+		session.v = values[V];
+		session.b = values[PRIVATE];
+
+		return session;
+	}
+
+
+	/**
+	 * Decodes the state of a client session.
+	 *
+	 * @param bytes The encoded state. Must not be {@code null}.
+	 *
+	 * @return The client session.
+	 *
+	 * @throws IllegalArgumentException If the encoding is invalid, of a
+	 *                                  server session, for other crypto
+	 *                                  parameters or with custom routines
+	 *                                  not set on this codec.
+	 */
+	public SRP6ClientSession decodeClientSession(final byte[] bytes) {
+
+		final ByteBuffer in = header(bytes, CLIENT);
+
+		final int stateOrdinal = in.get(2);
+		final int flags = in.get(3);
+
+		if (stateOrdinal < 0 || stateOrdinal >= SRP6ClientSession.State.values().length)
+			throw new IllegalArgumentException("Invalid session state");
+
+		if ((flags & X_ROUTINE) != 0 && xRoutine == null)
+			throw new IllegalArgumentException("The session requires a custom 'x' routine");
+
+		final SRP6ClientSession session = new SRP6ClientSession(in.getInt(8), srp6Routines);
+
+		final BigInteger[] values = decode(in, session, flags);
+
+		if ((flags & CRYPTO_PARAMS) == 0)
+			session.config = null;
+
+		if ((flags & X_ROUTINE) != 0)
+			session.setXRoutine(xRoutine);
+
+		session.state = SRP6ClientSession.State.values()[stateOrdinal];
+		session.x = values[X];
+		session.a = values[PRIVATE];
+
+		return session;
+	}
+
+
+	/**
+	 * Checks the header of an encoded session.
+	 *
+	 * @param bytes The encoded state.
+	 * @param type  The expected session type byte.
+	 *
+	 * @return The encoded state as a buffer.
+	 */
+	private ByteBuffer header(final byte[] bytes, final byte type) {
+
+		if (bytes == null)
+			throw new IllegalArgumentException("The encoded session must not be null");
+
+		if (bytes.length < 24)
+			throw new IllegalArgumentException("Truncated session encoding");
+
+		if (bytes[0] != VERSION)
+			throw new IllegalArgumentException("Unsupported session encoding version: " + bytes[0]);
+
+		if (bytes[1] != type)
+			throw new IllegalArgumentException("Unexpected session type");
+
+		final ByteBuffer in = ByteBuffer.wrap(bytes);
+
+		if (in.getInt(4) != fingerprint)
+			throw new IllegalArgumentException("The session crypto parameters don't match those of the codec");
+
+		return in;
+	}
+
+
+	/**
+	 * Decodes the common session state.
+	 *
+	 * @param in      The encoded state, positioned anywhere.
+	 * @param session The session to set the common state of.
+	 * @param flags   The flags.
+	 *
+	 * @return The decoded values.
+	 */
+	private BigInteger[] decode(final ByteBuffer in, final SRP6Session session, final int flags) {
+
+		if ((flags & CLIENT_EVIDENCE_ROUTINE) != 0) {
+
+			if (clientEvidenceRoutine == null)
+				throw new IllegalArgumentException("The session requires a custom 'M1' routine");
+
+			session.setClientEvidenceRoutine(clientEvidenceRoutine);
+		}
+
+		if ((flags & SERVER_EVIDENCE_ROUTINE) != 0) {
+
+			if (serverEvidenceRoutine == null)
+				throw new IllegalArgumentException("The session requires a custom 'M2' routine");
+
+			session.setServerEvidenceRoutine(serverEvidenceRoutine);
+		}
+
+		if ((flags & HASHED_KEYS_ROUTINE) != 0) {
+
+			if (hashedKeysRoutine == null)
+				throw new IllegalArgumentException("The session requires a custom 'u' routine");
+
+			session.setHashedKeysRoutine(hashedKeysRoutine);
+		}
+
+		session.config = config;
+
+		final int padLength = config.getPadLength();
+
+		final BigInteger[] values = new BigInteger[M2 + 1];
+
+		try {
+			in.position(12);
+
+			session.lastActivity = in.getLong();
+
+			final int present = in.getShort() & 0xffff;
+			final int variable = in.getShort() & 0xffff;
+
+			if ((present & (1 << USER_ID)) != 0)
+				session.userID = new String(getBytes(in), UTF_8);
+
+			if ((present & (1 << PASSWORD)) != 0) {
+
+				if (! (session instanceof SRP6ClientSession))
+					throw new IllegalArgumentException("Unexpected password");
+
+				((SRP6ClientSession) session).password = new String(getBytes(in), UTF_8);
+			}
+
+			for (int i = SALT; i < values.length; i++) {
+
+				if ((present & (1 << i)) == 0)
+					continue;
+
+				if (i == K) {
+					values[K] = srp6Routines.computeK(config);
+				} else if ((variable & (1 << i)) != 0) {
+					values[i] = new BigInteger(getBytes(in));
+				} else if ((FIXED_WIDTH & (1 << i)) != 0) {
+					values[i] = getFixed(in, padLength);
+				} else {
+					throw new IllegalArgumentException("Invalid session encoding");
+				}
+			}
+
+			if (in.hasRemaining())
+				throw new IllegalArgumentException("Trailing bytes in session encoding");
+
+		} catch (BufferUnderflowException | NumberFormatException e) {
+
+			throw new IllegalArgumentException("Truncated session encoding", e);
+		}
+
+		session.s = values[SALT];
+		session.A = values[A];
+		session.B = values[B];
+		session.k = values[K];
+		session.u = values[U];
+		session.S = values[S];
+		session.M1 = values[M1];
+		session.M2 = values[M2];
+
+		return values;
+	}
+
+
+	/**
+	 * Writes a byte array with a 2-byte length prefix.
+	 *
+	 * @param out   The output buffer.
+	 * @param bytes The byte array.
+	 */
+	static void putBytes(final ByteBuffer out, final byte[] bytes) {
+
+		if (bytes.length > 0xffff)
+			throw new IllegalArgumentException("Value too large to encode");
+
+		out.putShort((short) bytes.length);
+		out.put(bytes);
+	}
+
+
+	/**
+	 * Reads a byte array with a 2-byte length prefix.
+	 *
+	 * @param in The input buffer.
+	 *
+	 * @return The byte array.
+	 */
+	static byte[] getBytes(final ByteBuffer in) {
+
+		byte[] bytes = new byte[in.getShort() & 0xffff];
+		in.get(bytes);
+		return bytes;
+	}
+
+
+	/**
+	 * Writes a non-negative integer as a fixed-width unsigned value,
+	 * left-padded with zeros.
+	 *
+	 * @param out    The output buffer.
+	 * @param value  The integer, within the width.
+	 * @param length The width in bytes.
+	 */
+	static void putFixed(final ByteBuffer out, final BigInteger value, final int length) {
+
+		final byte[] bytes = value.toByteArray();
+
+		// Skip the sign byte, if any
+		final int offset = bytes.length > length ? bytes.length - length : 0;
+		final int count = bytes.length - offset;
+
+		for (int i = count; i < length; i++)
+			out.put((byte) 0);
+
+		out.put(bytes, offset, count);
+	}
+
+
+	/**
+	 * Reads a fixed-width unsigned integer.
+	 *
+	 * @param in     The input buffer.
+	 * @param length The width in bytes.
+	 *
+	 * @return The integer.
+	 */
+	static BigInteger getFixed(final ByteBuffer in, final int length) {
+
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new BigInteger(1, bytes);
+	}
+}
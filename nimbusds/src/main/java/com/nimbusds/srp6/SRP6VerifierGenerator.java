@@ -175,6 +175,29 @@ public class SRP6VerifierGenerator {
 		
 		return srp6Routines.computeVerifier(config.N, config.g, x);
 	}
+
+	
+	/**
+	 * Generates a new verifier 'v' from the specified parameters, as a
+	 * byte array for storage.
+	 *
+	 * <p>The verifier is computed as v = g^x (mod N). If a custom
+	 * {@link #setXRoutine 'x' computation routine} is set it will be used
+	 * instead of the {@link SRP6Routines#computeX default one}.
+	 *
+	 * @param salt     The salt 's'. Must not be {@code null}.
+	 * @param userID   The user identity 'I'. May be {@code null} if the
+	 *                 default 'x' routine is used or the custom one
+	 *                 ignores it.
+	 * @param password The user password 'P'. Must not be {@code null}.
+	 *
+	 * @return The resulting verifier 'v', padded to the byte length of
+	 *         'N'.
+	 */
+	public byte[] generatePaddedVerifier(final byte[] salt, final byte[] userID, final byte[] password) {
+
+		return BigIntegerUtils.bigIntegerToBytes(generateVerifier(salt, userID, password), config.getPadLength());
+	}
 	
 	
 	/**
@@ -0,0 +1,369 @@
+package com.nimbusds.srp6;
+
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Password key 'x' routine using the memory-hard scrypt function (RFC 7914).
+ * The 'p' lanes are computed in parallel.
+ *
+ * <p>The salt 's' carries the algorithm byte 'S', the base 2 logarithm of
+ * the cost 'N', the block size 'r' and the parallelisation 'p', followed by
+ * the random salt bytes.
+ *
+ * <p>Instances are immutable and thread-safe.
+ */
+public class ScryptXRoutine extends KeyDerivationXRoutine {
+
+
+	/**
+	 * The algorithm identifier byte in the salt.
+	 */
+	public static final byte ALGORITHM = 'S';
+
+
+	/**
+	 * The maximum base 2 logarithm of the cost 'N' accepted from a salt.
+	 */
+	public static final int MAX_LOG2_N = 24;
+
+
+	/**
+	 * The maximum memory, in bytes, of all lanes accepted from a salt,
+	 * 1 GiB.
+	 */
+	public static final long MAX_MEMORY = 1L << 30;
+
+
+	/**
+	 * The base 2 logarithm of the cost 'N'.
+	 */
+	private final int log2N;
+
+
+	/**
+	 * The block size 'r'.
+	 */
+	private final int r;
+
+
+	/**
+	 * The parallelisation 'p'.
+	 */
+	private final int p;
+
+
+	/**
+	 * Creates a new scrypt 'x' routine on the default fork-join pool.
+	 *
+	 * @param log2N The base 2 logarithm of the cost 'N', from 1 to
+	 *              {@link #MAX_LOG2_N}.
+	 * @param r     The block size 'r', from 1 to 255.
+	 * @param p     The parallelisation 'p', from 1 to 255.
+	 */
+	public ScryptXRoutine(final int log2N, final int r, final int p) {
+
+		this(log2N, r, p, new ThreadLocalRandomSource(), null);
+	}
+
+
+	/**
+	 * Creates a new scrypt 'x' routine.
+	 *
+	 * @param log2N        The base 2 logarithm of the cost 'N', from 1 to
+	 *                     {@link #MAX_LOG2_N}.
+	 * @param r            The block size 'r', from 1 to 255.
+	 * @param p            The parallelisation 'p', from 1 to 255.
+	 * @param randomSource The source of randomness for salts. Must not be
+	 *                     {@code null}.
+	 * @param pool         The fork-join pool for the parallel lanes,
+	 *                     {@code null} for the default pool.
+	 */
+	public ScryptXRoutine(final int log2N,
+	                      final int r,
+	                      final int p,
+	                      final RandomSource randomSource,
+	                      final ForkJoinPool pool) {
+
+		super(ALGORITHM, randomSource, pool);
+
+		checkParameters(log2N, r, p);
+
+		this.log2N = log2N;
+		this.r = r;
+		this.p = p;
+	}
+
+
+	/**
+	 * Checks the scrypt parameters against the limits.
+	 *
+	 * @param log2N The base 2 logarithm of the cost 'N'.
+	 * @param r     The block size 'r'.
+	 * @param p     The parallelisation 'p'.
+	 */
+	private static void checkParameters(final int log2N, final int r, final int p) {
+
+		if (log2N < 1 || log2N > MAX_LOG2_N)
+			throw new IllegalArgumentException("The scrypt log2(N) must be between 1 and " + MAX_LOG2_N);
+
+		if (r < 1 || r > 255)
+			throw new IllegalArgumentException("The scrypt block size r must be between 1 and 255");
+
+		if (p < 1 || p > 255)
+			throw new IllegalArgumentException("The scrypt parallelisation p must be between 1 and 255");
+
+		if (128L * r * (1L << log2N) * p > MAX_MEMORY)
+			throw new IllegalArgumentException("The scrypt memory 128 * r * N * p must not exceed " + MAX_MEMORY + " bytes");
+	}
+
+
+	/**
+	 * Gets the base 2 logarithm of the cost 'N'.
+	 *
+	 * @return The base 2 logarithm of 'N'.
+	 */
+	public int getLog2N() {
+
+		return log2N;
+	}
+
+
+	/**
+	 * Gets the block size 'r'.
+	 *
+	 * @return The block size.
+	 */
+	public int getR() {
+
+		return r;
+	}
+
+
+	/**
+	 * Gets the parallelisation 'p'.
+	 *
+	 * @return The parallelisation.
+	 */
+	public int getP() {
+
+		return p;
+	}
+
+
+	@Override
+	protected int getParametersLength() {
+
+		return 3;
+	}
+
+
+	@Override
+	protected void writeParameters(final ByteBuffer out) {
+
+		out.put((byte) log2N);
+		out.put((byte) r);
+		out.put((byte) p);
+	}
+
+
+	@Override
+	protected byte[] deriveKey(final ByteBuffer salt, final byte[] password, final int keyLength) {
+
+		final int saltLog2N = salt.get() & 0xff;
+		final int saltR = salt.get() & 0xff;
+		final int saltP = salt.get() & 0xff;
+
+		checkParameters(saltLog2N, saltR, saltP);
+
+		return scrypt(password, randomSalt(salt), 1 << saltLog2N, saltR, saltP, keyLength);
+	}
+
+
+	/**
+	 * Computes scrypt.
+	 *
+	 * @param password  The password.
+	 * @param salt      The salt.
+	 * @param n         The cost 'N', a power of two.
+	 * @param r         The block size 'r'.
+	 * @param p         The parallelisation 'p'.
+	 * @param keyLength The key length in bytes.
+	 *
+	 * @return The derived key.
+	 */
+	byte[] scrypt(final byte[] password,
+	              final byte[] salt,
+	              final int n,
+	              final int r,
+	              final int p,
+	              final int keyLength) {
+
+		final int laneLength = 128 * r;
+
+		final byte[] b = PBKDF2XRoutine.pbkdf2(PBKDF2XRoutine.PRF.HMAC_SHA256, password, salt, 1, p * laneLength);
+
+		final RecursiveAction[] lanes = new RecursiveAction[p];
+
+		for (int i = 0; i < p; i++) {
+
+			final int offset = i * laneLength;
+
+			lanes[i] = new RecursiveAction() {
+
+				private static final long serialVersionUID = 1L;
+
+
+				@Override
+				protected void compute() {
+
+					roMix(b, offset, r, n);
+				}
+			};
+		}
+
+		runLanes(lanes);
+
+		final byte[] key = PBKDF2XRoutine.pbkdf2(PBKDF2XRoutine.PRF.HMAC_SHA256, password, b, 1, keyLength);
+		Arrays.fill(b, (byte) 0);
+		return key;
+	}
+
+
+	/**
+	 * The scrypt ROMix function, in place.
+	 *
+	 * @param b      The buffer.
+	 * @param offset The offset of the 128 * r byte block.
+	 * @param r      The block size 'r'.
+	 * @param n      The cost 'N'.
+	 */
+	private static void roMix(final byte[] b, final int offset, final int r, final int n) {
+
+		final int words = 32 * r;
+
+		final int[] x = new int[words];
+		final int[] y = new int[words];
+		final int[] v = new int[words * n];
+		final int[] t = new int[16];
+
+		for (int i = 0; i < words; i++) {
+			final int o = offset + 4 * i;
+			x[i] = (b[o] & 0xff) | (b[o + 1] & 0xff) << 8 | (b[o + 2] & 0xff) << 16 | (b[o + 3] & 0xff) << 24;
+		}
+
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(x, 0, v, i * words, words);
+			blockMix(x, y, t, r);
+		}
+
+		for (int i = 0; i < n; i++) {
+
+			final int j = (x[words - 16] & (n - 1)) * words;
+
+			for (int k = 0; k < words; k++)
+				x[k] ^= v[j + k];
+
+			blockMix(x, y, t, r);
+		}
+
+		for (int i = 0; i < words; i++) {
+			final int o = offset + 4 * i;
+			b[o] = (byte) x[i];
+			b[o + 1] = (byte) (x[i] >>> 8);
+			b[o + 2] = (byte) (x[i] >>> 16);
+			b[o + 3] = (byte) (x[i] >>> 24);
+		}
+
+		Arrays.fill(v, 0);
+	}
+
+
+	/**
+	 * The scrypt BlockMix function, in place.
+	 *
+	 * @param b The 2 * r blocks of 16 words.
+	 * @param y The scratch blocks, same length.
+	 * @param x The scratch block of 16 words.
+	 * @param r The block size 'r'.
+	 */
+	private static void blockMix(final int[] b, final int[] y, final int[] x, final int r) {
+
+		System.arraycopy(b, (2 * r - 1) * 16, x, 0, 16);
+
+		for (int i = 0; i < 2 * r; i++) {
+
+			for (int k = 0; k < 16; k++)
+				x[k] ^= b[i * 16 + k];
+
+			salsa208(x);
+
+			// Even blocks to the first half, odd blocks to the second
+			System.arraycopy(x, 0, y, ((i & 1) * r + (i >> 1)) * 16, 16);
+		}
+
+		System.arraycopy(y, 0, b, 0, 32 * r);
+	}
+
+
+	/**
+	 * The Salsa20/8 core, in place.
+	 *
+	 * @param b The 16 words.
+	 */
+	private static void salsa208(final int[] b) {
+
+		int x0 = b[0], x1 = b[1], x2 = b[2], x3 = b[3],
+		    x4 = b[4], x5 = b[5], x6 = b[6], x7 = b[7],
+		    x8 = b[8], x9 = b[9], x10 = b[10], x11 = b[11],
+		    x12 = b[12], x13 = b[13], x14 = b[14], x15 = b[15];
+
+		for (int i = 0; i < 8; i += 2) {
+
+			// Columns
+			x4 ^= Integer.rotateLeft(x0 + x12, 7);
+			x8 ^= Integer.rotateLeft(x4 + x0, 9);
+			x12 ^= Integer.rotateLeft(x8 + x4, 13);
+			x0 ^= Integer.rotateLeft(x12 + x8, 18);
+			x9 ^= Integer.rotateLeft(x5 + x1, 7);
+			x13 ^= Integer.rotateLeft(x9 + x5, 9);
+			x1 ^= Integer.rotateLeft(x13 + x9, 13);
+			x5 ^= Integer.rotateLeft(x1 + x13, 18);
+			x14 ^= Integer.rotateLeft(x10 + x6, 7);
+			x2 ^= Integer.rotateLeft(x14 + x10, 9);
+			x6 ^= Integer.rotateLeft(x2 + x14, 13);
+			x10 ^= Integer.rotateLeft(x6 + x2, 18);
+			x3 ^= Integer.rotateLeft(x15 + x11, 7);
+			x7 ^= Integer.rotateLeft(x3 + x15, 9);
+			x11 ^= Integer.rotateLeft(x7 + x3, 13);
+			x15 ^= Integer.rotateLeft(x11 + x7, 18);
+
+			// Rows
+			x1 ^= Integer.rotateLeft(x0 + x3, 7);
+			x2 ^= Integer.rotateLeft(x1 + x0, 9);
+			x3 ^= Integer.rotateLeft(x2 + x1, 13);
+			x0 ^= Integer.rotateLeft(x3 + x2, 18);
+			x6 ^= Integer.rotateLeft(x5 + x4, 7);
+			x7 ^= Integer.rotateLeft(x6 + x5, 9);
+			x4 ^= Integer.rotateLeft(x7 + x6, 13);
+			x5 ^= Integer.rotateLeft(x4 + x7, 18);
+			x11 ^= Integer.rotateLeft(x10 + x9, 7);
+			x8 ^= Integer.rotateLeft(x11 + x10, 9);
+			x9 ^= Integer.rotateLeft(x8 + x11, 13);
+			x10 ^= Integer.rotateLeft(x9 + x8, 18);
+			x12 ^= Integer.rotateLeft(x15 + x14, 7);
+			x13 ^= Integer.rotateLeft(x12 + x15, 9);
+			x14 ^= Integer.rotateLeft(x13 + x12, 13);
+			x15 ^= Integer.rotateLeft(x14 + x13, 18);
+		}
+
+		b[0] += x0; b[1] += x1; b[2] += x2; b[3] += x3;
+		b[4] += x4; b[5] += x5; b[6] += x6; b[7] += x7;
+		b[8] += x8; b[9] += x9; b[10] += x10; b[11] += x11;
+		b[12] += x12; b[13] += x13; b[14] += x14; b[15] += x15;
+	}
+}
@@ -0,0 +1,62 @@
+package com.nimbusds.srp6;
+
+
+import java.io.Serializable;
+import java.security.SecureRandom;
+
+
+/**
+ * The platform generator that the deprecated {@code random} fields of
+ * {@link SRP6Routines} and {@link SRP6Session} hold until a subclass sets
+ * its own, so that subclasses reading them get a working generator.
+ *
+ * <p>There is a single instance. It is serialised as a reference, so that
+ * its state isn't written out and it is still recognised as the default
+ * after deserialisation.
+ *
+ * <p>This class is thread-safe.
+ */
+final class SharedSecureRandom extends SecureRandom {
+
+
+	/**
+	 * Serializable class version number
+	 */
+	private static final long serialVersionUID = 7120968236104839520L;
+
+
+	/**
+	 * The single instance.
+	 */
+	static final SharedSecureRandom INSTANCE = new SharedSecureRandom();
+
+
+	/**
+	 * The serialised form, resolving to the single instance.
+	 */
+	private static final class Reference implements Serializable {
+
+
+		/**
+		 * Serializable class version number
+		 */
+		private static final long serialVersionUID = -2583702841453871385L;
+
+
+		private Object readResolve() {
+
+			return INSTANCE;
+		}
+	}
+
+
+	private SharedSecureRandom() {
+
+	}
+
+
+	private Object writeReplace() {
+
+		return new Reference();
+	}
+}
@@ -0,0 +1,130 @@
+package com.nimbusds.srp6;
+
+
+import java.io.Serializable;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+
+/**
+ * Source of secure randomness that keeps one pre-seeded generator per thread.
+ *
+ * <p>Each thread gets its own "SHA1PRNG" instance on first use, seeded with
+ * 32 bytes from a shared platform generator. Afterwards, drawing random
+ * values involves neither the construction of a new generator nor the
+ * process-wide lock of the platform "NativePRNG" on Linux. Every
+ * {@link #RESEED_INTERVAL} uses a generator is reseeded with another 32
+ * bytes from the platform generator, which are mixed into its state, so
+ * that long-lived threads don't draw from a single seed indefinitely. Where
+ * "SHA1PRNG" is not available a default {@code SecureRandom} is created
+ * per thread instead.
+ *
+ * <p>The generators are shared by all instances of this class and are not
+ * serialised.
+ */
+public class ThreadLocalRandomSource implements RandomSource, Serializable {
+
+
+	/**
+	 * Serializable class version number
+	 */
+	private static final long serialVersionUID = -1733628413862957290L;
+
+
+	/**
+	 * The number of seed bytes for each per-thread generator.
+	 */
+	private static final int SEED_LENGTH = 32;
+
+
+	/**
+	 * The number of uses of a per-thread generator after which it is
+	 * reseeded.
+	 */
+	public static final int RESEED_INTERVAL = 4096;
+
+
+	/**
+	 * The platform generator used to seed the per-thread ones.
+	 */
+	private static final SecureRandom SEED_SOURCE = new SecureRandom();
+
+
+	/**
+	 * A per-thread generator with its use count.
+	 */
+	private static final class Generator {
+
+
+		/**
+		 * The generator.
+		 */
+		final SecureRandom random = newSecureRandom();
+
+
+		/**
+		 * The number of uses since the last seeding.
+		 */
+		int uses = 0;
+	}
+
+
+	/**
+	 * The per-thread generators.
+	 */
+	private static final ThreadLocal<Generator> GENERATORS = new ThreadLocal<Generator>() {
+
+		@Override
+		protected Generator initialValue() {
+
+			return new Generator();
+		}
+	};
+
+
+	/**
+	 * Creates a new seeded generator.
+	 *
+	 * @return The generator.
+	 */
+	private static SecureRandom newSecureRandom() {
+
+		byte[] seed = new byte[SEED_LENGTH];
+		SEED_SOURCE.nextBytes(seed);
+
+		SecureRandom random;
+
+		try {
+			random = SecureRandom.getInstance("SHA1PRNG");
+
+		} catch (NoSuchAlgorithmException e) {
+
+			random = new SecureRandom();
+		}
+
+		// Seeding before the first output replaces the self-seeding
+		// of SHA1PRNG and supplements the one of other algorithms
+		random.setSeed(seed);
+
+		return random;
+	}
+
+
+	@Override
+	public SecureRandom getSecureRandom() {
+
+		final Generator generator = GENERATORS.get();
+
+		if (++generator.uses >= RESEED_INTERVAL) {
+
+			byte[] seed = new byte[SEED_LENGTH];
+			SEED_SOURCE.nextBytes(seed);
+
+			// Supplements the current state
+			generator.random.setSeed(seed);
+			generator.uses = 0;
+		}
+
+		return generator.random;
+	}
+}
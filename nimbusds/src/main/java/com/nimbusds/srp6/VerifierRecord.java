@@ -0,0 +1,59 @@
+package com.nimbusds.srp6;
+
+
+/**
+ * A stored password verifier record of a user, as kept by a
+ * {@link VerifierStore}. Consists of the salt 's', the verifier 'v' and an
+ * application-defined identifier of the SRP-6a crypto parameters the
+ * verifier was generated with.
+ *
+ * <p>The salt and verifier are passed as they are to
+ * {@link SRP6ServerSession#step1(String, byte[], byte[]) step one}. The
+ * arrays are not copied and must not be modified.
+ */
+public final class VerifierRecord {
+
+
+	/**
+	 * The salt 's'.
+	 */
+	public final byte[] salt;
+
+
+	/**
+	 * The password verifier 'v', as an unsigned big-endian byte array.
+	 */
+	public final byte[] verifier;
+
+
+	/**
+	 * The identifier of the SRP-6a crypto parameters, e.g. the bitsize
+	 * of 'N'.
+	 */
+	public final int paramsID;
+
+
+	/**
+	 * Creates a new verifier record.
+	 *
+	 * @param salt     The salt 's'. Must not be {@code null}.
+	 * @param verifier The password verifier 'v', as an unsigned
+	 *                 big-endian byte array. Must not be {@code null}.
+	 * @param paramsID The identifier of the SRP-6a crypto parameters.
+	 */
+	public VerifierRecord(final byte[] salt, final byte[] verifier, final int paramsID) {
+
+		if (salt == null)
+			throw new IllegalArgumentException("The salt 's' must not be null");
+
+		this.salt = salt;
+
+
+		if (verifier == null)
+			throw new IllegalArgumentException("The verifier 'v' must not be null");
+
+		this.verifier = verifier;
+
+		this.paramsID = paramsID;
+	}
+}
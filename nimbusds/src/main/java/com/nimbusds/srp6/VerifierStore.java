@@ -0,0 +1,59 @@
+package com.nimbusds.srp6;
+
+
+import java.io.IOException;
+
+
+/**
+ * Service provider interface for stores of user {@link VerifierRecord
+ * password verifier records}, keyed by user identity 'I'. Looked up at
+ * {@link SRP6ServerSession#step1 step one}.
+ *
+ * <p>{@link MappedVerifierStore} is a reference implementation backed by a
+ * memory-mapped file.
+ *
+ * <p>Implementations must be thread-safe.
+ */
+public interface VerifierStore {
+
+
+	/**
+	 * Gets the verifier record of a user.
+	 *
+	 * @param userID The user identity 'I'. Must not be {@code null}.
+	 *
+	 * @return The verifier record, {@code null} if none is stored.
+	 *
+	 * @throws IOException If the store couldn't be read.
+	 */
+	VerifierRecord get(final String userID)
+		throws IOException;
+
+
+	/**
+	 * Stores the verifier record of a user, replacing any existing one.
+	 * Concurrent {@link #get gets} see either the previous or the new
+	 * record.
+	 *
+	 * @param userID The user identity 'I'. Must not be {@code null}.
+	 * @param record The verifier record. Must not be {@code null}.
+	 *
+	 * @throws IOException If the store couldn't be written.
+	 */
+	void put(final String userID, final VerifierRecord record)
+		throws IOException;
+
+
+	/**
+	 * Removes the verifier record of a user.
+	 *
+	 * @param userID The user identity 'I'. Must not be {@code null}.
+	 *
+	 * @return {@code true} if a record was removed, {@code false} if none
+	 *         was stored.
+	 *
+	 * @throws IOException If the store couldn't be written.
+	 */
+	boolean remove(final String userID)
+		throws IOException;
+}
@@ -0,0 +1,142 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the Argon2 memory arena.
+ */
+public class Argon2MemoryArenaTest extends TestCase {
+
+
+	public void testConstructor() {
+
+		Argon2MemoryArena arena = new Argon2MemoryArena(2);
+		assertEquals(2, arena.getMaxBuffers());
+		assertEquals(0, arena.getIdleCount());
+		assertEquals(0L, arena.getHitCount());
+		assertEquals(0L, arena.getMissCount());
+
+		try {
+			new Argon2MemoryArena(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+
+	public void testAcquireRelease() {
+
+		Argon2MemoryArena arena = new Argon2MemoryArena(1);
+
+		ByteBuffer first = arena.acquire(1024);
+		assertTrue(first.isDirect());
+		assertEquals(1L, arena.getMissCount());
+
+		// Dropped when full
+		ByteBuffer second = arena.acquire(1024);
+		arena.release(first);
+		arena.release(second);
+		assertEquals(1, arena.getIdleCount());
+
+		assertSame(first, arena.acquire(512));
+		assertEquals(1L, arena.getHitCount());
+		arena.release(first);
+
+		// Too small, replaced
+		ByteBuffer larger = arena.acquire(2048);
+		assertNotSame(first, larger);
+		assertEquals(3L, arena.getMissCount());
+		assertEquals(0, arena.getIdleCount());
+
+		arena.release(larger);
+		arena.clear();
+		assertEquals(0, arena.getIdleCount());
+	}
+
+
+	public void testArgon2idVector() {
+
+		Argon2MemoryArena arena = new Argon2MemoryArena(1);
+		Argon2idXRoutine routine = new Argon2idXRoutine(32, 3, 4, new ThreadLocalRandomSource(), null, arena);
+		assertSame(arena, routine.getArena());
+
+		byte[] p = new byte[32];
+		Arrays.fill(p, (byte) 0x01);
+		byte[] s = new byte[16];
+		Arrays.fill(s, (byte) 0x02);
+		byte[] k = new byte[8];
+		Arrays.fill(k, (byte) 0x03);
+		byte[] x = new byte[12];
+		Arrays.fill(x, (byte) 0x04);
+
+		// RFC 9106, section 5.3, twice to reuse the buffer
+		for (int i = 0; i < 2; i++) {
+
+			byte[] tag = routine.argon2id(p, s, k, x, 32, 3, 4, 32);
+			assertEquals(32, tag.length);
+			assertEquals(BigIntegerUtils.fromHex("0d640df58d78766c08c037a34a8b53c9d01ef0452d75b65eb52520e96b01e659"),
+			             new BigInteger(1, tag));
+		}
+
+		assertEquals(1L, arena.getMissCount());
+		assertEquals(1L, arena.getHitCount());
+
+		// Wiped on release
+		ByteBuffer buffer = arena.acquire(32 * 1024);
+
+		while (buffer.hasRemaining())
+			assertEquals(0, buffer.get());
+	}
+
+
+	public void testConcurrentComputations()
+		throws Exception {
+
+		final Argon2MemoryArena arena = new Argon2MemoryArena(2);
+		final Argon2idXRoutine heap = new Argon2idXRoutine(256, 2, 2);
+		final Argon2idXRoutine offHeap = new Argon2idXRoutine(256, 2, 2, new ThreadLocalRandomSource(), null, arena);
+
+		final byte[] password = "secret".getBytes(Charset.forName("UTF-8"));
+		final byte[] salt = heap.generateSalt(16);
+		final BigInteger expected = heap.computeX(null, salt, null, password);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		List<Future<BigInteger>> results = new ArrayList<>();
+
+		for (int i = 0; i < 16; i++) {
+
+			results.add(executor.submit(new Callable<BigInteger>() {
+
+				@Override
+				public BigInteger call() {
+
+					return offHeap.computeX(null, salt, null, password);
+				}
+			}));
+		}
+
+		for (Future<BigInteger> result: results)
+			assertEquals(expected, result.get());
+
+		executor.shutdown();
+
+		assertEquals(16L, arena.getHitCount() + arena.getMissCount());
+		assertTrue(arena.getMissCount() <= 4);
+		assertTrue(arena.getIdleCount() <= 2);
+	}
+}
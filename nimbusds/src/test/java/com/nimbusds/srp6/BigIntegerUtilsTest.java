@@ -54,4 +54,137 @@ public class BigIntegerUtilsTest extends TestCase {
 		assertEquals(bigInteger ,from);
 	}
 
+
+	public void testPaddedBytes() {
+
+		BigInteger bigInteger = BigInteger.valueOf(0x0102);
+
+		byte[] bytes = BigIntegerUtils.bigIntegerToBytes(bigInteger, 4);
+
+		assertEquals(4, bytes.length);
+		assertEquals(0, bytes[0]);
+		assertEquals(0, bytes[1]);
+		assertEquals(1, bytes[2]);
+		assertEquals(2, bytes[3]);
+
+		assertEquals(bigInteger, BigIntegerUtils.bigIntegerFromBytes(bytes));
+
+		// Longer values are returned unpadded
+		assertEquals(2, BigIntegerUtils.bigIntegerToBytes(bigInteger, 1).length);
+	}
+
+
+	public void testEncodeDecodeHex() {
+
+		byte[] bytes = {0, 0x0f, (byte)0xa0, (byte)0xff};
+
+		char[] chars = new char[10];
+		assertEquals(8, BigIntegerUtils.encodeHex(bytes, 0, bytes.length, chars, 1));
+		assertEquals("000fa0ff", new String(chars, 1, 8));
+
+		byte[] decoded = new byte[5];
+		assertEquals(4, BigIntegerUtils.decodeHex("x000FA0ffx", 1, 8, decoded, 1));
+		assertEquals(0, decoded[0]);
+		for (int i = 0; i < bytes.length; i++)
+			assertEquals(bytes[i], decoded[i + 1]);
+	}
+
+	public void testHexMatchesBigIntegerHex() {
+
+		BigInteger value = BigIntegerUtils.fromHex("beb25379d1a8581eb5a727673a2441ee");
+
+		byte[] bytes = BigIntegerUtils.bigIntegerToBytes(value, 16);
+		char[] chars = new char[32];
+		BigIntegerUtils.encodeHex(bytes, 0, 16, chars, 0);
+
+		assertEquals(BigIntegerUtils.toHex(value), new String(chars));
+	}
+
+	public void testDecodeHexInvalid() {
+
+		try {
+			BigIntegerUtils.decodeHex("abc", 0, 3, new byte[2], 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The hex length must be even", e.getMessage());
+		}
+
+		try {
+			BigIntegerUtils.decodeHex("0g", 0, 2, new byte[1], 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Illegal character: g", e.getMessage());
+		}
+	}
+
+	public void testBase64Vectors() {
+
+		// RFC 4648, section 10
+		String[] input = {"", "f", "fo", "foo", "foob", "fooba", "foobar"};
+		String[] base64 = {"", "Zg==", "Zm8=", "Zm9v", "Zm9vYg==", "Zm9vYmE=", "Zm9vYmFy"};
+		String[] base64url = {"", "Zg", "Zm8", "Zm9v", "Zm9vYg", "Zm9vYmE", "Zm9vYmFy"};
+
+		for (int i = 0; i < input.length; i++) {
+
+			byte[] bytes = input[i].getBytes();
+
+			char[] chars = new char[BigIntegerUtils.getBase64Length(bytes.length, false)];
+			assertEquals(chars.length, BigIntegerUtils.encodeBase64(bytes, 0, bytes.length, chars, 0, false));
+			assertEquals(base64[i], new String(chars));
+
+			chars = new char[BigIntegerUtils.getBase64Length(bytes.length, true)];
+			assertEquals(chars.length, BigIntegerUtils.encodeBase64(bytes, 0, bytes.length, chars, 0, true));
+			assertEquals(base64url[i], new String(chars));
+
+			byte[] decoded = new byte[bytes.length];
+			assertEquals(bytes.length, BigIntegerUtils.decodeBase64(base64[i], 0, base64[i].length(), decoded, 0, false));
+			assertEquals(input[i], new String(decoded));
+
+			decoded = new byte[bytes.length];
+			assertEquals(bytes.length, BigIntegerUtils.decodeBase64(base64url[i], 0, base64url[i].length(), decoded, 0, true));
+			assertEquals(input[i], new String(decoded));
+		}
+	}
+
+	public void testBase64Alphabets() {
+
+		byte[] bytes = {(byte)0xfb, (byte)0xff, (byte)0xbf};
+
+		char[] chars = new char[4];
+		BigIntegerUtils.encodeBase64(bytes, 0, 3, chars, 0, false);
+		assertEquals("+/+/", new String(chars));
+
+		BigIntegerUtils.encodeBase64(bytes, 0, 3, chars, 0, true);
+		assertEquals("-_-_", new String(chars));
+
+		try {
+			BigIntegerUtils.decodeBase64("-_-_", 0, 4, new byte[3], 0, false);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Illegal character: -", e.getMessage());
+		}
+
+		try {
+			BigIntegerUtils.decodeBase64("Zm9vY", 0, 5, new byte[4], 0, true);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Invalid Base64 length", e.getMessage());
+		}
+	}
+
+	public void testBase64PaddedValueRoundTrip() {
+
+		BigInteger value = SRP6CryptoParams.N_2048.shiftRight(9);
+
+		byte[] bytes = BigIntegerUtils.bigIntegerToBytes(value, 256);
+		assertEquals(0, bytes[0]);
+
+		char[] chars = new char[BigIntegerUtils.getBase64Length(256, true)];
+		BigIntegerUtils.encodeBase64(bytes, 0, 256, chars, 0, true);
+
+		byte[] decoded = new byte[256];
+		assertEquals(256, BigIntegerUtils.decodeBase64(new String(chars), 0, chars.length, decoded, 0, true));
+		assertEquals(value, BigIntegerUtils.bigIntegerFromBytes(decoded));
+	}
+
 }
@@ -0,0 +1,391 @@
+package com.nimbusds.srp6;
+
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the caching verifier store.
+ */
+public class CachingVerifierStoreTest extends TestCase {
+
+
+	/**
+	 * In-memory backing store counting its lookups.
+	 */
+	private static class MapVerifierStore implements VerifierStore {
+
+
+		final Map<String,VerifierRecord> records = new HashMap<>();
+
+
+		int gets = 0;
+
+
+		@Override
+		public synchronized VerifierRecord get(final String userID) {
+
+			gets++;
+			return records.get(userID);
+		}
+
+
+		@Override
+		public synchronized void put(final String userID, final VerifierRecord record) {
+
+			records.put(userID, record);
+		}
+
+
+		@Override
+		public synchronized boolean remove(final String userID) {
+
+			return records.remove(userID) != null;
+		}
+	}
+
+
+	private static final byte[] KEY = "0123456789abcdef".getBytes();
+
+
+	private static final SRP6CryptoParams CONFIG = SRP6CryptoParams.getInstance(512, "SHA-256");
+
+
+	public void testCachesHitsAndMisses()
+		throws Exception {
+
+		MapVerifierStore backing = new MapVerifierStore();
+		VerifierRecord alice = new VerifierRecord(new byte[16], new byte[]{1, 2, 3}, 512);
+		backing.put("alice", alice);
+
+		CachingVerifierStore cache = new CachingVerifierStore(backing, 100, CONFIG, 16, 512, KEY);
+
+		assertSame(alice, cache.get("alice"));
+		assertSame(alice, cache.get("alice"));
+		assertNull(cache.get("mallory"));
+		assertNull(cache.get("mallory"));
+
+		assertEquals(2, backing.gets);
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(2, cache.size());
+	}
+
+
+	public void testWriteThrough()
+		throws Exception {
+
+		MapVerifierStore backing = new MapVerifierStore();
+		CachingVerifierStore cache = new CachingVerifierStore(backing, 100, CONFIG, 16, 512, KEY);
+
+		assertNull(cache.get("bob"));
+
+		VerifierRecord bob = new VerifierRecord(new byte[16], new byte[]{1}, 512);
+		cache.put("bob", bob);
+		assertSame(bob, backing.records.get("bob"));
+		assertSame(bob, cache.get("bob"));
+
+		assertTrue(cache.remove("bob"));
+		assertNull(backing.records.get("bob"));
+		assertNull(cache.get("bob"));
+
+		// Direct changes are seen after invalidation
+		backing.put("bob", bob);
+		assertNull(cache.get("bob"));
+		cache.invalidate("bob");
+		assertSame(bob, cache.get("bob"));
+	}
+
+
+	public void testMockEntriesExpire()
+		throws Exception {
+
+		MapVerifierStore backing = new MapVerifierStore();
+		CachingVerifierStore cache = new CachingVerifierStore(backing, 100, CONFIG, 16, 512, KEY);
+
+		assertEquals(CachingVerifierStore.DEFAULT_MOCK_TTL, cache.getMockTimeToLive());
+
+		// Promoted to the protected segment on the second hit
+		assertNull(cache.get("bob"));
+		assertNull(cache.get("bob"));
+
+		// Registered by another server
+		VerifierRecord bob = new VerifierRecord(new byte[16], new byte[]{1}, 512);
+		backing.put("bob", bob);
+		assertNull(cache.get("bob"));
+		assertEquals(1, backing.gets);
+
+		cache.setMockTimeToLive(0);
+		assertSame(bob, cache.get("bob"));
+		assertEquals(2, backing.gets);
+
+		// Real records don't expire
+		assertSame(bob, cache.get("bob"));
+		assertEquals(2, backing.gets);
+
+		try {
+			cache.setMockTimeToLive(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The mock time to live must not be negative", e.getMessage());
+		}
+	}
+
+
+	public void testRemoveDuringLoad()
+		throws Exception {
+
+		final CountDownLatch loaded = new CountDownLatch(1);
+		final CountDownLatch removed = new CountDownLatch(1);
+
+		// Returns the record, then stalls until it was removed
+		MapVerifierStore backing = new MapVerifierStore() {
+			@Override
+			public VerifierRecord get(final String userID) {
+				VerifierRecord record = super.get(userID);
+				loaded.countDown();
+				try {
+					removed.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return record;
+			}
+		};
+
+		backing.put("bob", new VerifierRecord(new byte[16], new byte[]{1}, 512));
+
+		final CachingVerifierStore cache = new CachingVerifierStore(backing, 100, CONFIG, 16, 512, KEY);
+
+		final VerifierRecord[] result = new VerifierRecord[1];
+
+		Thread lookup = new Thread() {
+			@Override
+			public void run() {
+				try {
+					result[0] = cache.get("bob");
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+
+		lookup.start();
+		loaded.await();
+
+		assertTrue(cache.remove("bob"));
+		removed.countDown();
+		lookup.join();
+
+		// The lookup saw the stale record but didn't cache it
+		assertNotNull(result[0]);
+		assertNull(cache.get("bob"));
+	}
+
+
+	public void testConcurrentPuts()
+		throws Exception {
+
+		final VerifierRecord first = new VerifierRecord(new byte[16], new byte[]{1}, 512);
+		final VerifierRecord second = new VerifierRecord(new byte[16], new byte[]{2}, 512);
+
+		final CountDownLatch written = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		// Stalls after writing the first record
+		MapVerifierStore backing = new MapVerifierStore() {
+			@Override
+			public void put(final String userID, final VerifierRecord record) {
+				super.put(userID, record);
+				if (record != first)
+					return;
+				written.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		final CachingVerifierStore cache = new CachingVerifierStore(backing, 100, CONFIG, 16, 512, KEY);
+
+		Thread put1 = new Thread() {
+			@Override
+			public void run() {
+				try {
+					cache.put("bob", first);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+
+		Thread put2 = new Thread() {
+			@Override
+			public void run() {
+				try {
+					cache.put("bob", second);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+
+		put1.start();
+		written.await();
+
+		// Would overtake the stalled put without the shard write lock
+		put2.start();
+		put2.join(100);
+
+		release.countDown();
+		put1.join();
+		put2.join();
+
+		assertSame(backing.get("bob"), cache.get("bob"));
+		assertSame(second, cache.get("bob"));
+	}
+
+
+	public void testMockRecordsAreStable() {
+
+		CachingVerifierStore cache1 = new CachingVerifierStore(new MapVerifierStore(), 100, CONFIG, 16, 512, KEY);
+		CachingVerifierStore cache2 = new CachingVerifierStore(new MapVerifierStore(), 100, CONFIG, 16, 512, KEY);
+		CachingVerifierStore cache3 = new CachingVerifierStore(new MapVerifierStore(), 100, CONFIG, 16, 512,
+		                                                       "fedcba9876543210".getBytes());
+
+		VerifierRecord mock = cache1.mockRecord("mallory");
+
+		assertEquals(16, mock.salt.length);
+		assertEquals(64, mock.verifier.length);
+		assertEquals(512, mock.paramsID);
+
+		BigInteger v = new BigInteger(1, mock.verifier);
+		assertTrue(v.signum() > 0);
+		assertTrue(v.compareTo(CONFIG.N) < 0);
+
+		assertTrue(Arrays.equals(mock.salt, cache2.mockRecord("mallory").salt));
+		assertTrue(Arrays.equals(mock.verifier, cache2.mockRecord("mallory").verifier));
+
+		assertFalse(Arrays.equals(mock.salt, cache1.mockRecord("eve").salt));
+		assertFalse(Arrays.equals(mock.salt, cache3.mockRecord("mallory").salt));
+	}
+
+
+	public void testMockSaltsInKeyDerivationFormat() {
+
+		KeyDerivationXRoutine[] routines = {
+			new Argon2idXRoutine(64, 2, 1),
+			new ScryptXRoutine(10, 8, 1)
+		};
+
+		for (KeyDerivationXRoutine routine: routines) {
+
+			CachingVerifierStore cache = new CachingVerifierStore(new MapVerifierStore(), 100, CONFIG, 16, routine, 512, KEY);
+
+			byte[] realSalt = routine.generateSalt(16);
+			byte[] mockSalt = cache.mockRecord("mallory").salt;
+
+			// Same algorithm byte, parameters and length
+			assertEquals(realSalt.length, mockSalt.length);
+			assertTrue(Arrays.equals(Arrays.copyOf(realSalt, realSalt.length - 16),
+			                         Arrays.copyOf(mockSalt, mockSalt.length - 16)));
+
+			assertTrue(Arrays.equals(mockSalt, cache.mockRecord("mallory").salt));
+			assertFalse(Arrays.equals(mockSalt, cache.mockRecord("eve").salt));
+		}
+	}
+
+
+	public void testStep1()
+		throws Exception {
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(CONFIG);
+		byte[] s = verifierGen.generateRandomSalt(16);
+		byte[] v = verifierGen.generatePaddedVerifier(s, null, "secret".getBytes("UTF-8"));
+
+		MapVerifierStore backing = new MapVerifierStore();
+		backing.put("alice", new VerifierRecord(s, v, 512));
+
+		CachingVerifierStore cache = new CachingVerifierStore(backing, 100, CONFIG, 16, 512, KEY);
+
+		// Known user
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+		VerifierRecord record = cache.step1(server, "alice");
+		assertTrue(Arrays.equals(s, record.salt));
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+		client.step2(CONFIG, record.salt, server.getPublicServerValueBytes());
+		client.step3(server.step2(client.getPublicClientValueBytes(), client.getClientEvidenceMessageBytes()));
+		assertEquals(SRP6ClientSession.State.STEP_3, client.getState());
+
+		// Unknown user, same mock salt on each attempt
+		server = new SRP6ServerSession(CONFIG);
+		record = cache.step1(server, "mallory");
+		assertTrue(Arrays.equals(record.salt, cache.step1(new SRP6ServerSession(CONFIG), "mallory").salt));
+
+		client = new SRP6ClientSession();
+		client.step1("mallory", "secret");
+		client.step2(CONFIG, record.salt, server.getPublicServerValueBytes());
+
+		try {
+			server.step2(client.getPublicClientValueBytes(), client.getClientEvidenceMessageBytes());
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+
+		assertEquals(2, backing.gets);
+	}
+
+
+	public void testBoundedWithProtectedSegment()
+		throws Exception {
+
+		MapVerifierStore backing = new MapVerifierStore();
+
+		for (int i = 0; i < 32; i++)
+			backing.put("user" + i, new VerifierRecord(new byte[16], new byte[]{(byte) i}, 512));
+
+		CachingVerifierStore cache = new CachingVerifierStore(backing, 160, CONFIG, 16, 512, KEY);
+
+		// Returning users, promoted on the second lookup
+		for (int i = 0; i < 32; i++) {
+			cache.get("user" + i);
+			cache.get("user" + i);
+		}
+
+		// Flood of unknown users
+		for (int i = 0; i < 10000; i++)
+			cache.get("unknown" + i);
+
+		assertTrue(cache.size() <= 160);
+
+		int gets = backing.gets;
+
+		for (int i = 0; i < 32; i++)
+			assertNotNull(cache.get("user" + i));
+
+		assertEquals(gets, backing.gets);
+	}
+
+
+	public void testRejectShortKey() {
+
+		try {
+			new CachingVerifierStore(new MapVerifierStore(), 100, CONFIG, 16, 512, new byte[15]);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The mock key must be at least 16 bytes long", e.getMessage());
+		}
+	}
+}
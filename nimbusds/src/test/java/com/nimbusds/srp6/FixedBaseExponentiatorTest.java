@@ -0,0 +1,127 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the fixed-base exponentiator.
+ */
+public class FixedBaseExponentiatorTest extends TestCase {
+
+
+	private static final BigInteger[] PRIMES = {
+		SRP6CryptoParams.N_256,
+		SRP6CryptoParams.N_512,
+		SRP6CryptoParams.N_768,
+		SRP6CryptoParams.N_1024,
+		SRP6CryptoParams.N_1536,
+		SRP6CryptoParams.N_2048
+	};
+
+
+	public void testMatchesModPow() {
+
+		SecureRandom random = new SecureRandom();
+
+		for (BigInteger N: PRIMES) {
+
+			FixedBaseExponentiator exp = new FixedBaseExponentiator(N, SRP6CryptoParams.g_common);
+
+			for (int i = 0; i < 10; i++) {
+
+				BigInteger e = new BigInteger(N.bitLength(), random);
+
+				assertEquals(SRP6CryptoParams.g_common.modPow(e, N), exp.modPow(e));
+			}
+		}
+	}
+
+
+	public void testCombDimensions() {
+
+		SecureRandom random = new SecureRandom();
+
+		BigInteger N = SRP6CryptoParams.N_512;
+		BigInteger g = BigInteger.valueOf(5);
+
+		int[][] dimensions = { {1, 1}, {3, 1}, {4, 3}, {5, 7}, {8, 1}, {8, 4}, {12, 2} };
+
+		for (int[] dim: dimensions) {
+
+			FixedBaseExponentiator exp = new FixedBaseExponentiator(N, g, dim[0], dim[1]);
+
+			for (int i = 0; i < 5; i++) {
+
+				BigInteger e = new BigInteger(N.bitLength(), random);
+
+				assertEquals("h=" + dim[0] + " v=" + dim[1], g.modPow(e, N), exp.modPow(e));
+			}
+		}
+	}
+
+
+	public void testEdgeExponents() {
+
+		BigInteger N = SRP6CryptoParams.N_256;
+		BigInteger g = SRP6CryptoParams.g_common;
+
+		FixedBaseExponentiator exp = new FixedBaseExponentiator(N, g);
+
+		BigInteger[] exponents = {
+			BigInteger.ZERO,
+			BigInteger.ONE,
+			N.subtract(BigInteger.ONE),
+			N,
+			N.shiftLeft(3).add(BigInteger.ONE),
+			BigInteger.ONE.shiftLeft(N.bitLength() - 1),
+			BigInteger.ONE.shiftLeft(N.bitLength()).subtract(BigInteger.ONE)
+		};
+
+		for (BigInteger e: exponents)
+			assertEquals(e.toString(), g.modPow(e, N), exp.modPow(e));
+	}
+
+
+	public void testEvenModulus() {
+
+		BigInteger N = BigInteger.valueOf(1000000);
+		BigInteger g = BigInteger.valueOf(3);
+
+		FixedBaseExponentiator exp = new FixedBaseExponentiator(N, g);
+
+		assertEquals(g.modPow(BigInteger.valueOf(123457), N), exp.modPow(BigInteger.valueOf(123457)));
+	}
+
+
+	public void testSharedByCryptoParams() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(1024, "SHA-1");
+
+		assertSame(config.getFixedBaseExponentiator(), config.getFixedBaseExponentiator());
+		assertEquals(config.N, config.getFixedBaseExponentiator().getN());
+		assertEquals(config.g, config.getFixedBaseExponentiator().getG());
+	}
+
+
+	public void testRoutinesWithCryptoParams() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(1024, "SHA-1");
+		SRP6Routines srp6Routines = new SRP6Routines();
+		SecureRandom random = new SecureRandom();
+
+		BigInteger a = srp6Routines.generatePrivateValue(config.N, random);
+		BigInteger b = srp6Routines.generatePrivateValue(config.N, random);
+		BigInteger k = srp6Routines.computeK(config.getMessageDigestInstance(), config.N, config.g);
+		BigInteger v = new BigInteger(1000, random);
+
+		assertEquals(srp6Routines.computePublicClientValue(config.N, config.g, a),
+		             srp6Routines.computePublicClientValue(config, a));
+
+		assertEquals(srp6Routines.computePublicServerValue(config.N, config.g, k, v, b),
+		             srp6Routines.computePublicServerValue(config, k, v, b));
+	}
+}
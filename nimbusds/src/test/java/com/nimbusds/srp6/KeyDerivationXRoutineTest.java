@@ -0,0 +1,239 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the key derivation 'x' routines.
+ */
+public class KeyDerivationXRoutineTest extends TestCase {
+
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+	private static byte[] hex(final String hex) {
+
+		byte[] out = new byte[hex.length() / 2];
+
+		for (int i = 0; i < out.length; i++)
+			out[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+
+		return out;
+	}
+
+
+	private static byte[] repeat(final int b, final int length) {
+
+		byte[] out = new byte[length];
+		Arrays.fill(out, (byte) b);
+		return out;
+	}
+
+
+	public void testBlake2b() {
+
+		Blake2b blake2b = new Blake2b(64);
+		blake2b.update("abc".getBytes(UTF8));
+		assertTrue(Arrays.equals(hex("ba80a53f981c4d0d6a2797b69f12f6e94c212f14685ac4b74b12bb6fdbffa2d1" +
+		                             "7d87c5392aab792dc252d5de4533cc9518d38aa8dbf1925ab92386edd4009923"),
+		                         blake2b.digest()));
+
+		blake2b.reset(64);
+		assertTrue(Arrays.equals(hex("786a02f742015903c6c6fd852552d272912f4740e15847618a86e217f71f5419" +
+		                             "d25e1031afee585313896444934eb04b903a685b1448b755d56f701afe9be2ce"),
+		                         blake2b.digest()));
+
+		// Multiple blocks, in uneven updates
+		byte[] in = new byte[768];
+
+		for (int i = 0; i < in.length; i++)
+			in[i] = (byte) i;
+
+		blake2b.reset(20);
+		blake2b.update(in, 0, 100);
+		blake2b.update(in, 100, 28);
+		blake2b.update(in, 128, 640);
+		assertTrue(Arrays.equals(hex("1e87621a16cfec1ca4d983f1762381eb4ea1e2f8"), blake2b.digest()));
+	}
+
+
+	public void testPBKDF2Vectors() {
+
+		assertTrue(Arrays.equals(hex("4b007901b765489abead49d926f721d065a429c1"),
+			PBKDF2XRoutine.pbkdf2(PBKDF2XRoutine.PRF.HMAC_SHA1,
+				"password".getBytes(UTF8), "salt".getBytes(UTF8), 4096, 20)));
+
+		assertTrue(Arrays.equals(hex("348c89dbcbd32b2f32d814b8116e84cf2b17347ebc1800181c4e2a1fb8dd53e1c635518c7dac47e9"),
+			PBKDF2XRoutine.pbkdf2(PBKDF2XRoutine.PRF.HMAC_SHA256,
+				"passwordPASSWORDpassword".getBytes(UTF8),
+				"saltSALTsaltSALTsaltSALTsaltSALTsalt".getBytes(UTF8), 4096, 40)));
+
+		assertTrue(Arrays.equals(hex("e1d9c16aa681708a45f5c7c4e215ceb66e011a2e9f0040713f18aefdb866d53c" +
+		                             "f76cab2868a39b9f7840edce4fef5a82be67335c77a6068e04112754f27ccf4e"),
+			PBKDF2XRoutine.pbkdf2(PBKDF2XRoutine.PRF.HMAC_SHA512,
+				"password".getBytes(UTF8), "salt".getBytes(UTF8), 2, 64)));
+	}
+
+
+	public void testScryptVectors() {
+
+		// RFC 7914, section 12
+		ScryptXRoutine routine = new ScryptXRoutine(4, 1, 1);
+
+		assertTrue(Arrays.equals(hex("77d6576238657b203b19ca42c18a0497f16b4844e3074ae8dfdffa3fede21442" +
+		                             "fcd0069ded0948f8326a753a0fc81f17e8d3e0fb2e0d3628cf35e20c38d18906"),
+			routine.scrypt(new byte[0], new byte[0], 16, 1, 1, 64)));
+
+		assertTrue(Arrays.equals(hex("fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b373162" +
+		                             "2eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640"),
+			routine.scrypt("password".getBytes(UTF8), "NaCl".getBytes(UTF8), 1024, 8, 16, 64)));
+	}
+
+
+	public void testArgon2idVector() {
+
+		// RFC 9106, section 5.3
+		Argon2idXRoutine routine = new Argon2idXRoutine(32, 3, 4);
+
+		byte[] tag = routine.argon2id(repeat(0x01, 32), repeat(0x02, 16), repeat(0x03, 8), repeat(0x04, 12),
+		                              32, 3, 4, 32);
+
+		assertTrue(Arrays.equals(hex("0d640df58d78766c08c037a34a8b53c9d01ef0452d75b65eb52520e96b01e659"), tag));
+	}
+
+
+	public void testSaltEncoding() {
+
+		Argon2idXRoutine argon2 = new Argon2idXRoutine(1024, 2, 2);
+
+		byte[] salt = argon2.generateSalt(16);
+		assertEquals(1 + 7 + 16, salt.length);
+		assertEquals('A', salt[0]);
+		assertEquals(Argon2idXRoutine.VERSION, salt[1]);
+
+		byte[] randomSalt = repeat(0x55, 8);
+		byte[] scryptSalt = new ScryptXRoutine(10, 8, 1).encodeSalt(randomSalt);
+		assertTrue(Arrays.equals(new byte[] { 'S', 10, 8, 1, 0x55, 0x55, 0x55, 0x55, 0x55, 0x55, 0x55, 0x55 }, scryptSalt));
+
+		byte[] pbkdf2Salt = new PBKDF2XRoutine(PBKDF2XRoutine.PRF.HMAC_SHA256, 1000).encodeSalt(randomSalt);
+		assertEquals('P', pbkdf2Salt[0]);
+		assertEquals(PBKDF2XRoutine.PRF.HMAC_SHA256.ordinal(), pbkdf2Salt[1]);
+		assertEquals(1 + 5 + 8, pbkdf2Salt.length);
+	}
+
+
+	public void testParametersFromSalt() {
+
+		byte[] password = "secret".getBytes(UTF8);
+
+		// A routine with other parameters reads them from the salt
+		Argon2idXRoutine cheap = new Argon2idXRoutine(64, 1, 1);
+		Argon2idXRoutine other = new Argon2idXRoutine(128, 2, 2);
+
+		byte[] salt = cheap.generateSalt(16);
+
+		assertEquals(cheap.computeX(null, salt, null, password), other.computeX(null, salt, null, password));
+
+		// Other salt bytes, other key
+		assertFalse(cheap.computeX(null, salt, null, password).equals(
+			cheap.computeX(null, cheap.generateSalt(16), null, password)));
+	}
+
+
+	public void testRejectForeignSalt() {
+
+		byte[] password = "secret".getBytes(UTF8);
+
+		try {
+			new ScryptXRoutine(4, 1, 1).computeX(null, new SRP6Routines().generateRandomSalt(16), null, password);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+
+		try {
+			new ScryptXRoutine(4, 1, 1).computeX(null, new PBKDF2XRoutine(PBKDF2XRoutine.PRF.HMAC_SHA1, 1).generateSalt(16), null, password);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+
+	public void testRejectExcessiveParameters() {
+
+		byte[] password = "secret".getBytes(UTF8);
+
+		// N = 2^24, r = 255
+		byte[] scryptSalt = { 'S', 24, (byte) 255, 1, 1, 2, 3, 4, 5, 6, 7, 8 };
+
+		try {
+			new ScryptXRoutine(4, 1, 1).computeX(null, scryptSalt, null, password);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+
+		// 2^31 - 1 KiB
+		byte[] argon2Salt = { 'A', 0x13, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 1, 1, 1, 2, 3, 4, 5, 6, 7, 8 };
+
+		try {
+			new Argon2idXRoutine(64, 1, 1).computeX(null, argon2Salt, null, password);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+
+		byte[] pbkdf2Salt = { 'P', 0, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 1, 2, 3, 4 };
+
+		try {
+			new PBKDF2XRoutine(PBKDF2XRoutine.PRF.HMAC_SHA1, 1).computeX(null, pbkdf2Salt, null, password);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+
+	public void testAuthentication()
+		throws SRP6Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-256");
+
+		XRoutine[] routines = {
+			new PBKDF2XRoutine(PBKDF2XRoutine.PRF.HMAC_SHA256, 100),
+			new ScryptXRoutine(8, 8, 2),
+			new Argon2idXRoutine(256, 2, 2)
+		};
+
+		for (XRoutine routine: routines) {
+
+			byte[] saltBytes = ((KeyDerivationXRoutine) routine).generateSalt(16);
+			BigInteger s = BigIntegerUtils.bigIntegerFromBytes(saltBytes);
+			assertTrue(Arrays.equals(saltBytes, BigIntegerUtils.bigIntegerToBytes(s)));
+
+			SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+			gen.setXRoutine(routine);
+			BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+			SRP6ClientSession client = new SRP6ClientSession();
+			client.setXRoutine(routine);
+			client.step1("alice", "secret");
+
+			SRP6ServerSession server = new SRP6ServerSession(config);
+			BigInteger B = server.step1("alice", s, v);
+
+			SRP6ClientCredentials cred = client.step2(config, s, B);
+			BigInteger M2 = server.step2(cred.A, cred.M1);
+			client.step3(M2);
+
+			assertEquals(client.getSessionKey(), server.getSessionKey());
+		}
+	}
+}
@@ -0,0 +1,427 @@
+package com.nimbusds.srp6;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the memory-mapped verifier store.
+ */
+public class MappedVerifierStoreTest extends TestCase {
+
+
+	private File file;
+
+
+	@Override
+	protected void setUp()
+		throws Exception {
+
+		file = File.createTempFile("verifiers", ".srpv");
+		file.delete();
+	}
+
+
+	@Override
+	protected void tearDown() {
+
+		file.delete();
+	}
+
+
+	private static VerifierRecord record(final int i) {
+
+		byte[] salt = new byte[16];
+		Arrays.fill(salt, (byte) i);
+		byte[] verifier = BigIntegerUtils.bigIntegerToBytes(BigInteger.valueOf(1000 + i));
+		return new VerifierRecord(salt, verifier, 2048);
+	}
+
+
+	public void testPutGetRemove()
+		throws Exception {
+
+		MappedVerifierStore store = MappedVerifierStore.create(file, 100, 32, 64);
+
+		assertTrue(store.getCapacity() >= 100);
+		assertEquals(0, store.size());
+		assertNull(store.get("alice"));
+
+		for (int i = 0; i < 100; i++)
+			store.put("user" + i, record(i));
+
+		assertEquals(100, store.size());
+
+		for (int i = 0; i < 100; i++) {
+
+			VerifierRecord record = store.get("user" + i);
+
+			assertTrue(Arrays.equals(record(i).salt, record.salt));
+			assertEquals(64, record.verifier.length);
+			assertEquals(BigInteger.valueOf(1000 + i), new BigInteger(1, record.verifier));
+			assertEquals(2048, record.paramsID);
+		}
+
+		// Update
+		store.put("user7", record(200));
+		assertEquals(100, store.size());
+		assertEquals(BigInteger.valueOf(1200), new BigInteger(1, store.get("user7").verifier));
+
+		// Remove
+		assertTrue(store.remove("user7"));
+		assertFalse(store.remove("user7"));
+		assertNull(store.get("user7"));
+		assertEquals(99, store.size());
+
+		// Reuse of the deleted slots
+		store.put("user7", record(7));
+		assertEquals(100, store.size());
+
+		store.close();
+	}
+
+
+	public void testReopen()
+		throws Exception {
+
+		MappedVerifierStore store = MappedVerifierStore.create(file, 10, 16, 32);
+		store.put("alice", record(1));
+		store.put("bob", record(2));
+		store.remove("bob");
+		store.close();
+
+		try {
+			store.get("alice");
+			fail();
+		} catch (IOException e) {
+			assertEquals("The verifier store is closed", e.getMessage());
+		}
+
+		store = MappedVerifierStore.open(file);
+		assertEquals(1, store.size());
+		assertEquals(BigInteger.valueOf(1001), new BigInteger(1, store.get("alice").verifier));
+		assertNull(store.get("bob"));
+		store.close();
+
+		try {
+			MappedVerifierStore.create(file, 10, 16, 32);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("File already exists"));
+		}
+	}
+
+
+	public void testFileLock()
+		throws Exception {
+
+		MappedVerifierStore store = MappedVerifierStore.create(file, 10, 16, 32);
+		store.put("alice", record(1));
+
+		try {
+			MappedVerifierStore.open(file);
+			fail();
+		} catch (IOException e) {
+			assertEquals("Verifier store in use: " + file, e.getMessage());
+		}
+
+		// Still usable
+		assertEquals(BigInteger.valueOf(1001), new BigInteger(1, store.get("alice").verifier));
+		store.close();
+
+		// Released on close
+		store = MappedVerifierStore.open(file);
+		assertEquals(1, store.size());
+		store.close();
+	}
+
+
+	public void testOpenInvalid()
+		throws Exception {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.write(new byte[100]);
+		raf.close();
+
+		try {
+			MappedVerifierStore.open(file);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("Not a verifier store"));
+		}
+
+		file.delete();
+		MappedVerifierStore.create(file, 10, 16, 32).close();
+
+		// Verifier length out of range
+		fileByte(16, 0x10);
+
+		try {
+			MappedVerifierStore.open(file);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("Corrupted verifier store header"));
+		}
+	}
+
+
+	public void testTornRecordIsSkipped()
+		throws Exception {
+
+		MappedVerifierStore store = MappedVerifierStore.create(file, 1, 16, 32);
+		store.put("alice", record(1));
+		store.close();
+
+		// Corrupt the verifier of the only record
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		long length = raf.length();
+		raf.close();
+
+		for (long pos = 64; pos < length; pos += 80) {
+
+			raf = new RandomAccessFile(file, "rw");
+			raf.seek(pos);
+
+			if (raf.read() == 1) {
+				raf.seek(pos + 79);
+				raf.write(0x55);
+			}
+
+			raf.close();
+		}
+
+		store = MappedVerifierStore.open(file);
+		assertNull(store.get("alice"));
+
+		// Overwritten by the next put
+		store.put("alice", record(2));
+		assertEquals(BigInteger.valueOf(1002), new BigInteger(1, store.get("alice").verifier));
+		store.close();
+	}
+
+
+	/**
+	 * Reads or writes a byte of the test file.
+	 */
+	private int fileByte(final long pos, final int value)
+		throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+		try {
+			raf.seek(pos);
+			final int old = raf.read();
+
+			if (value >= 0) {
+				raf.seek(pos);
+				raf.write(value);
+			}
+
+			return old;
+
+		} finally {
+			raf.close();
+		}
+	}
+
+
+	/**
+	 * Puts a record for alice, updates it and undoes the deletion of the
+	 * previous record, as by a crash during the update.
+	 */
+	private void interruptUpdate()
+		throws IOException {
+
+		MappedVerifierStore store = MappedVerifierStore.create(file, 10, 16, 32);
+		store.put("alice", record(1));
+		store.close();
+
+		// 16 slots of 80 bytes
+		int slot = 0;
+
+		while (fileByte(64 + slot * 80, -1) != 1)
+			slot++;
+
+		store = MappedVerifierStore.open(file);
+		store.put("alice", record(2));
+		store.close();
+
+		assertEquals(2, fileByte(64 + slot * 80, 1));
+	}
+
+
+	public void testInterruptedUpdate()
+		throws Exception {
+
+		interruptUpdate();
+
+		// Superseded record deleted too
+		MappedVerifierStore store = MappedVerifierStore.open(file);
+		assertEquals(BigInteger.valueOf(1001), new BigInteger(1, store.get("alice").verifier));
+		assertTrue(store.remove("alice"));
+		assertNull(store.get("alice"));
+		assertEquals(0, store.size());
+		store.close();
+
+		file.delete();
+		interruptUpdate();
+
+		// Not closed, with stale counts
+		fileByte(48, 1);
+		fileByte(27, 0);
+		fileByte(31, 0);
+
+		store = MappedVerifierStore.open(file);
+		assertEquals(1, store.size());
+		assertEquals(2, store.getOccupiedSlots());
+		assertEquals(BigInteger.valueOf(1001), new BigInteger(1, store.get("alice").verifier));
+		store.close();
+
+		assertEquals(0, fileByte(48, -1));
+
+		// Superseded record deleted by the scan
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		int used = 0;
+
+		for (long pos = 64; pos < raf.length(); pos += 80) {
+			raf.seek(pos);
+			if (raf.read() == 1)
+				used++;
+		}
+
+		raf.close();
+		assertEquals(1, used);
+	}
+
+
+	public void testLimits()
+		throws Exception {
+
+		MappedVerifierStore store = MappedVerifierStore.create(file, 3, 8, 4);
+
+		assertEquals(3, store.getCapacity());
+
+		try {
+			store.put("alice", new VerifierRecord(new byte[9], new byte[4], 0));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The salt must not be longer than 8 bytes", e.getMessage());
+		}
+
+		try {
+			store.put("alice", new VerifierRecord(new byte[8], new byte[]{1, 0, 0, 0, 0}, 0));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The verifier must not be longer than 4 bytes", e.getMessage());
+		}
+
+		// Leading zeros don't count
+		store.put("alice", new VerifierRecord(new byte[8], new byte[]{0, 1, 0, 0, 0}, 0));
+		store.put("bob", new VerifierRecord(new byte[8], new byte[4], 0));
+		store.put("carol", new VerifierRecord(new byte[8], new byte[4], 0));
+
+		try {
+			store.put("dave", new VerifierRecord(new byte[8], new byte[4], 0));
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("The verifier store is full", e.getMessage());
+		}
+
+		// Updates fit
+		store.put("carol", new VerifierRecord(new byte[8], new byte[]{1}, 0));
+		assertEquals(3, store.size());
+
+		store.close();
+	}
+
+
+	public void testCompact()
+		throws Exception {
+
+		File compacted = File.createTempFile("verifiers", ".srpv");
+		compacted.delete();
+
+		try {
+			MappedVerifierStore store = MappedVerifierStore.create(file, 100, 16, 32);
+
+			for (int i = 0; i < 100; i++)
+				store.put("user" + i, record(i));
+
+			for (int i = 0; i < 90; i++)
+				store.remove("user" + i);
+
+			for (int i = 90; i < 100; i++)
+				store.put("user" + i, record(i + 100));
+
+			assertEquals(10, store.size());
+			assertTrue(store.getOccupiedSlots() >= 100);
+
+			try {
+				store.compactTo(compacted, 9);
+				fail();
+			} catch (IllegalArgumentException e) {
+				assertEquals("The maximum number of records must not be less than 10", e.getMessage());
+			}
+
+			MappedVerifierStore target = store.compactTo(compacted, 1000);
+			store.close();
+
+			assertEquals(10, target.size());
+			assertEquals(10, target.getOccupiedSlots());
+			assertTrue(target.getCapacity() >= 1000);
+
+			for (int i = 0; i < 90; i++)
+				assertNull(target.get("user" + i));
+
+			for (int i = 90; i < 100; i++)
+				assertEquals(BigInteger.valueOf(1100 + i), new BigInteger(1, target.get("user" + i).verifier));
+
+			target.put("user0", record(0));
+			assertEquals(11, target.size());
+			target.close();
+
+			// Same key secret after reopening
+			target = MappedVerifierStore.open(compacted);
+			assertEquals(BigInteger.valueOf(1000), new BigInteger(1, target.get("user0").verifier));
+			target.close();
+
+		} finally {
+			compacted.delete();
+		}
+	}
+
+
+	public void testServerSessionFromStore()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(1024, "SHA-256");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		byte[] s = verifierGen.generateRandomSalt(16);
+		byte[] v = verifierGen.generatePaddedVerifier(s, null, "secret".getBytes("UTF-8"));
+
+		MappedVerifierStore store = MappedVerifierStore.create(file, 1000, 16, config.getPadLength());
+		store.put("alice", new VerifierRecord(s, v, 1024));
+
+		VerifierRecord record = store.get("alice");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		byte[] B = server.step1("alice", record.salt, record.verifier);
+
+		client.step2(config, record.salt, B);
+		client.step3(server.step2(client.getPublicClientValueBytes(), client.getClientEvidenceMessageBytes()));
+
+		assertEquals(SRP6ClientSession.State.STEP_3, client.getState());
+
+		store.close();
+	}
+}
@@ -0,0 +1,88 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the Montgomery modular arithmetic backend.
+ */
+public class MontgomeryArithmeticTest extends TestCase {
+
+
+	private static final int[] BITSIZES = {256, 512, 768, 1024, 1536, 2048};
+
+
+	public void testModPow() {
+
+		SecureRandom random = new SecureRandom();
+		ModularArithmetic arithmetic = new MontgomeryArithmetic();
+
+		for (int bitsize: BITSIZES) {
+
+			SRP6CryptoParams config = SRP6CryptoParams.getInstance(bitsize, "SHA-1");
+
+			for (int expBits: new int[]{0, 1, 7, 24, 160, bitsize, bitsize + 100}) {
+
+				BigInteger base = new BigInteger(bitsize + 8, random);
+				BigInteger exp = new BigInteger(expBits, random);
+
+				assertEquals(base.modPow(exp, config.N), arithmetic.modPow(config, base, exp));
+			}
+		}
+	}
+
+
+	public void testModMultiply() {
+
+		SecureRandom random = new SecureRandom();
+		ModularArithmetic arithmetic = new MontgomeryArithmetic();
+
+		for (int bitsize: BITSIZES) {
+
+			SRP6CryptoParams config = SRP6CryptoParams.getInstance(bitsize, "SHA-1");
+
+			BigInteger x = new BigInteger(bitsize * 2, random);
+			BigInteger y = new BigInteger(bitsize, random);
+
+			assertEquals(x.multiply(y).mod(config.N), arithmetic.modMultiply(config, x, y));
+			assertEquals(BigInteger.ZERO, arithmetic.modMultiply(config, x, BigInteger.ZERO));
+		}
+	}
+
+
+	public void testEvenModulus() {
+
+		SRP6CryptoParams config = new SRP6CryptoParams(BigInteger.valueOf(1000000), BigInteger.valueOf(3), "SHA-1");
+		ModularArithmetic arithmetic = new MontgomeryArithmetic();
+
+		assertEquals(BigInteger.valueOf(3).modPow(BigInteger.valueOf(12345), config.N),
+		             arithmetic.modPow(config, BigInteger.valueOf(3), BigInteger.valueOf(12345)));
+	}
+
+
+	public void testAuthWithMontgomeryRoutines()
+		throws SRP6Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(1024, "SHA-256");
+		SRP6Routines srp6Routines = new SRP6Routines(new MontgomeryArithmetic());
+
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config, srp6Routines);
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession(0, srp6Routines);
+		SRP6ServerSession server = new SRP6ServerSession(config, 0, srp6Routines);
+
+		client.step1("alice", "secret");
+		BigInteger B = server.step1("alice", s, v);
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+		BigInteger M2 = server.step2(cred.A, cred.M1);
+		client.step3(M2);
+
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+	}
+}
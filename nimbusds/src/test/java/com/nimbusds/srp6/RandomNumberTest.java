@@ -2,6 +2,10 @@ package com.nimbusds.srp6;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 
@@ -21,4 +25,140 @@ public class RandomNumberTest extends TestCase {
         }
 
     }
+
+    public void testRandomsFromRandomSource() {
+        final SRP6Routines srp6Routines = new SRP6Routines();
+
+        assertTrue(srp6Routines.getRandomSource() instanceof ThreadLocalRandomSource);
+
+        final BigInteger N = new BigInteger("2").pow(512);
+
+        for( int i = 0; i < 1e4; i++){
+            BigInteger r = srp6Routines.generatePrivateValue(N);
+            if( BigInteger.ZERO.compareTo(r) >= 0 ) fail("bad r<=0:"+r);
+            if( r.compareTo(N) >= 0 ) fail("bad r>=N"+r);
+        }
+
+        assertEquals(16, srp6Routines.generateRandomSalt(16).length);
+    }
+
+    public void testThreadLocalRandomSource() throws Exception {
+        final RandomSource randomSource = new ThreadLocalRandomSource();
+
+        final SecureRandom own = randomSource.getSecureRandom();
+        assertSame(own, randomSource.getSecureRandom());
+        assertSame(own, new ThreadLocalRandomSource().getSecureRandom());
+
+        final SecureRandom[] other = new SecureRandom[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                other[0] = randomSource.getSecureRandom();
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertNotNull(other[0]);
+        assertNotSame(own, other[0]);
+
+        byte[] a = new byte[32];
+        byte[] b = new byte[32];
+        own.nextBytes(a);
+        other[0].nextBytes(b);
+        assertFalse(java.util.Arrays.equals(a, b));
+    }
+
+    public void testCustomRandomSource() {
+        final SecureRandom secureRandom = new SecureRandom();
+
+        RandomSource randomSource = new RandomSource() {
+            @Override
+            public SecureRandom getSecureRandom() {
+                return secureRandom;
+            }
+        };
+
+        SRP6Routines srp6Routines = new SRP6Routines(new BigIntegerArithmetic(), randomSource);
+        assertSame(randomSource, srp6Routines.getRandomSource());
+        assertSame(secureRandom, srp6Routines.getRandomSource().getSecureRandom());
+
+        try {
+            new SRP6Routines(new BigIntegerArithmetic(), null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedRandomFields() throws Exception {
+        final int[] calls = new int[1];
+
+        final SecureRandom counting = new SecureRandom() {
+            @Override
+            public void nextBytes(byte[] bytes) {
+                calls[0]++;
+                super.nextBytes(bytes);
+            }
+        };
+
+        SRP6Routines srp6Routines = new SRP6Routines() {
+            {
+                random = counting;
+            }
+        };
+
+        assertSame(counting, srp6Routines.getRandomSource().getSecureRandom());
+        assertEquals(16, srp6Routines.generateRandomSalt(16).length);
+        assertEquals(1, calls[0]);
+
+        srp6Routines.generatePrivateValue(new BigInteger("2").pow(512));
+        assertEquals(2, calls[0]);
+
+        SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+        SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+        BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+        BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+        SRP6ServerSession server = new SRP6ServerSession(config) {
+            {
+                random = counting;
+            }
+        };
+        server.step1("alice", s, v);
+        assertEquals(3, calls[0]);
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testDefaultDeprecatedRandomFields() throws Exception {
+        SRP6Routines srp6Routines = new SRP6Routines();
+        assertNotNull(srp6Routines.random);
+        assertEquals(16, srp6Routines.random.generateSeed(16).length);
+        assertNotSame(srp6Routines.random, srp6Routines.getRandomSource().getSecureRandom());
+
+        SRP6ServerSession server = new SRP6ServerSession(SRP6CryptoParams.getInstance(512, "SHA-1"));
+        assertSame(srp6Routines.random, server.random);
+
+        // Serialised as a reference to the shared generator
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(server);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        SRP6ServerSession copy = (SRP6ServerSession) in.readObject();
+        assertSame(server.random, copy.random);
+    }
+
+    public void testThreadLocalRandomSourceReseeds() {
+        RandomSource randomSource = new ThreadLocalRandomSource();
+
+        SecureRandom own = randomSource.getSecureRandom();
+
+        for (int i = 0; i < 2 * ThreadLocalRandomSource.RESEED_INTERVAL; i++)
+            assertSame(own, randomSource.getSecureRandom());
+
+        assertEquals(16, new SRP6Routines().generateRandomSalt(16).length);
+    }
 }
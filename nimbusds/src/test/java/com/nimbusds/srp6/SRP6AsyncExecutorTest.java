@@ -0,0 +1,226 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the asynchronous executor.
+ */
+public class SRP6AsyncExecutorTest extends TestCase {
+
+
+	private static final SRP6CryptoParams CONFIG = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+
+	private static class Recorder<T> implements SRP6Callback<T> {
+
+
+		final CountDownLatch latch = new CountDownLatch(1);
+
+
+		final AtomicReference<Object> outcome = new AtomicReference<>();
+
+
+		@Override
+		public void onSuccess(final T result) {
+
+			outcome.set(result);
+			latch.countDown();
+		}
+
+
+		@Override
+		public void onFailure(final Throwable cause) {
+
+			outcome.set(cause);
+			latch.countDown();
+		}
+
+
+		Object await()
+			throws InterruptedException {
+
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+			return outcome.get();
+		}
+	}
+
+
+	public void testAuthentication()
+		throws Exception {
+
+		SRP6AsyncExecutor executor = new SRP6AsyncExecutor(2, 16);
+
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(CONFIG);
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+
+		Recorder<BigInteger> verifier = new Recorder<>();
+		BigInteger v = executor.generateVerifier(gen, s, "alice", "secret", verifier).get();
+		assertEquals(v, verifier.await());
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+
+		BigInteger B = executor.serverStep1(server, "alice", s, v, null).get();
+
+		Recorder<SRP6ClientCredentials> credentials = new Recorder<>();
+		executor.clientStep2(client, CONFIG, s, B, credentials);
+		SRP6ClientCredentials cred = (SRP6ClientCredentials) credentials.await();
+
+		BigInteger M2 = executor.serverStep2(server, cred.A, cred.M1, null).get();
+
+		Recorder<Void> step3 = new Recorder<>();
+		executor.clientStep3(client, M2, step3);
+		assertNull(step3.await());
+
+		assertEquals(SRP6ClientSession.State.STEP_3, client.getState());
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+
+		executor.shutdown();
+	}
+
+
+	public void testAuthenticationWithWireBytes()
+		throws Exception {
+
+		SRP6AsyncExecutor executor = new SRP6AsyncExecutor(2, 16);
+
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(CONFIG);
+		byte[] s = gen.generateRandomSalt();
+		byte[] v = gen.generatePaddedVerifier(s, "alice".getBytes("UTF-8"), "secret".getBytes("UTF-8"));
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+
+		Recorder<byte[]> step1 = new Recorder<>();
+		byte[] B = executor.serverStep1(server, "alice", s, v, step1).get();
+		assertSame(B, step1.await());
+		assertEquals(CONFIG.getPadLength(), B.length);
+
+		executor.clientStep2(client, CONFIG, s, B, null).get();
+
+		byte[] M2 = executor.serverStep2(server, client.getPublicClientValueBytes(), client.getClientEvidenceMessageBytes(), null).get();
+
+		Recorder<Void> step3 = new Recorder<>();
+		executor.clientStep3(client, M2, step3);
+		assertNull(step3.await());
+
+		assertEquals(SRP6ClientSession.State.STEP_3, client.getState());
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+
+		executor.shutdown();
+	}
+
+
+	public void testMockStep1()
+		throws Exception {
+
+		SRP6AsyncExecutor executor = new SRP6AsyncExecutor(1, 4);
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+		BigInteger B = executor.serverMockStep1(server, "mallory", BigInteger.ONE, BigInteger.TEN, null).get();
+		assertNotNull(B);
+		assertEquals(SRP6ServerSession.State.STEP_1, server.getState());
+
+		server = new SRP6ServerSession(CONFIG);
+		byte[] BBytes = executor.serverMockStep1(server, "mallory", new byte[16], new byte[]{10}, null).get();
+		assertEquals(CONFIG.getPadLength(), BBytes.length);
+
+		// Fails at step two as for a wrong password
+		Recorder<byte[]> step2 = new Recorder<>();
+		executor.serverStep2(server, BigIntegerUtils.bigIntegerToBytes(CONFIG.g), new byte[20], step2);
+
+		SRP6Exception e = (SRP6Exception) step2.await();
+		assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+
+		executor.shutdown();
+	}
+
+
+	public void testFailure()
+		throws Exception {
+
+		SRP6AsyncExecutor executor = new SRP6AsyncExecutor(1, 4);
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+		server.step1("alice", BigInteger.ONE, BigInteger.TEN);
+
+		Recorder<BigInteger> recorder = new Recorder<>();
+		Future<BigInteger> future = executor.serverStep2(server, CONFIG.N, BigInteger.ONE, recorder);
+
+		SRP6Exception e = (SRP6Exception) recorder.await();
+		assertEquals(SRP6Exception.CauseType.BAD_PUBLIC_VALUE, e.getCauseType());
+
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException ee) {
+			assertSame(e, ee.getCause());
+		}
+
+		executor.shutdown();
+	}
+
+
+	public void testBackPressure()
+		throws Exception {
+
+		SRP6AsyncExecutor executor = new SRP6AsyncExecutor(1, 1);
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		SRP6VerifierGenerator blocking = new SRP6VerifierGenerator(CONFIG);
+		blocking.setXRoutine(new XRoutine() {
+
+			@Override
+			public BigInteger computeX(MessageDigest digest, byte[] salt, byte[] username, byte[] password) {
+
+				started.countDown();
+
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+
+				return BigInteger.ONE;
+			}
+		});
+
+		// Occupies the worker
+		Future<BigInteger> first = executor.generateVerifier(blocking, BigInteger.ONE, "alice", "secret", null);
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		// Occupies the queue
+		Future<BigInteger> second = executor.generateVerifier(blocking, BigInteger.ONE, "alice", "secret", null);
+
+		try {
+			executor.generateVerifier(blocking, BigInteger.ONE, "alice", "secret", null);
+			fail();
+		} catch (RejectedExecutionException e) {
+			// ok
+		}
+
+		release.countDown();
+
+		assertEquals(CONFIG.g, first.get());
+		assertEquals(CONFIG.g, second.get());
+
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,123 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the bulk verifier generator.
+ */
+public class SRP6BatchVerifierGeneratorTest extends TestCase {
+
+
+	private static class Collector implements SRP6BatchVerifierGenerator.ResultHandler {
+
+
+		final List<SRP6BatchVerifierGenerator.Result> results = new ArrayList<>();
+
+
+		@Override
+		public void handle(final SRP6BatchVerifierGenerator.Result result) {
+
+			results.add(result);
+		}
+	}
+
+
+	public void testMatchesVerifierGenerator() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(1024, "SHA-256");
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+
+		List<SRP6BatchVerifierGenerator.Entry> entries = new ArrayList<>();
+
+		for (int i = 0; i < 50; i++) {
+
+			BigInteger salt = i % 2 == 0 ? new BigInteger(1, gen.generateRandomSalt()) : null;
+
+			entries.add(new SRP6BatchVerifierGenerator.Entry("user" + i, "secret" + i, salt));
+		}
+
+		SRP6BatchVerifierGenerator batch = new SRP6BatchVerifierGenerator(config);
+		batch.setChunkSize(7);
+
+		Collector collector = new Collector();
+
+		assertEquals(50, batch.generate(entries, collector));
+		assertEquals(50, collector.results.size());
+
+		for (int i = 0; i < 50; i++) {
+
+			SRP6BatchVerifierGenerator.Result result = collector.results.get(i);
+
+			assertSame(entries.get(i), result.entry);
+
+			if (i % 2 == 0)
+				assertSame(entries.get(i).salt, result.salt);
+			else
+				assertEquals(SRP6BatchVerifierGenerator.DEFAULT_SALT_LENGTH, result.salt.length);
+
+			assertEquals(gen.generateVerifier(result.salt, result.entry.password), result.verifier);
+		}
+	}
+
+
+	public void testCustomXRoutineAndPool() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+		gen.setXRoutine(new XRoutineWithUserIdentity());
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+
+		try {
+			SRP6BatchVerifierGenerator batch = new SRP6BatchVerifierGenerator(config, new SRP6Routines(), pool);
+			batch.setXRoutine(new XRoutineWithUserIdentity());
+			batch.setSaltLength(32);
+
+			final int count = 100;
+
+			Iterator<SRP6BatchVerifierGenerator.Entry> entries = new Iterator<SRP6BatchVerifierGenerator.Entry>() {
+
+				int i = 0;
+
+				@Override
+				public boolean hasNext() {
+					return i < count;
+				}
+
+				@Override
+				public SRP6BatchVerifierGenerator.Entry next() {
+					i++;
+					return new SRP6BatchVerifierGenerator.Entry("alice" + i, "secret", null);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+
+			Collector collector = new Collector();
+
+			assertEquals(count, batch.generate(entries, collector));
+
+			for (SRP6BatchVerifierGenerator.Result result: collector.results) {
+
+				assertEquals(32, result.salt.length);
+				assertEquals(gen.generateVerifier(result.salt, result.entry.userID, result.entry.password), result.verifier);
+			}
+
+			assertFalse(pool.isShutdown());
+
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -2,6 +2,8 @@ package com.nimbusds.srp6;
 
 
 import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -20,6 +22,98 @@ public class SRP6CryptoParamsTest extends TestCase {
 		assertTrue(SRP6CryptoParams.N_1024.isProbablePrime(15));
 		assertTrue(SRP6CryptoParams.N_1536.isProbablePrime(15));
 		assertTrue(SRP6CryptoParams.N_2048.isProbablePrime(15));
+		assertTrue(SRP6CryptoParams.N_3072.isProbablePrime(15));
+		assertTrue(SRP6CryptoParams.N_4096.isProbablePrime(15));
+		assertTrue(SRP6CryptoParams.N_6144.isProbablePrime(15));
+		assertTrue(SRP6CryptoParams.N_8192.isProbablePrime(15));
+	}
+
+
+	public void testRFC5054LargeGroups() {
+
+		// RFC 3526 MODP groups, leading and trailing 64 bits all ones
+		int[] bitsizes = { 3072, 4096, 6144, 8192 };
+		BigInteger[] generators = { BigInteger.valueOf(5), BigInteger.valueOf(5), BigInteger.valueOf(5), BigInteger.valueOf(19) };
+
+		for (int i = 0; i < bitsizes.length; i++) {
+
+			SRP6CryptoParams config = SRP6CryptoParams.getInstance(bitsizes[i], "SHA-256");
+
+			assertEquals(bitsizes[i], config.N.bitLength());
+			assertEquals(generators[i], config.g);
+			assertEquals(bitsizes[i] / 8, config.getPadLength());
+
+			String hex = config.N.toString(16);
+			assertTrue(hex.startsWith("ffffffffffffffffc90fdaa22168c234"));
+			assertTrue(hex.endsWith("ffffffffffffffff"));
+		}
+
+		assertTrue(BigIntegerUtils.toHex(SRP6CryptoParams.N_3072).endsWith("a93ad2caffffffffffffffff"));
+		assertTrue(BigIntegerUtils.toHex(SRP6CryptoParams.N_4096).endsWith("34063199ffffffffffffffff"));
+		assertTrue(BigIntegerUtils.toHex(SRP6CryptoParams.N_6144).endsWith("6dcc4024ffffffffffffffff"));
+		assertTrue(BigIntegerUtils.toHex(SRP6CryptoParams.N_8192).endsWith("98edd3dfffffffffffffffff"));
+	}
+
+
+	public void testSharedInstances() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(2048, "SHA-256");
+
+		assertSame(config, SRP6CryptoParams.getInstance(2048, "SHA-256"));
+		assertNotSame(config, SRP6CryptoParams.getInstance(2048, "SHA-1"));
+		assertNotSame(config, SRP6CryptoParams.getInstance(1024, "SHA-256"));
+
+		assertNull(SRP6CryptoParams.getInstance(1000, "SHA-256"));
+
+		try {
+			SRP6CryptoParams.getInstance(2048, "NO-SUCH-HASH");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+
+	public void testSharedDerivedValues() {
+
+		SRP6CryptoParams sha1 = SRP6CryptoParams.getInstance(1024, "SHA-1");
+		SRP6CryptoParams sha256 = SRP6CryptoParams.getInstance(1024, "SHA-256");
+		SRP6CryptoParams custom = new SRP6CryptoParams(SRP6CryptoParams.N_1024, SRP6CryptoParams.g_common, "SHA-512");
+
+		assertSame(sha1.getFixedBaseExponentiator(), sha256.getFixedBaseExponentiator());
+		assertSame(sha1.getFixedBaseExponentiator(), custom.getFixedBaseExponentiator());
+		assertSame(sha1.getMontgomeryModulus(), custom.getMontgomeryModulus());
+		assertSame(sha1.paddedN(), sha256.paddedN());
+		assertSame(sha1.paddedG(), custom.paddedG());
+
+		// 'k' depends on the hash
+		assertFalse(sha1.getK().equals(sha256.getK()));
+
+		// Not shared with another generator
+		SRP6CryptoParams otherG = new SRP6CryptoParams(SRP6CryptoParams.N_1024, BigInteger.valueOf(5), "SHA-1");
+		assertNotSame(sha1.getFixedBaseExponentiator(), otherG.getFixedBaseExponentiator());
+		assertFalse(Arrays.equals(sha1.paddedG(), otherG.paddedG()));
+	}
+
+
+	public void testAuthenticationWith3072BitGroup()
+		throws SRP6Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(3072, "SHA-256");
+
+		BigInteger s = new BigInteger(1, new SRP6Routines().generateRandomSalt(16));
+		BigInteger v = new SRP6VerifierGenerator(config).generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		BigInteger B = server.step1("alice", s, v);
+
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+		client.step3(server.step2(cred.A, cred.M1));
+
+		assertEquals(client.getSessionKey(), server.getSessionKey());
 	}
 
 
@@ -53,4 +147,79 @@ public class SRP6CryptoParamsTest extends TestCase {
 			assertEquals("The generator parameter 'g' must not be 0", e.getMessage());
 		}
 	}
+
+
+	public void testCachedMultiplier()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(2048, "SHA-256");
+
+		BigInteger expected = new SRP6Routines().computeK(MessageDigest.getInstance("SHA-256"), config.N, config.g);
+
+		assertEquals(expected, config.getK());
+		assertSame(config.getK(), config.getK());
+		assertEquals(expected, new SRP6Routines().computeK(config));
+	}
+
+
+	public void testPaddedValues() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(1024, "SHA-1");
+
+		assertEquals(128, config.getPadLength());
+
+		byte[] paddedN = config.getPaddedN();
+		assertEquals(128, paddedN.length);
+		assertEquals(config.N, new BigInteger(1, paddedN));
+
+		byte[] paddedG = config.getPaddedG();
+		assertEquals(128, paddedG.length);
+		assertEquals(config.g, new BigInteger(1, paddedG));
+		assertEquals(0, paddedG[0]);
+
+		// Returned arrays are copies
+		paddedG[0] = 1;
+		assertEquals(0, config.getPaddedG()[0]);
+	}
+
+
+	public void testMessageDigestInstances()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(256, "SHA-256");
+
+		MessageDigest first = config.getMessageDigestInstance();
+		first.update("dirty".getBytes());
+
+		MessageDigest second = config.getMessageDigestInstance();
+
+		assertNotSame(first, second);
+		assertEquals("SHA-256", second.getAlgorithm());
+
+		byte[] expected = MessageDigest.getInstance("SHA-256").digest("abc".getBytes());
+
+		assertTrue(Arrays.equals(expected, second.digest("abc".getBytes())));
+		assertTrue(Arrays.equals(expected, config.getMessageDigestInstance().digest("abc".getBytes())));
+	}
+
+
+	public void testSharedCustomGroups() {
+
+		BigInteger g = BigInteger.valueOf(5);
+
+		SRP6CryptoParams first = new SRP6CryptoParams(SRP6CryptoParams.N_512, g, "SHA-256");
+		SRP6CryptoParams second = new SRP6CryptoParams(SRP6CryptoParams.N_512, g, "SHA-1");
+
+		BigInteger e = new BigInteger("123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef", 16);
+
+		// Plain modPow until the table pays for itself
+		for (int i=0; i < 2 * SRP6CryptoParams.CUSTOM_TABLE_THRESHOLD; i++) {
+			assertEquals(g.modPow(e, SRP6CryptoParams.N_512), first.modPowG(e));
+			assertEquals(g.modPow(e, SRP6CryptoParams.N_512), second.modPowG(e));
+		}
+
+		assertSame(first.getFixedBaseExponentiator(), second.getFixedBaseExponentiator());
+		assertNotSame(first.getFixedBaseExponentiator(),
+			SRP6CryptoParams.getInstance(512, "SHA-256").getFixedBaseExponentiator());
+	}
 }
@@ -0,0 +1,216 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the ephemeral value pool.
+ */
+public class SRP6EphemeralPoolTest extends TestCase {
+
+
+	private static final SRP6CryptoParams CONFIG = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+
+	public void testFillAndTake() {
+
+		SRP6EphemeralPool pool = new SRP6EphemeralPool(CONFIG, 4);
+
+		assertSame(CONFIG, pool.getCryptoParams());
+		assertEquals(4, pool.getCapacity());
+		assertEquals(0, pool.getDepth());
+		assertFalse(pool.isStarted());
+
+		pool.fill();
+
+		assertEquals(4, pool.getDepth());
+
+		for (int i = 0; i < 6; i++) {
+
+			SRP6EphemeralPool.Ephemeral e = pool.take();
+
+			assertEquals(CONFIG.g.modPow(e.privateValue, CONFIG.N), e.power);
+		}
+
+		assertEquals(0, pool.getDepth());
+		assertEquals(4, pool.getHitCount());
+		assertEquals(2, pool.getMissCount());
+	}
+
+
+	public void testBackgroundRefill()
+		throws Exception {
+
+		SRP6EphemeralPool pool = new SRP6EphemeralPool(CONFIG, 8);
+
+		pool.start();
+		pool.start();
+
+		assertTrue(pool.isStarted());
+
+		for (int i = 0; i < 500 && pool.getDepth() < 8; i++)
+			Thread.sleep(10);
+
+		assertEquals(8, pool.getDepth());
+
+		pool.stop();
+
+		assertFalse(pool.isStarted());
+
+		pool.take();
+
+		assertEquals(1, pool.getHitCount());
+	}
+
+
+	public void testSupports() {
+
+		SRP6EphemeralPool pool = new SRP6EphemeralPool(CONFIG, 1);
+
+		assertTrue(pool.supports(CONFIG));
+		assertTrue(pool.supports(SRP6CryptoParams.getInstance(512, "SHA-256")));
+		assertFalse(pool.supports(SRP6CryptoParams.getInstance(256, "SHA-1")));
+	}
+
+
+	public void testAuthenticationWithPooledServerValues()
+		throws Exception {
+
+		SRP6EphemeralPool pool = new SRP6EphemeralPool(CONFIG, 2);
+		pool.fill();
+
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(CONFIG);
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		for (int i = 0; i < 3; i++) {
+
+			SRP6ClientSession client = new SRP6ClientSession();
+			client.step1("alice", "secret");
+
+			SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+			server.setEphemeralPool(pool);
+			assertSame(pool, server.getEphemeralPool());
+
+			BigInteger B = server.step1("alice", s, v);
+
+			SRP6ClientCredentials cred = client.step2(CONFIG, s, B);
+			client.step3(server.step2(cred.A, cred.M1));
+
+			assertEquals(client.getSessionKey(), server.getSessionKey());
+		}
+
+		assertEquals(2, pool.getHitCount());
+		assertEquals(1, pool.getMissCount());
+	}
+
+
+	public void testRejectPoolForOtherParams() {
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+		server.setEphemeralPool(new SRP6EphemeralPool(SRP6CryptoParams.getInstance(256, "SHA-1"), 1));
+
+		try {
+			server.step1("alice", BigInteger.ONE, BigInteger.TEN);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The ephemeral pool crypto parameters don't match those of the session", e.getMessage());
+		}
+	}
+
+
+	public void testRefillFailureStopsPool()
+		throws Exception {
+
+		final int[] calls = new int[1];
+
+		SRP6Routines routines = new SRP6Routines() {
+			@Override
+			public BigInteger generatePrivateValue(final BigInteger N) {
+				if (++calls[0] > 2)
+					throw new IllegalStateException("No entropy");
+				return super.generatePrivateValue(N);
+			}
+		};
+
+		final Throwable[] uncaught = new Throwable[1];
+
+		Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+
+		Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+			@Override
+			public void uncaughtException(final Thread t, final Throwable e) {
+				uncaught[0] = e;
+			}
+		});
+
+		try {
+			SRP6EphemeralPool pool = new SRP6EphemeralPool(CONFIG, 8, routines);
+			pool.start();
+
+			for (int i = 0; i < 500 && pool.isStarted(); i++)
+				Thread.sleep(10);
+
+			assertFalse(pool.isStarted());
+			assertEquals(2, pool.getDepth());
+
+			for (int i = 0; i < 500 && uncaught[0] == null; i++)
+				Thread.sleep(10);
+
+			assertEquals("No entropy", uncaught[0].getMessage());
+
+		} finally {
+			Thread.setDefaultUncaughtExceptionHandler(handler);
+		}
+	}
+
+
+	public void testPooledValuesWithOverriddenRoutines()
+		throws Exception {
+
+		final int[] calls = new int[2];
+
+		SRP6Routines routines = new SRP6Routines() {
+			@Override
+			public BigInteger computePublicServerValue(final SRP6CryptoParams config,
+			                                           final BigInteger k,
+			                                           final BigInteger v,
+			                                           final BigInteger b) {
+				calls[0]++;
+				return super.computePublicServerValue(config, k, v, b);
+			}
+
+			@Override
+			public BigInteger computePublicClientValue(final SRP6CryptoParams config,
+			                                           final BigInteger a) {
+				calls[1]++;
+				return super.computePublicClientValue(config, a);
+			}
+		};
+
+		SRP6EphemeralPool pool = new SRP6EphemeralPool(CONFIG, 2);
+		pool.fill();
+
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(CONFIG);
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession(0, routines);
+		client.setEphemeralPool(pool);
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG, 0, routines);
+		server.setEphemeralPool(pool);
+
+		SRP6ClientCredentials cred = client.step2(CONFIG, s, server.step1("alice", s, v));
+		client.step3(server.step2(cred.A, cred.M1));
+
+		assertEquals(2, pool.getHitCount());
+		assertEquals(1, calls[0]);
+		assertEquals(1, calls[1]);
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+	}
+}
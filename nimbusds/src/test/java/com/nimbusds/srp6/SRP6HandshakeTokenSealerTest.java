@@ -0,0 +1,197 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the stateless handshake token sealer.
+ */
+public class SRP6HandshakeTokenSealerTest extends TestCase {
+
+
+	private static final SRP6CryptoParams CONFIG = SRP6CryptoParams.getInstance(1024, "SHA-256");
+
+
+	private static byte[] newKey() {
+
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		return key;
+	}
+
+
+	public void testAuthenticationAcrossNodes()
+		throws Exception {
+
+		byte[] key = newKey();
+
+		SRP6HandshakeTokenSealer node1 = new SRP6HandshakeTokenSealer(CONFIG, key, 60);
+		SRP6HandshakeTokenSealer node2 = new SRP6HandshakeTokenSealer(CONFIG, key, 60);
+
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(CONFIG);
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+		BigInteger B = server.step1("alice", s, v);
+
+		byte[] token = node1.seal(server);
+
+		SRP6ClientCredentials cred = client.step2(CONFIG, s, B);
+
+		SRP6ServerSession unsealed = node2.unseal(token, v);
+
+		assertEquals(SRP6ServerSession.State.STEP_1, unsealed.getState());
+		assertEquals("alice", unsealed.getUserID());
+		assertEquals(s, unsealed.getSalt());
+		assertEquals(B, unsealed.getPublicServerValue());
+		assertEquals(server.getLastActivityTime(), unsealed.getLastActivityTime());
+
+		BigInteger M2 = unsealed.step2(cred.A, cred.M1);
+		client.step3(M2);
+
+		assertEquals(client.getSessionKey(), unsealed.getSessionKey());
+	}
+
+
+	public void testTokensDiffer() {
+
+		SRP6HandshakeTokenSealer sealer = new SRP6HandshakeTokenSealer(CONFIG, newKey(), 60);
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+		server.step1("alice", BigInteger.ONE, BigInteger.TEN);
+
+		assertFalse(java.util.Arrays.equals(sealer.seal(server), sealer.seal(server)));
+	}
+
+
+	public void testRejectTamperedToken() {
+
+		SRP6HandshakeTokenSealer sealer = new SRP6HandshakeTokenSealer(CONFIG, newKey(), 60);
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+		server.step1("alice", BigInteger.ONE, BigInteger.TEN);
+
+		byte[] token = sealer.seal(server);
+
+		for (int i = 0; i < token.length; i += 7) {
+
+			byte[] tampered = token.clone();
+			tampered[i] ^= 1;
+
+			try {
+				sealer.unseal(tampered, BigInteger.TEN);
+				fail();
+			} catch (SRP6Exception e) {
+				assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+			}
+		}
+
+		try {
+			sealer.unseal(new byte[10], BigInteger.TEN);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+	}
+
+
+	public void testRejectOtherKey() {
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+		server.step1("alice", BigInteger.ONE, BigInteger.TEN);
+
+		byte[] token = new SRP6HandshakeTokenSealer(CONFIG, newKey(), 60).seal(server);
+
+		try {
+			new SRP6HandshakeTokenSealer(CONFIG, newKey(), 60).unseal(token, BigInteger.TEN);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+	}
+
+
+	public void testRejectOtherVerifier() {
+
+		SRP6HandshakeTokenSealer sealer = new SRP6HandshakeTokenSealer(CONFIG, newKey(), 60);
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+		server.step1("alice", BigInteger.ONE, BigInteger.TEN);
+
+		try {
+			sealer.unseal(sealer.seal(server), BigInteger.ONE);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+	}
+
+
+	public void testExpiredToken() {
+
+		SRP6HandshakeTokenSealer sealer = new SRP6HandshakeTokenSealer(CONFIG, newKey(), 60);
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG, 10);
+		server.step1("alice", BigInteger.ONE, BigInteger.TEN);
+		server.lastActivity -= 11000;
+
+		try {
+			sealer.unseal(sealer.seal(server), BigInteger.TEN);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.TIMEOUT, e.getCauseType());
+		}
+
+		// Default timeout applies without a session timeout
+		server = new SRP6ServerSession(CONFIG);
+		server.step1("alice", BigInteger.ONE, BigInteger.TEN);
+		server.lastActivity -= 61000;
+
+		try {
+			sealer.unseal(sealer.seal(server), BigInteger.TEN);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.TIMEOUT, e.getCauseType());
+		}
+	}
+
+
+	public void testMockUserIdentity()
+		throws Exception {
+
+		SRP6HandshakeTokenSealer sealer = new SRP6HandshakeTokenSealer(CONFIG, newKey(), 60);
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+		BigInteger B = server.mockStep1("alice", BigInteger.ONE, BigInteger.TEN);
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+		SRP6ClientCredentials cred = client.step2(CONFIG, BigInteger.ONE, B);
+
+		try {
+			sealer.unseal(sealer.seal(server), BigInteger.TEN).step2(cred.A, cred.M1);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+	}
+
+
+	public void testRejectShortKey() {
+
+		try {
+			new SRP6HandshakeTokenSealer(CONFIG, new byte[31], 60);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The secret key must be at least 32 bytes long", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the session instrumentation with the histogram metrics.
+ */
+public class SRP6HistogramMetricsTest extends TestCase {
+
+
+	private static final SRP6CryptoParams CONFIG = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+
+	public void testSuccessfulAuthentication()
+		throws SRP6Exception {
+
+		SRP6HistogramMetrics metrics = new SRP6HistogramMetrics();
+
+		BigInteger s = new BigInteger(1, new SRP6Routines().generateRandomSalt(16));
+		BigInteger v = new SRP6VerifierGenerator(CONFIG).generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.setMetrics(metrics);
+		assertSame(metrics, client.getMetrics());
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+		server.setMetrics(metrics);
+
+		BigInteger B = server.step1("alice", s, v);
+		SRP6ClientCredentials cred = client.step2(CONFIG, s, B);
+		BigInteger M2 = server.step2(cred.A, cred.M1);
+		client.step3(M2);
+
+		for (SRP6Metrics.Step step: SRP6Metrics.Step.values()) {
+			assertEquals(1L, metrics.getSuccessCount(step));
+			assertTrue(metrics.getStepHistogram(step).getMax() > 0L);
+
+			for (SRP6Exception.CauseType cause: SRP6Exception.CauseType.values())
+				assertEquals(0L, metrics.getFailureCount(step, cause));
+		}
+
+		// Client and server each
+		assertEquals(2L, metrics.getPhaseHistogram(SRP6Metrics.Phase.K).getCount());
+		assertEquals(2L, metrics.getPhaseHistogram(SRP6Metrics.Phase.PRIVATE_VALUE).getCount());
+		assertEquals(2L, metrics.getPhaseHistogram(SRP6Metrics.Phase.PUBLIC_VALUE).getCount());
+		assertEquals(2L, metrics.getPhaseHistogram(SRP6Metrics.Phase.U).getCount());
+		assertEquals(2L, metrics.getPhaseHistogram(SRP6Metrics.Phase.SESSION_KEY).getCount());
+		assertEquals(2L, metrics.getPhaseHistogram(SRP6Metrics.Phase.CLIENT_EVIDENCE).getCount());
+		assertEquals(2L, metrics.getPhaseHistogram(SRP6Metrics.Phase.SERVER_EVIDENCE).getCount());
+
+		// Client only
+		assertEquals(1L, metrics.getPhaseHistogram(SRP6Metrics.Phase.X).getCount());
+
+		metrics.reset();
+		assertEquals(0L, metrics.getSuccessCount(SRP6Metrics.Step.SERVER_STEP_1));
+		assertEquals(0L, metrics.getPhaseHistogram(SRP6Metrics.Phase.K).getCount());
+	}
+
+
+	public void testFailures()
+		throws SRP6Exception {
+
+		SRP6HistogramMetrics metrics = new SRP6HistogramMetrics();
+
+		BigInteger s = new BigInteger(1, new SRP6Routines().generateRandomSalt(16));
+		BigInteger v = new SRP6VerifierGenerator(CONFIG).generateVerifier(s, "alice", "secret");
+
+		// Bad password
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "wrong");
+
+		SRP6ServerSession server = new SRP6ServerSession(CONFIG);
+		server.setMetrics(metrics);
+
+		SRP6ClientCredentials cred = client.step2(CONFIG, s, server.step1("alice", s, v));
+
+		try {
+			server.step2(cred.A, cred.M1);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+
+		assertEquals(1L, metrics.getFailureCount(SRP6Metrics.Step.SERVER_STEP_2, SRP6Exception.CauseType.BAD_CREDENTIALS));
+		assertEquals(0L, metrics.getSuccessCount(SRP6Metrics.Step.SERVER_STEP_2));
+
+		// Bad public value
+		server = new SRP6ServerSession(CONFIG);
+		server.setMetrics(metrics);
+		server.step1("alice", s, v);
+
+		try {
+			server.step2(CONFIG.N, cred.M1);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_PUBLIC_VALUE, e.getCauseType());
+		}
+
+		assertEquals(1L, metrics.getFailureCount(SRP6Metrics.Step.SERVER_STEP_2, SRP6Exception.CauseType.BAD_PUBLIC_VALUE));
+
+		// Bad server evidence
+		client = new SRP6ClientSession();
+		client.setMetrics(metrics);
+		client.step1("alice", "secret");
+		server = new SRP6ServerSession(CONFIG);
+		client.step2(CONFIG, s, server.step1("alice", s, v));
+
+		try {
+			client.step3(BigInteger.ONE);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+
+		assertEquals(1L, metrics.getFailureCount(SRP6Metrics.Step.CLIENT_STEP_3, SRP6Exception.CauseType.BAD_CREDENTIALS));
+		assertEquals(2L, metrics.getSuccessCount(SRP6Metrics.Step.SERVER_STEP_1));
+		assertEquals(1L, metrics.getSuccessCount(SRP6Metrics.Step.CLIENT_STEP_2));
+	}
+
+
+	public void testDisabledByDefault() {
+
+		assertNull(new SRP6ServerSession(CONFIG).getMetrics());
+		assertNull(new SRP6ClientSession().getMetrics());
+	}
+}
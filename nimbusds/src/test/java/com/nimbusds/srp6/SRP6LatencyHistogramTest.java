@@ -0,0 +1,103 @@
+package com.nimbusds.srp6;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the latency histogram.
+ */
+public class SRP6LatencyHistogramTest extends TestCase {
+
+
+	public void testBucketBounds() {
+
+		// Exact below 128
+		for (long v = 0; v < 128; v++)
+			assertEquals(v, SRP6LatencyHistogram.highestValueOf(SRP6LatencyHistogram.indexOf(v)));
+
+		// Relative error bound and monotonic indexes
+		int previous = -1;
+
+		for (long v = 1; v < 1L << 41; v = v * 3 / 2 + 1) {
+
+			int index = SRP6LatencyHistogram.indexOf(v);
+			long highest = SRP6LatencyHistogram.highestValueOf(index);
+
+			assertTrue(index >= previous);
+			assertTrue(highest >= v);
+			assertTrue((highest - v) <= v / 64);
+
+			previous = index;
+		}
+
+		// Overflow to the last bucket
+		assertEquals(SRP6LatencyHistogram.indexOf(1L << 42), SRP6LatencyHistogram.indexOf(Long.MAX_VALUE));
+	}
+
+
+	public void testRecord() {
+
+		SRP6LatencyHistogram histogram = new SRP6LatencyHistogram();
+
+		assertEquals(0L, histogram.getCount());
+		assertEquals(0L, histogram.getValueAtPercentile(50.0));
+		assertEquals(0.0, histogram.getMean());
+
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(i * 1000L);
+
+		assertEquals(1000L, histogram.getCount());
+		assertEquals(1000000L, histogram.getMax());
+		assertEquals(500500000L, histogram.getTotal());
+		assertEquals(500500.0, histogram.getMean());
+
+		long median = histogram.getValueAtPercentile(50.0);
+		assertTrue(median >= 500000L && median <= 500000L + 500000L / 64);
+
+		long p99 = histogram.getValueAtPercentile(99.0);
+		assertTrue(p99 >= 990000L && p99 <= 990000L + 990000L / 64);
+
+		assertEquals(1000000L, histogram.getValueAtPercentile(100.0));
+
+		histogram.record(-1L);
+		assertEquals(1001L, histogram.getCount());
+		assertEquals(0L, histogram.getValueAtPercentile(0.0));
+
+		histogram.reset();
+		assertEquals(0L, histogram.getCount());
+		assertEquals(0L, histogram.getMax());
+		assertEquals(0L, histogram.getValueAtPercentile(99.0));
+	}
+
+
+	public void testConcurrentRecording()
+		throws Exception {
+
+		final SRP6LatencyHistogram histogram = new SRP6LatencyHistogram();
+
+		Thread[] threads = new Thread[4];
+
+		for (int i = 0; i < threads.length; i++) {
+
+			threads[i] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+
+					for (int j = 0; j < 10000; j++)
+						histogram.record(j);
+				}
+			});
+
+			threads[i].start();
+		}
+
+		for (Thread thread: threads)
+			thread.join();
+
+		assertEquals(40000L, histogram.getCount());
+		assertEquals(9999L, histogram.getMax());
+		assertEquals(4L * 9999L * 10000L / 2, histogram.getTotal());
+	}
+}
@@ -202,4 +202,127 @@ public class SRP6RoutinesTest extends TestCase {
 		
 		assertFalse("Unexpected auth success", S_s.equals(S_c));
 	}
+
+
+	public void testHashPaddedPairMatchesPaddedArrays() {
+
+		BigInteger N = SRP6CryptoParams.N_2048;
+		int padLength = (N.bitLength() + 7) / 8;
+
+		BigInteger[] values = {
+			BigInteger.ZERO,
+			BigInteger.ONE,
+			BigInteger.valueOf(255),
+			SRP6CryptoParams.N_256,
+			N.subtract(BigInteger.ONE),
+			BigInteger.ONE.shiftLeft(8 * padLength - 1)
+		};
+
+		for (BigInteger n1: values) {
+
+			for (BigInteger n2: values) {
+
+				MessageDigest expected = newMessageDigest();
+				expected.update(srp6Routines.getPadded(n1, padLength));
+				expected.update(srp6Routines.getPadded(n2, padLength));
+
+				assertEquals(new BigInteger(1, expected.digest()), srp6Routines.hashPaddedPair(newMessageDigest(), N, n1, n2));
+			}
+		}
+	}
+
+
+	public void testComputeSessionKeyWithCryptoParams() {
+
+		// Same vectors as testComputeSessionKeyFromServerParams
+		SRP6CryptoParams config = new SRP6CryptoParams(SRP6CryptoParams.N_512, SRP6CryptoParams.g_common, "SHA-1");
+		BigInteger v = new BigInteger("7474502944304737201933065391525517979626350323656683177706520871363411502343933100270074963363249763705942958154733367887987540769816195164179972652012309");
+		BigInteger u = new BigInteger("1058795856907579501448181236341287514343869634531");
+		BigInteger A = new BigInteger("5851783883133110801737748616944168062144125592645124739670882600504491688868508507620920981803278916068202671958283061912270679717280194420389126894561611");
+		BigInteger b = new BigInteger("87688706387802756523846145303638946727009465033048697729929327826640915122504");
+
+		BigInteger S = srp6Routines.computeSessionKey(config, v, u, A, b);
+
+		assertEquals(new BigInteger("1459836519616475169618381559259134652345392827028035636790323034254747322847163648105198456176319247572874754259677415649516102437458860838884341322238013"), S);
+	}
+
+
+	public void testComputeSessionKeyWithCryptoParamsMatchesFormula() {
+
+		SecureRandom random = new SecureRandom();
+
+		for (int bitsize: new int[]{256, 512, 768, 1024, 1536, 2048}) {
+
+			SRP6CryptoParams config = SRP6CryptoParams.getInstance(bitsize, "SHA-1");
+			BigInteger N = config.N;
+
+			for (int i = 0; i < 3; i++) {
+
+				BigInteger v = srp6Routines.generatePrivateValue(N, random);
+				BigInteger u = new BigInteger(160, random);
+				BigInteger b = srp6Routines.generatePrivateValue(N, random);
+
+				// Include an unreduced 'A'
+				BigInteger A = srp6Routines.generatePrivateValue(N, random);
+
+				if (i == 2)
+					A = A.add(N);
+
+				assertEquals(srp6Routines.computeSessionKey(N, v, u, A, b),
+				             srp6Routines.computeSessionKey(config, v, u, A, b));
+			}
+		}
+	}
+
+
+	public void testComputeClientSessionKeyWithCryptoParams() {
+
+		// Same vectors as testComputeSessionKeyFromClientParams
+		SRP6CryptoParams config = new SRP6CryptoParams(SRP6CryptoParams.N_512, SRP6CryptoParams.g_common, "SHA-1");
+		BigInteger k = new BigInteger("1047744680507268333564834174388676105451778575056");
+		BigInteger x = new BigInteger("359461911909460426849627852355308953854206211761");
+		BigInteger u = new BigInteger("1058795856907579501448181236341287514343869634531");
+		BigInteger a = new BigInteger("95736917656079566948552549320495648651648109198673221212170187788888785990505");
+		BigInteger B = new BigInteger("9588187747518163785129397013436875944167461292974597846007987032891818936547367793638202134274048835240842528913574280725614868881714030854987066301723820");
+
+		BigInteger expected = new BigInteger("1459836519616475169618381559259134652345392827028035636790323034254747322847163648105198456176319247572874754259677415649516102437458860838884341322238013");
+
+		assertEquals(expected, srp6Routines.computeSessionKey(config, k, x, null, u, a, B));
+
+		BigInteger v = srp6Routines.computeVerifier(config.N, config.g, x);
+
+		assertEquals(expected, srp6Routines.computeSessionKey(config, k, x, v, u, a, B));
+	}
+
+
+	public void testConstantTimeEquals() {
+
+		assertTrue(SRP6Routines.constantTimeEquals(new byte[]{1, 2, 3}, new byte[]{1, 2, 3}));
+		assertTrue(SRP6Routines.constantTimeEquals(new byte[0], new byte[0]));
+		assertFalse(SRP6Routines.constantTimeEquals(new byte[]{1, 2, 3}, new byte[]{1, 2, 4}));
+		assertFalse(SRP6Routines.constantTimeEquals(new byte[]{(byte)0x80, 2, 3}, new byte[]{0, 2, 3}));
+		assertFalse(SRP6Routines.constantTimeEquals(new byte[]{1, 2, 3}, new byte[]{1, 2}));
+	}
+
+
+	public void testByteArrayHashingMatchesNumeric()
+		throws Exception {
+
+		MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+		BigInteger N = SRP6CryptoParams.N_512;
+		BigInteger A = new BigInteger("1234567890abcdef", 16);
+		BigInteger B = N.subtract(BigInteger.TEN);
+		BigInteger S = new BigInteger(1, new byte[]{1, 2, 3, 4});
+
+		byte[] paddedA = BigIntegerUtils.bigIntegerToBytes(A, 64);
+		byte[] paddedB = BigIntegerUtils.bigIntegerToBytes(B, 64);
+
+		assertEquals(srp6Routines.computeU(digest, N, A, B), srp6Routines.computeU(digest, N, paddedA, paddedB));
+		assertEquals(srp6Routines.computeU(digest, N, A, B),
+		             srp6Routines.computeU(digest, N, BigIntegerUtils.bigIntegerToBytes(A), paddedB));
+
+		assertEquals(srp6Routines.computeClientEvidence(digest, A, B, S),
+		             new BigInteger(1, srp6Routines.computeClientEvidenceBytes(digest, paddedA, paddedB, S)));
+	}
 }
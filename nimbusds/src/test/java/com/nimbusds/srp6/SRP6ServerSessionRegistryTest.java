@@ -0,0 +1,174 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the server session registry.
+ */
+public class SRP6ServerSessionRegistryTest extends TestCase {
+
+
+	private static final SRP6CryptoParams CONFIG = SRP6CryptoParams.getInstance(256, "SHA-1");
+
+
+	private static SRP6ServerSession newSession(final int timeout) {
+
+		SRP6ServerSession session = new SRP6ServerSession(CONFIG, timeout);
+		session.step1("alice", BigInteger.ONE, BigInteger.TEN);
+		return session;
+	}
+
+
+	public void testRegisterAndTake() {
+
+		SRP6ServerSessionRegistry registry = new SRP6ServerSessionRegistry(10, 60);
+
+		assertEquals(10, registry.getMaxSessions());
+		assertEquals(60, registry.getDefaultTimeout());
+
+		SRP6ServerSession session = newSession(0);
+
+		String id = registry.register(session);
+
+		assertEquals(32, id.length());
+		assertEquals(1, registry.getLiveCount());
+
+		assertSame(session, registry.take(id));
+		assertNull(registry.take(id));
+		assertNull(registry.take("unknown"));
+		assertNull(registry.take(null));
+
+		assertEquals(0, registry.getLiveCount());
+		assertEquals(0, registry.getExpiredCount());
+		assertEquals(0, registry.getEvictedCount());
+	}
+
+
+	public void testUniqueHandshakeIDs() {
+
+		SRP6ServerSessionRegistry registry = new SRP6ServerSessionRegistry(1000, 60);
+
+		Set<String> ids = new HashSet<>();
+
+		for (int i = 0; i < 1000; i++)
+			assertTrue(ids.add(registry.register(newSession(0))));
+
+		assertEquals(1000, registry.getLiveCount());
+	}
+
+
+	public void testExpiredSessionNotTaken() {
+
+		SRP6ServerSessionRegistry registry = new SRP6ServerSessionRegistry(10, 60);
+
+		SRP6ServerSession session = newSession(5);
+		session.lastActivity -= 10000;
+
+		String id = registry.register(session);
+
+		assertNull(registry.take(id));
+		assertEquals(1, registry.getExpiredCount());
+		assertEquals(0, registry.getLiveCount());
+	}
+
+
+	public void testTimingWheelExpiry()
+		throws Exception {
+
+		SRP6ServerSessionRegistry registry = new SRP6ServerSessionRegistry(1000, 1, 10L, new ThreadLocalRandomSource());
+
+		// Spread the deadlines over all wheel levels
+		long[] ages = { 0, 500, 980, 1000, 5000, 50000, 3000000, 90000000 };
+
+		String[] ids = new String[ages.length];
+
+		for (int i = 0; i < ages.length; i++) {
+
+			SRP6ServerSession session = newSession(0);
+			session.lastActivity += ages[i];
+			ids[i] = registry.register(session);
+		}
+
+		// Expired without a take
+		SRP6ServerSession expired = newSession(0);
+		expired.lastActivity -= 2000;
+		registry.register(expired);
+
+		Thread.sleep(1100);
+
+		registry.expireSessions();
+
+		assertEquals(2, registry.getExpiredCount());
+		assertEquals(ages.length - 1, registry.getLiveCount());
+
+		assertNull(registry.take(ids[0]));
+
+		for (int i = 1; i < ages.length; i++)
+			assertNotNull(registry.take(ids[i]));
+
+		assertEquals(0, registry.getEvictedCount());
+	}
+
+
+	public void testTimingWheelSkipsIdleTicks() {
+
+		SRP6ServerSessionRegistry registry = new SRP6ServerSessionRegistry(1000, 1, 1L, new ThreadLocalRandomSource());
+
+		// Deadlines on all levels and beyond the range of the wheel
+		int[] timeouts = { 2, 100, 7200, 3 * 86400 };
+
+		String[] ids = new String[timeouts.length];
+
+		for (int i = 0; i < timeouts.length; i++)
+			ids[i] = registry.register(newSession(timeouts[i]));
+
+		final long now = System.currentTimeMillis();
+
+		// A day and a half of idle 1 ms ticks
+		synchronized (registry) {
+			registry.advance(now + 36 * 3600000L);
+		}
+
+		assertEquals(3, registry.getExpiredCount());
+		assertEquals(1, registry.getLiveCount());
+
+		synchronized (registry) {
+			registry.advance(now + 4 * 86400000L);
+		}
+
+		assertEquals(4, registry.getExpiredCount());
+		assertEquals(0, registry.getLiveCount());
+
+		for (String id: ids)
+			assertNull(registry.take(id));
+	}
+
+
+	public void testEvictionWhenFull() {
+
+		SRP6ServerSessionRegistry registry = new SRP6ServerSessionRegistry(3, 60);
+
+		SRP6ServerSession first = newSession(0);
+		first.lastActivity -= 30000;
+
+		String firstID = registry.register(first);
+		String secondID = registry.register(newSession(0));
+		String thirdID = registry.register(newSession(0));
+		String fourthID = registry.register(newSession(0));
+
+		assertEquals(3, registry.getLiveCount());
+		assertEquals(1, registry.getEvictedCount());
+
+		// The session closest to expiry goes first
+		assertNull(registry.take(firstID));
+		assertNotNull(registry.take(secondID));
+		assertNotNull(registry.take(thirdID));
+		assertNotNull(registry.take(fourthID));
+	}
+}
@@ -0,0 +1,209 @@
+package com.nimbusds.srp6;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the session state codec.
+ */
+public class SRP6SessionCodecTest extends TestCase {
+
+
+	private static byte[] serialize(final Object o)
+		throws Exception {
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bos);
+		out.writeObject(o);
+		out.close();
+		return bos.toByteArray();
+	}
+
+
+	public void testAuthenticationAcrossEncodings()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(2048, "SHA-256");
+		SRP6SessionCodec codec = new SRP6SessionCodec(config);
+
+		assertSame(config, codec.getCryptoParams());
+
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession(60);
+		client.step1("alice", "secret");
+		client = codec.decodeClientSession(codec.encode(client));
+
+		assertEquals(SRP6ClientSession.State.STEP_1, client.getState());
+		assertEquals("alice", client.getUserID());
+		assertNull(client.getCryptoParams());
+		assertEquals(60, client.getTimeout());
+
+		SRP6ServerSession server = new SRP6ServerSession(config, 60);
+		BigInteger B = server.step1("alice", s, v);
+
+		byte[] encoded = codec.encode(server);
+
+		// Padded 'v', 'b' and 'B' dominate
+		assertTrue(encoded.length < 3 * 256 + 64);
+		assertTrue(encoded.length * 3 < serialize(server).length);
+
+		SRP6ServerSession decodedServer = codec.decodeServerSession(encoded);
+
+		assertEquals(SRP6ServerSession.State.STEP_1, decodedServer.getState());
+		assertEquals(server.getLastActivityTime(), decodedServer.getLastActivityTime());
+		assertEquals(60, decodedServer.getTimeout());
+		assertEquals(B, decodedServer.getPublicServerValue());
+		assertEquals(s, decodedServer.getSalt());
+		assertTrue(Arrays.equals(encoded, codec.encode(decodedServer)));
+
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+
+		client = codec.decodeClientSession(codec.encode(client));
+
+		assertEquals(SRP6ClientSession.State.STEP_2, client.getState());
+		assertEquals(config, client.getCryptoParams());
+
+		BigInteger M2 = decodedServer.step2(cred.A, cred.M1);
+		client.step3(M2);
+
+		assertEquals(client.getSessionKey(), decodedServer.getSessionKey());
+
+		SRP6ServerSession finished = codec.decodeServerSession(codec.encode(decodedServer));
+
+		assertEquals(SRP6ServerSession.State.STEP_2, finished.getState());
+		assertEquals(decodedServer.getSessionKey(), finished.getSessionKey());
+		assertEquals(M2, finished.getServerEvidenceMessage());
+	}
+
+
+	public void testMockUserIdentity()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(256, "SHA-1");
+		SRP6SessionCodec codec = new SRP6SessionCodec(config);
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		BigInteger B = server.mockStep1("alice", BigInteger.ONE, BigInteger.TEN);
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+		SRP6ClientCredentials cred = client.step2(config, BigInteger.ONE, B);
+
+		server = codec.decodeServerSession(codec.encode(server));
+
+		try {
+			server.step2(cred.A, cred.M1);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+	}
+
+
+	public void testCustomRoutines()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(256, "SHA-1");
+		SRP6SessionCodec codec = new SRP6SessionCodec(config);
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		XRoutine xRoutine = new XRoutineWithUserIdentity();
+		client.setXRoutine(xRoutine);
+		client.step1("alice", "secret");
+
+		byte[] encoded = codec.encode(client);
+
+		try {
+			codec.decodeClientSession(encoded);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The session requires a custom 'x' routine", e.getMessage());
+		}
+
+		codec.setXRoutine(xRoutine);
+
+		assertSame(xRoutine, codec.decodeClientSession(encoded).getXRoutine());
+	}
+
+
+	public void testRejectInvalidEncodings() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(256, "SHA-1");
+		SRP6SessionCodec codec = new SRP6SessionCodec(config);
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		server.step1("alice", BigInteger.ONE, BigInteger.TEN);
+
+		byte[] encoded = codec.encode(server);
+
+		try {
+			codec.decodeClientSession(encoded);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Unexpected session type", e.getMessage());
+		}
+
+		try {
+			new SRP6SessionCodec(SRP6CryptoParams.getInstance(256, "SHA-256")).decodeServerSession(encoded);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The session crypto parameters don't match those of the codec", e.getMessage());
+		}
+
+		try {
+			new SRP6SessionCodec(SRP6CryptoParams.getInstance(512, "SHA-1")).encode(server);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The session crypto parameters don't match those of the codec", e.getMessage());
+		}
+
+		try {
+			codec.decodeServerSession(Arrays.copyOf(encoded, encoded.length - 1));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Truncated session encoding", e.getMessage());
+		}
+
+		byte[] future = encoded.clone();
+		future[0] = 2;
+
+		try {
+			codec.decodeServerSession(future);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Unsupported session encoding version: 2", e.getMessage());
+		}
+	}
+
+
+	public void testOutOfRangeValues()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(256, "SHA-1");
+		SRP6SessionCodec codec = new SRP6SessionCodec(config);
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		server.step1("alice", BigInteger.ONE, BigInteger.TEN);
+
+		BigInteger badA = config.N.shiftLeft(64).negate();
+
+		try {
+			server.step2(badA, BigInteger.ONE);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_PUBLIC_VALUE, e.getCauseType());
+		}
+
+		assertEquals(badA, codec.decodeServerSession(codec.encode(server)).getPublicClientValue());
+	}
+}
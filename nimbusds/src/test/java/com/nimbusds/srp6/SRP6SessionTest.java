@@ -2,6 +2,8 @@ package com.nimbusds.srp6;
 
 
 import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -130,4 +132,556 @@ public class SRP6SessionTest extends TestCase {
 
 		assertEquals("alice", client.getAttribute("name"));
 	}
+
+
+	public void testClientPrecompute()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(1024, "SHA-1");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+		client.precompute(config);
+
+		BigInteger A = client.getPublicClientValue();
+		assertNotNull(A);
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		BigInteger B = server.step1("alice", s, v);
+
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+
+		// Precomputed value used
+		assertEquals(A, cred.A);
+
+		client.step3(server.step2(cred.A, cred.M1));
+
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+	}
+
+
+	public void testClientPrecomputeForOtherParams()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+		client.precompute(SRP6CryptoParams.getInstance(256, "SHA-1"));
+
+		BigInteger A = client.getPublicClientValue();
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		BigInteger B = server.step1("alice", s, v);
+
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+
+		// Recomputed for the actual 'N'
+		assertFalse(A.equals(cred.A));
+
+		client.step3(server.step2(cred.A, cred.M1));
+
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+	}
+
+
+	public void testClientEphemeralPool()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+		SRP6EphemeralPool pool = new SRP6EphemeralPool(config, 1);
+		pool.fill();
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.setEphemeralPool(pool);
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		BigInteger B = server.step1("alice", s, v);
+
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+
+		assertEquals(1, pool.getHitCount());
+
+		client.step3(server.step2(cred.A, cred.M1));
+
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+	}
+
+
+	public void testAuthWithEvidenceBytes()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-256");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		BigInteger B = server.step1("alice", s, v);
+
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+
+		byte[] M1 = client.getClientEvidenceMessageBytes();
+		assertEquals(32, M1.length);
+		assertEquals(cred.M1, new BigInteger(1, M1));
+
+		byte[] M2 = server.step2(cred.A, M1);
+		assertEquals(32, M2.length);
+		assertEquals(server.getServerEvidenceMessage(), new BigInteger(1, M2));
+		assertEquals(cred.M1, server.getClientEvidenceMessage());
+
+		client.step3(M2);
+
+		assertEquals(SRP6ClientSession.State.STEP_3, client.getState());
+		assertEquals(server.getServerEvidenceMessage(), client.getServerEvidenceMessage());
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+	}
+
+
+	public void testEvidenceBytesMatchNumericEvidence()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		// Repeat to cover evidence messages with leading zero bytes,
+		// which are received unpadded
+		for (int i = 0; i < 64; i++) {
+
+			SRP6ClientSession client = new SRP6ClientSession();
+			client.step1("alice", "secret");
+
+			SRP6ServerSession server = new SRP6ServerSession(config);
+			BigInteger B = server.step1("alice", s, v);
+
+			SRP6ClientCredentials cred = client.step2(config, s, B);
+
+			byte[] M2 = server.step2(cred.A, BigIntegerUtils.bigIntegerToBytes(cred.M1));
+
+			assertEquals(new SRP6Routines().computeServerEvidence(config.getMessageDigestInstance(), cred.A, cred.M1, server.getSessionKey()),
+			             new BigInteger(1, M2));
+
+			client.step3(new BigInteger(1, M2));
+
+			assertEquals(SRP6ClientSession.State.STEP_3, client.getState());
+		}
+	}
+
+
+	public void testBadEvidenceBytes()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		BigInteger B = server.step1("alice", s, v);
+
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+
+		byte[] M1 = client.getClientEvidenceMessageBytes();
+		M1[M1.length - 1] ^= 1;
+
+		try {
+			server.step2(cred.A, M1);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+
+		assertEquals(SRP6ServerSession.State.STEP_1, server.getState());
+
+		try {
+			client.step3(new byte[21]);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+
+		assertEquals(SRP6ClientSession.State.STEP_2, client.getState());
+	}
+
+
+	public void testEvidenceBytesWithLeadingZero()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-256");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		BigInteger B = server.step1("alice", s, v);
+
+		client.step2(config, s, B);
+
+		// Sign-prefixed, as from BigInteger.toByteArray()
+		byte[] M1 = new byte[33];
+		System.arraycopy(client.getClientEvidenceMessageBytes(), 0, M1, 1, 32);
+
+		byte[] M2 = new byte[33];
+		System.arraycopy(server.step2(client.getPublicClientValueBytes(), M1), 0, M2, 1, 32);
+
+		assertEquals(client.getClientEvidenceMessage(), server.getClientEvidenceMessage());
+
+		client.step3(M2);
+
+		assertEquals(SRP6ClientSession.State.STEP_3, client.getState());
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+
+		// Excess non-zero bytes are still rejected
+		assertEquals(3, SRP6ServerSession.pad(new byte[]{1, 0, 0}, 2).length);
+		assertTrue(Arrays.equals(new byte[]{0, 2}, SRP6ServerSession.pad(new byte[]{0, 0, 0, 2}, 2)));
+		assertTrue(Arrays.equals(new byte[]{0, 0, 2}, SRP6ServerSession.pad(new byte[]{2}, 3)));
+	}
+
+
+	public void testAuthWithWireBytes()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(1024, "SHA-256");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+
+		for (int i = 0; i < 32; i++) {
+
+			byte[] s = verifierGen.generateRandomSalt(16);
+
+			// Cover salts with leading zeros, used as they are for 'x'
+			if (i % 2 == 0)
+				s[0] = 0;
+
+			byte[] v = verifierGen.generatePaddedVerifier(s, null, "secret".getBytes("UTF-8"));
+			assertEquals(128, v.length);
+			assertEquals(verifierGen.generateVerifier(s, "secret".getBytes("UTF-8")), new BigInteger(1, v));
+
+			SRP6ClientSession client = new SRP6ClientSession();
+			client.step1("alice", "secret");
+
+			SRP6ServerSession server = new SRP6ServerSession(config);
+			byte[] B = server.step1("alice", s, v);
+			assertEquals(128, B.length);
+			assertEquals(server.getPublicServerValue(), new BigInteger(1, B));
+
+			SRP6ClientCredentials cred = client.step2(config, s, B);
+
+			byte[] A = client.getPublicClientValueBytes();
+			assertEquals(128, A.length);
+			assertEquals(cred.A, new BigInteger(1, A));
+
+			byte[] M2 = server.step2(A, client.getClientEvidenceMessageBytes());
+
+			client.step3(M2);
+
+			assertEquals(SRP6ClientSession.State.STEP_3, client.getState());
+			assertEquals(client.getSessionKey(), server.getSessionKey());
+		}
+	}
+
+
+	public void testWireBytesInteroperateWithNumericSteps()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		// Numeric client, byte array server
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		byte[] B = server.step1("alice", BigIntegerUtils.bigIntegerToBytes(s), BigIntegerUtils.bigIntegerToBytes(v));
+
+		SRP6ClientCredentials cred = client.step2(config, s, new BigInteger(1, B));
+
+		client.step3(new BigInteger(1, server.step2(client.getPublicClientValueBytes(), client.getClientEvidenceMessageBytes())));
+
+		assertEquals(SRP6ClientSession.State.STEP_3, client.getState());
+		assertEquals(cred.A, server.getPublicClientValue());
+
+		// Byte array client, numeric server
+		client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+
+		server = new SRP6ServerSession(config);
+		BigInteger numericB = server.step1("alice", s, v);
+
+		cred = client.step2(config, BigIntegerUtils.bigIntegerToBytes(s), BigIntegerUtils.bigIntegerToBytes(numericB));
+
+		client.step3(server.step2(cred.A, cred.M1));
+
+		assertEquals(SRP6ClientSession.State.STEP_3, client.getState());
+	}
+
+
+	public void testMockStep1WithWireBytes()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		byte[] s = verifierGen.generateRandomSalt();
+		byte[] v = verifierGen.generatePaddedVerifier(s, null, "secret".getBytes("UTF-8"));
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		byte[] B = server.mockStep1("alice", s, v);
+
+		client.step2(config, s, B);
+
+		try {
+			server.step2(client.getPublicClientValueBytes(), client.getClientEvidenceMessageBytes());
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+	}
+
+
+	public void testOverriddenMultiplier()
+		throws Exception {
+
+		// SRP-6 multiplier k = 3
+		SRP6Routines routines = new SRP6Routines() {
+			@Override
+			public BigInteger computeK(final MessageDigest digest, final BigInteger N, final BigInteger g) {
+				return BigInteger.valueOf(3);
+			}
+		};
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession(0, routines);
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(config, 0, routines);
+		BigInteger B = server.step1("alice", s, v);
+
+		assertEquals(BigInteger.valueOf(3), server.k);
+
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+
+		assertEquals(BigInteger.valueOf(3), client.k);
+
+		client.step3(server.step2(cred.A, cred.M1));
+
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+	}
+
+
+	public void testOverriddenPublicValues()
+		throws Exception {
+
+		final int[] calls = new int[2];
+
+		SRP6Routines routines = new SRP6Routines() {
+			@Override
+			public BigInteger computePublicClientValue(final BigInteger N, final BigInteger g, final BigInteger a) {
+				calls[0]++;
+				return super.computePublicClientValue(N, g, a);
+			}
+			@Override
+			public BigInteger computePublicServerValue(final BigInteger N, final BigInteger g, final BigInteger k,
+			                                           final BigInteger v, final BigInteger b) {
+				calls[1]++;
+				return super.computePublicServerValue(N, g, k, v, b);
+			}
+		};
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession(0, routines);
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(config, 0, routines);
+		BigInteger B = server.step1("alice", s, v);
+
+		assertEquals(1, calls[1]);
+
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+
+		assertEquals(1, calls[0]);
+
+		client.step3(server.step2(cred.A, cred.M1));
+
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+	}
+
+
+	public void testOverriddenServerSessionKey()
+		throws Exception {
+
+		final int[] calls = new int[1];
+
+		SRP6Routines routines = new SRP6Routines() {
+			@Override
+			public BigInteger computeSessionKey(final BigInteger N, final BigInteger v, final BigInteger u,
+			                                    final BigInteger A, final BigInteger b) {
+				calls[0]++;
+				return super.computeSessionKey(N, v, u, A, b);
+			}
+		};
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(config, 0, routines);
+		SRP6ClientCredentials cred = client.step2(config, s, server.step1("alice", s, v));
+
+		client.step3(server.step2(cred.A, cred.M1));
+
+		assertEquals(1, calls[0]);
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+	}
+
+
+	public void testOverriddenClientSessionKey()
+		throws Exception {
+
+		final int[] calls = new int[1];
+
+		SRP6Routines routines = new SRP6Routines() {
+			@Override
+			public BigInteger computeSessionKey(final BigInteger N, final BigInteger g, final BigInteger k,
+			                                    final BigInteger x, final BigInteger u, final BigInteger a,
+			                                    final BigInteger B) {
+				calls[0]++;
+				return super.computeSessionKey(N, g, k, x, u, a, B);
+			}
+		};
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession(0, routines);
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		SRP6ClientCredentials cred = client.step2(config, s, server.step1("alice", s, v));
+
+		client.step3(server.step2(cred.A, cred.M1));
+
+		assertEquals(1, calls[0]);
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+	}
+
+
+	public void testClientWithKnownVerifier()
+		throws Exception {
+
+		final int[] calls = new int[1];
+
+		SRP6Routines routines = new SRP6Routines() {
+			@Override
+			public BigInteger computeVerifier(final SRP6CryptoParams config, final BigInteger x) {
+				calls[0]++;
+				return super.computeVerifier(config, x);
+			}
+		};
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		byte[] s = verifierGen.generateRandomSalt();
+		byte[] v = verifierGen.generatePaddedVerifier(s, null, "secret".getBytes("UTF-8"));
+
+		// Known verifier for the salt sent by the server
+		SRP6ClientSession client = new SRP6ClientSession(0, routines);
+		client.setVerifier(config, s, new BigInteger(1, v));
+		client.step1("alice", "secret");
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		client.step2(config, s, server.step1("alice", s, v));
+		client.step3(server.step2(client.getPublicClientValueBytes(), client.getClientEvidenceMessageBytes()));
+
+		assertEquals(0, calls[0]);
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+
+		// Verifier for another salt
+		client = new SRP6ClientSession(0, routines);
+		client.setVerifier(config, new byte[16], new BigInteger(1, v));
+		client.step1("alice", "secret");
+
+		server = new SRP6ServerSession(config);
+		client.step2(config, s, server.step1("alice", s, v));
+		client.step3(server.step2(client.getPublicClientValueBytes(), client.getClientEvidenceMessageBytes()));
+
+		assertEquals(1, calls[0]);
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+
+		// Verifier for another hash algorithm
+		client = new SRP6ClientSession(0, routines);
+		client.setVerifier(SRP6CryptoParams.getInstance(512, "SHA-256"), s, new BigInteger(1, v));
+		client.step1("alice", "secret");
+
+		server = new SRP6ServerSession(config);
+		client.step2(config, s, server.step1("alice", s, v));
+		client.step3(server.step2(client.getPublicClientValueBytes(), client.getClientEvidenceMessageBytes()));
+
+		assertEquals(2, calls[0]);
+
+		// Hash algorithm names are case-insensitive
+		client = new SRP6ClientSession(0, routines);
+		client.setVerifier(new SRP6CryptoParams(config.N, config.g, "sha-1"), s, new BigInteger(1, v));
+		client.step1("alice", "secret");
+
+		server = new SRP6ServerSession(config);
+		client.step2(config, s, server.step1("alice", s, v));
+		client.step3(server.step2(client.getPublicClientValueBytes(), client.getClientEvidenceMessageBytes()));
+
+		assertEquals(2, calls[0]);
+	}
 }